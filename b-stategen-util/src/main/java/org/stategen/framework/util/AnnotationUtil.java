@@ -18,7 +18,11 @@ package org.stategen.framework.util;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
@@ -51,7 +55,104 @@ public class AnnotationUtil {
         }
     }
 
-    private static Map<AnnotatedElement, Map<Class<?>, AnnotationWrapper>> annotatedElementAnnosCache = new ConcurrentHashMap<AnnotatedElement, Map<Class<?>, AnnotationWrapper>>();
+    /**
+     * 一个element上各种查找方式的结果，key为annotationType，找不到时缓存 annotation 为null的wrapper
+     */
+    static class ElementAnnotations {
+        final ConcurrentHashMap<Class<?>, AnnotationWrapper> annotations     = new ConcurrentHashMap<Class<?>, AnnotationWrapper>(8);
+
+        final ConcurrentHashMap<Class<?>, AnnotationWrapper> untilSuppers    = new ConcurrentHashMap<Class<?>, AnnotationWrapper>(8);
+
+        final ConcurrentHashMap<Class<?>, AnnotationWrapper> methodOrOwners  = new ConcurrentHashMap<Class<?>, AnnotationWrapper>(8);
+    }
+
+    /**
+     * 一个类的annotation索引，类本身和它声明的method/field/constructor各有一个 ElementAnnotations.
+     * 在 ClassValue.computeValue 中一次建好，之后members只读，查找时不再加锁；
+     * 每个element上按annotationType的结果(含spring merged、父类/父方法上的)无法预先枚举，仍在首次查询时算出并缓存.
+     * 保存在 ClassValue 中，索引随类一起回收，热部署时不再因为缓存了Method而钉住旧的类加载器
+     */
+    static class ClassAnnotations {
+        final ElementAnnotations                        owner = new ElementAnnotations();
+
+        final Map<AnnotatedElement, ElementAnnotations> members;
+
+        ClassAnnotations(Class<?> type) {
+            Map<AnnotatedElement, ElementAnnotations> members = new HashMap<AnnotatedElement, ElementAnnotations>();
+            try {
+                for (Method method : type.getDeclaredMethods()) {
+                    members.put(method, new ElementAnnotations());
+                }
+                for (Field field : type.getDeclaredFields()) {
+                    members.put(field, new ElementAnnotations());
+                }
+                for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+                    members.put(constructor, new ElementAnnotations());
+                }
+            } catch (LinkageError e) {
+                //签名中引用的类不存在时，该类的member都不缓存
+                members.clear();
+            }
+            this.members = members;
+        }
+
+        /***不在索引中的member返回null，不缓存*/
+        ElementAnnotations get(AnnotatedElement annotatedElement) {
+            if (annotatedElement instanceof Class) {
+                return owner;
+            }
+            return members.get(annotatedElement);
+        }
+    }
+
+    private static final ClassValue<ClassAnnotations> CLASS_ANNOTATIONS = new ClassValue<ClassAnnotations>() {
+        @Override
+        protected ClassAnnotations computeValue(Class<?> type) {
+            return new ClassAnnotations(type);
+        }
+    };
+
+    /***
+     * Class和Member以外的element(如Parameter)，以及不在所在类索引中的member不缓存，返回null；
+     * 所在类不能缓存 annotationType 的结果时(见 canCache)也返回null
+     */
+    static ElementAnnotations getElementAnnotations(AnnotatedElement annotatedElement, Class<?> annotationType) {
+        Class<?> owner = null;
+        if (annotatedElement instanceof Class) {
+            owner = (Class<?>) annotatedElement;
+        } else if (annotatedElement instanceof Member) {
+            owner = ((Member) annotatedElement).getDeclaringClass();
+        }
+        return owner != null && canCache(owner, annotationType) ? CLASS_ANNOTATIONS.get(owner).get(annotatedElement) : null;
+    }
+
+    /***
+     * owner 的类加载器与 annotationType 的相同或是它的子孙时才缓存，
+     * 否则父加载器(如 Object、共享的父类)的 ClassValue 中会以 webapp 的 annotationType 为key，钉住 webapp 的类加载器
+     */
+    static boolean canCache(Class<?> owner, Class<?> annotationType) {
+        ClassLoader annotationLoader = annotationType.getClassLoader();
+        if (annotationLoader == null) {
+            return true;
+        }
+        for (ClassLoader loader = owner.getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader == annotationLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A extends Annotation> A getOrCompute(ConcurrentHashMap<Class<?>, AnnotationWrapper> wrappersMap,
+                                                         Class<A> annotationType, Function<Class<A>, A> compute) {
+        AnnotationWrapper annotationWrapper = wrappersMap.get(annotationType);
+        if (annotationWrapper == null) {
+            //compute中会查父类/父方法，它们在各自的map中，不会在同一个map里递归computeIfAbsent
+            annotationWrapper = wrappersMap.computeIfAbsent(annotationType, k -> new AnnotationWrapper(compute.apply(annotationType)));
+        }
+        return (A) annotationWrapper.getAnnotation();
+    }
 
     /**
      * 该方法不同于spring,它可以获得继承的标注.
@@ -61,25 +162,12 @@ public class AnnotationUtil {
      * @param annotationType the annotation type
      * @return the annotation
      */
-    @SuppressWarnings("unchecked")
     public static <A extends Annotation> A getAnnotation(AnnotatedElement annotatedElement, Class<A> annotationType) {
-        Map<Class<?>, AnnotationWrapper> wrappersMap = annotatedElementAnnosCache.get(annotatedElement);
-        if (wrappersMap != null) {
-            AnnotationWrapper annotationWrapper = wrappersMap.get(annotationType);
-            if (annotationWrapper != null) {
-                return (A) annotationWrapper.getAnnotation();
-            }
-        }
-
-        if (wrappersMap == null) {
-            wrappersMap = new ConcurrentHashMap<Class<?>, AnnotationUtil.AnnotationWrapper>();
-            annotatedElementAnnosCache.put(annotatedElement, wrappersMap);
+        ElementAnnotations elementAnnotations = getElementAnnotations(annotatedElement, annotationType);
+        if (elementAnnotations == null) {
+            return internalGetAnnoation(annotatedElement, annotationType);
         }
-
-        A internalAnnoation = internalGetAnnoation(annotatedElement, annotationType);
-        AnnotationWrapper wrapper = new AnnotationWrapper(internalAnnoation);
-        wrappersMap.put(annotationType, wrapper);
-        return internalAnnoation;
+        return getOrCompute(elementAnnotations.annotations, annotationType, type -> internalGetAnnoation(annotatedElement, type));
     }
 
     /**
@@ -129,12 +217,22 @@ public class AnnotationUtil {
      * @return the annotation until supper
      */
     public static <A extends Annotation> A getAnnotationUntilSupper(AnnotatedElement annotatedElement, Class<A> annotationType) {
+        ElementAnnotations elementAnnotations = getElementAnnotations(annotatedElement, annotationType);
+        if (elementAnnotations == null) {
+            return internalGetAnnotationUntilSupper(annotatedElement, annotationType);
+        }
+        return getOrCompute(elementAnnotations.untilSuppers, annotationType,
+            type -> internalGetAnnotationUntilSupper(annotatedElement, type));
+    }
+
+    private static <A extends Annotation> A internalGetAnnotationUntilSupper(AnnotatedElement annotatedElement, Class<A> annotationType) {
         A annotation = AnnotatedElementUtils.findMergedAnnotation(annotatedElement, annotationType);
         if (annotation == null) {
             if (annotatedElement instanceof Class) {
-                Class<?> clz = (Class<?>) annotatedElement;
-                if (clz.getSuperclass() != null) {
-                    return getAnnotationUntilSupper(clz.getSuperclass(), annotationType);
+                Class<?> superclass = ((Class<?>) annotatedElement).getSuperclass();
+                //Object 上没有标注，不再查找
+                if (superclass != null && superclass != Object.class) {
+                    return getAnnotationUntilSupper(superclass, annotationType);
                 }
             }
         }
@@ -163,6 +261,14 @@ public class AnnotationUtil {
      * @return the annotation include parent
      */
     public static <A extends Annotation> A getMethodOrOwnerAnnotation(Method method, Class<A> annotationType) {
+        ElementAnnotations elementAnnotations = getElementAnnotations(method, annotationType);
+        if (elementAnnotations == null) {
+            return internalGetMethodOrOwnerAnnotation(method, annotationType);
+        }
+        return getOrCompute(elementAnnotations.methodOrOwners, annotationType, type -> internalGetMethodOrOwnerAnnotation(method, type));
+    }
+
+    private static <A extends Annotation> A internalGetMethodOrOwnerAnnotation(Method method, Class<A> annotationType) {
         A annotation = getAnnotation(method, annotationType);
         if (annotation == null) {
             annotation = getMethodOwnerAnnotation(method, annotationType);
@@ -1,5 +1,10 @@
 package org.stategen.framework.util;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 import org.stategen.framework.lite.PageList;
 
 public interface BaseService<T> {
@@ -13,4 +18,17 @@ public interface BaseService<T> {
        return  getPageList(query,1,1).first();
     }
 
+    /***
+     * 当前请求中按key批量查询的loader，在循环中用它代替 getFirst，多次 load 合并成一次id列表查询.
+     * 同一处代码(同一个 resultSetQueryIdsFun 实例)在一个请求中共用一个loader，请求结束时清空
+     * 
+     * @param queryCreator 创建查询对象，如 User::new
+     * @param resultSetQueryIdsFun 把id列表设置到查询对象，如 User::setUserIds
+     * @param resultGetIdFun 从结果中取得id，如 User::getUserId
+     */
+    default public <K> BatchLoader<K, T> getBatchLoader(Supplier<T> queryCreator, BiConsumer<T, List<K>> resultSetQueryIdsFun,
+                                                        Function<? super T, K> resultGetIdFun) {
+        return BatchLoader.getRequestScoped(this, queryCreator, resultSetQueryIdsFun, resultGetIdFun);
+    }
+
 }
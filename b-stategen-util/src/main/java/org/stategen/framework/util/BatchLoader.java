@@ -0,0 +1,270 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.stategen.framework.lite.PageList;
+
+/***
+ * 类似 DataLoader 的按key批量查询，用来消除在循环中逐个调用 getFirst(query) 产生的 N+1 查询.
+ *
+ * <pre>
+ * 1.load(key) 只登记key，返回一个 Supplier，第一次 get 时把所有登记的key合并成一个(或按batchSize分成几个)
+ *   id列表查询 getPageList，结果按 resultGetIdFun 分发回各个key；
+ * 2.查过的key(包括查不到的)记在本loader中，同一个请求内不会重复查询；
+ * 3.getRequestScoped 取得的loader保存在 ThreadLocal 中，由 MultiFilter 在请求结束时通过
+ *   ThreadLocalUtil.cleanValuesOnThreadLocals 清空，不跨请求缓存；
+ * 4.key应是唯一键，每个key只取一条，getPageList 的 pageSize 为本次查询的key个数.
+ * </pre>
+ *
+ * 非线程安全.
+ *
+ * <pre>
+ * BatchLoader&lt;Long, User&gt; userLoader = userService.getBatchLoader(User::new, User::setUserIds, User::getUserId);
+ * List&lt;Supplier&lt;User&gt;&gt; users = new ArrayList&lt;&gt;();
+ * for (Topic topic : topics) {
+ *     users.add(userLoader.load(topic.getUserId()));
+ * }
+ * //第一次get时一次查出所有user
+ * users.get(0).get();
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public class BatchLoader<K, T> {
+
+    /***以 provider 和 resultSetQueryIdsFun 的实例区分一个loader*/
+    static final class LoaderKey {
+        final Object provider;
+        final Object resultSetQueryIdsFun;
+
+        LoaderKey(Object provider, Object resultSetQueryIdsFun) {
+            this.provider = provider;
+            this.resultSetQueryIdsFun = resultSetQueryIdsFun;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(provider) * 31 + System.identityHashCode(resultSetQueryIdsFun);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LoaderKey)) {
+                return false;
+            }
+            LoaderKey other = (LoaderKey) obj;
+            return provider == other.provider && resultSetQueryIdsFun == other.resultSetQueryIdsFun;
+        }
+    }
+
+    private static final ThreadLocal<Map<LoaderKey, BatchLoader<?, ?>>> REQUEST_LOADERS = ThreadLocalUtil.createLocalThread();
+
+    private final BaseService<T>          provider;
+
+    private final Supplier<T>             queryCreator;
+
+    private final BiConsumer<T, List<K>>  resultSetQueryIdsFun;
+
+    private final Function<? super T, K>  resultGetIdFun;
+
+    private final int                     batchSize;
+
+    private final Executor                executor;
+
+    private final Map<K, T>               loaded     = new HashMap<K, T>();
+
+    /** 已查询过的key，包括查不到的 */
+    private final Set<K>                  loadedKeys = new HashSet<K>();
+
+    private final Set<K>                  pending    = new LinkedHashSet<K>();
+
+    private int                           dispatchCount;
+
+    /***分块在调用线程中依次查询*/
+    public BatchLoader(BaseService<T> provider, Supplier<T> queryCreator, BiConsumer<T, List<K>> resultSetQueryIdsFun,
+                       Function<? super T, K> resultGetIdFun) {
+        this(provider, queryCreator, resultSetQueryIdsFun, resultGetIdFun, ServiceUtil.getBatchSize(), null);
+    }
+
+    /***executor 不为null时分块并发查询，同时执行的不超过 ServiceUtil.getRelationParallelism()*/
+    public BatchLoader(BaseService<T> provider, Supplier<T> queryCreator, BiConsumer<T, List<K>> resultSetQueryIdsFun,
+                       Function<? super T, K> resultGetIdFun, int batchSize, Executor executor) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0 ,but it is :" + batchSize);
+        }
+        this.provider = provider;
+        this.queryCreator = queryCreator;
+        this.resultSetQueryIdsFun = resultSetQueryIdsFun;
+        this.resultGetIdFun = resultGetIdFun;
+        this.batchSize = batchSize;
+        this.executor = executor;
+    }
+
+    /***
+     * 取当前请求中的loader，没有时创建，同一个 provider + resultSetQueryIdsFun 实例在一个请求中共用一个loader
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, T> BatchLoader<K, T> getRequestScoped(BaseService<T> provider, Supplier<T> queryCreator,
+                                                            BiConsumer<T, List<K>> resultSetQueryIdsFun,
+                                                            Function<? super T, K> resultGetIdFun) {
+        Map<LoaderKey, BatchLoader<?, ?>> loaders = REQUEST_LOADERS.get();
+        if (loaders == null) {
+            loaders = new HashMap<LoaderKey, BatchLoader<?, ?>>();
+            REQUEST_LOADERS.set(loaders);
+        }
+        LoaderKey loaderKey = new LoaderKey(provider, resultSetQueryIdsFun);
+        BatchLoader<K, T> loader = (BatchLoader<K, T>) loaders.get(loaderKey);
+        if (loader == null) {
+            loader = new BatchLoader<K, T>(provider, queryCreator, resultSetQueryIdsFun, resultGetIdFun);
+            loaders.put(loaderKey, loader);
+        }
+        return loader;
+    }
+
+    /***不在web请求中(如定时任务)使用 getRequestScoped 时，用完后调用该方法清空*/
+    public static void clearRequestScoped() {
+        REQUEST_LOADERS.remove();
+    }
+
+    /***
+     * 登记一个key，返回的 Supplier 第一次 get 时才查询，并把当时所有登记的key一起查出
+     */
+    public Supplier<T> load(K key) {
+        if (key == null) {
+            return () -> null;
+        }
+        if (!loadedKeys.contains(key)) {
+            pending.add(key);
+        }
+        return () -> get(key);
+    }
+
+    /***登记多个key*/
+    public Supplier<Map<K, T>> loadMany(Collection<K> keys) {
+        if (CollectionUtil.isNotEmpty(keys)) {
+            for (K key : keys) {
+                load(key);
+            }
+        }
+        return () -> getAll(keys);
+    }
+
+    /***立即取得一个key的结果，如果还有登记了未查询的key，一起查出*/
+    public T get(K key) {
+        if (key == null) {
+            return null;
+        }
+        if (!loadedKeys.contains(key)) {
+            pending.add(key);
+            dispatch();
+        }
+        return loaded.get(key);
+    }
+
+    /***立即取得多个key的结果，查不到的key不放入返回的map*/
+    public Map<K, T> getAll(Collection<K> keys) {
+        Map<K, T> result = new LinkedHashMap<K, T>();
+        if (CollectionUtil.isEmpty(keys)) {
+            return result;
+        }
+        for (K key : keys) {
+            if (key != null && !loadedKeys.contains(key)) {
+                pending.add(key);
+            }
+        }
+        dispatch();
+        for (K key : keys) {
+            T t = key != null ? loaded.get(key) : null;
+            if (t != null) {
+                result.put(key, t);
+            }
+        }
+        return result;
+    }
+
+    /***
+     * 查询所有登记了未查询的key，分块并发执行，结果在调用线程中放入
+     */
+    public void dispatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<K> keys = new ArrayList<K>(pending);
+        pending.clear();
+        loadedKeys.addAll(keys);
+
+        List<RelationLoader.ChunkJob> jobs = new ArrayList<RelationLoader.ChunkJob>();
+        for (List<K> chunk : RelationLoader.chunk(keys, batchSize)) {
+            T query = queryCreator.get();
+            resultSetQueryIdsFun.accept(query, chunk);
+            jobs.add(new RelationLoader.ChunkJob(() -> {
+                PageList<T> pageList = provider.getPageList(query, chunk.size(), 1);
+                @SuppressWarnings("unchecked")
+                List<Object> items = pageList != null ? (List<Object>) pageList.getItems() : null;
+                return items;
+            }, items -> {
+                if (items != null) {
+                    for (Object item : items) {
+                        if (item != null) {
+                            @SuppressWarnings("unchecked")
+                            T t = (T) item;
+                            loaded.putIfAbsent(resultGetIdFun.apply(t), t);
+                        }
+                    }
+                }
+            }));
+        }
+        dispatchCount++;
+        try {
+            RelationLoader.execute(jobs, executor, ServiceUtil.getRelationParallelism());
+        } catch (RuntimeException | Error e) {
+            //查询失败的key下次重新查
+            loadedKeys.removeAll(keys);
+            throw e;
+        }
+        for (RelationLoader.ChunkJob job : jobs) {
+            job.onLoaded.accept(job.results);
+        }
+    }
+
+    /***放入一个已知的结果，比如刚insert的对象*/
+    public void prime(K key, T t) {
+        if (key != null) {
+            loadedKeys.add(key);
+            if (t != null) {
+                loaded.put(key, t);
+            } else {
+                loaded.remove(key);
+            }
+        }
+    }
+
+    /***数据修改后清除，下次重新查询*/
+    public void clear(K key) {
+        loadedKeys.remove(key);
+        loaded.remove(key);
+    }
+
+    public void clearAll() {
+        loadedKeys.clear();
+        loaded.clear();
+        pending.clear();
+    }
+
+    /***查询次数，一次dispatch分成多块时算一次*/
+    public int getDispatchCount() {
+        return dispatchCount;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.util;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.FatalBeanException;
+import org.springframework.util.ClassUtils;
+
+/***
+ * CopyUtil 使用的属性拷贝计划，每个 (源类型, 目标类型, 忽略属性) 只分析一次 PropertyDescriptor，
+ * getter/setter 使用 ClassMetadata 中生成的调用器，之后的拷贝不再有反射.
+ * 
+ * <pre>
+ * 1.属性匹配规则与 spring BeanUtils.copyProperties 相同；
+ * 2.拷贝计划引用源类型和目标类型，保存在类加载器能看到另一个类型的那一方(子加载器一侧)的 ClassValue 中，
+ *   随该类型一起被回收，比如父加载器中的源类型拷贝到webapp中的目标类型时保存在目标类型上；
+ * 3.两个类型的类加载器互相看不到时不缓存，每次重新分析.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+final class BeanCopier {
+    private static final MethodHandles.Lookup     LOOKUP   = MethodHandles.lookup();
+
+    /** 按 ownerOf 选出的类型保存，key 为 (源类型, 目标类型, 忽略属性) */
+    private static final ClassValue<ConcurrentMap<CopierKey, BeanCopier>> COPIERS = new ClassValue<ConcurrentMap<CopierKey, BeanCopier>>() {
+        @Override
+        protected ConcurrentMap<CopierKey, BeanCopier> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<CopierKey, BeanCopier>();
+        }
+    };
+
+    private final Class<?>                        sourceClass;
+
+    private final Class<?>                        targetClass;
+
+    private final PropertyCopier[]                propertyCopiers;
+
+    private volatile Supplier<Object>             targetCreator;
+
+    private BeanCopier(Class<?> sourceClass, Class<?> targetClass, List<String> ignoreList) {
+        this.sourceClass = sourceClass;
+        this.targetClass = targetClass;
+        List<PropertyCopier> propertyCopierList = new ArrayList<PropertyCopier>();
+        for (PropertyDescriptor targetPd : BeanUtils.getPropertyDescriptors(targetClass)) {
+            Method writeMethod = targetPd.getWriteMethod();
+            if (writeMethod == null || ignoreList.contains(targetPd.getName())) {
+                continue;
+            }
+            PropertyDescriptor sourcePd = BeanUtils.getPropertyDescriptor(sourceClass, targetPd.getName());
+            if (sourcePd == null) {
+                continue;
+            }
+            Method readMethod = sourcePd.getReadMethod();
+            if (readMethod != null && ClassUtils.isAssignable(writeMethod.getParameterTypes()[0], readMethod.getReturnType())) {
+                propertyCopierList.add(new PropertyCopier(targetPd.getName(), ClassMetadata.getter(readMethod), ClassMetadata.setter(writeMethod)));
+            }
+        }
+        this.propertyCopiers = propertyCopierList.toArray(new PropertyCopier[propertyCopierList.size()]);
+    }
+
+    static BeanCopier getCopier(Class<?> sourceClass, Class<?> targetClass, String... ignoreProperties) {
+        CopierKey copierKey = new CopierKey(sourceClass, targetClass, ignoreProperties);
+        Class<?> owner = ownerOf(sourceClass, targetClass);
+        if (owner == null) {
+            return new BeanCopier(sourceClass, targetClass, copierKey.ignoreList);
+        }
+        ConcurrentMap<CopierKey, BeanCopier> copiers = COPIERS.get(owner);
+        BeanCopier beanCopier = copiers.get(copierKey);
+        if (beanCopier == null) {
+            beanCopier = copiers.computeIfAbsent(copierKey, k -> new BeanCopier(k.sourceClass, k.targetClass, k.ignoreList));
+        }
+        return beanCopier;
+    }
+
+    /***类加载器能看到另一个类型的一方，都看不到时返回null*/
+    static Class<?> ownerOf(Class<?> sourceClass, Class<?> targetClass) {
+        if (isVisible(targetClass, sourceClass.getClassLoader())) {
+            return sourceClass;
+        }
+        if (isVisible(sourceClass, targetClass.getClassLoader())) {
+            return targetClass;
+        }
+        return null;
+    }
+
+    /***cls 的类加载器是 loader 本身或它的祖先*/
+    private static boolean isVisible(Class<?> cls, ClassLoader loader) {
+        ClassLoader clsLoader = cls.getClassLoader();
+        if (clsLoader == null) {
+            return true;
+        }
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            if (current == clsLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Class<?> getSourceClass() {
+        return sourceClass;
+    }
+
+    /***
+     * 把 source 的属性拷贝到 target
+     * @param ignoreNull 为true时值为null的属性不拷贝(merge)
+     */
+    void copy(Object source, Object target, boolean ignoreNull) {
+        for (PropertyCopier propertyCopier : propertyCopiers) {
+            try {
+                Object value = propertyCopier.getter.get(source);
+                if (value != null || !ignoreNull) {
+                    propertyCopier.setter.set(target, value);
+                }
+            } catch (Throwable ex) {
+                throw new FatalBeanException("Could not copy property '" + propertyCopier.name + "' from source to target", ex);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T newTarget() {
+        if (targetCreator == null) {
+            targetCreator = createTargetCreator(targetClass);
+        }
+        return (T) targetCreator.get();
+    }
+
+    static Supplier<Object> createTargetCreator(Class<?> targetClass) {
+        if (ClassMetadata.isLambdaAccessible(targetClass) && !Modifier.isAbstract(targetClass.getModifiers())) {
+            try {
+                Constructor<?> constructor = targetClass.getConstructor();
+                MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+                CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), handle, MethodType.methodType(targetClass));
+                @SuppressWarnings("unchecked")
+                Supplier<Object> creator = (Supplier<Object>) callSite.getTarget().invoke();
+                return creator;
+            } catch (NoSuchMethodException e) {
+                //没有public的无参构造函数，由spring处理
+            } catch (Throwable e) {
+                ClassMetadata.logDowngrade(targetClass.getName(), e);
+            }
+        }
+        return () -> BeanUtils.instantiateClass(targetClass);
+    }
+
+    private static final class PropertyCopier {
+        final String name;
+
+        final ClassMetadata.Getter getter;
+
+        final ClassMetadata.Setter setter;
+
+        PropertyCopier(String name, ClassMetadata.Getter getter, ClassMetadata.Setter setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private static final class CopierKey {
+        final Class<?>     sourceClass;
+
+        final Class<?>     targetClass;
+
+        final List<String> ignoreList;
+
+        final int          hash;
+
+        CopierKey(Class<?> sourceClass, Class<?> targetClass, String... ignoreProperties) {
+            this.sourceClass = sourceClass;
+            this.targetClass = targetClass;
+            if (ignoreProperties == null || ignoreProperties.length == 0) {
+                this.ignoreList = Collections.emptyList();
+            } else if (ignoreProperties.length == 1) {
+                this.ignoreList = Collections.singletonList(ignoreProperties[0]);
+            } else {
+                this.ignoreList = new ArrayList<String>(new TreeSet<String>(Arrays.asList(ignoreProperties)));
+            }
+            this.hash = (sourceClass.hashCode() * 31 + targetClass.hashCode()) * 31 + ignoreList.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CopierKey)) {
+                return false;
+            }
+            CopierKey other = (CopierKey) obj;
+            return sourceClass == other.sourceClass && targetClass == other.targetClass && ignoreList.equals(other.ignoreList);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.stategen.framework.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/***
+ * 可重复使用的 byte[] 池，用来代替每次请求 new ByteArrayOutputStream、new byte[64K]的写法.
+ *
+ * <pre>
+ * 1.数组按2的幂取整，从 DEFAULT_SIZE 到 MAX_POOLED_SIZE 每个大小一个池，借出时只从对应大小的池中取，
+ *   大小请求混在一起时小数组不会因为不够大被丢弃；
+ * 2.每个大小的池最多保留 CPU核数*2 个，超过 MAX_POOLED_SIZE 的不归还，避免少数大请求长期占用内存；
+ * 3.PooledOutputStream 直接写在借来的数组上，扩容时旧数组归还，close 时归还，
+ *   writeTo 直接把数组写到目标流，不再 toByteArray；
+ * 4.read 按预期长度(如 Content-Length)借出，但最多先借 MAX_POOLED_SIZE，更大的随实际读到的数据扩容，
+ *   预期长度或实际读到的超过 maxLength 时抛出 TooLargeException，避免一个请求头就分配出超大的数组.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class ByteArrayPool {
+
+    public static final int                    DEFAULT_SIZE    = 8192;
+
+    public static final int                    MAX_POOLED_SIZE = 4 * 1024 * 1024;
+
+    private static final int                   MAX_ARRAY_SIZE  = Integer.MAX_VALUE - 8;
+
+    private static final int                   MIN_SHIFT       = Integer.numberOfTrailingZeros(DEFAULT_SIZE);
+
+    /** 下标为 log2(数组大小) - MIN_SHIFT */
+    private static final BlockingQueue<byte[]>[] pools         = createPools();
+
+    private ByteArrayPool() {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockingQueue<byte[]>[] createPools() {
+        BlockingQueue<byte[]>[] result = new BlockingQueue[Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - MIN_SHIFT + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new ArrayBlockingQueue<byte[]>(Runtime.getRuntime().availableProcessors() * 2);
+        }
+        return result;
+    }
+
+    /***size 对应的池，不是池中大小时返回null*/
+    private static BlockingQueue<byte[]> poolFor(int size) {
+        if (size < DEFAULT_SIZE || size > MAX_POOLED_SIZE || Integer.bitCount(size) != 1) {
+            return null;
+        }
+        return pools[Integer.numberOfTrailingZeros(size) - MIN_SHIFT];
+    }
+
+    /***借出长度不小于 minSize 的数组，内容不确定*/
+    public static byte[] borrow(int minSize) {
+        int size = sizeFor(minSize);
+        BlockingQueue<byte[]> pool = poolFor(size);
+        byte[] bytes = pool != null ? pool.poll() : null;
+        return bytes != null ? bytes : new byte[size];
+    }
+
+    public static void release(byte[] bytes) {
+        if (bytes != null) {
+            BlockingQueue<byte[]> pool = poolFor(bytes.length);
+            if (pool != null) {
+                pool.offer(bytes);
+            }
+        }
+    }
+
+    /***池中 size 大小的空闲数组个数*/
+    static int pooledCount(int size) {
+        BlockingQueue<byte[]> pool = poolFor(size);
+        return pool != null ? pool.size() : 0;
+    }
+
+    static int sizeFor(int minSize) {
+        if (minSize <= DEFAULT_SIZE) {
+            return DEFAULT_SIZE;
+        }
+        if (minSize > (1 << 30)) {
+            return MAX_ARRAY_SIZE;
+        }
+        return Integer.highestOneBit(minSize - 1) << 1;
+    }
+
+    public static PooledOutputStream newOutputStream() {
+        return new PooledOutputStream(DEFAULT_SIZE);
+    }
+
+    public static PooledOutputStream newOutputStream(int expectedSize) {
+        return new PooledOutputStream(expectedSize);
+    }
+
+    /***
+     * 读完输入流，expectedLength 为预期长度，未知时传 -1，用完后需要 close 归还
+     */
+    public static PooledOutputStream read(InputStream in, long expectedLength) throws IOException {
+        return read(in, expectedLength, MAX_ARRAY_SIZE);
+    }
+
+    /***
+     * 同 read(InputStream, long)，预期长度或读到的字节数超过 maxLength 时抛出 TooLargeException
+     */
+    public static PooledOutputStream read(InputStream in, long expectedLength, int maxLength) throws IOException {
+        if (expectedLength > maxLength) {
+            throw new TooLargeException(expectedLength, maxLength);
+        }
+        //预期长度由调用方(客户端)给出，不可信，最多先借 MAX_POOLED_SIZE
+        int expectedSize = expectedLength > 0 ? (int) Math.min(expectedLength, MAX_POOLED_SIZE) : DEFAULT_SIZE;
+        PooledOutputStream out = new PooledOutputStream(expectedSize);
+        try {
+            out.readFrom(in, maxLength);
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /***
+     * 输入超过允许的最大长度
+     */
+    public static final class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(long length, int maxLength) {
+            super(new StringBuilder("input too large, length:").append(length).append(" > max:").append(maxLength).toString());
+        }
+    }
+
+    /***
+     * 写在池中数组上的输出流，非线程安全
+     */
+    public static final class PooledOutputStream extends OutputStream {
+        private byte[] buf;
+
+        private int    count;
+
+        PooledOutputStream(int expectedSize) {
+            this.buf = borrow(expectedSize);
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity < 0) {
+                throw new OutOfMemoryError("byte array too large");
+            }
+            if (minCapacity > buf.length) {
+                byte[] newBuf = borrow(Math.max(minCapacity, buf.length < (MAX_ARRAY_SIZE >> 1) ? buf.length << 1 : MAX_ARRAY_SIZE));
+                System.arraycopy(buf, 0, newBuf, 0, count);
+                release(buf);
+                buf = newBuf;
+            }
+        }
+
+        private byte[] checkOpen() {
+            if (buf == null) {
+                throw new IllegalStateException("stream closed");
+            }
+            return buf;
+        }
+
+        @Override
+        public void write(int b) {
+            checkOpen();
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            checkOpen();
+            if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+                throw new IndexOutOfBoundsException();
+            }
+            ensureCapacity(count + length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        /***读完输入流，已满时先读一个字节确认是否结束，长度正好时不扩容*/
+        void readFrom(InputStream in, int maxLength) throws IOException {
+            checkOpen();
+            for (;;) {
+                if (count == buf.length) {
+                    int b = in.read();
+                    if (b == -1) {
+                        return;
+                    }
+                    if (count >= maxLength) {
+                        throw new TooLargeException(count + 1L, maxLength);
+                    }
+                    write(b);
+                }
+                int readCount = in.read(buf, count, buf.length - count);
+                if (readCount == -1) {
+                    return;
+                }
+                count += readCount;
+                if (count > maxLength) {
+                    throw new TooLargeException(count, maxLength);
+                }
+            }
+        }
+
+        /***直接把内部数组写到 out*/
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(checkOpen(), 0, count);
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /***内部数组，有效内容为 [0,size())，close 后不能再使用*/
+        public byte[] getBuffer() {
+            return checkOpen();
+        }
+
+        /***为后面直接写入 length 个字节预留空间，返回写入的起始位置，写完后调用 skip*/
+        public int reserve(int length) {
+            checkOpen();
+            ensureCapacity(count + length);
+            return count;
+        }
+
+        public void skip(int length) {
+            if (length < 0 || count + length > checkOpen().length) {
+                throw new IndexOutOfBoundsException();
+            }
+            count += length;
+        }
+
+        public void reset() {
+            count = 0;
+        }
+
+        public byte[] toByteArray() {
+            byte[] result = new byte[count];
+            System.arraycopy(checkOpen(), 0, result, 0, count);
+            return result;
+        }
+
+        @Override
+        public void close() {
+            byte[] bytes = buf;
+            if (bytes != null) {
+                buf = null;
+                count = 0;
+                release(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.FatalBeanException;
+import org.springframework.util.ClassUtils;
+
+/***
+ * 一个类的反射元数据索引，每个类只在第一次使用时构建一次，之后的查找都是一次map查询，不再抛出/捕获 NoSuchFieldException.
+ * 
+ * <pre>
+ * 1.保存在 ClassValue 中，元数据随类一起被回收，应用服务器热部署时不会因为这里的缓存而泄露类加载器；
+ * 2.构建后不再修改，所有返回的集合都是只读的；
+ * 3.field、无参method 的查找顺序与原来的 ReflectionUtil.findField/findMethod 相同，子类优先；
+ * 4.getter/setter 的调用器在第一次用到时生成，放在声明该方法的类的元数据中.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class ClassMetadata {
+    final static org.slf4j.Logger                 logger   = org.slf4j.LoggerFactory.getLogger(ClassMetadata.class);
+
+    private static final ClassValue<ClassMetadata> METADATAS = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup     LOOKUP   = MethodHandles.lookup();
+
+    private final Class<?>                        type;
+
+    /** 包括父类，同名时子类优先，顺序为子类到父类 */
+    private final Map<String, Field>              fieldNameFields;
+
+    /** 不包括Object，同名的field都保留 */
+    private final List<Field>                     allDeclaredFields;
+
+    /** 包括父类(含Object)中声明的无参方法 */
+    private final Map<String, Method>             noArgMethods;
+
+    private final Map<String, Method>             getterNameMethods;
+
+    private final Map<String, Method>             setterNameMethods;
+
+    /** 每种注解第一个标注的field */
+    private final Map<Class<? extends Annotation>, Field> annotatedFields;
+
+    private final Map<Method, Getter>             getters  = new ConcurrentHashMap<Method, Getter>();
+
+    private final Map<Method, Setter>             setters  = new ConcurrentHashMap<Method, Setter>();
+
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+
+        Map<String, Field> fieldNameFieldMap = new LinkedHashMap<String, Field>();
+        List<Field> declaredFields = new ArrayList<Field>();
+        Map<String, Method> noArgMethodMap = new HashMap<String, Method>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                fieldNameFieldMap.putIfAbsent(field.getName(), field);
+                if (current != Object.class) {
+                    declaredFields.add(field);
+                }
+            }
+
+            Map<String, Method> currentNoArgMethods = new HashMap<String, Method>();
+            for (Method method : current.getDeclaredMethods()) {
+                if (method.getParameterCount() != 0 || noArgMethodMap.containsKey(method.getName())) {
+                    continue;
+                }
+                //协变返回类型的桥接方法与原方法同名，与 getDeclaredMethod 一样取返回类型更具体的那个
+                Method existed = currentNoArgMethods.get(method.getName());
+                if (existed == null || existed.getReturnType().isAssignableFrom(method.getReturnType())) {
+                    currentNoArgMethods.put(method.getName(), method);
+                }
+            }
+            noArgMethodMap.putAll(currentNoArgMethods);
+        }
+
+        Map<Class<? extends Annotation>, Field> annotatedFieldMap = new HashMap<Class<? extends Annotation>, Field>();
+        for (Field field : declaredFields) {
+            for (Annotation annotation : field.getDeclaredAnnotations()) {
+                annotatedFieldMap.putIfAbsent(annotation.annotationType(), field);
+            }
+        }
+
+        Map<String, Method> getterMap = new LinkedHashMap<String, Method>();
+        Map<String, Method> setterMap = new LinkedHashMap<String, Method>();
+        ReflectionUtil.doWithMethods(type, method -> {
+            String getterFieldName = ReflectionUtil.isAndGetGetterMethodFeildName(method);
+            if (StringUtil.isNotEmpty(getterFieldName)) {
+                getterMap.putIfAbsent(getterFieldName, method);
+                return;
+            }
+            String setterFieldName = getSetterFieldName(method);
+            if (setterFieldName != null) {
+                setterMap.putIfAbsent(setterFieldName, method);
+            }
+        }, null);
+
+        this.fieldNameFields = Collections.unmodifiableMap(fieldNameFieldMap);
+        this.allDeclaredFields = Collections.unmodifiableList(declaredFields);
+        this.noArgMethods = Collections.unmodifiableMap(noArgMethodMap);
+        this.annotatedFields = Collections.unmodifiableMap(annotatedFieldMap);
+        this.getterNameMethods = Collections.unmodifiableMap(getterMap);
+        this.setterNameMethods = Collections.unmodifiableMap(setterMap);
+    }
+
+    public static ClassMetadata of(Class<?> type) {
+        return METADATAS.get(type);
+    }
+
+    /***与 isAndGetGetterMethodFeildName 对应，public、非static、只有一个参数的 setXxx*/
+    private static String getSetterFieldName(Method method) {
+        if (!ReflectionUtil.isNormalMethod(method) || method.getParameterCount() != 1) {
+            return null;
+        }
+        String methodName = method.getName();
+        int length = methodName.length();
+        if (length > 3 && methodName.startsWith("set")) {
+            char first = methodName.charAt(3);
+            if (first >= 'A' && first <= 'Z') {
+                return new StringBuilder(length - 3).append(Character.toLowerCase(first)).append(methodName, 4, length).toString();
+            }
+        }
+        return null;
+    }
+
+    /***readMethod 的调用器，public 方法生成直接调用的lambda，否则用 MethodHandle*/
+    static Getter getter(Method readMethod) {
+        return of(readMethod.getDeclaringClass()).getters.computeIfAbsent(readMethod, ClassMetadata::createGetter);
+    }
+
+    /***writeMethod 的调用器，public 方法生成直接调用的lambda，否则用 MethodHandle*/
+    static Setter setter(Method writeMethod) {
+        return of(writeMethod.getDeclaringClass()).setters.computeIfAbsent(writeMethod, ClassMetadata::createSetter);
+    }
+
+    private static Getter createGetter(Method readMethod) {
+        Class<?> declaringClass = readMethod.getDeclaringClass();
+        Class<?> returnType = readMethod.getReturnType();
+        if (isLambdaAccessible(readMethod) && isLambdaAccessible(returnType)) {
+            try {
+                MethodHandle handle = LOOKUP.unreflect(readMethod);
+                CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Getter.class),
+                    MethodType.methodType(Object.class, Object.class), handle,
+                    MethodType.methodType(wrap(returnType), declaringClass));
+                return (Getter) callSite.getTarget().invoke();
+            } catch (Throwable e) {
+                logDowngrade(readMethod.toString(), e);
+            }
+        }
+        MethodHandle handle = unreflect(readMethod).asType(MethodType.methodType(Object.class, Object.class));
+        return source -> (Object) handle.invokeExact(source);
+    }
+
+    private static Setter createSetter(Method writeMethod) {
+        Class<?> declaringClass = writeMethod.getDeclaringClass();
+        Class<?> parameterType = writeMethod.getParameterTypes()[0];
+        if (isLambdaAccessible(writeMethod) && isLambdaAccessible(parameterType)) {
+            try {
+                MethodHandle handle = LOOKUP.unreflect(writeMethod);
+                CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "set", MethodType.methodType(Setter.class),
+                    MethodType.methodType(void.class, Object.class, Object.class), handle,
+                    MethodType.methodType(void.class, declaringClass, wrap(parameterType)));
+                return (Setter) callSite.getTarget().invoke();
+            } catch (Throwable e) {
+                logDowngrade(writeMethod.toString(), e);
+            }
+        }
+        MethodHandle handle = unreflect(writeMethod).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (target, value) -> {
+            handle.invokeExact(target, value);
+        };
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new FatalBeanException("Could not access method '" + method + "'", e);
+        }
+    }
+
+    private static boolean isLambdaAccessible(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && isLambdaAccessible(method.getDeclaringClass());
+    }
+
+    /***生成的lambda定义在本类的类加载器中，只能引用public且本类加载器能看到的类*/
+    static boolean isLambdaAccessible(Class<?> cls) {
+        if (cls.isPrimitive()) {
+            return true;
+        }
+        Class<?> componentClass = cls;
+        while (componentClass.isArray()) {
+            componentClass = componentClass.getComponentType();
+        }
+        if (componentClass.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> current = componentClass; current != null; current = current.getEnclosingClass()) {
+            if (!Modifier.isPublic(current.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(componentClass.getName(), false, ClassMetadata.class.getClassLoader()) == componentClass;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Class<?> wrap(Class<?> cls) {
+        return cls.isPrimitive() ? ClassUtils.resolvePrimitiveIfNecessary(cls) : cls;
+    }
+
+    static void logDowngrade(String member, Throwable e) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(new StringBuilder("生成lambda失败,改用MethodHandle:").append(member).toString(), e);
+        }
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /***包括父类中的field，同名时取子类的*/
+    public Field getField(String fieldName) {
+        return fieldNameFields.get(fieldName);
+    }
+
+    public Map<String, Field> getFieldNameFields() {
+        return fieldNameFields;
+    }
+
+    public List<Field> getAllDeclaredFields() {
+        return allDeclaredFields;
+    }
+
+    /***包括父类中的无参方法，同名时取子类的*/
+    public Method getNoArgMethod(String methodName) {
+        return noArgMethods.get(methodName);
+    }
+
+    public Field getAnnotatedField(Class<? extends Annotation> annotationType) {
+        return annotatedFields.get(annotationType);
+    }
+
+    public Map<String, Method> getGetterNameMethods() {
+        return getterNameMethods;
+    }
+
+    public Map<String, Method> getSetterNameMethods() {
+        return setterNameMethods;
+    }
+
+    interface Getter {
+        Object get(Object source) throws Throwable;
+    }
+
+    interface Setter {
+        void set(Object target, Object value) throws Throwable;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassMetadata [type=" + type.getName() + ", fields=" + fieldNameFields.size() + ", getters=" + getterNameMethods.size()
+               + ", setters=" + setterNameMethods.size() + "]";
+    }
+}
@@ -26,9 +26,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -45,6 +47,26 @@ public class CollectionUtil {
 
     static int INDEX_NOT_FOUND = -1;
 
+    /** *Parallel 方法的默认阈值，元素个数小于该值时与对应的串行方法相同 */
+    public static final int     DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+    private static volatile int parallelThreshold          = DEFAULT_PARALLEL_THRESHOLD;
+
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public static void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold <= 0) {
+            throw new IllegalArgumentException("parallelThreshold must be greater than 0 ,but it is :" + parallelThreshold);
+        }
+        CollectionUtil.parallelThreshold = parallelThreshold;
+    }
+
+    static boolean isParallel(Collection<?> items) {
+        return items != null && items.size() >= parallelThreshold;
+    }
+
     /**
      * Checks if is empty.
      *
@@ -314,16 +336,13 @@ public class CollectionUtil {
 
     public static <K, T> Map<K, T> toMap(Map<K, T> dest, Collection<T> items, Function<? super T, K> getMethod) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Map<K, T> source = items.stream().filter(e -> {
-                return e != null;
-            }).collect(Collectors.toMap(getMethod, Function.identity(), (key1, key2) -> key2));
-
-            if (dest != null) {
-                dest.putAll(source);
-                return dest;
-            } else {
-                return source;
+            Map<K, T> result = dest != null ? dest : new HashMap<K, T>(capacity(items.size()));
+            for (T t : items) {
+                if (t != null) {
+                    result.put(getMethod.apply(t), t);
+                }
             }
+            return result;
         }
 
         if (dest != null) {
@@ -368,7 +387,7 @@ public class CollectionUtil {
     public static <K, V, T> Map<K, V> toMap(Map<K, V> dest, Collection<T> items, Function<? super T, K> keyGetMethod,
                                             Function<? super T, V> valueGetMethod) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Map<K, V> result = dest != null ? dest : new HashMap<K, V>(items.size());
+            Map<K, V> result = dest != null ? dest : new HashMap<K, V>(capacity(items.size()));
             for (T t : items) {
                 if (t != null) {
                     K k = keyGetMethod.apply(t);
@@ -398,7 +417,7 @@ public class CollectionUtil {
 
     public static <NewKey, K, T> Map<NewKey, T> toMap(Map<NewKey, T> dest, KeyCalculator<NewKey, T> keyCalculator, Collection<T> items) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Map<NewKey, T> result = dest != null ? dest : new HashMap<NewKey, T>(items.size());
+            Map<NewKey, T> result = dest != null ? dest : new HashMap<NewKey, T>(capacity(items.size()));
             for (T t : items) {
                 if (t != null) {
                     NewKey key = keyCalculator.calculateKey(t);
@@ -428,9 +447,9 @@ public class CollectionUtil {
                     result.put(k, v);
                 }
             }
-            return dest;
+            return result;
         }
-        return CollectionUtil.newEmptyMap();
+        return dest != null ? dest : CollectionUtil.newEmptyMap();
     }
 
     @SafeVarargs
@@ -440,7 +459,7 @@ public class CollectionUtil {
 
     public static <K, T> Map<K, List<T>> toGroup(Collection<T> items, Function<? super T, K> getMethod) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Map<K, List<T>> result = new HashMap<K, List<T>>(items.size());
+            Map<K, List<T>> result = new HashMap<K, List<T>>(capacity(items.size()));
             for (T t : items) {
                 if (t != null) {
                     K k = getMethod.apply(t);
@@ -459,7 +478,7 @@ public class CollectionUtil {
 
     public static <K, T, V> Map<K, List<V>> toGroup(Collection<T> items, Function<? super T, K> getMethod, Function<? super T, V> getValueMethod) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Map<K, List<V>> result = new HashMap<K, List<V>>(items.size());
+            Map<K, List<V>> result = new HashMap<K, List<V>>(capacity(items.size()));
             for (T t : items) {
                 if (t != null) {
                     K k = getMethod.apply(t);
@@ -512,7 +531,15 @@ public class CollectionUtil {
 
     public static <V, T> Set<V> toSet(Collection<T> items, Function<? super T, V> getMethod) {
         if (CollectionUtil.isNotEmpty(items)) {
-            Set<V> result = getNotNullStream(items, getMethod).collect(Collectors.toSet());
+            Set<V> result = new HashSet<V>(capacity(items.size()));
+            for (T t : items) {
+                if (t != null) {
+                    V v = getMethod.apply(t);
+                    if (v != null) {
+                        result.add(v);
+                    }
+                }
+            }
             return result;
         }
         return new HashSet<V>(0);
@@ -649,6 +676,211 @@ public class CollectionUtil {
         setListByMap(dests, sourceListMap, destGetMethod, destSetMethod);
     }
 
+    /***
+     * 按long型id建立索引，key不装箱，id为null的跳过，相同id后面的覆盖前面的.
+     * getMethod 可以是返回 Long 或 Integer 的方法，如 User::getUserId
+     */
+    public static <T> LongObjectMap<T> toLongMap(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        if (CollectionUtil.isEmpty(items)) {
+            return new LongObjectMap<T>(0);
+        }
+        LongObjectMap<T> result = new LongObjectMap<T>(items.size());
+        for (T t : items) {
+            if (t != null) {
+                Number id = getMethod.apply(t);
+                if (id != null) {
+                    result.put(id.longValue(), t);
+                }
+            }
+        }
+        return result;
+    }
+
+    /***按long型id分组，id为null的跳过，组内保持原来的顺序*/
+    public static <T> LongObjectMap<List<T>> toLongGroup(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        if (CollectionUtil.isEmpty(items)) {
+            return new LongObjectMap<List<T>>(0);
+        }
+        LongObjectMap<List<T>> result = new LongObjectMap<List<T>>(items.size());
+        for (T t : items) {
+            if (t != null) {
+                Number id = getMethod.apply(t);
+                if (id != null) {
+                    result.computeIfAbsent(id.longValue(), k -> new ArrayList<T>()).add(t);
+                }
+            }
+        }
+        return result;
+    }
+
+    /***取出不重复的long型id，按第一次出现的顺序*/
+    public static <T> LongHashSet toLongSet(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        if (CollectionUtil.isEmpty(items)) {
+            return new LongHashSet(0);
+        }
+        LongHashSet result = new LongHashSet(items.size());
+        for (T t : items) {
+            if (t != null) {
+                Number id = getMethod.apply(t);
+                if (id != null) {
+                    result.add(id.longValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /***取出不重复的long型id数组，按第一次出现的顺序*/
+    public static <T> long[] toLongIds(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        return toLongSet(items, getMethod).toArray();
+    }
+
+    /***同 setModelByMap，sourceMap 为 toLongMap 建立的索引*/
+    public static <D, S> void setModelByLongMap(Collection<D> dests, LongObjectMap<S> sourceMap, Function<? super D, ? extends Number> destGetMethod,
+                                                BiConsumer<D, S> destSetMethod) {
+        if (CollectionUtil.isNotEmpty(dests) && sourceMap != null && !sourceMap.isEmpty()) {
+            for (D d : dests) {
+                setModelByLongKey(d, sourceMap, destGetMethod, destSetMethod);
+            }
+        }
+    }
+
+    private static <D, S> void setModelByLongKey(D d, LongObjectMap<S> sourceMap, Function<? super D, ? extends Number> destGetMethod,
+                                                 BiConsumer<D, S> destSetMethod) {
+        if (d != null) {
+            Number key = destGetMethod.apply(d);
+            if (key != null) {
+                destSetMethod.accept(d, sourceMap.get(key.longValue()));
+            }
+        }
+    }
+
+    /***同 setModelByList，中间的索引不装箱*/
+    public static <D, S> void setModelByLongList(Collection<D> dests, Collection<S> sources, Function<? super D, ? extends Number> destGetMethod,
+                                                 BiConsumer<D, S> destSetMethod, Function<? super S, ? extends Number> sourceGetMethod) {
+        if (CollectionUtil.isNotEmpty(dests) && CollectionUtil.isNotEmpty(sources)) {
+            setModelByLongMap(dests, toLongMap(sources, sourceGetMethod), destGetMethod, destSetMethod);
+        }
+    }
+
+    /***同 setListByList，中间的分组不装箱*/
+    public static <D, S> void setListByLongList(Collection<D> dests, Collection<S> sources, Function<? super D, ? extends Number> destGetMethod,
+                                                BiConsumer<D, List<S>> destSetMethod, Function<? super S, ? extends Number> sourceGetMethod) {
+        if (CollectionUtil.isNotEmpty(dests)) {
+            LongObjectMap<List<S>> sourceListMap = toLongGroup(sources, sourceGetMethod);
+            for (D d : dests) {
+                setModelByLongKey(d, sourceListMap, destGetMethod, destSetMethod);
+            }
+        }
+    }
+
+    /***
+     * 同 toMap，元素个数不小于 parallelThreshold 时用 ForkJoin 公共池并行建立，结果与串行相同.
+     * getMethod 必须是线程安全的，一般的 getter 都可以
+     */
+    public static <K, T> Map<K, T> toMapParallel(Collection<T> items, Function<? super T, K> getMethod) {
+        if (!isParallel(items)) {
+            return toMap(items, getMethod);
+        }
+        return items.parallelStream().filter(Objects::nonNull).collect(Collector.<T, Map<K, T>> of(HashMap::new,
+            (map, t) -> map.put(getMethod.apply(t), t), (left, right) -> {
+                //right 在 left 之后，后面的覆盖前面的
+                left.putAll(right);
+                return left;
+            }));
+    }
+
+    /***同 toGroup，元素个数不小于 parallelThreshold 时并行，组内顺序与串行相同*/
+    public static <K, T> Map<K, List<T>> toGroupParallel(Collection<T> items, Function<? super T, K> getMethod) {
+        if (!isParallel(items)) {
+            return toGroup(items, getMethod);
+        }
+        return items.parallelStream().filter(Objects::nonNull).collect(Collector.<T, Map<K, List<T>>> of(HashMap::new,
+            (map, t) -> map.computeIfAbsent(getMethod.apply(t), k -> new ArrayList<T>()).add(t), (left, right) -> {
+                for (Entry<K, List<T>> entry : right.entrySet()) {
+                    List<T> list = left.get(entry.getKey());
+                    if (list == null) {
+                        left.put(entry.getKey(), entry.getValue());
+                    } else {
+                        list.addAll(entry.getValue());
+                    }
+                }
+                return left;
+            }));
+    }
+
+    /***同 toLongMap，元素个数不小于 parallelThreshold 时并行*/
+    public static <T> LongObjectMap<T> toLongMapParallel(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        if (!isParallel(items)) {
+            return toLongMap(items, getMethod);
+        }
+        return items.parallelStream().filter(Objects::nonNull).collect(Collector.<T, LongObjectMap<T>> of(LongObjectMap::new, (map, t) -> {
+            Number id = getMethod.apply(t);
+            if (id != null) {
+                map.put(id.longValue(), t);
+            }
+        }, (left, right) -> {
+            left.putAll(right);
+            return left;
+        }));
+    }
+
+    /***同 toLongGroup，元素个数不小于 parallelThreshold 时并行，组内顺序与串行相同*/
+    public static <T> LongObjectMap<List<T>> toLongGroupParallel(Collection<T> items, Function<? super T, ? extends Number> getMethod) {
+        if (!isParallel(items)) {
+            return toLongGroup(items, getMethod);
+        }
+        return items.parallelStream().filter(Objects::nonNull).collect(Collector.<T, LongObjectMap<List<T>>> of(LongObjectMap::new,
+            (map, t) -> {
+                Number id = getMethod.apply(t);
+                if (id != null) {
+                    map.computeIfAbsent(id.longValue(), k -> new ArrayList<T>()).add(t);
+                }
+            }, (left, right) -> {
+                right.forEach((key, list) -> {
+                    List<T> leftList = left.get(key);
+                    if (leftList == null) {
+                        left.put(key, list);
+                    } else {
+                        leftList.addAll(list);
+                    }
+                });
+                return left;
+            }));
+    }
+
+    /***
+     * 同 setModelByMap，dests 个数不小于 parallelThreshold 时并行设置.
+     * 执行期间 sourceMap 不能被修改，destSetMethod 只修改 d 本身
+     */
+    public static <D, K, S> void setModelByMapParallel(Collection<D> dests, Map<K, S> sourceMap, Function<? super D, K> destGetMethod,
+                                                       BiConsumer<D, S> destSetMethod) {
+        if (!isParallel(dests)) {
+            setModelByMap(dests, sourceMap, destGetMethod, destSetMethod);
+            return;
+        }
+        if (CollectionUtil.isNotEmpty(sourceMap)) {
+            dests.parallelStream().filter(Objects::nonNull).forEach(d -> {
+                K key = destGetMethod.apply(d);
+                if (key != null) {
+                    destSetMethod.accept(d, sourceMap.get(key));
+                }
+            });
+        }
+    }
+
+    /***同 setModelByLongMap，dests 个数不小于 parallelThreshold 时并行设置*/
+    public static <D, S> void setModelByLongMapParallel(Collection<D> dests, LongObjectMap<S> sourceMap,
+                                                        Function<? super D, ? extends Number> destGetMethod, BiConsumer<D, S> destSetMethod) {
+        if (!isParallel(dests)) {
+            setModelByLongMap(dests, sourceMap, destGetMethod, destSetMethod);
+            return;
+        }
+        if (sourceMap != null && !sourceMap.isEmpty()) {
+            dests.parallelStream().forEach(d -> setModelByLongKey(d, sourceMap, destGetMethod, destSetMethod));
+        }
+    }
+
     public static <T> List<T> newEmptyList() {
         return new ArrayList<T>(0);
     }
@@ -675,8 +907,22 @@ public class CollectionUtil {
         return newMap(0);
     }
 
+    /***
+     * @param size 预计放入的个数，按负载因子换算成 HashMap 的初始容量，放满前不会扩容
+     */
     public static <K, T> Map<K, T> newMap(int size) {
-        return new HashMap<K, T>(size);
+        return new HashMap<K, T>(capacity(size));
+    }
+
+    /***HashMap/HashSet 放入 expectedSize 个元素不需要扩容的初始容量*/
+    public static int capacity(int expectedSize) {
+        if (expectedSize < 3) {
+            return expectedSize + 1;
+        }
+        if (expectedSize < (1 << 30)) {
+            return (int) (expectedSize / 0.75F + 1.0F);
+        }
+        return Integer.MAX_VALUE;
     }
 
     public static <T, V> List<T> filter(List<T> sources, Function<? super T, V> sourceGetGetMethod, V filterValue) {
@@ -1,48 +1,414 @@
 package org.stategen.framework.util;
 
-
-//package org.apache.el.util;
-
-import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /***
- * copy from tomcat
- * 
+ * 有界、支持过期时间的并发缓存，用以替换原来从 tomcat 拷贝的 eden/longterm 实现.
+ *
+ * <pre>
+ * 1.按key的hash分段加锁，不同段之间互不阻塞；
+ * 2.每段分为 window(约1%) 和 main 两个LRU区，window 淘汰出来的条目与 main 的最老条目
+ *   比较 TinyLFU 频率草图中的访问频率，频率高者留下（W-TinyLFU 准入策略）；
+ * 3.总条目数严格不超过 size，不会再出现 eden 满了之后整体倒入 WeakHashMap 的情况；
+ * 4.每个条目可以单独设置ttl，过期条目在访问或淘汰时清除；
+ * 5.提供 hit/miss/eviction 计数.
+ * </pre>
+ *
  * @author XiaZhengsheng
  * @version $Id: ConcurrentCache.java, v 0.1 2020年6月5日 上午2:31:56 XiaZhengsheng Exp $
  */
-public final class ConcurrentCache<K,V> {
-
-    private final int size;
-    
-    private final Map<K,V> eden;
-    
-    private final Map<K,V> longterm;
-    
+public final class ConcurrentCache<K, V> {
+
+    private static final int    MAX_SEGMENTS       = 16;
+
+    /** 每段至少要有这么多条目，才值得再分一段 */
+    private static final int    MIN_SEGMENT_SIZE   = 32;
+
+    private final int           size;
+
+    /** 默认过期时间，<=0 表示永不过期 */
+    private final long          defaultExpireNanos;
+
+    private final Segment<K, V>[] segments;
+
+    private final int           segmentMask;
+
+    private final LongAdder     hitCount           = new LongAdder();
+
+    private final LongAdder     missCount          = new LongAdder();
+
+    private final LongAdder     evictionCount      = new LongAdder();
+
     public ConcurrentCache(int size) {
+        this(size, 0L);
+    }
+
+    /***
+     *
+     * @param size 最大条目数
+     * @param expireMillis 默认过期时间(毫秒)，<=0 表示永不过期
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentCache(int size, long expireMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0 ,but it is :" + size);
+        }
         this.size = size;
-        this.eden = new ConcurrentHashMap<K,V>(size);
-        this.longterm = new WeakHashMap<K,V>(size);
+        this.defaultExpireNanos = expireMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(expireMillis) : 0L;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= size) {
+            segmentCount <<= 1;
+        }
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        //把 size 精确分配到每段，保证总数不超过 size
+        int base = size / segmentCount;
+        int remainder = size % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<K, V>(base + (i < remainder ? 1 : 0));
+        }
     }
-    
+
     public V get(K k) {
-        V v = this.eden.get(k);
-        if (v == null) {
-            v = this.longterm.get(k);
-            if (v != null) {
-                this.eden.put(k, v);
-            }
+        V v = segmentFor(k).get(k, System.nanoTime());
+        if (v != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
         }
         return v;
     }
-    
+
     public void put(K k, V v) {
-        if (this.eden.size() >= size) {
-            this.longterm.putAll(this.eden);
-            this.eden.clear();
+        put(k, v, defaultExpireNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /***
+     * 放入一个有单独过期时间的条目，ttl<=0 表示永不过期
+     */
+    public void put(K k, V v, long ttl, TimeUnit unit) {
+        Segment<K, V> segment = segmentFor(k);
+        if (v == null) {
+            segment.remove(k);
+            return;
+        }
+        long now = System.nanoTime();
+        long expireAt = ttl > 0 ? now + unit.toNanos(ttl) : 0L;
+        evictionCount.add(segment.put(k, v, expireAt, now, false).evicted);
+    }
+
+    /***
+     * 取不到时调用 mappingFunction 生成并放入，mappingFunction 在锁外执行，
+     * 并发时以先放入的值为准
+     */
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+        V v = get(k);
+        if (v != null) {
+            return v;
+        }
+        V created = mappingFunction.apply(k);
+        if (created == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long expireAt = defaultExpireNanos > 0 ? now + defaultExpireNanos : 0L;
+        PutResult<V> result = segmentFor(k).put(k, created, expireAt, now, true);
+        evictionCount.add(result.evicted);
+        return result.existed != null ? result.existed : created;
+    }
+
+    public V remove(K k) {
+        return segmentFor(k).remove(k);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /***当前条目数，包括尚未清除的过期条目*/
+    public int size() {
+        int result = 0;
+        for (Segment<K, V> segment : segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    public int getMaxSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 1.0D : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentCache [size=" + size() + ", maxSize=" + size + ", hitCount=" + getHitCount() + ", missCount=" + getMissCount()
+               + ", evictionCount=" + getEvictionCount() + "]";
+    }
+
+    private Segment<K, V> segmentFor(Object k) {
+        //用高位选段，低位留给频率草图
+        return segments[(FrequencySketch.spread(k.hashCode()) >>> 28) & segmentMask];
+    }
+
+    private static final class Node<V> {
+        V    value;
+        long expireAt;
+
+        Node(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt != 0L && now - expireAt >= 0;
+        }
+    }
+
+    private static final class PutResult<V> {
+        final V   existed;
+        final int evicted;
+
+        PutResult(V existed, int evicted) {
+            this.existed = existed;
+            this.evicted = evicted;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        final ReentrantLock                lock = new ReentrantLock();
+
+        final int                          windowMax;
+
+        final int                          mainMax;
+
+        /** accessOrder=true，迭代顺序即LRU顺序，第一个是最久未访问的 */
+        final LinkedHashMap<K, Node<V>>    window;
+
+        final LinkedHashMap<K, Node<V>>    main;
+
+        final FrequencySketch              sketch;
+
+        Segment(int capacity) {
+            this.windowMax = Math.max(1, capacity / 100);
+            this.mainMax = capacity - windowMax;
+            this.window = new LinkedHashMap<K, Node<V>>(16, 0.75f, true);
+            this.main = new LinkedHashMap<K, Node<V>>(16, 0.75f, true);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        V get(K k, long now) {
+            lock.lock();
+            try {
+                sketch.increment(k);
+                LinkedHashMap<K, Node<V>> map = window;
+                Node<V> node = map.get(k);
+                if (node == null) {
+                    map = main;
+                    node = map.get(k);
+                }
+                if (node == null) {
+                    return null;
+                }
+                if (node.isExpired(now)) {
+                    map.remove(k);
+                    return null;
+                }
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        PutResult<V> put(K k, V v, long expireAt, long now, boolean onlyIfAbsent) {
+            lock.lock();
+            try {
+                sketch.increment(k);
+                Node<V> node = window.get(k);
+                if (node == null) {
+                    node = main.get(k);
+                }
+                if (node != null) {
+                    if (onlyIfAbsent && !node.isExpired(now)) {
+                        return new PutResult<V>(node.value, 0);
+                    }
+                    node.value = v;
+                    node.expireAt = expireAt;
+                    return new PutResult<V>(null, 0);
+                }
+                window.put(k, new Node<V>(v, expireAt));
+                return new PutResult<V>(null, evictIfNeeded(now));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /***
+         * window 超出时，把 window 最老的条目作为候选者，与 main 最老的条目(受害者)比较频率
+         */
+        private int evictIfNeeded(long now) {
+            int evicted = 0;
+            while (window.size() > windowMax) {
+                Iterator<Entry<K, Node<V>>> windowIt = window.entrySet().iterator();
+                Entry<K, Node<V>> candidate = windowIt.next();
+                windowIt.remove();
+                if (candidate.getValue().isExpired(now)) {
+                    continue;
+                }
+                if (main.size() < mainMax) {
+                    main.put(candidate.getKey(), candidate.getValue());
+                    continue;
+                }
+                if (mainMax == 0) {
+                    evicted++;
+                    continue;
+                }
+                Iterator<Entry<K, Node<V>>> mainIt = main.entrySet().iterator();
+                Entry<K, Node<V>> victim = mainIt.next();
+                if (victim.getValue().isExpired(now)
+                    || sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                    mainIt.remove();
+                    main.put(candidate.getKey(), candidate.getValue());
+                }
+                evicted++;
+            }
+            return evicted;
+        }
+
+        V remove(K k) {
+            lock.lock();
+            try {
+                Node<V> node = window.remove(k);
+                if (node == null) {
+                    node = main.remove(k);
+                }
+                return node != null ? node.value : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                window.clear();
+                main.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return window.size() + main.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /***
+     * 4 bit 计数的 Count-Min 草图，每个long存16个计数器，
+     * 增量次数达到 sampleSize 时所有计数减半，使频率随时间衰减.
+     * 非线程安全，由所在段的锁保护
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS      = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        private static final long   RESET_MASK = 0x7777777777777777L;
+
+        private final long[]        table;
+
+        private final int           tableMask;
+
+        private final int           sampleSize;
+
+        private int                 additions;
+
+        FrequencySketch(int capacity) {
+            int length = Integer.highestOneBit(Math.max(capacity, 8) - 1) << 1;
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10 * Math.max(capacity, 1);
+        }
+
+        int frequency(Object e) {
+            int hash = spread(e.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object e) {
+            int hash = spread(e.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = 0xfL << offset;
+            if ((table[i] & mask) != mask) {
+                table[i] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+
+        private int indexOf(int item, int i) {
+            long hash = (item + SEEDS[i]) * SEEDS[i];
+            hash += hash >>> 32;
+            return ((int) hash) & tableMask;
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
         }
-        this.eden.put(k, v);
     }
-}
\ No newline at end of file
+}
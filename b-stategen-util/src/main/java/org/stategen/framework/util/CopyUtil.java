@@ -16,29 +16,19 @@
  */
 package org.stategen.framework.util;
 
-import java.beans.PropertyDescriptor;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
-import org.springframework.beans.FatalBeanException;
 import org.springframework.util.Assert;
-import org.springframework.util.ClassUtils;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
 
 import lombok.Cleanup;
 
@@ -50,21 +40,27 @@ public class CopyUtil {
     final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CopyUtil.class);
     
     public static <T> T copy(Object source,Class<T> targetCls, String... ignoreProperties) {
-        if(targetCls == null){
+        if(targetCls == null || source == null){
             return null;
         }
-        T instance = BeanUtils.instantiateClass(targetCls);
-        return copy(source, instance, ignoreProperties);
+        BeanCopier beanCopier = BeanCopier.getCopier(source.getClass(), targetCls, ignoreProperties);
+        T instance = beanCopier.newTarget();
+        beanCopier.copy(source, instance, false);
+        return instance;
     }
     
     public static <T> T copy(Object source,T instance, String... ignoreProperties) {
         if(source == null){
             return null;
         }
-        BeanUtils.copyProperties(source,instance,ignoreProperties);
+        Assert.notNull(instance, "Target must not be null");
+        BeanCopier.getCopier(source.getClass(), instance.getClass(), ignoreProperties).copy(source, instance, false);
         return instance;
     }
 
+    /***
+     * 拷贝计划按 (源类型, 目标类型, ignoreProperties) 缓存，同一个列表中元素类型相同时只取一次
+     */
     public static <T> List<T> copy(List<?> sourceList, Class<T> targetCls, String... ignoreProperties) {
         if(sourceList == null){
             return null;
@@ -72,9 +68,13 @@ public class CopyUtil {
         
         if(CollectionUtil.isNotEmpty(sourceList)){
             List<T> targetList = new ArrayList<T>(sourceList.size());
+            BeanCopier beanCopier = null;
             for(Object o:sourceList){
-                T targetObj = BeanUtils.instantiateClass(targetCls);
-                BeanUtils.copyProperties(o,targetObj,ignoreProperties);
+                if (beanCopier == null || beanCopier.getSourceClass() != o.getClass()) {
+                    beanCopier = BeanCopier.getCopier(o.getClass(), targetCls, ignoreProperties);
+                }
+                T targetObj = beanCopier.newTarget();
+                beanCopier.copy(o, targetObj, false);
                 targetList.add(targetObj);
             }
             return targetList;
@@ -89,27 +89,12 @@ public class CopyUtil {
     }
     
 
-    @SuppressWarnings("unchecked")
+    /***
+     * 用 KryoPool 中的Kryo及其缓冲序列化后再反序列化，不再每次创建Kryo和流，
+     * 当前的kryo版本中 Kryo.copy 对普通bean只是浅拷贝，所以不用它
+     */
     public static <T> T KryoDeepCopy(T dest) throws IOException {
-        if (dest == null) {
-            return null;
-        }
-        
-        Kryo kryo =new Kryo();
-
-        T result = null;
-        @Cleanup
-        ByteArrayOutputStream fileOut = new ByteArrayOutputStream();
-        fileOut = new ByteArrayOutputStream();
-        @Cleanup
-        Output output = new Output(fileOut);
-        kryo.writeObject(output, dest);
-        
-        byte[] buf = fileOut.toByteArray();
-        @Cleanup
-        Input input = new Input(buf);
-        result = (T) kryo.readObject(input, dest.getClass());
-        return result;
+        return KryoPool.copy(dest);
     }    
 
     @SuppressWarnings("unchecked")
@@ -146,7 +131,7 @@ public class CopyUtil {
     }
     
     public static <T> T merge(T target,Object source, String... ignoreProperties){
-        mergeProperties(target,source, null, ignoreProperties);
+        mergeProperties(target,source, ignoreProperties);
         return target;
     }
     
@@ -159,7 +144,7 @@ public class CopyUtil {
                 if (key!=null){
                     Object source = sourceMap.get(key);
                     if (source!=null){
-                        mergeProperties(target,source, null, ignoreProperties);
+                        mergeProperties(target,source, ignoreProperties);
                     }
                 }
             }
@@ -169,51 +154,13 @@ public class CopyUtil {
     
     
     
-    private static void mergeProperties(Object target,Object source, Class<?> editable, String... ignoreProperties)
+    /***只有当值不为空时，才copy*/
+    private static void mergeProperties(Object target,Object source, String... ignoreProperties)
             throws BeansException {
 
         Assert.notNull(source, "Source must not be null");
         Assert.notNull(target, "Target must not be null");
 
-        Class<?> actualEditable = target.getClass();
-        if (editable != null) {
-            if (!editable.isInstance(target)) {
-                throw new IllegalArgumentException("Target class [" + target.getClass().getName() +
-                        "] not assignable to Editable class [" + editable.getName() + "]");
-            }
-            actualEditable = editable;
-        }
-        PropertyDescriptor[] targetPds = BeanUtils.getPropertyDescriptors(actualEditable);
-        List<String> ignoreList = (ignoreProperties != null ? Arrays.asList(ignoreProperties) : null);
-
-        for (PropertyDescriptor targetPd : targetPds) {
-            Method targetWriteMethod = targetPd.getWriteMethod();
-            if (targetWriteMethod != null && (ignoreList == null || !ignoreList.contains(targetPd.getName()))) {
-                PropertyDescriptor sourcePd = BeanUtils.getPropertyDescriptor(source.getClass(), targetPd.getName());
-                if (sourcePd != null) {
-                    Method sourceReadMethod = sourcePd.getReadMethod();
-                    if (sourceReadMethod != null &&
-                            ClassUtils.isAssignable(targetWriteMethod.getParameterTypes()[0], sourceReadMethod.getReturnType())) {
-                        try {
-                            if (!Modifier.isPublic(sourceReadMethod.getDeclaringClass().getModifiers())) {
-                                sourceReadMethod.setAccessible(true);
-                            }
-                            Object value = sourceReadMethod.invoke(source);
-                            if (!Modifier.isPublic(targetWriteMethod.getDeclaringClass().getModifiers())) {
-                                targetWriteMethod.setAccessible(true);
-                            }
-                            //只有当值不为空时，才copy
-                            if (value!=null){
-                                targetWriteMethod.invoke(target, value);
-                            }
-                        }
-                        catch (Throwable ex) {
-                            throw new FatalBeanException(
-                                    "Could not copy property '" + targetPd.getName() + "' from source to target", ex);
-                        }
-                    }
-                }
-            }
-        }
+        BeanCopier.getCopier(source.getClass(), target.getClass(), ignoreProperties).copy(source, target, true);
     }
 }
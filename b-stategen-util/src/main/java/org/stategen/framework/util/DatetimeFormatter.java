@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.util.Date;
+import java.util.TimeZone;
+
+/***
+ * DatetimeUtil 的格式化/解析实现，按pattern缓存不可变的 DateTimeFormatter，不再每次 new SimpleDateFormat.
+ * 
+ * <pre>
+ * 1.yyyy-MM-dd、yyyy-MM-dd HH:mm:ss、yyyy-MM-dd HH:mm:ss SSS 直接按数字填充字符，不经过formatter；
+ * 2.其它pattern中只含 y、M、d、H、m、s、SSS 时，用 DateTimeFormatter，输出与 SimpleDateFormat 相同；
+ * 3.含其它字母(如 E、a、z)的pattern，以及1582年10月15日以前(儒略历)、9999年以后的日期，仍用 SimpleDateFormat，
+ *   缓存一个原型，每次clone后使用.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+final class DatetimeFormatter {
+
+    /** 1582-10-15T00:00:00Z，SimpleDateFormat 在此之前使用儒略历 */
+    private static final long                                 GREGORIAN_CUTOVER_MILLIS = -12219292800000L;
+
+    /** 留出一天给时区偏移，保证本地日期在历法切换之后，且快速路径的年份是4位数 */
+    private static final long                                 MIN_FAST_MILLIS          = GREGORIAN_CUTOVER_MILLIS + DatetimeUtil.TIME_DAY_MILLISECONDS;
+
+    private static final long                                 MAX_FAST_MILLIS          = 253402214400000L;
+
+    private static final ConcurrentCache<String, PatternFormatter> formatters          = new ConcurrentCache<String, PatternFormatter>(256);
+
+    /** TimeZone.getDefault() 每次都会clone一个，这里缓存默认时区，最多每秒核对一次 */
+    private static volatile TimeZone                          defaultTimeZone          = TimeZone.getDefault();
+
+    private static volatile long                              timeZoneCheckMillis      = System.currentTimeMillis();
+
+    private DatetimeFormatter() {
+    }
+
+    static String format(Date date, String pattern) {
+        long millis = date.getTime();
+        if (millis >= MIN_FAST_MILLIS && millis < MAX_FAST_MILLIS) {
+            if (DatetimeUtil.DATE_FORMAT.equals(pattern)) {
+                return fastFormat(millis, 10);
+            }
+            if (DatetimeUtil.TIME_FORMAT.equals(pattern)) {
+                return fastFormat(millis, 19);
+            }
+            if (DatetimeUtil.MILLS_FORMAT.equals(pattern)) {
+                return fastFormat(millis, 23);
+            }
+        }
+        PatternFormatter patternFormatter = getPatternFormatter(pattern);
+        if (patternFormatter.dateTimeFormatter != null && millis >= MIN_FAST_MILLIS && millis < MAX_FAST_MILLIS) {
+            //时区偏移取自 TimeZone 而不是 ZoneId，早期日期上 ZoneId 用的是地方平时(LMT)，与 SimpleDateFormat 不同
+            int offsetMillis = getDefaultTimeZone().getOffset(millis);
+            return patternFormatter.dateTimeFormatter.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.ofTotalSeconds(offsetMillis / 1000)));
+        }
+        return patternFormatter.newSimpleDateFormat().format(date);
+    }
+
+    /***
+     * 按pattern解析，pattern中没有的字段取 1970-01-01 00:00:00.000 中对应的值，
+     * 与 SimpleDateFormat 不同，月、日等超出范围时不会自动进位，而是抛出异常
+     * 
+     * @throws DateTimeParseException 不能解析时
+     */
+    static Date parse(String text, String pattern) {
+        PatternFormatter patternFormatter = getPatternFormatter(pattern);
+        if (patternFormatter.dateTimeFormatter != null) {
+            LocalDateTime localDateTime = LocalDateTime.parse(text, patternFormatter.dateTimeFormatter);
+            long localMillis = localDateTime.toEpochSecond(ZoneOffset.UTC) * 1000 + localDateTime.getNano() / 1000000;
+            TimeZone timeZone = getDefaultTimeZone();
+            long millis = localMillis - timeZone.getOffset(localMillis - timeZone.getRawOffset());
+            return new Date(localMillis - timeZone.getOffset(millis));
+        }
+        SimpleDateFormat simpleDateFormat = patternFormatter.newSimpleDateFormat();
+        simpleDateFormat.setLenient(false);
+        try {
+            return simpleDateFormat.parse(text);
+        } catch (ParseException e) {
+            throw new DateTimeParseException(e.getMessage(), text, e.getErrorOffset(), e);
+        }
+    }
+
+    /***
+     * 缓存的默认时区，距上次核对超过1秒时取一次 TimeZone.getDefault()，ID变了才替换；
+     * TimeZone.setDefault 后要立即生效的，调用 resetDefaultTimeZone
+     */
+    static TimeZone getDefaultTimeZone() {
+        long now = System.currentTimeMillis();
+        long checkMillis = timeZoneCheckMillis;
+        if (now - checkMillis >= 1000L || now < checkMillis) {
+            timeZoneCheckMillis = now;
+            TimeZone current = TimeZone.getDefault();
+            if (!current.getID().equals(defaultTimeZone.getID())) {
+                defaultTimeZone = current;
+            }
+        }
+        return defaultTimeZone;
+    }
+
+    static void resetDefaultTimeZone() {
+        defaultTimeZone = TimeZone.getDefault();
+        timeZoneCheckMillis = System.currentTimeMillis();
+    }
+
+    private static PatternFormatter getPatternFormatter(String pattern) {
+        PatternFormatter patternFormatter = formatters.get(pattern);
+        if (patternFormatter == null) {
+            patternFormatter = formatters.computeIfAbsent(pattern, PatternFormatter::new);
+        }
+        return patternFormatter;
+    }
+
+    /***
+     * 按 yyyy-MM-dd HH:mm:ss SSS 的前length个字符填充，时区偏移取自缓存的默认时区，与 SimpleDateFormat 一致
+     */
+    private static String fastFormat(long millis, int length) {
+        long localMillis = millis + getDefaultTimeZone().getOffset(millis);
+        long epochDay = Math.floorDiv(localMillis, (long) DatetimeUtil.TIME_DAY_MILLISECONDS);
+        int millisOfDay = (int) Math.floorMod(localMillis, (long) DatetimeUtil.TIME_DAY_MILLISECONDS);
+
+        //由epochDay推算年月日(公历)
+        long zeroDay = epochDay + 719468;
+        long era = Math.floorDiv(zeroDay, 146097);
+        long dayOfEra = zeroDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] chars = new char[length];
+        putDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        putDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        putDigits(chars, 8, day, 2);
+        if (length > 10) {
+            int secondOfDay = millisOfDay / 1000;
+            chars[10] = ' ';
+            putDigits(chars, 11, secondOfDay / 3600, 2);
+            chars[13] = ':';
+            putDigits(chars, 14, secondOfDay / 60 % 60, 2);
+            chars[16] = ':';
+            putDigits(chars, 17, secondOfDay % 60, 2);
+            if (length > 19) {
+                chars[19] = ' ';
+                putDigits(chars, 20, millisOfDay % 1000, 3);
+            }
+        }
+        return new String(chars);
+    }
+
+    private static void putDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /***pattern中(引号外)只有 y、M{1,2}、d{1,2}、H{1,2}、m{1,2}、s{1,2}、SSS 时，两者输出相同*/
+    static boolean isDateTimeFormatterCompatible(String pattern) {
+        boolean quoted = false;
+        int length = pattern.length();
+        for (int i = 0; i < length;) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                i++;
+                continue;
+            }
+            if (quoted) {
+                i++;
+                continue;
+            }
+            if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+                return false;
+            }
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int count = 1;
+                while (i + count < length && pattern.charAt(i + count) == c) {
+                    count++;
+                }
+                boolean compatible;
+                switch (c) {
+                    case 'y':
+                        compatible = true;
+                        break;
+                    case 'M':
+                    case 'd':
+                    case 'H':
+                    case 'm':
+                    case 's':
+                        compatible = count <= 2;
+                        break;
+                    case 'S':
+                        compatible = count == 3;
+                        break;
+                    default:
+                        compatible = false;
+                }
+                if (!compatible) {
+                    return false;
+                }
+                i += count;
+                continue;
+            }
+            i++;
+        }
+        return !quoted;
+    }
+
+    private static final class PatternFormatter {
+        /** 不兼容时为null */
+        final DateTimeFormatter dateTimeFormatter;
+
+        final String            pattern;
+
+        private volatile SimpleDateFormat prototype;
+
+        PatternFormatter(String pattern) {
+            this.pattern = pattern;
+            if (isDateTimeFormatterCompatible(pattern)) {
+                //STRICT 时 y(年代中的年)需要 ERA 才能算出年份，默认为公元
+                this.dateTimeFormatter = new DateTimeFormatterBuilder().appendPattern(pattern)
+                    .parseDefaulting(ChronoField.ERA, 1)
+                    .parseDefaulting(ChronoField.YEAR_OF_ERA, 1970)
+                    .parseDefaulting(ChronoField.MONTH_OF_YEAR, 1)
+                    .parseDefaulting(ChronoField.DAY_OF_MONTH, 1)
+                    .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                    .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+                    .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+                    .parseDefaulting(ChronoField.NANO_OF_SECOND, 0)
+                    .toFormatter()
+                    .withResolverStyle(ResolverStyle.STRICT);
+            } else {
+                this.dateTimeFormatter = null;
+                //pattern不合法时在这里就抛出 IllegalArgumentException，与原来 new SimpleDateFormat 一致
+                this.prototype = new SimpleDateFormat(pattern);
+            }
+        }
+
+        /***SimpleDateFormat 不是线程安全的，每次clone一个，时区取缓存的默认时区*/
+        SimpleDateFormat newSimpleDateFormat() {
+            SimpleDateFormat current = prototype;
+            if (current == null) {
+                current = new SimpleDateFormat(pattern);
+                prototype = current;
+            }
+            SimpleDateFormat simpleDateFormat = (SimpleDateFormat) current.clone();
+            simpleDateFormat.setTimeZone(getDefaultTimeZone());
+            return simpleDateFormat;
+        }
+    }
+}
@@ -17,8 +17,6 @@
 
 package org.stategen.framework.util;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import org.joda.time.DateTime;
@@ -134,6 +132,13 @@ public class DatetimeUtil {
 
     }
 
+    /**
+     * 格式化时缓存了默认时区(最多每秒核对一次)，TimeZone.setDefault 后需要立即生效时调用.
+     */
+    public static void resetDefaultTimeZone() {
+        DatetimeFormatter.resetDefaultTimeZone();
+    }
+
     /**
      * Format.
      *
@@ -142,8 +147,7 @@ public class DatetimeUtil {
      * @return the string
      */
     public static String format(Date date, String format) {
-        DateFormat dt = new SimpleDateFormat(format);
-        return dt.format(date);
+        return DatetimeFormatter.format(date, format);
     }
 
     /**
@@ -236,6 +240,49 @@ public class DatetimeUtil {
         return format(date, HOUR_FORMAT);
     }
 
+    /**
+     * Parse.
+     * pattern中没有的字段取 1970-01-01 00:00:00.000 中的值，超出范围的月、日等不会自动进位
+     *
+     * @param text the text
+     * @param format the format
+     * @return the date
+     * @throws java.time.format.DateTimeParseException 不能解析时
+     */
+    public static Date parse(String text, String format) {
+        return DatetimeFormatter.parse(text, format);
+    }
+
+    /**
+     * yyyy-MM-dd.
+     *
+     * @param text the text
+     * @return the date
+     */
+    public static Date parse(String text) {
+        return parse(text, DATE_FORMAT);
+    }
+
+    /**
+     * yyyy-MM-dd HH:mm:ss.
+     *
+     * @param text the text
+     * @return the date
+     */
+    public static Date parseTime(String text) {
+        return parse(text, TIME_FORMAT);
+    }
+
+    /**
+     * yyyy-MM-dd HH:mm:ss SSS.
+     *
+     * @param text the text
+     * @return the date
+     */
+    public static Date parseMills(String text) {
+        return parse(text, MILLS_FORMAT);
+    }
+
     /**
      * Current.
      *
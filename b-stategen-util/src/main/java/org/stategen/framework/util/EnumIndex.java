@@ -0,0 +1,331 @@
+package org.stategen.framework.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.util.ReflectionUtils;
+import org.stategen.framework.lite.ValuedEnum;
+
+/***
+ * 一个枚举类的查询索引，每个类只建立一次，之后的查询都不再反射.
+ *
+ * <pre>
+ * 1.ValuedEnum 的 value.toString() 和 name 分别放入无冲突的散列表(按枚举个数选择乘数和大小，
+ *   使每个key都落在不同的槽上)，查询只需一次 hashCode 和一次 equals；
+ * 2.value 全部是 0~1023 之间的整数时，另外建立以 value 为下标的数组；
+ * 3.value、desc、EnumValuesMap 所需的 getter 结果按 ordinal 预先取出；
+ * 4.保存在 ClassValue 中，类卸载时一起回收.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class EnumIndex<E extends Enum<E>> {
+
+    final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(EnumIndex.class);
+
+    private static final int                  MAX_INT_VALUE = 1024;
+
+    private static final ClassValue<EnumIndex<?>> INDEXES   = new ClassValue<EnumIndex<?>>() {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        protected EnumIndex<?> computeValue(Class<?> type) {
+            Class<?> enumClass = type;
+            //带方法体的枚举常量是枚举的匿名子类
+            if (!enumClass.isEnum() && enumClass.getSuperclass() != null && enumClass.getSuperclass().isEnum()) {
+                enumClass = enumClass.getSuperclass();
+            }
+            if (!enumClass.isEnum()) {
+                return null;
+            }
+            if (enumClass != type) {
+                return of((Class) enumClass);
+            }
+            return new EnumIndex((Class) enumClass);
+        }
+    };
+
+    private final Class<E>                    enumClass;
+
+    private final E[]                         constants;
+
+    private final boolean                     valued;
+
+    /** 按 ordinal，非 ValuedEnum 为 name */
+    private final Object[]                    values;
+
+    private final StringTable<E>              byValue;
+
+    private final StringTable<E>              byName;
+
+    /** value 都是小整数时以 value 为下标，否则为null */
+    private final E[]                         byIntValue;
+
+    private final Map<E, String>              descMap;
+
+    /** 按 ordinal，EnumValuesMap 的内容 */
+    private final List<Map<String, Object>>   properties;
+
+    @SuppressWarnings("unchecked")
+    private EnumIndex(Class<E> enumClass) {
+        this.enumClass = enumClass;
+        this.constants = enumClass.getEnumConstants();
+        this.valued = ValuedEnum.class.isAssignableFrom(enumClass);
+
+        int length = constants.length;
+        values = new Object[length];
+        String[] names = new String[length];
+        String[] valueStrings = new String[length];
+        Map<E, String> descMap = new EnumMap<E, String>(enumClass);
+        for (E e : constants) {
+            int ordinal = e.ordinal();
+            names[ordinal] = e.name();
+            if (valued) {
+                ValuedEnum<?> valuedEnum = (ValuedEnum<?>) e;
+                Object value = valuedEnum.getValue();
+                values[ordinal] = value;
+                if (value != null) {
+                    valueStrings[ordinal] = value.toString();
+                } else {
+                    logger.warn(new StringBuilder().append(enumClass.getName()).append('.').append(e.name())
+                        .append(" has a null value, can not be found by value").toString());
+                }
+                descMap.put(e, valuedEnum.getDesc());
+            } else {
+                values[ordinal] = e.name();
+                descMap.put(e, e.name());
+            }
+        }
+        this.byName = StringTable.build(names, constants);
+        this.byValue = valued ? StringTable.build(valueStrings, constants) : null;
+        this.byIntValue = valued ? buildIntIndex() : null;
+        this.descMap = Collections.unmodifiableMap(descMap);
+        this.properties = buildProperties();
+    }
+
+    /***
+     * 取枚举类的索引，不是枚举时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> EnumIndex<E> of(Class<E> enumClass) {
+        return enumClass != null ? (EnumIndex<E>) INDEXES.get(enumClass) : null;
+    }
+
+    static EnumIndex<?> ofType(Class<?> type) {
+        return type != null ? INDEXES.get(type) : null;
+    }
+
+    private E[] buildIntIndex() {
+        int max = -1;
+        for (Object value : values) {
+            if (!(value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Long)) {
+                return null;
+            }
+            long longValue = ((Number) value).longValue();
+            if (longValue < 0 || longValue >= MAX_INT_VALUE) {
+                return null;
+            }
+            max = Math.max(max, (int) longValue);
+        }
+        @SuppressWarnings("unchecked")
+        E[] result = (E[]) Array.newInstance(enumClass, max + 1);
+        for (E e : constants) {
+            //与字符串查询一致，相同 value 后面的覆盖前面的
+            result[((Number) values[e.ordinal()]).intValue()] = e;
+        }
+        return result;
+    }
+
+    /***与原来 EnumValuesMap 相同的规则，取所有非静态、无参的 getXxx 方法的值*/
+    private List<Map<String, Object>> buildProperties() {
+        Map<String, Method> getMethodMap = new LinkedHashMap<String, Method>();
+        Method[] allDeclaredMethods = ReflectionUtils.getAllDeclaredMethods(enumClass);
+        if (CollectionUtil.isNotEmpty(allDeclaredMethods)) {
+            for (Method method : allDeclaredMethods) {
+                int modifiers = method.getModifiers();
+                if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || method.getParameterCount() > 0) {
+                    continue;
+                }
+                String methodName = method.getName();
+                if ("getDeclaringClass".equals(methodName) || "getClass".equals(methodName)) {
+                    continue;
+                }
+                if (!methodName.startsWith("get") || methodName.length() <= 3) {
+                    continue;
+                }
+                String fieldName = methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
+                if (!getMethodMap.containsKey(fieldName)) {
+                    if (!method.isAccessible()) {
+                        method.setAccessible(true);
+                    }
+                    getMethodMap.put(fieldName, method);
+                }
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(constants.length);
+        for (E e : constants) {
+            Map<String, Object> props = new HashMap<String, Object>(CollectionUtil.capacity(Math.max(getMethodMap.size(), 1)));
+            if (getMethodMap.isEmpty()) {
+                props.put(EnumUtil.EnumValuesMap.CODE, e.name());
+            }
+            for (Entry<String, Method> entry : getMethodMap.entrySet()) {
+                try {
+                    props.put(entry.getKey(), entry.getValue().invoke(e));
+                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+                    //skip
+                }
+            }
+            result.add(Collections.unmodifiableMap(props));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public Class<E> getEnumClass() {
+        return enumClass;
+    }
+
+    /***所有常量，返回的是拷贝*/
+    public E[] getConstants() {
+        return constants.clone();
+    }
+
+    public boolean isValued() {
+        return valued;
+    }
+
+    /***先按 ValuedEnum 的 value 查，再按 name 查，都没有时返回null*/
+    public E valueOf(String source) {
+        if (source == null) {
+            return null;
+        }
+        if (byValue != null) {
+            E e = byValue.get(source);
+            if (e != null) {
+                return e;
+            }
+        }
+        return byName.get(source);
+    }
+
+    /***按整数 value 查，value 都是小整数时直接按下标取*/
+    public E valueOf(int value) {
+        if (byIntValue != null) {
+            return value >= 0 && value < byIntValue.length ? byIntValue[value] : null;
+        }
+        return valueOf(String.valueOf(value));
+    }
+
+    public E nameOf(String name) {
+        return name != null ? byName.get(name) : null;
+    }
+
+    /***ValuedEnum 的 value，其它枚举为 name*/
+    public Object getValue(E e) {
+        return values[e.ordinal()];
+    }
+
+    /***按 ordinal 排列，不可修改*/
+    public Map<E, String> getDescMap() {
+        return descMap;
+    }
+
+    /***EnumValuesMap 的内容，不可修改*/
+    public Map<String, Object> getProperties(E e) {
+        return properties.get(e.ordinal());
+    }
+
+    /***
+     * 各个key落在不同槽上的开放寻址表，找不到无冲突的乘数时退化为线性探测
+     */
+    static final class StringTable<E> {
+        private static final int MAX_TRIES = 64;
+
+        final String[]           keys;
+
+        final Object[]           values;
+
+        final int                multiplier;
+
+        final int                shift;
+
+        final int                mask;
+
+        private StringTable(int bits, int multiplier) {
+            this.keys = new String[1 << bits];
+            this.values = new Object[1 << bits];
+            this.multiplier = multiplier;
+            this.shift = 32 - bits;
+            this.mask = (1 << bits) - 1;
+        }
+
+        static <E> StringTable<E> build(String[] keys, E[] values) {
+            int count = 0;
+            for (String key : keys) {
+                if (key != null) {
+                    count++;
+                }
+            }
+            int minBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(count * 2 - 1, 1)));
+            int multiplier = 0x9E3779B9;
+            //表的大小从 2*count 到 8*count，每种大小尝试一些乘数
+            for (int bits = minBits; bits <= minBits + 2; bits++) {
+                for (int i = 0; i < MAX_TRIES; i++) {
+                    StringTable<E> table = new StringTable<E>(bits, multiplier);
+                    if (table.putAll(keys, values, true)) {
+                        return table;
+                    }
+                    multiplier += 0x6A09E668;
+                }
+            }
+            StringTable<E> table = new StringTable<E>(minBits + 1, 0x9E3779B9);
+            table.putAll(keys, values, false);
+            return table;
+        }
+
+        private int indexOf(String key) {
+            return (key.hashCode() * multiplier) >>> shift;
+        }
+
+        private boolean putAll(String[] keys, E[] values, boolean perfect) {
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                if (key == null) {
+                    continue;
+                }
+                int index = indexOf(key);
+                while (this.keys[index] != null && !this.keys[index].equals(key)) {
+                    if (perfect) {
+                        return false;
+                    }
+                    index = (index + 1) & mask;
+                }
+                this.keys[index] = key;
+                this.values[index] = values[i];
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        E get(String key) {
+            int index = indexOf(key);
+            String current;
+            while ((current = keys[index]) != null) {
+                if (current.equals(key)) {
+                    return (E) values[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
@@ -16,16 +16,12 @@
  */
 package org.stategen.framework.util;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.util.ReflectionUtils;
 import org.stategen.framework.lite.ValuedEnum;
 
 /**
@@ -37,10 +33,6 @@ import org.stategen.framework.lite.ValuedEnum;
  */
 public class EnumUtil {
 
-    private static Map<Class<?>, Map<String, ValuedEnum<?>>> enumCache = new ConcurrentHashMap<Class<?>, Map<String, ValuedEnum<?>>>();
-
-    final static Map<Class<?>, Map<String, Method>> ENUM_GETMETHOD_MAP = new ConcurrentHashMap<Class<?>, Map<String, Method>>();
-
     /**
      * The Class EnumValuesMap.
      *
@@ -54,22 +46,8 @@ public class EnumUtil {
         final static String DESC = "desc";
 
         public EnumValuesMap(T enumObj) {
-            @SuppressWarnings("unchecked")
-            Map<String, Method> enumGetMethods = getEnumGetMethods(enumObj.getClass());
-            if (CollectionUtil.isNotEmpty(enumGetMethods)) {
-                for (Entry<String, Method> entry : enumGetMethods.entrySet()) {
-                    Object value;
-                    try {
-                        value = entry.getValue().invoke(enumObj);
-                    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                        continue;
-                        //skip
-                    }
-                    this.put(entry.getKey(), value);
-                }
-            } else {
-                this.put(CODE, enumObj.name());
-            }
+            //getter 的值在 EnumIndex 中预先取出，这里只是拷贝
+            super(EnumIndex.of(enumObj.getDeclaringClass()).getProperties(enumObj));
             this.enumObj = enumObj;
         }
 
@@ -90,56 +68,13 @@ public class EnumUtil {
         }
     }
 
-    private static <T extends Enum<T>> Map<String, Method> getEnumGetMethods(Class<T> enumClz) {
-        Map<String, Method> getMethodMap = ENUM_GETMETHOD_MAP.get(enumClz);
-        if (getMethodMap == null) {
-            getMethodMap = new HashMap<String, Method>();
-            Method[] allDeclaredMethods = ReflectionUtils.getAllDeclaredMethods(enumClz);
-            if (CollectionUtil.isNotEmpty(allDeclaredMethods)) {
-                for (Method method : allDeclaredMethods) {
-                    int modifiers = method.getModifiers();
-                    if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)) {
-                        continue;
-                    }
-
-                    if (method.getParameterCount() > 0) {
-                        continue;
-                    }
-
-                    String methodName = method.getName();
-                    if ("getDeclaringClass".equals(methodName) || "getClass".equals(methodName)) {
-                        continue;
-                    }
-
-                    if (!methodName.startsWith("get") || methodName.length() <= 3) {
-                        continue;
-                    }
-
-                    if (!method.isAccessible()) {
-                        method.setAccessible(true);
-                    }
-                    String fieldName = methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
-                    if (getMethodMap.containsKey(fieldName)) {
-                        continue;
-                    }
-                    getMethodMap.put(fieldName, method);
-                }
-            }
-            ENUM_GETMETHOD_MAP.put(enumClz, getMethodMap);
-        }
-        return getMethodMap;
-    }
-
-    @SuppressWarnings("rawtypes")
-    private static Map<Class<? extends Enum<?>>, Map<? extends Enum, String>> descEnumCache = new ConcurrentHashMap<Class<? extends Enum<?>>, Map<? extends Enum, String>>();
-
     public static <T extends Enum<T>> Map<T, EnumValuesMap<T>> getEnumMapByEnumType(Class<T> enumType) {
         Map<T, String> enumMap = getEnumValueDescList(enumType);
         if (CollectionUtil.isEmpty(enumMap)) {
             return null;
         }
 
-        Map<T, EnumValuesMap<T>> result = new HashMap<T, EnumValuesMap<T>>(enumMap.size());
+        Map<T, EnumValuesMap<T>> result = new EnumMap<T, EnumValuesMap<T>>(enumType);
         for (T t : enumMap.keySet()) {
             EnumValuesMap<T> enumEntry = new EnumValuesMap<T>(t);
             result.put(t, enumEntry);
@@ -156,8 +91,8 @@ public class EnumUtil {
         return CollectionUtil.newEmptyList();
     }
 
-    /***与旧的系统兼容，将1,2,3等信息，如果是ValuedEnum,则转化为枚举，其它走Enum.valueOf*/
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    /***与旧的系统兼容，将1,2,3等信息，如果是ValuedEnum,则转化为枚举，其它按name查找，找不到或者不是枚举时返回null*/
+    @SuppressWarnings("unchecked")
     public static <T> T valueOf(Class<T> enumType, String source) {
         if (source == null) {
             return null;
@@ -168,53 +103,43 @@ public class EnumUtil {
             return null;
         }
 
-        if (ValuedEnum.class.isAssignableFrom(enumType)) {
-            Map<String, ValuedEnum<?>> cache = enumCache.get(enumType);
-            if (cache != null) {
-                ValuedEnum<?> valuedEnum = cache.get(soruceValue);
-                if (valuedEnum != null) {
-                    return (T) valuedEnum;
-                }
-            }
-        }
+        EnumIndex<?> enumIndex = EnumIndex.ofType(enumType);
+        return enumIndex != null ? (T) enumIndex.valueOf(soruceValue) : null;
+    }
+
+    /***按整数 value 查找，数据库中的 int 状态可以不转成字符串*/
+    @SuppressWarnings("unchecked")
+    public static <T> T valueOf(Class<T> enumType, int value) {
+        EnumIndex<?> enumIndex = EnumIndex.ofType(enumType);
+        return enumIndex != null ? (T) enumIndex.valueOf(value) : null;
+    }
 
-        try {
-            Class<? extends Enum> enumClz = (Class<? extends Enum>) enumType;
-            return (T) Enum.valueOf(enumClz, soruceValue);
-        } catch (Exception e) {
-            //skip ,没有日志配置，用 printStackTrace
-            e.printStackTrace();
+    /***取 ValuedEnum 的 value，不用每次都反射 value 字段*/
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static <V> V getValue(ValuedEnum<V> valuedEnum) {
+        if (valuedEnum == null) {
+            return null;
         }
-        return null;
+        if (valuedEnum instanceof Enum) {
+            Enum e = (Enum) valuedEnum;
+            return (V) EnumIndex.of(e.getDeclaringClass()).getValue(e);
+        }
+        return valuedEnum.getValue();
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    /***按 ordinal 排列，不可修改*/
     public static <T extends Enum<T>> Map<T, String> getEnumValueDescList(Class<T> enumType) {
-        GetOrCreateWrap<Map<? extends Enum, String>> orCreateMap = CollectionUtil.getOrCreateMap(enumType, descEnumCache, HashMap.class);
-        Map<T, String> enumMaps = (Map<T, String>) orCreateMap.getValue();
-        if (orCreateMap.isNew()) {
-            T[] enumConstants = enumType.getEnumConstants();
-            for (T em : enumConstants) {
-                String desc = (em instanceof ValuedEnum<?>) ? ((ValuedEnum<?>) em).getDesc() : em.name();
-                enumMaps.put(em, desc);
-            }
-        }
-        return enumMaps;
+        return EnumIndex.of(enumType).getDescMap();
     }
 
+    /***建立索引，启动时调用，避免第一次请求时再建立*/
     @SuppressWarnings("rawtypes")
     public static void registValuedEnum(Class<? extends ValuedEnum> veClass) {
-        Object[] enumConstants = veClass.getEnumConstants();
-        if (CollectionUtil.isNotEmpty(enumConstants)) {
-            for (Object object : enumConstants) {
-                ValuedEnum<?> valuedEnum = (ValuedEnum<?>) object;
-                EnumUtil.putToCache(valuedEnum);
-            }
-        }
+        EnumIndex.ofType(veClass);
     }
 
     /***
-     * 将枚举放入缓存，以便快速查询
+     * 建立该枚举所在类的索引，以便快速查询
      * 
      * @param valuedObject
      */
@@ -227,26 +152,7 @@ public class EnumUtil {
             throw new IllegalArgumentException("valuedObject must  be Enum!");
         }
 
-        try {
-            Map<String, ValuedEnum<?>> cache = enumCache.get(valuedObject.getClass());
-            if (cache == null) {
-                cache = new ConcurrentHashMap<String, ValuedEnum<?>>();
-                enumCache.put(valuedObject.getClass(), cache);
-            }
-
-            Object value = valuedObject.getValue();
-
-            if (value == null) {
-                //skip ,没有日志配置，用 printStackTrace
-                System.out.println(valuedObject + "<===========> value:" + value);
-                return;
-            }
-
-            cache.put(value.toString(), valuedObject);
-        } catch (Exception e) {
-            //skip ,没有日志配置，用 printStackTrace
-            System.out.println(valuedObject + "注册失败1<===========>:\n" + e);
-        }
+        EnumIndex.ofType(valuedObject.getClass());
     }
 
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/***
+ * 摘要/HMAC 工具，用来代替 MD5Util 中每次 getInstance、逐个字符拼接hex的写法.
+ * 
+ * <pre>
+ * 1.MessageDigest、Mac 每个线程每种算法一个，用前 reset；
+ * 2.字符串直接按UTF-8编码到线程内复用的缓冲区中计算，不产生中间的 byte[]；
+ * 3.hex 用查表写入预先分配好长度的 char[]，小写，与原来 MD5Util.md5 的结果相同；
+ * 4.byte[]、ByteBuffer、InputStream 都直接计算，不复制.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public class HashUtil {
+
+    public static final String                                                 MD5               = "MD5";
+
+    public static final String                                                 SHA_256           = "SHA-256";
+
+    public static final String                                                 HMAC_SHA_256      = "HmacSHA256";
+
+    private static final char[]                                                HEX_DIGITS        = "0123456789abcdef".toCharArray();
+
+    private static final int                                                   BUFFER_SIZE       = 4096;
+
+    private static final ConcurrentHashMap<String, ThreadLocal<MessageDigest>> DIGESTS           = new ConcurrentHashMap<String, ThreadLocal<MessageDigest>>();
+
+    private static final ThreadLocal<MessageDigest>                            MD5_DIGESTS       = getDigests(MD5);
+
+    private static final ThreadLocal<MessageDigest>                            SHA_256_DIGESTS   = getDigests(SHA_256);
+
+    private static final ThreadLocal<Mac>                                      HMAC_SHA_256_MACS = new ThreadLocal<Mac>();
+
+    /** 当前线程的Mac最后一次init用的key */
+    private static final ThreadLocal<Key>                                      LAST_MAC_KEYS     = new ThreadLocal<Key>();
+
+    /** 字符串编码、InputStream读取时复用的缓冲区，只在一个方法调用内使用 */
+    private static final ThreadLocal<byte[]>                                   BUFFERS           = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private static ThreadLocal<MessageDigest> getDigests(String algorithm) {
+        return DIGESTS.computeIfAbsent(algorithm, k -> {
+            //算法不存在时立即抛出，而不是在使用时
+            newMessageDigest(algorithm);
+            return ThreadLocal.withInitial(() -> newMessageDigest(algorithm));
+        });
+    }
+
+    private static MessageDigest newMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("不支持的摘要算法:" + algorithm, e);
+        }
+    }
+
+    /***
+     * 取得当前线程的 MessageDigest，已reset，不要跨线程使用或保存
+     */
+    public static MessageDigest getMessageDigest(String algorithm) {
+        ThreadLocal<MessageDigest> digests = MD5.equals(algorithm) ? MD5_DIGESTS
+            : SHA_256.equals(algorithm) ? SHA_256_DIGESTS : getDigests(algorithm);
+        MessageDigest messageDigest = digests.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+
+    public static String md5Hex(CharSequence text) {
+        return text != null ? toHex(digest(MD5_DIGESTS, text, null)) : null;
+    }
+
+    /***相当于 md5Hex(first + second)，second为null时只计算first*/
+    public static String md5Hex(CharSequence first, CharSequence second) {
+        return toHex(digest(MD5_DIGESTS, first, second));
+    }
+
+    public static String md5Hex(byte[] bytes) {
+        return toHex(md5(bytes));
+    }
+
+    public static String md5Hex(ByteBuffer byteBuffer) {
+        return toHex(digest(MD5_DIGESTS, byteBuffer));
+    }
+
+    public static String md5Hex(InputStream in) throws IOException {
+        return toHex(digest(MD5_DIGESTS, in));
+    }
+
+    public static byte[] md5(CharSequence text) {
+        return digest(MD5_DIGESTS, text, null);
+    }
+
+    public static byte[] md5(byte[] bytes) {
+        MessageDigest messageDigest = reset(MD5_DIGESTS);
+        return messageDigest.digest(bytes);
+    }
+
+    public static String sha256Hex(CharSequence text) {
+        return text != null ? toHex(digest(SHA_256_DIGESTS, text, null)) : null;
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        return toHex(sha256(bytes));
+    }
+
+    public static String sha256Hex(ByteBuffer byteBuffer) {
+        return toHex(digest(SHA_256_DIGESTS, byteBuffer));
+    }
+
+    public static String sha256Hex(InputStream in) throws IOException {
+        return toHex(digest(SHA_256_DIGESTS, in));
+    }
+
+    public static byte[] sha256(CharSequence text) {
+        return digest(SHA_256_DIGESTS, text, null);
+    }
+
+    public static byte[] sha256(byte[] bytes) {
+        return reset(SHA_256_DIGESTS).digest(bytes);
+    }
+
+    /***任意摘要算法，如 SHA-512*/
+    public static String hex(String algorithm, CharSequence text) {
+        return text != null ? toHex(digest(getDigests(algorithm), text, null)) : null;
+    }
+
+    /***
+     * 生成 HmacSHA256 的key，应该生成一次后保存起来重复使用
+     */
+    public static SecretKeySpec newHmacSha256Key(String secret) {
+        AssertUtil.mustNotNull(secret);
+        return new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_SHA_256);
+    }
+
+    public static String hmacSha256Hex(Key key, CharSequence text) {
+        return toHex(hmacSha256(key, text));
+    }
+
+    public static byte[] hmacSha256(Key key, CharSequence text) {
+        Mac mac = getHmacSha256(key);
+        updateUtf8(mac, null, text);
+        return mac.doFinal();
+    }
+
+    public static byte[] hmacSha256(Key key, byte[] bytes) {
+        return getHmacSha256(key).doFinal(bytes);
+    }
+
+    /***
+     * 开始一次增量的 HmacSHA256 计算，用 updateLengthPrefixed 写入各部分，最后 toHex(mac.doFinal())，
+     * 返回的是当前线程复用的Mac，只能在本线程内、下一次调用 HashUtil 之前使用
+     */
+    public static Mac beginHmacSha256(Key key) {
+        return getHmacSha256(key);
+    }
+
+    /***
+     * 先写入4字节(大端)的UTF-8长度再写入内容，null 的长度为 -1，
+     * 多个字符串依次写入时 "ab"+"c" 与 "a"+"bc" 不会得到相同的结果
+     */
+    public static void updateLengthPrefixed(Mac mac, CharSequence text) {
+        int length = text != null ? utf8Length(text) : -1;
+        mac.update((byte) (length >>> 24));
+        mac.update((byte) (length >>> 16));
+        mac.update((byte) (length >>> 8));
+        mac.update((byte) length);
+        if (length > 0) {
+            updateUtf8(mac, null, text);
+        }
+    }
+
+    /***与 updateUtf8 的编码规则相同*/
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int result = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                result++;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    //两个char编码为4个字节
+                    result += 2;
+                    i++;
+                }
+            } else {
+                result += 2;
+            }
+        }
+        return result;
+    }
+
+    /***同一个线程连续使用同一个key时不再重新init*/
+    private static Mac getHmacSha256(Key key) {
+        Mac mac = HMAC_SHA_256_MACS.get();
+        try {
+            if (mac == null) {
+                mac = Mac.getInstance(HMAC_SHA_256);
+                HMAC_SHA_256_MACS.set(mac);
+                mac.init(key);
+                LAST_MAC_KEYS.set(key);
+            } else if (LAST_MAC_KEYS.get() != key) {
+                mac.init(key);
+                LAST_MAC_KEYS.set(key);
+            } else {
+                mac.reset();
+            }
+        } catch (GeneralSecurityException e) {
+            LAST_MAC_KEYS.remove();
+            throw new IllegalArgumentException("HmacSHA256初始化出错", e);
+        }
+        return mac;
+    }
+
+    /***
+     * 常量时间比较两个hex(或任意字符串)，校验token/签名时用，避免时序攻击
+     */
+    public static boolean hexEquals(CharSequence left, CharSequence right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        int length = left.length();
+        if (length != right.length()) {
+            return false;
+        }
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= left.charAt(i) ^ right.charAt(i);
+        }
+        return result == 0;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length << 1];
+        int j = 0;
+        for (byte b : bytes) {
+            chars[j++] = HEX_DIGITS[(b >> 4) & 0xF];
+            chars[j++] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest reset(ThreadLocal<MessageDigest> digests) {
+        MessageDigest messageDigest = digests.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+
+    private static byte[] digest(ThreadLocal<MessageDigest> digests, CharSequence first, CharSequence second) {
+        MessageDigest messageDigest = reset(digests);
+        updateUtf8(null, messageDigest, first);
+        if (second != null) {
+            updateUtf8(null, messageDigest, second);
+        }
+        return messageDigest.digest();
+    }
+
+    private static byte[] digest(ThreadLocal<MessageDigest> digests, ByteBuffer byteBuffer) {
+        MessageDigest messageDigest = reset(digests);
+        //只读取，不改变调用者的position
+        messageDigest.update(byteBuffer.duplicate());
+        return messageDigest.digest();
+    }
+
+    private static byte[] digest(ThreadLocal<MessageDigest> digests, InputStream in) throws IOException {
+        MessageDigest messageDigest = reset(digests);
+        byte[] buffer = BUFFERS.get();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, read);
+        }
+        return messageDigest.digest();
+    }
+
+    /***
+     * 按UTF-8编码写入 mac 或 messageDigest，结果与 String.getBytes("UTF-8") 相同，
+     * 不成对的代理字符与jdk一样编码为 '?'
+     */
+    private static void updateUtf8(Mac mac, MessageDigest messageDigest, CharSequence text) {
+        byte[] buffer = BUFFERS.get();
+        int limit = buffer.length - 4;
+        int position = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (position > limit) {
+                update(mac, messageDigest, buffer, position);
+                position = 0;
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low;
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, low);
+                    i++;
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if (position > 0) {
+            update(mac, messageDigest, buffer, position);
+        }
+    }
+
+    private static void update(Mac mac, MessageDigest messageDigest, byte[] buffer, int length) {
+        if (mac != null) {
+            mac.update(buffer, 0, length);
+        } else {
+            messageDigest.update(buffer, 0, length);
+        }
+    }
+}
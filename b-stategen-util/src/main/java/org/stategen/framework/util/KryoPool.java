@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.util;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/***
+ * 线程安全的Kryo池，Kryo本身不是线程安全的，而且创建代价远大于拷贝小对象，
+ * 所以借出后归还重复使用，每个Kryo带有可重复使用的 Output/Input 缓冲.
+ * 
+ * <pre>
+ * 1.register 的类按注册顺序在每个Kryo中得到相同的id，不同Kryo写出和读入的数据可以互通；
+ * 2.register 之后，之前创建的Kryo在归还时丢弃，不会混用两种注册；
+ * 3.池中最多保留 CPU核数*2 个Kryo，并发超出时临时创建，用完丢弃；
+ * 4.写大对象时 Output 缓冲会扩大，归还时超过 MAX_POOLED_BUFFER_SIZE 的换回 BUFFER_SIZE，不会一直占着峰值大小.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class KryoPool {
+
+    private static final int                BUFFER_SIZE   = 4096;
+
+    private static final int                MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private static final BlockingQueue<PooledKryo> pool   = new ArrayBlockingQueue<PooledKryo>(Runtime.getRuntime().availableProcessors() * 2);
+
+    private static volatile List<Class<?>>  registrations = Collections.emptyList();
+
+    private static volatile int             version       = 0;
+
+    private KryoPool() {
+    }
+
+    /***
+     * 注册类，序列化时只写入id而不是类名，应在启动时注册，所有节点的注册顺序必须一致
+     */
+    public static synchronized void register(Class<?>... classes) {
+        List<Class<?>> newRegistrations = new ArrayList<Class<?>>(registrations);
+        for (Class<?> cls : classes) {
+            if (!newRegistrations.contains(cls)) {
+                newRegistrations.add(cls);
+            }
+        }
+        registrations = Collections.unmodifiableList(newRegistrations);
+        version++;
+        pool.clear();
+    }
+
+    public static Kryo borrow() {
+        PooledKryo kryo = pool.poll();
+        while (kryo != null && kryo.version != version) {
+            kryo = pool.poll();
+        }
+        return kryo != null ? kryo : new PooledKryo(version, registrations);
+    }
+
+    public static void release(Kryo kryo) {
+        if (kryo instanceof PooledKryo) {
+            PooledKryo pooledKryo = (PooledKryo) kryo;
+            if (pooledKryo.version == version) {
+                if (pooledKryo.output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+                    pooledKryo.output.setBuffer(new byte[BUFFER_SIZE], -1);
+                }
+                pool.offer(pooledKryo);
+            }
+        }
+    }
+
+    public static <T> T run(Function<Kryo, T> action) {
+        Kryo kryo = borrow();
+        try {
+            return action.apply(kryo);
+        } finally {
+            release(kryo);
+        }
+    }
+
+    /***
+     * 用池中的Kryo和Output写入data(含类型)，outputReader 在Kryo归还前读取Output中的内容
+     */
+    public static <T> T writeClassAndObject(Object data, Function<Output, T> outputReader) {
+        PooledKryo kryo = (PooledKryo) borrow();
+        try {
+            Output output = kryo.output;
+            output.clear();
+            kryo.writeClassAndObject(output, data);
+            return outputReader.apply(output);
+        } finally {
+            release(kryo);
+        }
+    }
+
+    /***
+     * 用同一个池中的Kryo写入 Output 缓冲再读回，得到data的深拷贝
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T data) {
+        if (data == null) {
+            return null;
+        }
+        PooledKryo kryo = (PooledKryo) borrow();
+        try {
+            Output output = kryo.output;
+            output.clear();
+            kryo.writeObject(output, data);
+            return (T) kryo.readObject(new Input(output.getBuffer(), 0, output.position()), data.getClass());
+        } finally {
+            release(kryo);
+        }
+    }
+
+    public static Object readClassAndObject(InputStream inputStream) {
+        PooledKryo kryo = (PooledKryo) borrow();
+        try {
+            kryo.input.setInputStream(inputStream);
+            return kryo.readClassAndObject(kryo.input);
+        } finally {
+            //池中空闲的Input不能再引用调用方的流(比如堆外快照的ByteBuffer)
+            kryo.input.setInputStream(null);
+            release(kryo);
+        }
+    }
+
+    public static Object readClassAndObject(byte[] bytes) {
+        PooledKryo kryo = (PooledKryo) borrow();
+        try {
+            return kryo.readClassAndObject(new Input(bytes));
+        } finally {
+            release(kryo);
+        }
+    }
+
+    private static final class PooledKryo extends Kryo {
+        final int    version;
+
+        final Output output = new Output(BUFFER_SIZE, -1);
+
+        final Input  input  = new Input(BUFFER_SIZE);
+
+        PooledKryo(int version, List<Class<?>> registrations) {
+            this.version = version;
+            for (Class<?> cls : registrations) {
+                register(cls);
+            }
+        }
+    }
+}
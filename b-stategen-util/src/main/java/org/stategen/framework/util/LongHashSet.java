@@ -0,0 +1,133 @@
+package org.stategen.framework.util;
+
+import java.util.Arrays;
+
+/***
+ * long 的开放寻址散列集合，用来代替 Set&lt;Long&gt; 存放id.
+ *
+ * <pre>
+ * 1.按 expectedSize 预分配，不装箱；
+ * 2.toArray 按放入的先后顺序返回 long[]，可以直接用来拼 in 查询；
+ * 3.不支持删除，非线程安全，建好后只读时可以被多个线程同时读.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class LongHashSet {
+
+    private long[]  table;
+
+    private int     mask;
+
+    private int     maxFill;
+
+    /** 按放入顺序保存的key */
+    private long[]  ordered;
+
+    private int     size;
+
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /***
+     * @param expectedSize 预计放入的个数
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative ,but it is :" + expectedSize);
+        }
+        allocate(LongObjectMap.tableSizeFor(expectedSize));
+        ordered = new long[Math.max(expectedSize, 4)];
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        maxFill = capacity >>> 1;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        long[] table = this.table;
+        int index = LongObjectMap.mix(key) & mask;
+        long current;
+        while ((current = table[index]) != 0) {
+            if (current == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /***
+     * @return 原来不存在时返回true
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+        } else {
+            long[] table = this.table;
+            int index = LongObjectMap.mix(key) & mask;
+            long current;
+            while ((current = table[index]) != 0) {
+                if (current == key) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = key;
+        }
+        if (size == ordered.length) {
+            ordered = Arrays.copyOf(ordered, size + (size >>> 1));
+        }
+        ordered[size++] = key;
+        int nonZeroSize = hasZero ? size - 1 : size;
+        if (nonZeroSize > maxFill) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        allocate(capacity);
+        long[] table = this.table;
+        int mask = this.mask;
+        for (int i = 0; i < size; i++) {
+            long key = ordered[i];
+            if (key != 0) {
+                int index = LongObjectMap.mix(key) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /***按放入顺序返回，返回的是拷贝*/
+    public long[] toArray() {
+        return Arrays.copyOf(ordered, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,376 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/***
+ * long 为key的开放寻址(线性探测)散列表，用来代替按id建立的 Map&lt;Long, T&gt;.
+ *
+ * <pre>
+ * 1.key直接存放在 long[] 中，不装箱成 Long，也没有 HashMap.Node；
+ * 2.负载因子 0.5，按 expectedSize 预分配，放入 expectedSize 个key前不会扩容；
+ * 3.key为0时单独存放，0可以作为正常的key；
+ * 4.value可以为null，用 containsKey 区分；
+ * 5.非线程安全，建好后只读时可以被多个线程同时读.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class LongObjectMap<V> {
+
+    /***遍历时回调，避免 Map.Entry 和装箱*/
+    @FunctionalInterface
+    public static interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final int  MIN_CAPACITY = 4;
+
+    private static final int  MAX_CAPACITY = 1 << 30;
+
+    private long[]            keys;
+
+    private Object[]          values;
+
+    private int               mask;
+
+    /** 非0的key个数超过该值时扩容 */
+    private int               maxFill;
+
+    private int               size;
+
+    private boolean           hasZeroKey;
+
+    private V                 zeroValue;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    /***
+     * @param expectedSize 预计放入的key个数
+     */
+    public LongObjectMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative ,but it is :" + expectedSize);
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /***放入 expectedSize 个key不需要扩容的 table 大小，2的幂*/
+    static int tableSizeFor(int expectedSize) {
+        long capacity = Math.max((long) expectedSize * 2, MIN_CAPACITY);
+        if (capacity >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) capacity - 1) << 1;
+    }
+
+    /***打散连续的id，低位也有足够的随机性*/
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        maxFill = capacity >>> 1;
+    }
+
+    private int indexOf(long key) {
+        long[] keys = this.keys;
+        int index = mix(key) & mask;
+        long current;
+        while ((current = keys[index]) != 0) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -(index + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int index = indexOf(key);
+        @SuppressWarnings("unchecked")
+        V v = index >= 0 ? (V) values[index] : defaultValue;
+        return v;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    /***
+     * @return 原来的值
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            V old = (V) values[index];
+            values[index] = value;
+            return old;
+        }
+        insertAt(-index - 1, key, value);
+        return null;
+    }
+
+    /***
+     * key不存在时放入
+     * @return 原来的值，key不存在时为null
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                return zeroValue;
+            }
+            hasZeroKey = true;
+            size++;
+            zeroValue = value;
+            return null;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            return (V) values[index];
+        }
+        insertAt(-index - 1, key, value);
+        return null;
+    }
+
+    /***
+     * key不存在或值为null时，用 mappingFunction 创建，创建结果为null时不放入
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        if (key == 0) {
+            if (zeroValue == null) {
+                V v = mappingFunction.apply(key);
+                if (v != null) {
+                    put(key, v);
+                }
+                return v;
+            }
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        if (index >= 0 && values[index] != null) {
+            return (V) values[index];
+        }
+        V v = mappingFunction.apply(key);
+        if (v != null) {
+            if (index >= 0) {
+                values[index] = v;
+            } else {
+                //mappingFunction 中可能修改了本map，重新定位
+                put(key, v);
+            }
+        }
+        return v;
+    }
+
+    private void insertAt(int index, long key, V value) {
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        int nonZeroSize = hasZeroKey ? size - 1 : size;
+        if (nonZeroSize > maxFill) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        if (keys.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("LongObjectMap can not hold more than " + maxFill + " keys");
+        }
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int index = mix(key) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /***
+     * @return 原来的值
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return null;
+            }
+            V old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return old;
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V) values[index];
+        size--;
+        shiftKeys(index);
+        return old;
+    }
+
+    /***线性探测删除后，把后面的key往前移，不留删除标记*/
+    private void shiftKeys(int index) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int last;
+        for (;;) {
+            last = index;
+            index = (index + 1) & mask;
+            long current;
+            for (;;) {
+                current = keys[index];
+                if (current == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+                int slot = mix(current) & mask;
+                //slot 不在 (last, index] 之间，可以移到 last
+                if (last <= index ? (last >= slot || slot > index) : (last >= slot && slot > index)) {
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[index];
+        }
+    }
+
+    /***放入 other 中所有的key，相同的key以 other 为准*/
+    public void putAll(LongObjectMap<? extends V> other) {
+        if (other != null && other != this) {
+            other.forEach(this::put);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, 0L);
+            Arrays.fill(values, null);
+            hasZeroKey = false;
+            zeroValue = null;
+            size = 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /***所有的key，无序*/
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        if (hasZeroKey) {
+            result[index++] = 0L;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    /***所有的值，无序*/
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<V>(size);
+        if (hasZeroKey) {
+            result.add(zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                result.add((V) values[i]);
+            }
+        }
+        return result;
+    }
+
+    /***转成普通的 Map，给需要 Map 的旧接口用*/
+    public Map<Long, V> toMap() {
+        Map<Long, V> result = new HashMap<Long, V>(CollectionUtil.capacity(size));
+        forEach(result::put);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -16,19 +16,15 @@
  */
 package org.stategen.framework.util;
 
-import java.security.MessageDigest;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The Class MD5Util.
- *
+ * 计算由 HashUtil 完成，这里保留原来的方法名
  */
 public class MD5Util {
     final static Logger logger = LoggerFactory.getLogger(MD5Util.class);
-    private final static String md5="MD5";
-    private final static String utf8="UTF-8";
 
     /***
      * 获得md5 String
@@ -37,22 +33,10 @@ public class MD5Util {
      * @return
      */
     public static String md5(String dest) {
-        try {
-            MessageDigest md = MessageDigest.getInstance(md5);
-            md.update(dest.getBytes(utf8));
-            byte[] digest = md.digest();
-            StringBuilder md5 = new StringBuilder();
-            for (int i = 0; i < digest.length; i++) {
-                md5.append(Character.forDigit((digest[i] & 0xF0) >> 4, 16));
-                md5.append(Character.forDigit((digest[i] & 0xF), 16));
-            }
-            dest = md5.toString();
-        } catch (Exception e) {
-            logger.error(
-                new StringBuilder("在运行时产生错误信息,此错误信息表示该相应方法已将相关错误catch了，请尽快修复!\n以下是具体错误产生的原因:").append(e.getMessage())
-                    .append(" \n").toString(), e);
+        if (dest == null) {
+            return null;
         }
-        return dest;
+        return HashUtil.md5Hex(dest);
     }
 
     /**
@@ -63,9 +47,7 @@ public class MD5Util {
      * @throws Exception the exception
      */
     public static byte[] md5Byte(String dest) throws Exception {
-        MessageDigest md = MessageDigest.getInstance(md5);
-        md.update(dest.getBytes("UTF-8"));
-        return md.digest();
+        return HashUtil.md5(dest);
     }
 
 }
@@ -25,11 +25,8 @@ public class PasswordUtil {
     
     
     public static String calcuMd5Password(String password,String passwordRandom){
-        StringBuilder sb =new StringBuilder().append(password);
-        if (StringUtil.isNotBlank(passwordRandom)){
-            sb.append(passwordRandom);
-        }
-        return MD5Util.md5(sb.toString());
+        //与原来 StringBuilder 拼接后再md5的结果相同，password为null时按"null"计算
+        return HashUtil.md5Hex(String.valueOf(password), StringUtil.isNotBlank(passwordRandom) ? passwordRandom : null);
     }
     
     public static String getPasswordRandom(){
@@ -16,13 +16,57 @@
  */
 package org.stategen.framework.util;
 
+import java.lang.management.ManagementFactory;
+import java.security.PrivateKey;
+
 /**
  * The Class RSAKeysTaker.
+ * 密钥对保存在redis中，集群共用；本地缓存一份，登录时不再每次访问redis和解析私钥.
+ * 
+ * <pre>
+ * 1.本地缓存按redis中剩余的过期时间过期，最多 LOCAL_CHECK_SECONDS 与redis核对一次，其它节点重新生成后能及时同步；
+ * 2.redis中没有密钥对时，用 redis 的 setIfAbsent 加锁，整个集群只有一个节点生成，其它节点等待后从redis中读取.
+ * </pre>
  */
 public class RSAKeysTaker {
+    final static org.slf4j.Logger logger                = org.slf4j.LoggerFactory.getLogger(RSAKeysTaker.class);
+
+    public static final String    RSA_KEYPAIR_LOCK      = "RSA_KEYPAIR_LOCK";
+
+    /** 本地缓存最多这么久与redis核对一次 */
+    public static final long      LOCAL_CHECK_SECONDS   = 60L;
+
+    /** 生成密钥对的集群锁过期时间，持有锁的节点宕机后最多这么久其它节点可以重新生成 */
+    static final long             GENERATE_LOCK_SECONDS = 10L;
+
+    static final long             WAIT_MILLIS           = 50L;
+
+    static final int              WAIT_TIMES            = 100;
+
+    static final class CachedKeys {
+        final String     publicKeyString;
+        final String     privateKeyString;
+        final PrivateKey privateKey;
+        /** System.nanoTime()，到时要重新与redis核对 */
+        final long       checkAt;
+
+        CachedKeys(String publicKeyString, String privateKeyString, PrivateKey privateKey, long ttlSeconds) {
+            this.publicKeyString = publicKeyString;
+            this.privateKeyString = privateKeyString;
+            this.privateKey = privateKey;
+            long checkSeconds = ttlSeconds > 0 ? Math.min(ttlSeconds, LOCAL_CHECK_SECONDS) : LOCAL_CHECK_SECONDS;
+            this.checkAt = System.nanoTime() + checkSeconds * 1000000000L;
+        }
+
+        boolean isValid() {
+            return System.nanoTime() - checkAt < 0;
+        }
+    }
 
     private String              rsaKeyName            = null;
 
+    private volatile CachedKeys cachedKeys            = null;
+
     public RSAKeysTaker(String rsaKeyName) {
         AssertUtil.mustNotNull(rsaKeyName);
         this.rsaKeyName = rsaKeyName;
@@ -36,39 +80,111 @@ public class RSAKeysTaker {
         return genAndSaveRsaKeyPairToRedis(true);
     }
 
-    private String getRsaPrivateKey() {
-        return genAndSaveRsaKeyPairToRedis(false);
-    }
-
     public String getCleanPassword(Boolean passwordEncoded, String password) {
         if (passwordEncoded != null && passwordEncoded) {
-            String rsaPrivateKey = getRsaPrivateKey();
-            password = RSAUtil.decrypt(rsaPrivateKey, password);
+            password = decrypt(password);
         }
         return password;
     }
 
-    public String decrypt(String base64String) throws Exception {
-        String privateKeyString = getRsaPrivateKey();
-        return RSAUtil.decrypt(privateKeyString, base64String);
+    public String decrypt(String base64String) {
+        PrivateKey privateKey = getCachedKeys().privateKey;
+        if (privateKey != null) {
+            return RSAUtil.decrypt(privateKey, base64String);
+        }
+        return null;
     }
 
     public String genAndSaveRsaKeyPairToRedis(boolean isPublic) {
-        String rsaKey = isPublic ? RSAUtil.RSA_KEYPAIR_PUBLIC : RSAUtil.RSA_KEYPAIR_PRIVATE;
-        String rsaValue = RedisTemplateUtil.get(buildRedisKeyName(rsaKey));
-
-        if (StringUtil.isEmpty(rsaValue)) {
-            RSAKeyPair rsaKeypair = RSAUtil.generateKeyPair();
-            String publicKeyString = rsaKeypair.getPublicKeyString();
-            String privateKeyString = rsaKeypair.getPrivateKeyString();
-            RedisTemplateUtil.put(buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PUBLIC), publicKeyString, RSAUtil.RSA_KEYPAIR_SECONDS);
-            RedisTemplateUtil.put(buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PRIVATE), privateKeyString, RSAUtil.RSA_KEYPAIR_SECONDS);
-            rsaValue = isPublic ? publicKeyString : privateKeyString;
+        CachedKeys keys = getCachedKeys();
+        return isPublic ? keys.publicKeyString : keys.privateKeyString;
+    }
+
+    /***清除本地缓存，下次使用时重新从redis中读取*/
+    public void clearLocalCache() {
+        cachedKeys = null;
+    }
+
+    private CachedKeys getCachedKeys() {
+        CachedKeys keys = cachedKeys;
+        if (keys != null && keys.isValid()) {
+            return keys;
+        }
+        synchronized (this) {
+            keys = cachedKeys;
+            if (keys == null || !keys.isValid()) {
+                keys = loadOrGenerate(keys);
+                cachedKeys = keys;
+            }
+            return keys;
+        }
+    }
+
+    private CachedKeys loadOrGenerate(CachedKeys old) {
+        CachedKeys keys = loadFromRedis(old);
+        if (keys != null) {
+            return keys;
+        }
+
+        String lockKey = buildRedisKeyName(RSA_KEYPAIR_LOCK);
+        Boolean locked = RedisTemplateUtil.putIfAbsent(lockKey, ManagementFactory.getRuntimeMXBean().getName(), GENERATE_LOCK_SECONDS);
+        //redis出错时返回null，这时只能自己生成
+        if (locked == null || locked) {
+            try {
+                keys = loadFromRedis(old);
+                return keys != null ? keys : generateAndSave();
+            } finally {
+                if (locked != null) {
+                    RedisTemplateUtil.del(lockKey);
+                }
+            }
+        }
+
+        //其它节点正在生成，等它写入redis
+        for (int i = 0; i < WAIT_TIMES; i++) {
+            try {
+                Thread.sleep(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            keys = loadFromRedis(old);
+            if (keys != null) {
+                return keys;
+            }
         }
-        return rsaValue;
+        logger.warn(new StringBuilder("等待其它节点生成密钥对超时，本节点生成:").append(rsaKeyName).toString());
+        return generateAndSave();
+    }
+
+    private CachedKeys loadFromRedis(CachedKeys old) {
+        String privateKeyName = buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PRIVATE);
+        String privateKeyString = RedisTemplateUtil.get(privateKeyName);
+        String publicKeyString = RedisTemplateUtil.get(buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PUBLIC));
+        if (StringUtil.isEmpty(privateKeyString) || StringUtil.isEmpty(publicKeyString)) {
+            return null;
+        }
+
+        long ttlSeconds = 0L;
+        try {
+            ttlSeconds = RedisTemplateUtil.getExpireSeconds(privateKeyName);
+        } catch (Exception e) {
+            logger.error(new StringBuilder("redis读取过期时间出错:").append(privateKeyName).toString(), e);
+        }
+
+        PrivateKey privateKey = old != null && privateKeyString.equals(old.privateKeyString) ? old.privateKey
+            : RSAUtil.getPrivateKey(privateKeyString);
+        return new CachedKeys(publicKeyString, privateKeyString, privateKey, ttlSeconds);
+    }
+
+    private CachedKeys generateAndSave() {
+        RSAKeyPair rsaKeypair = RSAUtil.generateKeyPair();
+        String publicKeyString = rsaKeypair.getPublicKeyString();
+        String privateKeyString = rsaKeypair.getPrivateKeyString();
+        //先写私钥，其它节点读到公钥时私钥一定已存在
+        RedisTemplateUtil.put(buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PRIVATE), privateKeyString, RSAUtil.RSA_KEYPAIR_SECONDS);
+        RedisTemplateUtil.put(buildRedisKeyName(RSAUtil.RSA_KEYPAIR_PUBLIC), publicKeyString, RSAUtil.RSA_KEYPAIR_SECONDS);
+        return new CachedKeys(publicKeyString, privateKeyString, rsaKeypair.getPrivateKey(), RSAUtil.RSA_KEYPAIR_SECONDS);
     }
-    
-    
-    
 
 }
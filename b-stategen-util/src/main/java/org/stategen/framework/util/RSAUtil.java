@@ -45,9 +45,20 @@ public class RSAUtil {
     //每天过期1次
     public static final long RSA_KEYPAIR_SECONDS = 3600*24L;
         
+    /** Cipher非线程安全，每个线程一个，每次使用前都会重新init */
+    private static final ThreadLocal<Cipher> RSA_CIPHERS = new ThreadLocal<Cipher>();
+
+    /** 解析后的公钥/私钥，key为base64字符串，同时在用的密钥只有几对 */
+    private static final ConcurrentCache<String, PublicKey> PUBLIC_KEYS = new ConcurrentCache<String, PublicKey>(64);
+
+    private static final ConcurrentCache<String, PrivateKey> PRIVATE_KEYS = new ConcurrentCache<String, PrivateKey>(64);
 
     private static Cipher getRSACipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
-        Cipher cipher = Cipher.getInstance(RSA_NAME);
+        Cipher cipher = RSA_CIPHERS.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(RSA_NAME);
+            RSA_CIPHERS.set(cipher);
+        }
         return cipher;
     }
 
@@ -72,13 +83,20 @@ public class RSAUtil {
     }
 
     /**
-     * 得到公钥
+     * 得到公钥，解析后缓存
      * 
      * @param key
      *            密钥字符串（经过base64编码）
      * @throws Exception
      */
     public static PublicKey getPublicKey(String key) {
+        if (StringUtil.isEmpty(key)) {
+            return null;
+        }
+        return PUBLIC_KEYS.computeIfAbsent(key, RSAUtil::parsePublicKey);
+    }
+
+    private static PublicKey parsePublicKey(String key) {
         byte[] keyBytes;
         keyBytes = Base64Util.decodeFromString(key);
         X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
@@ -95,13 +113,20 @@ public class RSAUtil {
     }
 
     /**
-     * 得到私钥
+     * 得到私钥，解析后缓存
      * 
      * @param key
      *            密钥字符串（经过base64编码）
      * @throws Exception
      */
     public static PrivateKey getPrivateKey(String key) {
+        if (StringUtil.isEmpty(key)) {
+            return null;
+        }
+        return PRIVATE_KEYS.computeIfAbsent(key, RSAUtil::parsePrivateKey);
+    }
+
+    private static PrivateKey parsePrivateKey(String key) {
         byte[] keyBytes;
         keyBytes = Base64Util.decodeFromString(key);
         PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(keyBytes);
@@ -39,7 +39,11 @@ public final class RedisTemplateUtil {
     
     public void setRedisTemplate(RedisTemplate<String, Object> redisTemplate) {
         RedisTemplateUtil.redisTemplate = redisTemplate;
-    }    
+    }
+
+    public static RedisTemplate<String, Object> getRedisTemplate() {
+        return redisTemplate;
+    }
   
     /** 
      * 写入缓存 
@@ -57,6 +61,18 @@ public final class RedisTemplateUtil {
         }  
     }  
     
+    /** 
+     * 不存在时才写入，可以用作简单的集群锁 
+     * @return 写入成功返回true，已存在返回false，redis出错返回null
+     */  
+    public static Boolean putIfAbsent(final String key, final Object value, long expireSeconds) {  
+        try {
+            return redisTemplate.opsForValue().setIfAbsent(key, value, expireSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.error("向redis内放置object出错，请检查是否实现了接口Serializable?", e);
+            return null;
+        }  
+    }  
   
     /** 
      * 读取缓存 ,如果类型不正确，则返回null
@@ -31,13 +31,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.commons.beanutils.ConvertUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.ReflectionUtils;
-import org.springframework.util.ReflectionUtils.FieldCallback;
-import org.springframework.util.ReflectionUtils.FieldFilter;
 import org.springframework.util.ReflectionUtils.MethodCallback;
 import org.springframework.util.ReflectionUtils.MethodFilter;
 
@@ -103,28 +101,16 @@ public class ReflectionUtil {
         if (target == null) {
             return null;
         }
-        Class<?> targetClass = getClass(target);
-        Field    theField;
-        try {
-            theField = targetClass.getDeclaredField(fieldName);
-            return setAccess(theField);
-        } catch (NoSuchFieldException e) {
-        }
-        return findField(targetClass.getSuperclass(), fieldName);
+        Field theField = ClassMetadata.of(getClass(target)).getField(fieldName);
+        return theField != null ? setAccess(theField) : null;
     }
 
+    /***返回可修改的副本，数据来自 ClassMetadata 中预先建好的索引*/
     public static List<Field> getAllDeclaredFields(Class<?> targetClass) {
-        List<Field> result = new ArrayList<Field>(32);
-        while (targetClass != null && targetClass != Object.class) {
-            Field[] declaredFields = targetClass.getDeclaredFields();
-            if (CollectionUtil.isNotEmpty(declaredFields)) {
-                for (Field field : declaredFields) {
-                    result.add(field);
-                }
-            }
-            targetClass = targetClass.getSuperclass();
+        if (targetClass == null) {
+            return new ArrayList<Field>(0);
         }
-        return result;
+        return new ArrayList<Field>(ClassMetadata.of(targetClass).getAllDeclaredFields());
     }
 
     /**
@@ -139,14 +125,8 @@ public class ReflectionUtil {
             return null;
         }
 
-        Class<?> targetClass = getClass(target);
-        Method   theMethod;
-        try {
-            theMethod = targetClass.getDeclaredMethod(methodName);
-            return setAccess(theMethod);
-        } catch (NoSuchMethodException e) {
-            return findMethod(targetClass.getSuperclass(), methodName);
-        }
+        Method theMethod = ClassMetadata.of(getClass(target)).getNoArgMethod(methodName);
+        return theMethod != null ? setAccess(theMethod) : null;
     }
 
     /**
@@ -240,16 +220,8 @@ public class ReflectionUtil {
         if (target == null) {
             return null;
         }
-        Class<?> targetClass = getClass(target);
-        Field[]  fields      = targetClass.getDeclaredFields();
-
-        for (Field field : fields) {
-            Annotation tmpAnn = field.getAnnotation(ann);
-            if (tmpAnn != null) {
-                return setAccess(field);
-            }
-        }
-        return findField(targetClass.getSuperclass(), ann);
+        Field theField = ClassMetadata.of(getClass(target)).getAnnotatedField(ann);
+        return theField != null ? setAccess(theField) : null;
     }
 
     /**
@@ -492,41 +464,23 @@ public class ReflectionUtil {
         }
     }
 
+    /***返回可修改的副本，数据来自 ClassMetadata 中预先建好的索引*/
     public static Map<String, Method> getGetterNameMethods(Class<?> currentType) {
-        Map<String, Method> getterNameMethodMap = new LinkedHashMap<String, Method>(64);
-        doWithMethods(currentType, new MethodCallback() {
-            @Override
-            public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
-                String getterMethodFeildName = ReflectionUtil.isAndGetGetterMethodFeildName(method);
-                getterNameMethodMap.put(getterMethodFeildName, method);
-
-            }
-        }, new MethodFilter() {
-            @Override
-            public boolean matches(Method method) {
-                String getterMethodFeildName = ReflectionUtil.isAndGetGetterMethodFeildName(method);
-                return StringUtil.isNotEmpty(getterMethodFeildName) && !getterNameMethodMap.containsKey(getterMethodFeildName);
-            }
-        });
-
-        return getterNameMethodMap;
+        return new LinkedHashMap<String, Method>(ClassMetadata.of(currentType).getGetterNameMethods());
     }
 
+    /***返回可修改的副本，数据来自 ClassMetadata 中预先建好的索引*/
     public static Map<String, Field> getFieldNameFieldMap(Class<?> currentType) {
-        Map<String, Field> fieldNameFieldMap = new LinkedHashMap<String, Field>(64);
-        ReflectionUtils.doWithFields(currentType, new FieldCallback() {
-            @Override
-            public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
-                fieldNameFieldMap.put(field.getName(), field);
-            }
-        }, new FieldFilter() {
-            @Override
-            public boolean matches(Field field) {
-                return !fieldNameFieldMap.containsKey(field.getName());
-            }
-        });
+        return new LinkedHashMap<String, Field>(ClassMetadata.of(currentType).getFieldNameFields());
+    }
 
-        return fieldNameFieldMap;
+    /***
+     * 无参构造的 Supplier，public 类用 LambdaMetafactory 直接调用构造函数，
+     * 否则退化为 BeanUtils.instantiateClass，每次生成代价较大，应由调用方缓存
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Supplier<T> newInstanceSupplier(Class<T> cls) {
+        return (Supplier<T>) BeanCopier.createTargetCreator(cls);
     }
 
     public static String getJavaConsoleLink(AccessibleObject accessibleObject) {
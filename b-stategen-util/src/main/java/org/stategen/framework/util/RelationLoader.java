@@ -0,0 +1,388 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.stategen.framework.lite.PageList;
+
+/***
+ * 关联数据的批量加载器，一般一个请求(或一个方法)内new一个，先登记多个 assign/merge，再调用 load 一次性加载.
+ *
+ * <pre>
+ * 1.同一个 provider + serviceByIdsFun 登记多次时，key 合并去重，并且已加载过的key不再查询；
+ * 2.key 按 batchSize 分块，避免数据库 IN 的个数超限或单条sql过大；
+ * 3.默认(executor 为null)所有分块都在调用线程中依次执行，事务、数据源路由等 ThreadLocal 不受影响；
+ * 4.指定 executor 时(如 ServiceUtil.newParallelRelationLoader)并发执行，调用线程也参与，
+ *   同时执行的分块不超过 parallelism，避免一次加载占满数据库连接池；
+ *   分块在其它线程执行时拿不到调用线程的 ThreadLocal，provider 中的查询方法应是无事务要求的只读查询；
+ * 5.getRequestScoped 取得的loader保存在 ThreadLocal 中，ServiceUtil 的 interal* 方法都用它，一个请求内多次调用时
+ *   已查过的id不再查询，查出的对象在请求内共用；与 BatchLoader 一样由 MultiFilter 在请求结束时清空.
+ * </pre>
+ *
+ * 非线程安全.
+ *
+ * @author XiaZhengsheng
+ */
+public class RelationLoader {
+
+    /***以 provider 和 serviceByIdsFun 的实例区分一个关联，同一个方法引用要用同一个实例(如常量)才能合并*/
+    static final class ByIdsRelation {
+        final Object                                          provider;
+        final BiFunction<Object, List<Object>, List<Object>> serviceByIdsFun;
+        final Function<Object, Object>                        resultGetIdFun;
+
+        ByIdsRelation(Object provider, BiFunction<Object, List<Object>, List<Object>> serviceByIdsFun,
+                      Function<Object, Object> resultGetIdFun) {
+            this.provider = provider;
+            this.serviceByIdsFun = serviceByIdsFun;
+            this.resultGetIdFun = resultGetIdFun;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(provider) * 31 + System.identityHashCode(serviceByIdsFun);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ByIdsRelation)) {
+                return false;
+            }
+            ByIdsRelation other = (ByIdsRelation) obj;
+            return provider == other.provider && serviceByIdsFun == other.serviceByIdsFun;
+        }
+    }
+
+    /***一个分块的查询，结果由 onLoaded 在调用线程中处理*/
+    static final class ChunkJob {
+        final Supplier<List<Object>> query;
+        final Consumer<List<Object>> onLoaded;
+        List<Object>                 results;
+
+        ChunkJob(Supplier<List<Object>> query, Consumer<List<Object>> onLoaded) {
+            this.query = query;
+            this.onLoaded = onLoaded;
+        }
+    }
+
+    private static final ThreadLocal<RelationLoader>      REQUEST_LOADER = ThreadLocalUtil.createLocalThread();
+
+    private final int                                      batchSize;
+
+    private final Executor                                 executor;
+
+    private final int                                      parallelism;
+
+    /** 已加载的结果，key为id，查不到的id不放入 */
+    private final Map<ByIdsRelation, Map<Object, Object>> loadedResults = new HashMap<ByIdsRelation, Map<Object, Object>>();
+
+    /** 已查询过的id，包括查不到的 */
+    private final Map<ByIdsRelation, Set<Object>>         loadedKeys    = new HashMap<ByIdsRelation, Set<Object>>();
+
+    private final Map<ByIdsRelation, Set<Object>>         pendingKeys   = new LinkedHashMap<ByIdsRelation, Set<Object>>();
+
+    private final List<ChunkJob>                           pendingJobs   = new ArrayList<ChunkJob>();
+
+    private final List<Runnable>                           pendingApplies = new ArrayList<Runnable>();
+
+    /** load 执行中，其间嵌套的 getRequestScoped 不能再用本loader */
+    private boolean                                        loading;
+
+    /***所有分块在调用线程中执行*/
+    public RelationLoader() {
+        this(ServiceUtil.getBatchSize(), null);
+    }
+
+    /***
+     * @param batchSize 每次查询最多的key个数
+     * @param executor 为null时所有分块都在调用线程中执行
+     */
+    public RelationLoader(int batchSize, Executor executor) {
+        this(batchSize, executor, ServiceUtil.getRelationParallelism());
+    }
+
+    /***
+     * @param parallelism 最多同时执行的分块数，包括调用线程
+     */
+    public RelationLoader(int batchSize, Executor executor, int parallelism) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0 ,but it is :" + batchSize);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0 ,but it is :" + parallelism);
+        }
+        this.batchSize = batchSize;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /***
+     * 取当前请求中共用的loader(分块在调用线程中执行)，没有时创建.
+     * 同一请求中修改了关联数据后需要重新查询的，先调用 clearRequestScoped；
+     * 该loader正在load时(如 serviceByIdsFun 中又调用了 interal* 方法)，返回一个不共用的新loader
+     */
+    public static RelationLoader getRequestScoped() {
+        RelationLoader loader = REQUEST_LOADER.get();
+        if (loader == null) {
+            loader = new RelationLoader();
+            REQUEST_LOADER.set(loader);
+        } else if (loader.loading) {
+            return new RelationLoader();
+        }
+        return loader;
+    }
+
+    /***不在web请求中(如定时任务)用到 getRequestScoped(包括 ServiceUtil 的 interal* 方法)时，用完后调用该方法清空*/
+    public static void clearRequestScoped() {
+        REQUEST_LOADER.remove();
+    }
+
+    /***
+     * 登记，load时查出来赋值给一个子项,比如 把teacher 查出来赋给student的属性 teacher
+     */
+    @SuppressWarnings("unchecked")
+    public <D, T, K, S> RelationLoader assignBeanTo(Collection<D> dests, Function<? super D, K> destGetMethod, BiConsumer<D, T> destSetMethod,
+                                                    S provider, BiFunction<S, List<K>, List<T>> serviceByIdsFun,
+                                                    Function<? super T, K> resultGetIdFun) {
+        if (CollectionUtil.isNotEmpty(dests)) {
+            ByIdsRelation relation = addPendingKeys(CollectionUtil.toSet(dests, destGetMethod), provider, serviceByIdsFun, resultGetIdFun);
+            pendingApplies.add(() -> {
+                Map<K, T> results = (Map<K, T>) loadedResults.get(relation);
+                if (CollectionUtil.isNotEmpty(results)) {
+                    CollectionUtil.setModelByMap(dests, results, destGetMethod, destSetMethod);
+                }
+            });
+        }
+        return this;
+    }
+
+    /***
+     * 登记，load时查出来与dests互相merge，相当于联合查询
+     */
+    public <D, T, K, S> RelationLoader mergeBeanTo(Collection<D> dests, Function<? super D, K> destGetMethod, S provider,
+                                                   BiFunction<S, List<K>, List<T>> serviceByIdsFun, Function<? super T, K> resultGetIdFun) {
+        if (CollectionUtil.isNotEmpty(dests)) {
+            Map<K, List<D>> destsGroup = CollectionUtil.toGroup(dests, destGetMethod);
+            ByIdsRelation relation = addPendingKeys(destsGroup.keySet(), provider, serviceByIdsFun, resultGetIdFun);
+            pendingApplies.add(() -> {
+                Map<Object, Object> results = loadedResults.get(relation);
+                if (CollectionUtil.isNotEmpty(results)) {
+                    for (Map.Entry<K, List<D>> entry : destsGroup.entrySet()) {
+                        Object t = results.get(entry.getKey());
+                        if (t != null) {
+                            for (D d : entry.getValue()) {
+                                CopyUtil.merge(t, d);
+                                CopyUtil.merge(d, t);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        return this;
+    }
+
+    /***
+     * 登记，load时查出来赋值给一个子项,比如 把students 查出来赋给teacher的属性 students.
+     * 分块时每块用 query 的一个拷贝查询，maxLenth 是每块的最大条数；这种查询条件各不相同，不与其它登记合并
+     */
+    @SuppressWarnings("unchecked")
+    public <D, T, G, S extends BaseService<T>> RelationLoader assignBeansTo(Collection<D> dests, Function<? super D, G> destGetMethod,
+                                                                            BiConsumer<D, List<T>> destSetMethod, S provider, T query,
+                                                                            BiConsumer<T, List<G>> resultSetQueryIdsFun,
+                                                                            Function<? super T, G> resultGetGoupIdFun, Integer maxLenth) {
+        if (CollectionUtil.isNotEmpty(dests)) {
+            Set<G> keys = CollectionUtil.toSet(dests, destGetMethod);
+            if (keys.isEmpty()) {
+                return this;
+            }
+            List<List<G>> chunks = chunk(new ArrayList<G>(keys), batchSize);
+            List<T> results = new ArrayList<T>();
+            for (List<G> chunk : chunks) {
+                T chunkQuery = chunks.size() > 1 ? CopyUtil.copy(query, (Class<T>) query.getClass()) : query;
+                resultSetQueryIdsFun.accept(chunkQuery, chunk);
+                pendingJobs.add(new ChunkJob(() -> {
+                    PageList<T> pageList = provider.getPageList(chunkQuery, maxLenth, 1);
+                    return (List<Object>) pageList.getItems();
+                }, items -> {
+                    if (items != null) {
+                        results.addAll((List<T>) items);
+                    }
+                }));
+            }
+            pendingApplies.add(() -> {
+                if (CollectionUtil.isNotEmpty(results)) {
+                    Map<G, List<T>> resultGroup = CollectionUtil.toGroup(results, resultGetGoupIdFun);
+                    CollectionUtil.setListByMap(dests, resultGroup, destGetMethod, destSetMethod);
+                }
+            });
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, T, S> ByIdsRelation addPendingKeys(Set<K> keys, S provider, BiFunction<S, List<K>, List<T>> serviceByIdsFun,
+                                                   Function<? super T, K> resultGetIdFun) {
+        ByIdsRelation relation = new ByIdsRelation(provider, (BiFunction<Object, List<Object>, List<Object>>) (Object) serviceByIdsFun,
+            (Function<Object, Object>) resultGetIdFun);
+        Set<Object> loaded = loadedKeys.get(relation);
+        Set<Object> pending = pendingKeys.get(relation);
+        if (pending == null) {
+            pending = new LinkedHashSet<Object>();
+            pendingKeys.put(relation, pending);
+        }
+        for (K key : keys) {
+            if (loaded == null || !loaded.contains(key)) {
+                pending.add(key);
+            }
+        }
+        return relation;
+    }
+
+    /***
+     * 加载所有登记的关联，并赋值给各自的dests；可以继续登记再次load，已加载过的id不会再查；
+     * 查询出错时本次的id不算已加载，下次load重新查询
+     */
+    public void load() {
+        Map<ByIdsRelation, Set<Object>> loadingKeys = new HashMap<ByIdsRelation, Set<Object>>();
+        for (Map.Entry<ByIdsRelation, Set<Object>> entry : pendingKeys.entrySet()) {
+            ByIdsRelation relation = entry.getKey();
+            Set<Object> keys = entry.getValue();
+            if (keys.isEmpty()) {
+                continue;
+            }
+            Set<Object> loaded = loadedKeys.get(relation);
+            if (loaded == null) {
+                loaded = new HashSet<Object>();
+                loadedKeys.put(relation, loaded);
+                loadedResults.put(relation, new HashMap<Object, Object>());
+            }
+            loaded.addAll(keys);
+            loadingKeys.put(relation, keys);
+            Map<Object, Object> results = loadedResults.get(relation);
+            for (List<Object> chunk : chunk(new ArrayList<Object>(keys), batchSize)) {
+                pendingJobs.add(new ChunkJob(() -> relation.serviceByIdsFun.apply(relation.provider, chunk), items -> {
+                    if (items != null) {
+                        for (Object t : items) {
+                            if (t != null) {
+                                results.put(relation.resultGetIdFun.apply(t), t);
+                            }
+                        }
+                    }
+                }));
+            }
+        }
+        pendingKeys.clear();
+
+        List<ChunkJob> jobs = new ArrayList<ChunkJob>(pendingJobs);
+        List<Runnable> applies = new ArrayList<Runnable>(pendingApplies);
+        pendingJobs.clear();
+        pendingApplies.clear();
+
+        boolean wasLoading = loading;
+        loading = true;
+        try {
+            execute(jobs, executor, parallelism);
+        } catch (RuntimeException | Error e) {
+            for (Map.Entry<ByIdsRelation, Set<Object>> entry : loadingKeys.entrySet()) {
+                loadedKeys.get(entry.getKey()).removeAll(entry.getValue());
+            }
+            throw e;
+        } finally {
+            loading = wasLoading;
+        }
+        for (ChunkJob job : jobs) {
+            job.onLoaded.accept(job.results);
+        }
+        for (Runnable apply : applies) {
+            apply.run();
+        }
+    }
+
+    /***
+     * executor为null、parallelism为1或只有一块时都在调用线程中执行；
+     * 否则提交 min(块数,parallelism)-1 个worker到executor，加上调用线程依次领取分块执行，同时执行的不超过 parallelism
+     */
+    static void execute(List<ChunkJob> jobs, Executor executor, int parallelism) {
+        int size = jobs.size();
+        int workers = Math.min(size, parallelism);
+        if (workers <= 1 || executor == null) {
+            for (ChunkJob job : jobs) {
+                job.results = job.query.get();
+            }
+            return;
+        }
+
+        AtomicInteger nextJob = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int i; (i = nextJob.getAndIncrement()) < size;) {
+                ChunkJob job = jobs.get(i);
+                job.results = job.query.get();
+            }
+        };
+        Thread caller = Thread.currentThread();
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(workers - 1);
+        for (int i = 0; i < workers - 1; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    //线程池中的线程没有 MultiFilter 清理，查询中嵌套用到的 getRequestScoped 在这里清空
+                    if (Thread.currentThread() != caller) {
+                        clearRequestScoped();
+                    }
+                }
+            }, executor));
+        }
+        try {
+            worker.run();
+        } catch (RuntimeException | Error e) {
+            //不再领取新的分块，等已开始的执行完，避免调用方返回后仍在查询
+            nextJob.set(size);
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).exceptionally(t -> null).join();
+            throw e;
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    static <K> List<List<K>> chunk(List<K> keys, int batchSize) {
+        int size = keys.size();
+        if (size <= batchSize) {
+            List<List<K>> result = new ArrayList<List<K>>(1);
+            result.add(keys);
+            return result;
+        }
+        List<List<K>> result = new ArrayList<List<K>>((size + batchSize - 1) / batchSize);
+        for (int i = 0; i < size; i += batchSize) {
+            result.add(new ArrayList<K>(keys.subList(i, Math.min(size, i + batchSize))));
+        }
+        return result;
+    }
+}
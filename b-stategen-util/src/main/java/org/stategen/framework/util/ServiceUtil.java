@@ -1,27 +1,114 @@
 package org.stategen.framework.util;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
-import org.stategen.framework.lite.PageList;
-
 public class ServiceUtil {
 
+    final static org.slf4j.Logger logger           = org.slf4j.LoggerFactory.getLogger(ServiceUtil.class);
+
+    /** 默认每次查询最多的key个数，oracle的IN最多1000个 */
+    public static final int       DEFAULT_BATCH_SIZE = 500;
+
+    /** 默认一次并发加载最多同时执行的分块数 */
+    public static final int       DEFAULT_RELATION_PARALLELISM = 4;
+
+    private static volatile int   batchSize        = DEFAULT_BATCH_SIZE;
+
+    private static volatile int   relationParallelism = DEFAULT_RELATION_PARALLELISM;
+
+    private static volatile Executor relationExecutor;
+
+    public static int getBatchSize() {
+        return batchSize;
+    }
+
+    public static void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0 ,but it is :" + batchSize);
+        }
+        ServiceUtil.batchSize = batchSize;
+    }
+
+    public static int getRelationParallelism() {
+        return relationParallelism;
+    }
+
+    /***
+     * 一次并发加载(newParallelRelationLoader)最多同时执行的分块数，包括调用线程，应小于数据库连接池的大小
+     */
+    public static void setRelationParallelism(int relationParallelism) {
+        if (relationParallelism <= 0) {
+            throw new IllegalArgumentException("relationParallelism must be greater than 0 ,but it is :" + relationParallelism);
+        }
+        ServiceUtil.relationParallelism = relationParallelism;
+    }
+
+    /***
+     * 关联分块并发查询用的线程池，可以用spring配置的线程池替换
+     */
+    public static void setRelationExecutor(Executor relationExecutor) {
+        ServiceUtil.relationExecutor = relationExecutor;
+    }
+
+    /***
+     * 默认为有界的线程池(最多 CPU核数*2 个线程)，线程用完时在调用线程中执行，嵌套调用也不会死锁
+     */
+    public static Executor getRelationExecutor() {
+        Executor executor = relationExecutor;
+        if (executor == null) {
+            synchronized (ServiceUtil.class) {
+                executor = relationExecutor;
+                if (executor == null) {
+                    executor = createRelationExecutor();
+                    relationExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static Executor createRelationExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            r -> {
+                Thread thread = new Thread(r, "relation-loader-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        return threadPoolExecutor;
+    }
+
+    /***新建一个关联加载器，可以登记多个关联后一次load，同一关联的key合并去重，所有分块在调用线程中依次查询*/
+    public static RelationLoader newRelationLoader() {
+        return new RelationLoader();
+    }
+
+    /***
+     * 同 newRelationLoader，但分块提交到 getRelationExecutor 并发查询，最多同时 getRelationParallelism 块；
+     * 其它线程中拿不到调用线程的事务、数据源路由等 ThreadLocal，只用于无事务要求的只读查询
+     */
+    public static RelationLoader newParallelRelationLoader() {
+        return new RelationLoader(getBatchSize(), getRelationExecutor(), getRelationParallelism());
+    }
+
+    /***
+     * 以下 interal* 方法都用 RelationLoader.getRequestScoped，同一个请求内多次调用时已查过的id不再查询
+     */
     public static <D, T, K, S> void interalAssignBeanTo(Collection<D> dests, Function<? super D, K> destGetMethod, BiConsumer<D, T> destSetMethod,
                                                         S provider, BiFunction<S, List<K>, List<T>> serviceByIdsFun,
                                                         Function<? super T, K> resultGetIdFun) {
         if (CollectionUtil.isNotEmpty(dests)) {
-            Set<K> keys = CollectionUtil.toSet(dests, destGetMethod);
-            List<T> results = serviceByIdsFun.apply(provider, new ArrayList<K>(keys));
-            if (CollectionUtil.isNotEmpty(results)) {
-                CollectionUtil.setModelByList(dests, results, destGetMethod, destSetMethod, resultGetIdFun);
-            }
+            RelationLoader.getRequestScoped().assignBeanTo(dests, destGetMethod, destSetMethod, provider, serviceByIdsFun, resultGetIdFun).load();
         }
     }
 
@@ -30,33 +117,16 @@ public class ServiceUtil {
                                                                                 BiConsumer<T, List<G>> resultSetQueryIdsFun,
                                                                                 Function<? super T, G> resultGetGoupIdFun, Integer maxLenth) {
         if (CollectionUtil.isNotEmpty(dests)) {
-            Set<G> keys = CollectionUtil.toSet(dests, destGetMethod);
-            resultSetQueryIdsFun.accept(query, new ArrayList<G>(keys));
-            PageList<T> pageList = provider.getPageList(query, maxLenth, 1);
-            List<T> results = pageList.getItems();
-            if (CollectionUtil.isNotEmpty(results)) {
-                Map<G, List<T>> resultGroup = CollectionUtil.toGroup(results, resultGetGoupIdFun);
-                CollectionUtil.setListByMap(dests, resultGroup, destGetMethod, destSetMethod);
-            }
+            RelationLoader.getRequestScoped()
+                .assignBeansTo(dests, destGetMethod, destSetMethod, provider, query, resultSetQueryIdsFun, resultGetGoupIdFun, maxLenth)
+                .load();
         }
     }
 
     public static <D, T, K, S> void interalMergeBeanTo(Collection<D> dests, Function<? super D, K> destGetMethod, S provider,
                                                        BiFunction<S, List<K>, List<T>> serviceByIdsFun, Function<? super T, K> resultGetIdFun) {
         if (CollectionUtil.isNotEmpty(dests)) {
-            Map<K, List<D>> destsGroup = CollectionUtil.toGroup(dests, destGetMethod);
-            Set<K> keys = destsGroup.keySet();
-            List<T> results = serviceByIdsFun.apply(provider, new ArrayList<K>(keys));
-            for (T t : results) {
-                K id = resultGetIdFun.apply(t);
-                List<D> destSub = destsGroup.get(id);
-                if (CollectionUtil.isNotEmpty(destSub)) {
-                    for (D d : destSub) {
-                        CopyUtil.merge(t, d);
-                        CopyUtil.merge(d, t);
-                    }
-                }
-            }
+            RelationLoader.getRequestScoped().mergeBeanTo(dests, destGetMethod, provider, serviceByIdsFun, resultGetIdFun).load();
         }
     }
 
@@ -0,0 +1,526 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/***
+ * 以long型id索引的树，用来代替 TreeUtil.makeTree 对整棵大树(组织、地区等)的反复构建.
+ *
+ * <pre>
+ * 1.put 可以按任意顺序放入节点，子节点先于父节点到达时，先挂在父id的占位节点下，
+ *   所以可以直接从 Iterator/Stream 一遍建好，不需要先把所有数据放进 Map；
+ * 2.父节点不存在(如 pid 为 0)的节点作为根，getParent 为null；
+ * 3.put/move/remove 只修改所在位置的链接，不重建整棵树；
+ * 4.先序(Euler tour)编号在修改后的第一次查询时重新计算，之后
+ *   isAncestor 为 O(1)，getAncestor(id, depth) 为 O(log n)，getSubtree 为 O(子树大小)；
+ * 5.所有遍历都不递归，很深的树也不会栈溢出；
+ * 6.修改非线程安全，建好后只读时可以被多个线程同时查询.
+ * </pre>
+ *
+ * <pre>
+ * TreeIndex&lt;Region&gt; regionIndex = TreeUtil.index(regionDao.streamAll(), Region::getRegionId, Region::getParentId);
+ * regionIndex.isAncestor(provinceId, cityId);
+ * List&lt;Region&gt; path = regionIndex.getPath(cityId);
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class TreeIndex<T> {
+
+    final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TreeIndex.class);
+
+    static final class Node<T> {
+        final long id;
+
+        /** null 表示还没有放入，只是子节点引用到的占位节点 */
+        T          item;
+
+        /** 所在链表的上级，可能是虚拟根节点或占位节点 */
+        Node<T>    parent;
+
+        Node<T>    firstChild;
+
+        Node<T>    lastChild;
+
+        Node<T>    prev;
+
+        Node<T>    next;
+
+        int        enter;
+
+        int        exit;
+
+        int        depth;
+
+        Node(long id) {
+            this.id = id;
+        }
+    }
+
+    private final Function<? super T, ? extends Number> idGetMethod;
+
+    private final Function<? super T, ? extends Number> pidGetMethod;
+
+    private final LongObjectMap<Node<T>>                nodes;
+
+    /** 被引用到但还没有放入的父id，其子节点作为根 */
+    private final LongObjectMap<Node<T>>                placeholders = new LongObjectMap<Node<T>>();
+
+    /** 所有父节点不存在的节点都挂在它下面 */
+    private final Node<T>                               virtualRoot  = new Node<T>(0L);
+
+    private int                                         size;
+
+    private volatile boolean                            dirty        = true;
+
+    /** 先序排列的节点 */
+    private Node<T>[]                                   order;
+
+    /** 每一层节点在 order 中的下标，升序 */
+    private int[][]                                     depthEnters;
+
+    public TreeIndex(Function<? super T, ? extends Number> idGetMethod, Function<? super T, ? extends Number> pidGetMethod) {
+        this(idGetMethod, pidGetMethod, 16);
+    }
+
+    /***
+     * @param expectedSize 预计的节点个数
+     */
+    public TreeIndex(Function<? super T, ? extends Number> idGetMethod, Function<? super T, ? extends Number> pidGetMethod, int expectedSize) {
+        this.idGetMethod = idGetMethod;
+        this.pidGetMethod = pidGetMethod;
+        this.nodes = new LongObjectMap<Node<T>>(expectedSize);
+    }
+
+    /***逐个放入，只遍历一遍*/
+    public TreeIndex<T> putAll(Iterator<? extends T> items) {
+        if (items != null) {
+            while (items.hasNext()) {
+                T item = items.next();
+                if (item != null) {
+                    put(item);
+                }
+            }
+        }
+        return this;
+    }
+
+    /***
+     * 放入或替换一个节点，pid 改变时移到新的父节点下.
+     * 如果新的父节点是它自己的子孙(数据有环)，作为根节点放入
+     * @return 原来同id的节点
+     */
+    public T put(T item) {
+        long id = getId(item);
+        Node<T> node = nodes.get(id);
+        boolean isNew = node == null || node.item == null;
+        T old = null;
+        if (node == null) {
+            node = new Node<T>(id);
+            nodes.put(id, node);
+        } else if (node.item == null) {
+            placeholders.remove(id);
+        } else {
+            old = node.item;
+        }
+        node.item = item;
+
+        Node<T> parent = getOrCreateParent(pidGetMethod.apply(item), id);
+        if (isNew || node.parent != parent) {
+            if (isInSubtree(parent, node)) {
+                logger.warn(new StringBuilder("parent of node ").append(id).append(" is its descendant, put it as a root").toString());
+                parent = virtualRoot;
+            }
+            if (!isNew) {
+                unlink(node);
+            }
+            link(parent, node);
+        }
+        if (isNew) {
+            size++;
+        }
+        dirty = true;
+        return old;
+    }
+
+    /***
+     * 把节点移到 newPid 下，newPid 为null或不存在时作为根，只修改索引，不修改 item 中的 pid
+     * @throws IllegalArgumentException 节点不存在，或者 newPid 是它的子孙
+     */
+    public void move(long id, Number newPid) {
+        Node<T> node = nodes.get(id);
+        if (node == null || node.item == null) {
+            throw new IllegalArgumentException("node is not exists :" + id);
+        }
+        Node<T> parent = getOrCreateParent(newPid, id);
+        if (parent == node.parent) {
+            return;
+        }
+        if (isInSubtree(parent, node)) {
+            throw new IllegalArgumentException("can not move node " + id + " under its descendant :" + newPid);
+        }
+        unlink(node);
+        link(parent, node);
+        dirty = true;
+    }
+
+    /***
+     * 删除节点及其所有子孙
+     * @return 删除的节点，先序
+     */
+    public List<T> remove(long id) {
+        Node<T> node = nodes.get(id);
+        if (node == null || node.item == null) {
+            return new ArrayList<T>(0);
+        }
+        unlink(node);
+        List<T> removed = new ArrayList<T>();
+        Node<T> current = node;
+        while (current != null) {
+            removed.add(current.item);
+            nodes.remove(current.id);
+            current = nextInSubtree(current, node);
+        }
+        size -= removed.size();
+        dirty = true;
+        return removed;
+    }
+
+    private long getId(T item) {
+        Number id = idGetMethod.apply(item);
+        if (id == null) {
+            throw new IllegalArgumentException("id of tree node can not be null :" + item);
+        }
+        return id.longValue();
+    }
+
+    private Node<T> getOrCreateParent(Number pid, long id) {
+        if (pid == null || pid.longValue() == id) {
+            return virtualRoot;
+        }
+        long parentId = pid.longValue();
+        Node<T> parent = nodes.get(parentId);
+        if (parent == null) {
+            parent = new Node<T>(parentId);
+            nodes.put(parentId, parent);
+            placeholders.put(parentId, parent);
+        }
+        return parent;
+    }
+
+    /***node 是否是 candidate 自己或者它的祖先*/
+    private boolean isInSubtree(Node<T> candidate, Node<T> node) {
+        for (Node<T> current = candidate; current != null && current != virtualRoot; current = current.parent) {
+            if (current == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void link(Node<T> parent, Node<T> node) {
+        node.parent = parent;
+        node.next = null;
+        node.prev = parent.lastChild;
+        if (parent.lastChild != null) {
+            parent.lastChild.next = node;
+        } else {
+            parent.firstChild = node;
+        }
+        parent.lastChild = node;
+    }
+
+    private void unlink(Node<T> node) {
+        Node<T> parent = node.parent;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            parent.firstChild = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            parent.lastChild = node.prev;
+        }
+        node.parent = null;
+        node.prev = null;
+        node.next = null;
+        //占位节点下没有子节点了就不再需要
+        if (parent.item == null && parent != virtualRoot && parent.firstChild == null) {
+            placeholders.remove(parent.id);
+            nodes.remove(parent.id);
+        }
+    }
+
+    /***在以 top 为根的子树中先序的下一个节点，不包括 top 之外的节点*/
+    private static <T> Node<T> nextInSubtree(Node<T> current, Node<T> top) {
+        if (current.firstChild != null) {
+            return current.firstChild;
+        }
+        while (current != top) {
+            if (current.next != null) {
+                return current.next;
+            }
+            current = current.parent;
+        }
+        return null;
+    }
+
+    private void ensureIndexed() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    reindex();
+                    dirty = false;
+                }
+            }
+        }
+    }
+
+    /***重新计算先序编号，先是正常的根，然后是父节点不存在的根*/
+    @SuppressWarnings("unchecked")
+    private void reindex() {
+        Node<T>[] order = new Node[size];
+        int[] depthCounts = new int[16];
+        int index = 0;
+        List<Node<T>> containers = new ArrayList<Node<T>>(placeholders.size() + 1);
+        containers.add(virtualRoot);
+        containers.addAll(placeholders.values());
+        for (Node<T> container : containers) {
+            Node<T> node = container.firstChild;
+            int depth = 0;
+            while (node != null) {
+                node.enter = index;
+                node.depth = depth;
+                order[index++] = node;
+                if (depth == depthCounts.length) {
+                    depthCounts = Arrays.copyOf(depthCounts, depth << 1);
+                }
+                depthCounts[depth]++;
+                if (node.firstChild != null) {
+                    node = node.firstChild;
+                    depth++;
+                    continue;
+                }
+                while (true) {
+                    node.exit = index - 1;
+                    if (node.next != null) {
+                        node = node.next;
+                        break;
+                    }
+                    node = node.parent;
+                    depth--;
+                    if (node == container) {
+                        node = null;
+                        break;
+                    }
+                }
+            }
+        }
+
+        int maxDepth = 0;
+        while (maxDepth < depthCounts.length && depthCounts[maxDepth] > 0) {
+            maxDepth++;
+        }
+        int[][] depthEnters = new int[maxDepth][];
+        for (int depth = 0; depth < maxDepth; depth++) {
+            depthEnters[depth] = new int[depthCounts[depth]];
+        }
+        int[] positions = new int[maxDepth];
+        for (int i = 0; i < index; i++) {
+            int depth = order[i].depth;
+            depthEnters[depth][positions[depth]++] = i;
+        }
+        this.order = order;
+        this.depthEnters = depthEnters;
+    }
+
+    private Node<T> getNode(long id) {
+        Node<T> node = nodes.get(id);
+        return node != null && node.item != null ? node : null;
+    }
+
+    private static <T> T itemOf(Node<T> node) {
+        return node != null ? node.item : null;
+    }
+
+    public T get(long id) {
+        return itemOf(getNode(id));
+    }
+
+    public boolean contains(long id) {
+        return getNode(id) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public T getParent(long id) {
+        Node<T> node = getNode(id);
+        return node != null ? node.parent.item : null;
+    }
+
+    public List<T> getChildren(long id) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return new ArrayList<T>(0);
+        }
+        List<T> result = new ArrayList<T>();
+        for (Node<T> child = node.firstChild; child != null; child = child.next) {
+            result.add(child.item);
+        }
+        return result;
+    }
+
+    /***所有的根节点，包括父节点不存在的节点*/
+    public List<T> getRoots() {
+        ensureIndexed();
+        List<T> result = new ArrayList<T>(depthEnters.length > 0 ? depthEnters[0].length : 0);
+        if (depthEnters.length > 0) {
+            for (int enter : depthEnters[0]) {
+                result.add(order[enter].item);
+            }
+        }
+        return result;
+    }
+
+    /***根节点的深度为0，节点不存在时返回-1*/
+    public int getDepth(long id) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return -1;
+        }
+        ensureIndexed();
+        return node.depth;
+    }
+
+    /***从根到该节点(包括自己)的路径*/
+    public List<T> getPath(long id) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return new ArrayList<T>(0);
+        }
+        List<T> result = new ArrayList<T>();
+        for (Node<T> current = node; current != null && current.item != null; current = current.parent) {
+            result.add(current.item);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /***
+     * ancestorId 是否是 id 的祖先或者它自己，O(1)
+     */
+    public boolean isAncestor(long ancestorId, long id) {
+        Node<T> ancestor = getNode(ancestorId);
+        Node<T> node = getNode(id);
+        if (ancestor == null || node == null) {
+            return false;
+        }
+        ensureIndexed();
+        return ancestor.enter <= node.enter && node.enter <= ancestor.exit;
+    }
+
+    private Node<T> getAncestor(Node<T> node, int depth) {
+        if (depth < 0 || depth > node.depth) {
+            return null;
+        }
+        if (depth == node.depth) {
+            return node;
+        }
+        //先序中，depth 层上 enter 不大于 node.enter 的最后一个节点就是祖先
+        int[] enters = depthEnters[depth];
+        int low = 0;
+        int high = enters.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (enters[middle] <= node.enter) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return order[enters[low]];
+    }
+
+    /***
+     * 在 depth 层上的祖先，depth 为0时是根，O(log n)
+     */
+    public T getAncestor(long id, int depth) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return null;
+        }
+        ensureIndexed();
+        return itemOf(getAncestor(node, depth));
+    }
+
+    /***最近的公共祖先，不在同一棵树中时返回null，O(log² n)*/
+    public T getCommonAncestor(long id, long otherId) {
+        Node<T> node = getNode(id);
+        Node<T> other = getNode(otherId);
+        if (node == null || other == null) {
+            return null;
+        }
+        ensureIndexed();
+        int low = 0;
+        int high = Math.min(node.depth, other.depth);
+        if (getAncestor(node, 0) != getAncestor(other, 0)) {
+            return null;
+        }
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getAncestor(node, middle) == getAncestor(other, middle)) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return itemOf(getAncestor(node, low));
+    }
+
+    /***该节点及其所有子孙，先序*/
+    public List<T> getSubtree(long id) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return new ArrayList<T>(0);
+        }
+        ensureIndexed();
+        List<T> result = new ArrayList<T>(node.exit - node.enter + 1);
+        for (int i = node.enter; i <= node.exit; i++) {
+            result.add(order[i].item);
+        }
+        return result;
+    }
+
+    /***子孙个数，不包括自己，O(1)*/
+    public int getDescendantCount(long id) {
+        Node<T> node = getNode(id);
+        if (node == null) {
+            return 0;
+        }
+        ensureIndexed();
+        return node.exit - node.enter;
+    }
+
+    /***
+     * 按先序对每一个父子关系调用 addChildMethod，把索引中的关系设置到对象上
+     * @return 根节点
+     */
+    public List<T> linkTo(BiConsumer<T, T> addChildMethod) {
+        ensureIndexed();
+        for (Node<T> node : order) {
+            T parent = node.parent.item;
+            if (parent != null) {
+                addChildMethod.accept(parent, node.item);
+            }
+        }
+        return getRoots();
+    }
+}
@@ -17,10 +17,13 @@
 package org.stategen.framework.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * The Class TreeUtil.
@@ -60,8 +63,37 @@ public class TreeUtil {
         }
         return null;
     }
-    
-    
+
+    /***
+     * 一遍遍历建树，不需要先把所有数据放进 Map，子节点可以先于父节点出现，
+     * id、pid 为 Long 或 Integer，父节点不存在的作为根
+     */
+    public static <T> List<T> makeTree(Iterator<T> source, Function<? super T, ? extends Number> idGetMethod,
+                                       Function<? super T, ? extends Number> pidGetMethod, BiConsumer<T, T> addChildMethod) {
+        return index(source, idGetMethod, pidGetMethod).linkTo(addChildMethod);
+    }
+
+    public static <T> List<T> makeTree(Stream<T> source, Function<? super T, ? extends Number> idGetMethod,
+                                       Function<? super T, ? extends Number> pidGetMethod, BiConsumer<T, T> addChildMethod) {
+        return index(source, idGetMethod, pidGetMethod).linkTo(addChildMethod);
+    }
+
+    /***建立可增量修改、可快速查询祖先和子树的索引，见 TreeIndex*/
+    public static <T> TreeIndex<T> index(Iterator<T> source, Function<? super T, ? extends Number> idGetMethod,
+                                         Function<? super T, ? extends Number> pidGetMethod) {
+        return new TreeIndex<T>(idGetMethod, pidGetMethod).putAll(source);
+    }
+
+    public static <T> TreeIndex<T> index(Stream<T> source, Function<? super T, ? extends Number> idGetMethod,
+                                         Function<? super T, ? extends Number> pidGetMethod) {
+        if (source == null) {
+            return new TreeIndex<T>(idGetMethod, pidGetMethod);
+        }
+        try (Stream<T> stream = source) {
+            return index(stream.iterator(), idGetMethod, pidGetMethod);
+        }
+    }
+
     public static <T> T getRoot(T dest, Function<? super T, T> parentGetMethod){
         if (dest==null){
             return null;
@@ -90,10 +122,11 @@ public class TreeUtil {
         List<T> result =new ArrayList<T>();
         T t = sources.get(id);
         while (t!=null){
-            result.add(0,t);
+            result.add(t);
             id = getParentIdMethod.apply(t);
             t =sources.get(id);
         }
+        Collections.reverse(result);
         return result;
     }
     
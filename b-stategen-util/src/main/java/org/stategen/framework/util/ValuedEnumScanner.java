@@ -16,7 +16,9 @@
  */
 package org.stategen.framework.util;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.stategen.framework.lite.ClassUtil;
 import org.stategen.framework.lite.ValuedEnum;
@@ -25,23 +27,54 @@ import org.stategen.framework.lite.ValuedEnum;
 /**
  * The Class ValuedEnumScanner.
  * 该类用来配合ibatis将数字int 或其它类型转换为java 枚举，该类可用spring 注册，也可以实例化后调用 setPackages
+ * <pre>
+ * 启动时各个包并行扫描，找到的枚举在调用线程中依次建立 EnumIndex，之后的查询不再反射；
+ * 没有扫描到的枚举在第一次查询时建立索引，结果相同.
+ * </pre>
  * @author Xia Zhengsheng
  */
 public class ValuedEnumScanner {
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    public  void setPackages(List<String> packages){
-        if (CollectionUtil.isNotEmpty(packages)){
+    final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ValuedEnumScanner.class);
+
+    public void setPackages(List<String> packages) {
+        if (CollectionUtil.isNotEmpty(packages)) {
+            long start = System.currentTimeMillis();
+            //ForkJoin 线程的 ContextClassLoader 不一定是web应用的，扫描时换成当前线程的
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            List<CompletableFuture<List<Class<?>>>> futures = new ArrayList<CompletableFuture<List<Class<?>>>>(packages.size());
             for (String packageName : packages) {
-                List<Class<?>> classes = ClassUtil.getClasses(packageName);
-                for (Class<?> clz : classes) {
-                    if (ValuedEnum.class.isAssignableFrom(clz)){
-                        Class<? extends ValuedEnum> veClass =(Class<? extends ValuedEnum>) clz;
-                        EnumUtil.registValuedEnum(veClass);
-                    }
-                }
+                futures.add(CompletableFuture.supplyAsync(() -> scan(packageName, classLoader)));
+            }
+            List<Class<?>> valuedEnumClasses = new ArrayList<Class<?>>();
+            for (CompletableFuture<List<Class<?>>> future : futures) {
+                valuedEnumClasses.addAll(future.join());
+            }
+            //建索引会读取枚举常量，在公共ForkJoin池中做可能与调用线程互相等待类初始化而死锁，所以在调用线程中依次建立
+            for (Class<?> valuedEnumClass : valuedEnumClasses) {
+                EnumIndex.ofType(valuedEnumClass);
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info(new StringBuilder("indexed ").append(valuedEnumClasses.size()).append(" ValuedEnums in ")
+                    .append(System.currentTimeMillis() - start).append(" ms").toString());
             }
         }
     }
 
+    static List<Class<?>> scan(String packageName, ClassLoader classLoader) {
+        Thread currentThread = Thread.currentThread();
+        ClassLoader old = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(classLoader);
+        try {
+            List<Class<?>> result = new ArrayList<Class<?>>();
+            for (Class<?> clz : ClassUtil.getClasses(packageName)) {
+                if (clz.isEnum() && ValuedEnum.class.isAssignableFrom(clz)) {
+                    result.add(clz);
+                }
+            }
+            return result;
+        } finally {
+            currentThread.setContextClassLoader(old);
+        }
+    }
 
 }
@@ -0,0 +1,207 @@
+package org.stategen.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnnotationUtilTst {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ ElementType.TYPE, ElementType.METHOD })
+    public @interface Marker {
+        String value();
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @Inherited
+    public @interface Owner {
+        String value();
+    }
+
+    @Owner("base")
+    public static class Base {
+        @Marker("base.test1")
+        public String test1() {
+            return null;
+        }
+
+        public String test2() {
+            return null;
+        }
+    }
+
+    public static class Sub extends Base {
+        @Override
+        public String test1() {
+            return null;
+        }
+
+        @Override
+        public String test2() {
+            return null;
+        }
+    }
+
+    /***测试时由单独的类加载器加载，模拟 webapp 中定义的标注*/
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ ElementType.TYPE, ElementType.METHOD })
+    public @interface WebappMarker {
+        String value();
+    }
+
+    @Marker("other")
+    public static class Other extends Sub {
+        @Override
+        public String test2() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Method subTest1 = Sub.class.getMethod("test1");
+        //方法上没有，从父方法中找
+        Assert.assertEquals("base.test1", AnnotationUtil.getAnnotation(subTest1, Marker.class).value());
+        Assert.assertEquals("base.test1", AnnotationUtil.getMethodOrOwnerAnnotation(subTest1, Marker.class).value());
+        //方法及父方法上都没有，取类上的
+        Method otherTest2 = Other.class.getMethod("test2");
+        Assert.assertEquals("other", AnnotationUtil.getMethodOrOwnerAnnotation(otherTest2, Marker.class).value());
+        Assert.assertNull(AnnotationUtil.getMethodOrOwnerAnnotation(Sub.class.getMethod("test2"), Marker.class));
+        Assert.assertEquals("base", AnnotationUtil.getAnnotationUntilSupper(Other.class, Owner.class).value());
+        Assert.assertNull(AnnotationUtil.getAnnotationUntilSupper(Sub.class, Marker.class));
+
+        //同一个方法的不同Method实例命中同一个缓存
+        Assert.assertSame(AnnotationUtil.getAnnotation(subTest1, Marker.class),
+            AnnotationUtil.getAnnotation(Sub.class.getMethod("test1"), Marker.class));
+
+        //索引在首次访问类时一次建好，包括尚未查询过的member
+        AnnotationUtil.ClassAnnotations classAnnotations = new AnnotationUtil.ClassAnnotations(Other.class);
+        Assert.assertEquals(Other.class.getDeclaredMethods().length + Other.class.getDeclaredConstructors().length,
+            classAnnotations.members.size());
+        Assert.assertNotNull(classAnnotations.get(Other.class.getMethod("test2")));
+        Assert.assertNull(classAnnotations.get(Other.class.getMethod("test1")));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        Method[] methods = { Base.class.getMethod("test1"), Base.class.getMethod("test2"), Sub.class.getMethod("test1"),
+                             Sub.class.getMethod("test2"), Other.class.getMethod("test1"), Other.class.getMethod("test2") };
+        Class<?>[] classes = { Base.class, Sub.class, Other.class };
+        Marker[] expectedMarkers = new Marker[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            expectedMarkers[i] = AnnotationUtil.getMethodOrOwnerAnnotation(methods[i], Marker.class);
+        }
+
+        int threads = 16;
+        int times = 20000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+        for (int j = 0; j < threads; j++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < times; i++) {
+                    int index = random.nextInt(methods.length);
+                    Assert.assertSame(expectedMarkers[index], AnnotationUtil.getMethodOrOwnerAnnotation(methods[index], Marker.class));
+                    Class<?> clz = classes[random.nextInt(classes.length)];
+                    Assert.assertEquals("base", AnnotationUtil.getAnnotationUntilSupper(clz, Owner.class).value());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testClassUnloading() throws Exception {
+        WeakReference<ClassLoader> loaderRef = lookupInIsolatedLoader();
+        for (int i = 0; i < 50 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull("缓存不应钉住类加载器", loaderRef.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WeakReference<ClassLoader> lookupInIsolatedLoader() throws Exception {
+        ClassLoader loader = new IsolatedLoader(Arrays.asList(Sub.class.getName(), WebappMarker.class.getName()),
+            AnnotationUtilTst.class.getClassLoader());
+        Class<?> isolated = loader.loadClass(Sub.class.getName());
+        Assert.assertNotSame(Sub.class, isolated);
+        Method test1 = isolated.getMethod("test1");
+        Assert.assertEquals("base.test1", AnnotationUtil.getMethodOrOwnerAnnotation(test1, Marker.class).value());
+        Assert.assertEquals("base", AnnotationUtil.getAnnotationUntilSupper(isolated, Owner.class).value());
+
+        //标注类型也在隔离的类加载器中，查找会走到父加载器中的 Base、Object，不能在它们上面缓存
+        Class<? extends Annotation> webappMarker = (Class<? extends Annotation>) loader.loadClass(WebappMarker.class.getName());
+        Assert.assertNotSame(WebappMarker.class, webappMarker);
+        Assert.assertNull(AnnotationUtil.getAnnotationUntilSupper(isolated, webappMarker));
+        Assert.assertNull(AnnotationUtil.getMethodOrOwnerAnnotation(test1, webappMarker));
+        Assert.assertNull(AnnotationUtil.getMethodOrOwnerAnnotation(Base.class.getMethod("test1"), webappMarker));
+        Assert.assertNull(AnnotationUtil.getAnnotation(Base.class, webappMarker));
+        Assert.assertFalse(AnnotationUtil.canCache(Base.class, webappMarker));
+        Assert.assertTrue(AnnotationUtil.canCache(isolated, webappMarker));
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    /***只重新定义指定的类，其它类委托给parent，模拟热部署时的webapp类加载器*/
+    static class IsolatedLoader extends ClassLoader {
+        private final List<String> classNames;
+
+        IsolatedLoader(List<String> classNames, ClassLoader parent) {
+            super(parent);
+            this.classNames = classNames;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!classNames.contains(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+                String resource = name.replace('.', '/') + ".class";
+                try (InputStream in = getParent().getResourceAsStream(resource)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    for (int read; (read = in.read(buffer)) > 0;) {
+                        out.write(buffer, 0, read);
+                    }
+                    byte[] bytes = out.toByteArray();
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.stategen.framework.lite.PageList;
+
+public class BatchLoaderTst {
+
+    public static class User {
+        private Long       userId;
+        private String     name;
+        /** 查询条件 */
+        private List<Long> userIds;
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Long userId) {
+            this.userId = userId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        public void setUserIds(List<Long> userIds) {
+            this.userIds = userIds;
+        }
+    }
+
+    /***模拟数据库，id为0的用户不存在*/
+    public static class UserService implements BaseService<User> {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Integer> sizes = new ArrayList<Integer>();
+
+        @Override
+        public User insert(User t) {
+            return t;
+        }
+
+        @Override
+        public User update(User t) {
+            return t;
+        }
+
+        @Override
+        public PageList<User> getPageList(User query, int pageSize, int pageNum) {
+            calls.incrementAndGet();
+            List<User> items = new ArrayList<User>();
+            List<Long> userIds = query.getUserIds();
+            if (userIds == null) {
+                userIds = Arrays.asList(query.getUserId());
+            }
+            synchronized (sizes) {
+                sizes.add(userIds.size());
+            }
+            for (Long userId : userIds) {
+                if (userId != 0L) {
+                    User user = new User();
+                    user.setUserId(userId);
+                    user.setName("user" + userId);
+                    items.add(user);
+                }
+            }
+            return new PageList<User>(items, pageNum, pageSize, items.size());
+        }
+    }
+
+    @Test
+    public void testLoadInLoop() {
+        UserService userService = new UserService();
+        BatchLoader<Long, User> userLoader = new BatchLoader<Long, User>(userService, User::new, User::setUserIds, User::getUserId);
+        List<Supplier<User>> users = new ArrayList<Supplier<User>>();
+        for (long i = 0; i < 100; i++) {
+            users.add(userLoader.load(i % 20));
+        }
+        Assert.assertEquals(0, userService.calls.get());
+        Assert.assertNull(users.get(0).get());
+        Assert.assertEquals("user19", users.get(99).get().getName());
+        //100次load，20个不同id，一次查询
+        Assert.assertEquals(1, userService.calls.get());
+        Assert.assertEquals(Integer.valueOf(20), userService.sizes.get(0));
+
+        //同一id不再查询，查不到的id也不再查询
+        Assert.assertEquals("user5", userLoader.get(5L).getName());
+        Assert.assertNull(userLoader.get(0L));
+        Map<Long, User> all = userLoader.getAll(Arrays.asList(1L, 2L, 30L));
+        Assert.assertEquals(2, userService.calls.get());
+        Assert.assertEquals(Integer.valueOf(1), userService.sizes.get(1));
+        Assert.assertEquals(3, all.size());
+
+        userLoader.clear(5L);
+        Assert.assertEquals("user5", userLoader.get(5L).getName());
+        Assert.assertEquals(3, userService.calls.get());
+    }
+
+    @Test
+    public void testChunks() {
+        UserService userService = new UserService();
+        BatchLoader<Long, User> userLoader = new BatchLoader<Long, User>(userService, User::new, User::setUserIds, User::getUserId, 30,
+            ServiceUtil.getRelationExecutor());
+        List<Long> userIds = new ArrayList<Long>();
+        for (long i = 1; i <= 100; i++) {
+            userIds.add(i);
+        }
+        Map<Long, User> users = userLoader.loadMany(userIds).get();
+        Assert.assertEquals(100, users.size());
+        Assert.assertEquals(4, userService.calls.get());
+        Assert.assertEquals(1, userLoader.getDispatchCount());
+        for (Integer size : userService.sizes) {
+            Assert.assertTrue(size <= 30);
+        }
+    }
+
+    @Test
+    public void testRequestScoped() {
+        UserService userService = new UserService();
+        BatchLoader<Long, User> userLoader = null;
+        for (long i = 1; i <= 10; i++) {
+            //循环中每次取到的是同一个loader
+            BatchLoader<Long, User> loader = userService.getBatchLoader(User::new, User::setUserIds, User::getUserId);
+            if (userLoader != null) {
+                Assert.assertSame(userLoader, loader);
+            }
+            userLoader = loader;
+            userLoader.load(i);
+        }
+        Assert.assertEquals("user3", userLoader.get(3L).getName());
+        Assert.assertEquals(1, userService.calls.get());
+
+        //请求结束时由 MultiFilter 清空
+        ThreadLocalUtil.cleanValuesOnThreadLocals();
+        BatchLoader<Long, User> nextLoader = userService.getBatchLoader(User::new, User::setUserIds, User::getUserId);
+        Assert.assertNotSame(userLoader, nextLoader);
+        Assert.assertEquals("user3", nextLoader.get(3L).getName());
+        Assert.assertEquals(2, userService.calls.get());
+        BatchLoader.clearRequestScoped();
+    }
+
+    /***结果与逐个 getFirst 相同，查询次数从 times 次减少为按批次数*/
+    @Test
+    public void testSameAsGetFirst() {
+        UserService userService = new UserService();
+        int times = 1000;
+        List<User> expected = new ArrayList<User>(times);
+        for (long i = 1; i <= times; i++) {
+            User query = new User();
+            query.setUserId(i);
+            expected.add(userService.getFirst(query));
+        }
+        Assert.assertEquals(times, userService.calls.getAndSet(0));
+
+        BatchLoader<Long, User> userLoader = new BatchLoader<Long, User>(userService, User::new, User::setUserIds, User::getUserId);
+        List<Supplier<User>> users = new ArrayList<Supplier<User>>(times);
+        for (long i = 1; i <= times; i++) {
+            users.add(userLoader.load(i));
+        }
+        for (int i = 0; i < times; i++) {
+            Assert.assertEquals(expected.get(i).getUserId(), users.get(i).get().getUserId());
+            Assert.assertEquals(expected.get(i).getName(), users.get(i).get().getName());
+        }
+        Assert.assertEquals(2, userService.calls.get());
+    }
+}
@@ -0,0 +1,136 @@
+package org.stategen.framework.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.stategen.framework.util.ByteArrayPool.PooledOutputStream;
+
+public class ByteArrayPoolTst {
+
+    /***每次最多返回 step 个字节，模拟网络流*/
+    static InputStream slowStream(byte[] bytes, int step) {
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, step));
+            }
+        };
+    }
+
+    @Test
+    public void testSizeFor() {
+        Assert.assertEquals(ByteArrayPool.DEFAULT_SIZE, ByteArrayPool.sizeFor(0));
+        Assert.assertEquals(ByteArrayPool.DEFAULT_SIZE, ByteArrayPool.sizeFor(ByteArrayPool.DEFAULT_SIZE));
+        Assert.assertEquals(16384, ByteArrayPool.sizeFor(ByteArrayPool.DEFAULT_SIZE + 1));
+        Assert.assertEquals(1 << 30, ByteArrayPool.sizeFor(1 << 30));
+        Assert.assertTrue(ByteArrayPool.borrow(100000).length >= 100000);
+    }
+
+    /***大小请求交替时，小数组留在自己的池中，不会因为不够大被丢弃*/
+    @Test
+    public void testMixedSizesKeepPooled() {
+        byte[] small = ByteArrayPool.borrow(100);
+        ByteArrayPool.release(small);
+        int smallCount = ByteArrayPool.pooledCount(small.length);
+        Assert.assertTrue(smallCount > 0);
+
+        byte[] large = ByteArrayPool.borrow(1024 * 1024);
+        Assert.assertEquals(1024 * 1024, large.length);
+        Assert.assertEquals(smallCount, ByteArrayPool.pooledCount(small.length));
+        int largeCount = ByteArrayPool.pooledCount(large.length);
+        ByteArrayPool.release(large);
+        Assert.assertEquals(largeCount + 1, ByteArrayPool.pooledCount(large.length));
+
+        //不是池中大小的数组不归还
+        ByteArrayPool.release(new byte[10000]);
+        Assert.assertEquals(0, ByteArrayPool.pooledCount(10000));
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        Random random = new Random(5);
+        for (int size : new int[] { 0, 1, 8191, 8192, 8193, 100000 }) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            //长度正确、未知、偏小、偏大
+            for (long expectedLength : new long[] { size, -1, size / 2, size * 2L + 1 }) {
+                try (PooledOutputStream pooled = ByteArrayPool.read(slowStream(bytes, 777), expectedLength)) {
+                    Assert.assertEquals(size, pooled.size());
+                    Assert.assertArrayEquals(bytes, Arrays.copyOf(pooled.getBuffer(), pooled.size()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadLimit() throws IOException {
+        byte[] bytes = new byte[100];
+        //客户端声称的长度很大，实际数据很少，不按声称的长度分配
+        try (PooledOutputStream pooled = ByteArrayPool.read(slowStream(bytes, 7), 1536L * 1024 * 1024, Integer.MAX_VALUE)) {
+            Assert.assertEquals(100, pooled.size());
+            Assert.assertTrue(pooled.getBuffer().length <= ByteArrayPool.MAX_POOLED_SIZE);
+        }
+        try (PooledOutputStream pooled = ByteArrayPool.read(slowStream(bytes, 7), -1, 100)) {
+            Assert.assertEquals(100, pooled.size());
+        }
+
+        for (long expectedLength : new long[] { -1, 50, 101 }) {
+            try {
+                ByteArrayPool.read(slowStream(bytes, 7), expectedLength, 99).close();
+                Assert.fail("too large");
+            } catch (ByteArrayPool.TooLargeException e) {
+                Assert.assertTrue(e.getMessage().contains("max:99"));
+            }
+        }
+        //超过 DEFAULT_SIZE 后在扩容前检查
+        try {
+            ByteArrayPool.read(slowStream(new byte[ByteArrayPool.DEFAULT_SIZE + 1], 1000), -1, ByteArrayPool.DEFAULT_SIZE).close();
+            Assert.fail("too large");
+        } catch (ByteArrayPool.TooLargeException e) {
+            Assert.assertTrue(e.getMessage().contains("length:" + (ByteArrayPool.DEFAULT_SIZE + 1)));
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        PooledOutputStream pooled = ByteArrayPool.newOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            byte[] bytes = new byte[random.nextInt(500)];
+            random.nextBytes(bytes);
+            pooled.write(bytes);
+            expected.write(bytes);
+            pooled.write(i);
+            expected.write(i);
+        }
+        int offset = pooled.reserve(3);
+        pooled.getBuffer()[offset] = 'a';
+        pooled.getBuffer()[offset + 1] = 'b';
+        pooled.skip(2);
+        expected.write('a');
+        expected.write('b');
+
+        Assert.assertArrayEquals(expected.toByteArray(), pooled.toByteArray());
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        pooled.writeTo(copy);
+        Assert.assertArrayEquals(expected.toByteArray(), copy.toByteArray());
+
+        //重复 close 只归还一次
+        pooled.close();
+        pooled.close();
+        try {
+            pooled.write(1);
+            Assert.fail("closed");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("stream closed", e.getMessage());
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package org.stategen.framework.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class CollectionUtilTst {
@@ -94,6 +101,136 @@ public class CollectionUtilTst {
           }
       }
     
+    @Test
+    public void testLongObjectMapSameAsHashMap() {
+        Random random = new Random(11);
+        LongObjectMap<String> longMap = new LongObjectMap<String>(4);
+        Map<Long, String> map = new HashMap<Long, String>();
+        for (int i = 0; i < 200000; i++) {
+            //包括0和负数，范围小以便产生大量冲突和删除
+            long key = random.nextInt(2000) - 1000;
+            String value = String.valueOf(i);
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assert.assertEquals(map.remove(key), longMap.remove(key));
+                    break;
+                case 1:
+                    Assert.assertEquals(map.putIfAbsent(key, value), longMap.putIfAbsent(key, value));
+                    break;
+                default:
+                    Assert.assertEquals(map.put(key, value), longMap.put(key, value));
+            }
+            Assert.assertEquals(map.size(), longMap.size());
+        }
+        for (long key = -1001; key <= 1001; key++) {
+            Assert.assertEquals(map.get(key), longMap.get(key));
+            Assert.assertEquals(map.containsKey(key), longMap.containsKey(key));
+        }
+        Assert.assertEquals(map, longMap.toMap());
+        Assert.assertEquals(map.size(), longMap.keys().length);
+
+        LongHashSet longSet = new LongHashSet(2);
+        Set<Long> set = new LinkedHashSet<Long>();
+        for (int i = 0; i < 10000; i++) {
+            long key = random.nextInt(3000) - 100;
+            Assert.assertEquals(set.add(key), longSet.add(key));
+        }
+        long[] ids = longSet.toArray();
+        int index = 0;
+        for (Long id : set) {
+            Assert.assertEquals(id.longValue(), ids[index++]);
+        }
+    }
+
+    static List<User> createUsers(int count) {
+        List<User> users = new ArrayList<User>(count);
+        for (long i = 0; i < count; i++) {
+            users.add(new User(i, "user" + i, "class" + i % 100, i % (count / 3)));
+        }
+        //id为null的跳过
+        users.add(new User(null, "nobody", null, null));
+        users.add(null);
+        return users;
+    }
+
+    @Test
+    public void testLongAndParallelSameAsBoxed() {
+        List<User> users = createUsers(30000);
+        List<Teacher> teachers = new ArrayList<Teacher>();
+        for (long i = 0; i < 12000; i++) {
+            teachers.add(new Teacher(i, "teacher" + i));
+        }
+        CollectionUtil.setParallelThreshold(1000);
+        try {
+            Map<Long, User> userMap = CollectionUtil.toMap(users, User::getUserId);
+            Assert.assertEquals(userMap, CollectionUtil.toMapParallel(users, User::getUserId));
+            userMap.remove(null);
+            Assert.assertEquals(userMap, CollectionUtil.toLongMap(users, User::getUserId).toMap());
+            Assert.assertEquals(userMap, CollectionUtil.toLongMapParallel(users, User::getUserId).toMap());
+
+            Map<Long, List<User>> group = CollectionUtil.toGroup(users, User::getTeachId);
+            Assert.assertEquals(group, CollectionUtil.toGroupParallel(users, User::getTeachId));
+            group.remove(null);
+            Assert.assertEquals(group, CollectionUtil.toLongGroup(users, User::getTeachId).toMap());
+            Assert.assertEquals(group, CollectionUtil.toLongGroupParallel(users, User::getTeachId).toMap());
+
+            Assert.assertEquals(CollectionUtil.toSet(users, User::getTeachId).size(), CollectionUtil.toLongIds(users, User::getTeachId).length);
+            Assert.assertEquals(0L, CollectionUtil.toLongIds(users, User::getTeachId)[0]);
+
+            CollectionUtil.setModelByLongList(users, teachers, User::getTeachId, User::setTeacher, Teacher::getTeacherId);
+            Assert.assertEquals("teacher9999", users.get(9999).getTeacher().getRealName());
+            CollectionUtil.setModelByMapParallel(users, CollectionUtil.toMap(teachers, Teacher::getTeacherId), User::getTeachId,
+                (user, teacher) -> user.setUserName(teacher.getRealName()));
+            Assert.assertEquals("teacher1", users.get(10001).getUserName());
+            Assert.assertEquals("teacher9998", users.get(29998).getUserName());
+        } finally {
+            CollectionUtil.setParallelThreshold(CollectionUtil.DEFAULT_PARALLEL_THRESHOLD);
+        }
+        //按 expectedSize 预分配的容量
+        Assert.assertEquals(134, CollectionUtil.capacity(100));
+    }
+
+    /***与 HashMap 比较耗时，手动运行；结果一致见 testLongAndParallelSameAsBoxed*/
+    @Ignore
+    @Test
+    public void testCompareWithBoxed() {
+        List<User> users = createUsers(100000);
+        int times = 20;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < times; i++) {
+                Map<Long, User> userMap = CollectionUtil.toMap(users, User::getUserId);
+                for (User user : users) {
+                    if (user != null && user.getTeachId() != null && userMap.get(user.getTeachId()) != null) {
+                        found++;
+                    }
+                }
+            }
+            long boxedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                LongObjectMap<User> userMap = CollectionUtil.toLongMap(users, User::getUserId);
+                for (User user : users) {
+                    if (user != null && user.getTeachId() != null && userMap.get(user.getTeachId()) != null) {
+                        found--;
+                    }
+                }
+            }
+            long longNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                CollectionUtil.toMapParallel(users, User::getUserId);
+            }
+            long parallelNanos = System.nanoTime() - start;
+            System.out.println("toMap<===========>: boxed " + boxedNanos / times / 1000 + " us, long " + longNanos / times / 1000
+                               + " us, parallel " + parallelNanos / times / 1000 + " us (" + users.size() + " items)");
+            Assert.assertEquals(0, found);
+        }
+    }
+
     static class Teacher{
         Long teacherId ;
         
@@ -0,0 +1,70 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentCacheTst {
+
+    @Test
+    public void testBoundAndAdmission() {
+        ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(1000);
+        for (int i = 0; i < 100000; i++) {
+            //每10次访问一次热点key，其余为一次性扫描
+            int key = i % 10 == 0 ? i % 50 : i;
+            if (cache.get(key) == null) {
+                cache.put(key, String.valueOf(key));
+            }
+        }
+        System.out.println("cache<===========>:" + cache);
+        Assert.assertTrue(cache.size() <= 1000);
+        for (int i = 0; i < 50; i += 10) {
+            Assert.assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(10, 50);
+        cache.put(1, "a");
+        cache.put(2, "b", 0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("a", cache.get(1));
+        Thread.sleep(80);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals("b", cache.get(2));
+    }
+
+    @Test
+    public void testComputeIfAbsent() throws InterruptedException, ExecutionException {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<Integer, Integer>(500);
+        Assert.assertEquals(Integer.valueOf(1), cache.computeIfAbsent(1, k -> 1));
+        Assert.assertEquals(Integer.valueOf(1), cache.computeIfAbsent(1, k -> 2));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int j = 0; j < 8; j++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    int key = ThreadLocalRandom.current().nextInt(2000);
+                    Assert.assertEquals(Integer.valueOf(key), cache.computeIfAbsent(key, k -> k));
+                }
+            }));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+        //线程中的断言失败通过 get() 抛出
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        System.out.println("cache<===========>:" + cache);
+        Assert.assertTrue(cache.size() <= 500);
+    }
+}
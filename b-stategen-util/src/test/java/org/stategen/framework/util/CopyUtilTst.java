@@ -0,0 +1,255 @@
+package org.stategen.framework.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.BeanUtils;
+
+public class CopyUtilTst {
+
+    public static class UserDo implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Long         userId;
+        private String       name;
+        private int          age;
+        private Boolean      vip;
+        private List<String> roles;
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Long userId) {
+            this.userId = userId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public Boolean getVip() {
+            return vip;
+        }
+
+        public void setVip(Boolean vip) {
+            this.vip = vip;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+    }
+
+    public static class UserVo {
+        private Long         userId;
+        private String       name;
+        private Integer      age;
+        private Boolean      vip;
+        private List<String> roles;
+        private String       remark;
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Long userId) {
+            this.userId = userId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+
+        public Boolean getVip() {
+            return vip;
+        }
+
+        public void setVip(Boolean vip) {
+            this.vip = vip;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+
+        public String getRemark() {
+            return remark;
+        }
+
+        public void setRemark(String remark) {
+            this.remark = remark;
+        }
+    }
+
+    /***非public的类，走MethodHandle的路径*/
+    static class HiddenVo {
+        private String name;
+        private int    age;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+    }
+
+    private static UserDo createUser(long userId) {
+        UserDo userDo = new UserDo();
+        userDo.setUserId(userId);
+        userDo.setName("name" + userId);
+        userDo.setAge((int) (userId % 100));
+        userDo.setVip(userId % 2 == 0);
+        userDo.setRoles(new ArrayList<String>(Arrays.asList("admin", "user")));
+        return userDo;
+    }
+
+    @Test
+    public void testCopy() {
+        UserVo userVo = CopyUtil.copy(createUser(7L), UserVo.class);
+        Assert.assertEquals(Long.valueOf(7L), userVo.getUserId());
+        Assert.assertEquals("name7", userVo.getName());
+        Assert.assertEquals(Integer.valueOf(7), userVo.getAge());
+        Assert.assertEquals(Boolean.FALSE, userVo.getVip());
+        Assert.assertEquals(2, userVo.getRoles().size());
+        Assert.assertNull(CopyUtil.copy(null, UserVo.class));
+
+        UserVo ignored = CopyUtil.copy(createUser(8L), UserVo.class, "name", "roles");
+        Assert.assertNull(ignored.getName());
+        Assert.assertNull(ignored.getRoles());
+        Assert.assertEquals(Long.valueOf(8L), ignored.getUserId());
+
+        HiddenVo hiddenVo = CopyUtil.copy(createUser(9L), HiddenVo.class);
+        Assert.assertEquals("name9", hiddenVo.getName());
+        Assert.assertEquals(9, hiddenVo.getAge());
+    }
+
+    @Test
+    public void testMerge() {
+        UserVo target = new UserVo();
+        target.setName("keep");
+        target.setRemark("remark");
+        UserDo source = createUser(3L);
+        source.setName(null);
+        CopyUtil.merge(target, source);
+        Assert.assertEquals("keep", target.getName());
+        Assert.assertEquals("remark", target.getRemark());
+        Assert.assertEquals(Long.valueOf(3L), target.getUserId());
+
+        //copy 时null也拷贝
+        CopyUtil.copy(source, target);
+        Assert.assertNull(target.getName());
+    }
+
+    @Test
+    public void testCopyList() {
+        List<UserDo> userDos = new ArrayList<UserDo>();
+        for (long i = 0; i < 100; i++) {
+            userDos.add(createUser(i));
+        }
+        List<UserVo> userVos = CopyUtil.copy(userDos, UserVo.class);
+        Assert.assertEquals(100, userVos.size());
+        Assert.assertEquals("name99", userVos.get(99).getName());
+        Assert.assertEquals(0, CopyUtil.copy(new ArrayList<UserDo>(), UserVo.class).size());
+    }
+
+    /***结果与 spring BeanUtils.copyProperties 相同，同一对类型只分析一次*/
+    @Test
+    public void testSameAsSpring() {
+        UserDo userDo = createUser(11L);
+        UserVo userVo = CopyUtil.copy(userDo, UserVo.class);
+        UserVo expected = new UserVo();
+        BeanUtils.copyProperties(userDo, expected);
+        Assert.assertEquals(expected.getUserId(), userVo.getUserId());
+        Assert.assertEquals(expected.getName(), userVo.getName());
+        Assert.assertEquals(expected.getAge(), userVo.getAge());
+        Assert.assertEquals(expected.getVip(), userVo.getVip());
+        Assert.assertEquals(expected.getRemark(), userVo.getRemark());
+        Assert.assertSame(expected.getRoles(), userVo.getRoles());
+
+        Assert.assertSame(BeanCopier.getCopier(UserDo.class, UserVo.class), BeanCopier.getCopier(UserDo.class, UserVo.class));
+        Assert.assertSame(BeanCopier.getCopier(UserDo.class, UserVo.class, "name", "roles"),
+            BeanCopier.getCopier(UserDo.class, UserVo.class, "roles", "name"));
+        Assert.assertFalse(BeanCopier.getCopier(UserDo.class, UserVo.class) == BeanCopier.getCopier(UserDo.class, UserVo.class, "name"));
+    }
+
+    /***源类型在父加载器、目标类型在webapp加载器时，拷贝计划保存在目标类型上*/
+    @Test
+    public void testPlanOwnedByChildLoaderSide() throws Exception {
+        //UserDo 仍由父加载器加载
+        ClassLoader loader = new AnnotationUtilTst.IsolatedLoader(
+            Arrays.asList(CopyUtilTst.class.getName(), UserVo.class.getName(), HiddenVo.class.getName()), CopyUtilTst.class.getClassLoader());
+        Class<?> webappVo = loader.loadClass(UserVo.class.getName());
+        Assert.assertFalse(webappVo == UserVo.class);
+        Assert.assertSame(UserDo.class, BeanCopier.ownerOf(UserDo.class, UserVo.class));
+        Assert.assertSame(webappVo, BeanCopier.ownerOf(UserDo.class, webappVo));
+        Assert.assertSame(webappVo, BeanCopier.ownerOf(webappVo, UserDo.class));
+
+        Object copied = CopyUtil.copy(createUser(12L), webappVo);
+        Assert.assertSame(webappVo, copied.getClass());
+        Assert.assertEquals("name12", webappVo.getMethod("getName").invoke(copied));
+        Assert.assertSame(BeanCopier.getCopier(UserDo.class, webappVo), BeanCopier.getCopier(UserDo.class, webappVo));
+    }
+
+    @Test
+    public void testDeepCopy() throws IOException {
+        UserDo userDo = createUser(5L);
+        UserDo copied = CopyUtil.deepCopy(userDo);
+        Assert.assertNotSame(userDo, copied);
+        Assert.assertNotSame(userDo.getRoles(), copied.getRoles());
+        Assert.assertEquals(userDo.getRoles(), copied.getRoles());
+        Assert.assertEquals("name5", copied.getName());
+        copied.getRoles().add("guest");
+        Assert.assertEquals(2, userDo.getRoles().size());
+
+        KryoPool.register(UserDo.class);
+        UserDo registered = CopyUtil.deepCopy(userDo);
+        Assert.assertEquals(userDo.getUserId(), registered.getUserId());
+    }
+}
@@ -0,0 +1,84 @@
+package org.stategen.framework.util;
+
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DatetimeUtilTst {
+
+    private static final String[] PATTERNS = { DatetimeUtil.DATE_FORMAT, DatetimeUtil.DATE_FORMAT_CN, DatetimeUtil.TIME_FORMAT,
+                                               DatetimeUtil.TIME_FORMAT_CN, DatetimeUtil.MILLS_FORMAT, DatetimeUtil.MILLS_FORMAT_CN,
+                                               DatetimeUtil.MONTH_FORMAT, DatetimeUtil.DAY_FORMAT, DatetimeUtil.HOUR_FORMAT, "yy/M/d H:m:s",
+                                               "yyyy-MM-dd'T'HH:mm:ss", "EEE, d MMM yyyy HH:mm:ss", "yyyy-MM-dd a hh:mm" };
+
+    /***与 SimpleDateFormat 的输出逐个比较，包括1582年以前和9999年以后的日期*/
+    @Test
+    public void testFormatSameAsSimpleDateFormat() {
+        Random random = new Random(20200605L);
+        long[] fixedMillis = { 0L, -1L, 1L, -12219292800000L, -12219292800001L, 253402300799999L, 253402300800000L,
+                               System.currentTimeMillis() };
+        for (String pattern : PATTERNS) {
+            for (long millis : fixedMillis) {
+                assertSameFormat(new Date(millis), pattern);
+            }
+            for (int i = 0; i < 2000; i++) {
+                assertSameFormat(new Date(random.nextLong() % 300000000000000L), pattern);
+            }
+        }
+    }
+
+    private static void assertSameFormat(Date date, String pattern) {
+        Assert.assertEquals(new SimpleDateFormat(pattern).format(date), DatetimeUtil.format(date, pattern));
+    }
+
+    @Test
+    public void testParse() {
+        Date now = new Date();
+        Assert.assertEquals(DatetimeUtil.formatMills(now), DatetimeUtil.formatMills(DatetimeUtil.parseMills(DatetimeUtil.formatMills(now))));
+        Assert.assertEquals(DatetimeUtil.formatTime(now), DatetimeUtil.formatTime(DatetimeUtil.parseTime(DatetimeUtil.formatTime(now))));
+        Assert.assertEquals(DatetimeUtil.startDay(now), DatetimeUtil.parse(DatetimeUtil.format(now)));
+        Assert.assertEquals("2020-06-01", DatetimeUtil.format(DatetimeUtil.parse("2020-06", DatetimeUtil.MONTH_FORMAT)));
+        Assert.assertEquals("2020-06-05 10:00:00", DatetimeUtil.formatTime(DatetimeUtil.parse("2020-06-05 10时", DatetimeUtil.HOUR_FORMAT)));
+        //S只有一位时不能用 DateTimeFormatter，走 SimpleDateFormat
+        Assert.assertEquals("2020-06-05 10:11:12 005", DatetimeUtil.formatMills(DatetimeUtil.parse("2020-06-05 10:11:12.5", "yyyy-MM-dd HH:mm:ss.S")));
+        Assert.assertEquals("2024-02-29", DatetimeUtil.format(DatetimeUtil.parse("2024-02-29")));
+        Assert.assertEquals("2020-06-05 23:59:59", DatetimeUtil.formatTime(DatetimeUtil.parseTime("2020-06-05 23:59:59")));
+        //超出范围的字段不进位、不截断
+        String[][] invalids = { { "2020-13-01", DatetimeUtil.DATE_FORMAT }, { "2024-02-30", DatetimeUtil.DATE_FORMAT },
+                                { "2023-02-29", DatetimeUtil.DATE_FORMAT }, { "2020-04-31", DatetimeUtil.DATE_FORMAT },
+                                { "2020-06-00", DatetimeUtil.DATE_FORMAT }, { "2020-06-05 24:00:00", DatetimeUtil.TIME_FORMAT },
+                                { "2020-06-05 10:60:00", DatetimeUtil.TIME_FORMAT }, { "2020-02-31 10", "yyyy-MM-dd HH" } };
+        for (String[] invalid : invalids) {
+            try {
+                DatetimeUtil.parse(invalid[0], invalid[1]);
+                Assert.fail(invalid[0] + " should not be parsed");
+            } catch (DateTimeParseException e) {
+                //期望的异常
+            }
+        }
+    }
+
+    @Test
+    public void testResetDefaultTimeZone() {
+        TimeZone old = TimeZone.getDefault();
+        Date date = new Date(1591322400000L);
+        try {
+            for (String id : new String[] { "America/New_York", "Asia/Tokyo" }) {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                DatetimeUtil.resetDefaultTimeZone();
+                for (String pattern : PATTERNS) {
+                    assertSameFormat(date, pattern);
+                }
+                Assert.assertEquals(date, DatetimeUtil.parseTime(new SimpleDateFormat(DatetimeUtil.TIME_FORMAT).format(date)));
+            }
+        } finally {
+            TimeZone.setDefault(old);
+            DatetimeUtil.resetDefaultTimeZone();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.stategen.framework.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.stategen.framework.lite.ValuedEnum;
+import org.stategen.framework.lite.enums.ClientType;
+
+public class EnumUtilTst {
+
+    public enum OrderStatus implements ValuedEnum<Integer> {
+        CREATED(0, "已创建"),
+        PAID(1, "已支付"),
+        SHIPPED(2, "已发货"),
+        CLOSED(9, "已关闭");
+
+        final Integer value;
+        final String  desc;
+
+        OrderStatus(Integer value, String desc) {
+            this.value = value;
+            this.desc = desc;
+        }
+    }
+
+    public enum Operation implements ValuedEnum<String> {
+        PLUS("+") {
+            @Override
+            int apply(int a, int b) {
+                return a + b;
+            }
+        },
+        MINUS("-") {
+            @Override
+            int apply(int a, int b) {
+                return a - b;
+            }
+        };
+
+        final String value;
+
+        Operation(String value) {
+            this.value = value;
+        }
+
+        abstract int apply(int a, int b);
+    }
+
+    public enum Color {
+        RED, GREEN
+    }
+
+    @Test
+    public void testValueOf() {
+        Assert.assertSame(OrderStatus.PAID, EnumUtil.valueOf(OrderStatus.class, "1"));
+        Assert.assertSame(OrderStatus.PAID, EnumUtil.valueOf(OrderStatus.class, " 1 "));
+        Assert.assertSame(OrderStatus.CLOSED, EnumUtil.valueOf(OrderStatus.class, 9));
+        Assert.assertNull(EnumUtil.valueOf(OrderStatus.class, 5));
+        Assert.assertNull(EnumUtil.valueOf(OrderStatus.class, -1));
+        //按name也能查到
+        Assert.assertSame(OrderStatus.SHIPPED, EnumUtil.valueOf(OrderStatus.class, "SHIPPED"));
+        Assert.assertNull(EnumUtil.valueOf(OrderStatus.class, "3"));
+        Assert.assertNull(EnumUtil.valueOf(OrderStatus.class, ""));
+        Assert.assertNull(EnumUtil.valueOf(OrderStatus.class, (String) null));
+
+        Assert.assertSame(Operation.MINUS, EnumUtil.valueOf(Operation.class, "-"));
+        Assert.assertSame(Operation.PLUS, EnumUtil.valueOf(Operation.PLUS.getClass(), "PLUS"));
+        Assert.assertEquals("-", EnumUtil.getValue(Operation.MINUS));
+        Assert.assertEquals(Integer.valueOf(2), EnumUtil.getValue(OrderStatus.SHIPPED));
+
+        Assert.assertSame(ClientType.IOS, EnumUtil.valueOf(ClientType.class, "IOS"));
+        Assert.assertSame(Color.GREEN, EnumUtil.valueOf(Color.class, "GREEN"));
+        Assert.assertNull(EnumUtil.valueOf(Color.class, "BLUE"));
+        Assert.assertNull(EnumUtil.valueOf(String.class, "abc"));
+    }
+
+    @Test
+    public void testDescAndValuesMap() {
+        Map<OrderStatus, String> descMap = EnumUtil.getEnumValueDescList(OrderStatus.class);
+        Assert.assertEquals(Arrays.asList(OrderStatus.values()), Arrays.asList(descMap.keySet().toArray()));
+        Assert.assertEquals("已关闭", descMap.get(OrderStatus.CLOSED));
+        Assert.assertEquals("安卓", EnumUtil.getEnumValueDescList(ClientType.class).get(ClientType.ANDROID));
+
+        List<EnumUtil.EnumValuesMap<OrderStatus>> enums = EnumUtil.getEnumsByEnumType(OrderStatus.class);
+        Assert.assertEquals(4, enums.size());
+        EnumUtil.EnumValuesMap<OrderStatus> paid = enums.get(1);
+        Assert.assertSame(OrderStatus.PAID, paid.getEnumObj());
+        Assert.assertEquals(1, paid.get("value"));
+        Assert.assertEquals("已支付", paid.getDesc());
+        Assert.assertEquals("PAID", paid.get("code"));
+        //返回的是拷贝，修改后不影响下一次
+        paid.setDesc("paid");
+        Assert.assertEquals("已支付", EnumUtil.getEnumsByEnumType(OrderStatus.class).get(1).getDesc());
+
+        Assert.assertEquals("RED", EnumUtil.getEnumsByEnumType(Color.class).get(0).get("code"));
+    }
+
+    @Test
+    public void testStringTable() {
+        Random random = new Random(9);
+        for (int size : new int[] { 0, 1, 2, 5, 17, 100, 1000 }) {
+            String[] keys = new String[size];
+            Integer[] values = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = Long.toString(random.nextLong(), 36);
+                values[i] = i;
+            }
+            EnumIndex.StringTable<Integer> table = EnumIndex.StringTable.build(keys, values);
+            for (int i = 0; i < size; i++) {
+                Assert.assertEquals(values[i], table.get(keys[i]));
+            }
+            Assert.assertNull(table.get("not exists"));
+        }
+    }
+
+    @Test
+    public void testSameAsOld() {
+        //原来的实现，按字符串取，取不到时走 Enum.valueOf
+        Map<String, ValuedEnum<?>> cache = new ConcurrentHashMap<String, ValuedEnum<?>>();
+        for (OrderStatus orderStatus : OrderStatus.values()) {
+            cache.put(orderStatus.getValue().toString(), orderStatus);
+        }
+        for (String source : new String[] { "0", "1", "2", "9", "PAID" }) {
+            Object expected = cache.get(source);
+            if (expected == null) {
+                expected = Enum.valueOf(OrderStatus.class, source);
+            }
+            Assert.assertSame(expected, EnumUtil.valueOf(OrderStatus.class, source));
+        }
+    }
+}
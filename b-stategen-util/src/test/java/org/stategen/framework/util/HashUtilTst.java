@@ -0,0 +1,172 @@
+package org.stategen.framework.util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class HashUtilTst {
+
+    /***原来 MD5Util.md5 的实现*/
+    static String oldMd5(String dest) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(dest.getBytes("UTF-8"));
+        byte[] digest = md.digest();
+        StringBuilder md5 = new StringBuilder();
+        for (int i = 0; i < digest.length; i++) {
+            md5.append(Character.forDigit((digest[i] & 0xF0) >> 4, 16));
+            md5.append(Character.forDigit((digest[i] & 0xF), 16));
+        }
+        return md5.toString();
+    }
+
+    static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    sb.append((char) ('a' + random.nextInt(26)));
+                    break;
+                case 1:
+                    sb.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 2:
+                    sb.append((char) (0x4e00 + random.nextInt(0x5000)));
+                    break;
+                case 3:
+                    sb.appendCodePoint(0x1F600 + random.nextInt(50));
+                    break;
+                default:
+                    //不成对的代理字符
+                    sb.append((char) (0xD800 + random.nextInt(0x800)));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameAsOld() throws Exception {
+        Random random = new Random(17);
+        for (int i = 0; i < 2000; i++) {
+            //长度跨过4096字节的缓冲区
+            String text = randomText(random, random.nextInt(i % 100 == 0 ? 5000 : 50));
+            Assert.assertEquals(oldMd5(text), HashUtil.md5Hex(text));
+            Assert.assertEquals(oldMd5(text), MD5Util.md5(text));
+            Assert.assertEquals(HashUtil.toHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))),
+                HashUtil.sha256Hex(text));
+        }
+        Assert.assertNull(MD5Util.md5(null));
+        Assert.assertEquals(oldMd5("123456abcdef"), PasswordUtil.calcuMd5Password("123456", "abcdef"));
+        Assert.assertEquals(oldMd5("123456"), PasswordUtil.calcuMd5Password("123456", " "));
+        Assert.assertEquals(oldMd5("null"), PasswordUtil.calcuMd5Password(null, null));
+        Assert.assertEquals("d41d8cd98f00b204e9800998ecf8427e", HashUtil.md5Hex(""));
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        byte[] bytes = new byte[10000];
+        new Random(3).nextBytes(bytes);
+        String expected = HashUtil.md5Hex(bytes);
+        Assert.assertEquals(HashUtil.toHex(MessageDigest.getInstance("MD5").digest(bytes)), expected);
+        Assert.assertEquals(expected, HashUtil.md5Hex(new ByteArrayInputStream(bytes)));
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bytes.length);
+        byteBuffer.put(bytes).flip();
+        Assert.assertEquals(expected, HashUtil.md5Hex(byteBuffer));
+        //不改变调用者的position
+        Assert.assertEquals(0, byteBuffer.position());
+        Assert.assertEquals(HashUtil.sha256Hex(bytes), HashUtil.sha256Hex(byteBuffer));
+        Assert.assertEquals(HashUtil.sha256Hex(bytes), HashUtil.sha256Hex(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals(HashUtil.toHex(MessageDigest.getInstance("SHA-512").digest("abc".getBytes())), HashUtil.hex("SHA-512", "abc"));
+    }
+
+    @Test
+    public void testHmac() throws Exception {
+        SecretKeySpec key = HashUtil.newHmacSha256Key("secret");
+        SecretKeySpec otherKey = HashUtil.newHmacSha256Key("other");
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            String text = randomText(random, random.nextInt(100));
+            SecretKeySpec currentKey = i % 3 == 0 ? otherKey : key;
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(currentKey);
+            String expected = HashUtil.toHex(mac.doFinal(text.getBytes(StandardCharsets.UTF_8)));
+            Assert.assertEquals(expected, HashUtil.hmacSha256Hex(currentKey, text));
+        }
+        //RFC 4231 test case 2
+        Assert.assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+            HashUtil.hmacSha256Hex(HashUtil.newHmacSha256Key("Jefe"), "what do ya want for nothing?"));
+
+        Assert.assertTrue(HashUtil.hexEquals("abc", "abc"));
+        Assert.assertFalse(HashUtil.hexEquals("abc", "abd"));
+        Assert.assertFalse(HashUtil.hexEquals("abc", "ab"));
+        Assert.assertFalse(HashUtil.hexEquals("abc", null));
+    }
+
+    @Test
+    public void testLengthPrefixed() throws Exception {
+        SecretKeySpec key = HashUtil.newHmacSha256Key("secret");
+        Random random = new Random(13);
+        for (int i = 0; i < 200; i++) {
+            String first = randomText(random, random.nextInt(50));
+            String second = i % 7 == 0 ? null : randomText(random, random.nextInt(5000));
+            Assert.assertEquals(first.getBytes(StandardCharsets.UTF_8).length, HashUtil.utf8Length(first));
+
+            ByteBuffer expectedBytes = ByteBuffer.allocate(8 + first.length() * 3 + (second != null ? second.length() * 3 : 0));
+            for (String text : new String[] { first, second }) {
+                byte[] bytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                expectedBytes.putInt(text != null ? bytes.length : -1).put(bytes);
+            }
+            Mac expectedMac = Mac.getInstance("HmacSHA256");
+            expectedMac.init(key);
+            expectedMac.update(expectedBytes.array(), 0, expectedBytes.position());
+
+            Mac mac = HashUtil.beginHmacSha256(key);
+            HashUtil.updateLengthPrefixed(mac, first);
+            HashUtil.updateLengthPrefixed(mac, second);
+            Assert.assertEquals(HashUtil.toHex(expectedMac.doFinal()), HashUtil.toHex(mac.doFinal()));
+        }
+
+        //拼接边界不同，结果不同
+        Mac mac = HashUtil.beginHmacSha256(key);
+        HashUtil.updateLengthPrefixed(mac, "ab");
+        HashUtil.updateLengthPrefixed(mac, "c");
+        String left = HashUtil.toHex(mac.doFinal());
+        mac = HashUtil.beginHmacSha256(key);
+        HashUtil.updateLengthPrefixed(mac, "a");
+        HashUtil.updateLengthPrefixed(mac, "bc");
+        Assert.assertFalse(left.equals(HashUtil.toHex(mac.doFinal())));
+    }
+
+    /***与原来 MD5Util.md5 比较耗时，手动运行；结果一致见 testSameAsOld*/
+    @Ignore
+    @Test
+    public void testCompareWithOld() throws Exception {
+        String text = "userId=10086&token=" + PasswordUtil.getPasswordRandom() + "&expire=1700000000";
+        int times = 200000;
+        String result = null;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                result = oldMd5(text);
+            }
+            long oldNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                result = HashUtil.md5Hex(text);
+            }
+            long newNanos = System.nanoTime() - start;
+            System.out.println("md5<===========>: old " + oldNanos / times + " ns/op, HashUtil " + newNanos / times + " ns/op");
+        }
+        Assert.assertEquals(oldMd5(text), result);
+    }
+}
@@ -0,0 +1,20 @@
+package org.stategen.framework.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KryoPoolTst {
+
+    @Test
+    public void testLargeOutputBufferNotKept() {
+        byte[] large = new byte[1024 * 1024];
+        large[large.length - 1] = 7;
+        int grownLength = KryoPool.writeClassAndObject(large, output -> output.getBuffer().length);
+        Assert.assertTrue(grownLength >= large.length);
+        Assert.assertArrayEquals(large, KryoPool.copy(large));
+
+        //归还后池中的Kryo不再占着1M的缓冲
+        int pooledLength = KryoPool.writeClassAndObject("small", output -> output.getBuffer().length);
+        Assert.assertTrue(pooledLength < large.length);
+    }
+}
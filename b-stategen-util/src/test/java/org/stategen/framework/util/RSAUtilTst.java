@@ -0,0 +1,171 @@
+package org.stategen.framework.util;
+
+import java.lang.reflect.Proxy;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.core.BoundValueOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+public class RSAUtilTst {
+
+    /***内存中的redis，只实现 RedisTemplateUtil 用到的方法*/
+    static class MemoryRedisTemplate extends RedisTemplate<String, Object> {
+        final Map<String, Object[]> store = new ConcurrentHashMap<String, Object[]>();
+        final AtomicInteger         gets  = new AtomicInteger();
+        final AtomicInteger         sets  = new AtomicInteger();
+
+        private Object getValue(String key) {
+            Object[] entry = store.get(key);
+            if (entry == null || System.currentTimeMillis() >= (Long) entry[1]) {
+                return null;
+            }
+            return entry[0];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public ValueOperations<String, Object> opsForValue() {
+            return (ValueOperations<String, Object>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ValueOperations.class },
+                (proxy, method, args) -> {
+                    String key = (String) args[0];
+                    Object[] entry = new Object[] { args[1], System.currentTimeMillis() + ((TimeUnit) args[3]).toMillis((Long) args[2]) };
+                    if ("setIfAbsent".equals(method.getName())) {
+                        synchronized (store) {
+                            if (getValue(key) != null) {
+                                return false;
+                            }
+                            store.put(key, entry);
+                            return true;
+                        }
+                    }
+                    sets.incrementAndGet();
+                    store.put(key, entry);
+                    return null;
+                });
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public BoundValueOperations<String, Object> boundValueOps(String key) {
+            return (BoundValueOperations<String, Object>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { BoundValueOperations.class }, (proxy, method, args) -> {
+                    if ("get".equals(method.getName())) {
+                        gets.incrementAndGet();
+                        return getValue(key);
+                    }
+                    Object[] entry = store.get(key);
+                    return entry != null ? ((Long) entry[1] - System.currentTimeMillis()) / 1000 : -2L;
+                });
+        }
+
+        @Override
+        public Long delete(Collection<String> keys) {
+            for (String key : keys) {
+                store.remove(key);
+            }
+            return (long) keys.size();
+        }
+    }
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        RSAKeyPair rsaKeyPair = RSAUtil.generateKeyPair();
+        String encrypted = RSAUtil.encrypt(rsaKeyPair.getPublicKeyString(), "password@123");
+        Assert.assertEquals("password@123", RSAUtil.decrypt(rsaKeyPair.getPrivateKeyString(), encrypted));
+        //解析后的key缓存起来
+        Assert.assertSame(RSAUtil.getPrivateKey(rsaKeyPair.getPrivateKeyString()), RSAUtil.getPrivateKey(rsaKeyPair.getPrivateKeyString()));
+        Assert.assertSame(RSAUtil.getPublicKey(rsaKeyPair.getPublicKeyString()), RSAUtil.getPublicKey(rsaKeyPair.getPublicKeyString()));
+        Assert.assertNull(RSAUtil.getPrivateKey(null));
+    }
+
+    @Test
+    public void testSameAsUncached() throws Exception {
+        RSAKeyPair rsaKeyPair = RSAUtil.generateKeyPair();
+        String privateKeyString = rsaKeyPair.getPrivateKeyString();
+        String encrypted = RSAUtil.encrypt(rsaKeyPair.getPublicKeyString(), "password");
+        Assert.assertEquals(decryptWithoutCache(privateKeyString, encrypted), RSAUtil.decrypt(privateKeyString, encrypted));
+        Assert.assertEquals("password", RSAUtil.decrypt(privateKeyString, encrypted));
+    }
+
+    /***原来的实现，每次都解析私钥并新建Cipher*/
+    private static String decryptWithoutCache(String privateKeyString, String base64String) throws Exception {
+        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(Base64Util.decodeFromString(privateKeyString));
+        PrivateKey privateKey = KeyFactory.getInstance("RSA").generatePrivate(keySpec);
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.DECRYPT_MODE, privateKey);
+        return new String(cipher.doFinal(Base64Util.decodeFromString(base64String)));
+    }
+
+    @Test
+    public void testKeysTakerSingleFlight() throws Exception {
+        MemoryRedisTemplate redisTemplate = new MemoryRedisTemplate();
+        new RedisTemplateUtil().setRedisTemplate(redisTemplate);
+        try {
+            int nodes = 4;
+            ExecutorService executorService = Executors.newFixedThreadPool(nodes * 2);
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[nodes * 2];
+            String[] publicKeys = new String[nodes * 2];
+            //每个节点一个 RSAKeysTaker，每个节点两个线程
+            RSAKeysTaker[] takers = new RSAKeysTaker[nodes];
+            for (int i = 0; i < nodes; i++) {
+                takers[i] = new RSAKeysTaker("login");
+            }
+            for (int i = 0; i < nodes * 2; i++) {
+                RSAKeysTaker rsaKeysTaker = takers[i % nodes];
+                int index = i;
+                futures[i] = executorService.submit(() -> {
+                    start.await();
+                    publicKeys[index] = rsaKeysTaker.getRsaPublicKey();
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            executorService.shutdown();
+            //整个集群只生成一次，公钥、私钥各写一次
+            Assert.assertEquals(2, redisTemplate.sets.get());
+            for (String publicKey : publicKeys) {
+                Assert.assertEquals(publicKeys[0], publicKey);
+            }
+
+            RSAKeysTaker rsaKeysTaker = new RSAKeysTaker("login");
+            String encrypted = RSAUtil.encrypt(rsaKeysTaker.getRsaPublicKey(), "password");
+            int gets = redisTemplate.gets.get();
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals("password", rsaKeysTaker.getCleanPassword(true, encrypted));
+            }
+            //本地缓存有效期内不再访问redis
+            Assert.assertEquals(gets, redisTemplate.gets.get());
+            Assert.assertEquals("password", rsaKeysTaker.getCleanPassword(false, "password"));
+
+            //其它节点重新生成后，清除本地缓存即可同步
+            redisTemplate.store.clear();
+            RSAKeysTaker otherNode = new RSAKeysTaker("login");
+            String newPublicKey = otherNode.getRsaPublicKey();
+            Assert.assertFalse(publicKeys[0].equals(newPublicKey));
+            rsaKeysTaker.clearLocalCache();
+            Assert.assertEquals(newPublicKey, rsaKeysTaker.getRsaPublicKey());
+        } finally {
+            new RedisTemplateUtil().setRedisTemplate(null);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.stategen.framework.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.ReflectionUtils.FieldCallback;
+import org.springframework.util.ReflectionUtils.FieldFilter;
+import org.springframework.util.ReflectionUtils.MethodCallback;
+import org.springframework.util.ReflectionUtils.MethodFilter;
+
+public class ReflectionUtilTst {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface Key {
+    }
+
+    public static class Parent {
+        @Key
+        private Long   id;
+        private String name;
+        private String remark;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Object getValue() {
+            return remark;
+        }
+    }
+
+    public static class Child extends Parent {
+        private String name;
+        @Key
+        private String code;
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        @Override
+        public String getValue() {
+            return code;
+        }
+    }
+
+    @Test
+    public void testFindField() throws Throwable {
+        Field name = ReflectionUtil.findField(Child.class, "name");
+        Assert.assertEquals(Child.class, name.getDeclaringClass());
+        Assert.assertEquals(Parent.class, ReflectionUtil.findField(new Child(), "remark").getDeclaringClass());
+        Assert.assertNull(ReflectionUtil.findField(Child.class, "none"));
+        Assert.assertNull(ReflectionUtil.findField(null, "name"));
+        Assert.assertEquals("code", ReflectionUtil.findField(Child.class, Key.class).getName());
+        Assert.assertEquals("id", ReflectionUtil.findField(Parent.class, Key.class).getName());
+        Assert.assertEquals(5, ReflectionUtil.getAllDeclaredFields(Child.class).size());
+
+        Map<String, Field> fieldNameFieldMap = ReflectionUtil.getFieldNameFieldMap(Child.class);
+        Assert.assertEquals(collectFieldNameFieldMap(Child.class), fieldNameFieldMap);
+        //返回的是副本，调用者修改不影响缓存
+        fieldNameFieldMap.clear();
+        Assert.assertEquals(4, ReflectionUtil.getFieldNameFieldMap(Child.class).size());
+    }
+
+    @Test
+    public void testFindMethod() throws Throwable {
+        Method getValue = ReflectionUtil.findMethod(Child.class, "getValue");
+        Assert.assertEquals(Child.class.getDeclaredMethod("getValue"), getValue);
+        Assert.assertEquals(Parent.class, ReflectionUtil.findMethod(Child.class, "getId").getDeclaringClass());
+        Assert.assertEquals(Object.class, ReflectionUtil.findMethod(Child.class, "hashCode").getDeclaringClass());
+        Assert.assertNull(ReflectionUtil.findMethod(Child.class, "setId"));
+
+        Map<String, Method> getterNameMethods = ReflectionUtil.getGetterNameMethods(Child.class);
+        Assert.assertEquals(collectGetterNameMethods(Child.class), getterNameMethods);
+        getterNameMethods.remove("code");
+        Assert.assertTrue(ReflectionUtil.getGetterNameMethods(Child.class).containsKey("code"));
+    }
+
+    @Test
+    public void testMetadata() {
+        ClassMetadata metadata = ClassMetadata.of(Child.class);
+        Assert.assertSame(ClassMetadata.of(Child.class), metadata);
+        Assert.assertEquals(3, metadata.getSetterNameMethods().size());
+        Assert.assertFalse(metadata.getSetterNameMethods().containsKey("value"));
+        Assert.assertEquals(4, metadata.getGetterNameMethods().size());
+    }
+
+    @Test
+    public void testSameAsReflect() {
+        List<String> names = new ArrayList<String>();
+        for (Field field : ReflectionUtil.getAllDeclaredFields(Child.class)) {
+            names.add(field.getName());
+        }
+        names.add("none");
+        for (String name : names) {
+            Assert.assertEquals(findFieldByReflect(Child.class, name), ReflectionUtil.findField(Child.class, name));
+        }
+    }
+
+    /***原来的实现，每次都 getDeclaredField 并在找不到时抛出异常*/
+    private static Field findFieldByReflect(Class<?> targetClass, String fieldName) {
+        if (targetClass == null) {
+            return null;
+        }
+        try {
+            return targetClass.getDeclaredField(fieldName);
+        } catch (NoSuchFieldException e) {
+        }
+        return findFieldByReflect(targetClass.getSuperclass(), fieldName);
+    }
+
+    /***原来的 getGetterNameMethods，每次都重新反射*/
+    private static Map<String, Method> collectGetterNameMethods(Class<?> currentType) {
+        Map<String, Method> getterNameMethodMap = new LinkedHashMap<String, Method>(64);
+        ReflectionUtil.doWithMethods(currentType, new MethodCallback() {
+            @Override
+            public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+                getterNameMethodMap.put(ReflectionUtil.isAndGetGetterMethodFeildName(method), method);
+            }
+        }, new MethodFilter() {
+            @Override
+            public boolean matches(Method method) {
+                String getterMethodFeildName = ReflectionUtil.isAndGetGetterMethodFeildName(method);
+                return StringUtil.isNotEmpty(getterMethodFeildName) && !getterNameMethodMap.containsKey(getterMethodFeildName);
+            }
+        });
+        return getterNameMethodMap;
+    }
+
+    /***原来的 getFieldNameFieldMap，每次都重新反射*/
+    private static Map<String, Field> collectFieldNameFieldMap(Class<?> currentType) {
+        Map<String, Field> fieldNameFieldMap = new LinkedHashMap<String, Field>(64);
+        ReflectionUtils.doWithFields(currentType, new FieldCallback() {
+            @Override
+            public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+                fieldNameFieldMap.put(field.getName(), field);
+            }
+        }, new FieldFilter() {
+            @Override
+            public boolean matches(Field field) {
+                return !fieldNameFieldMap.containsKey(field.getName());
+            }
+        });
+        return fieldNameFieldMap;
+    }
+}
@@ -0,0 +1,347 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.stategen.framework.lite.PageList;
+
+public class ServiceUtilTst {
+
+    public static class Student {
+        private Long    studentId;
+        private Long    teacherId;
+        private Teacher teacher;
+        private String  teacherName;
+        /** 查询条件 */
+        private List<Long> teacherIds;
+
+        public Student() {
+        }
+
+        public Student(Long studentId, Long teacherId) {
+            this.studentId = studentId;
+            this.teacherId = teacherId;
+        }
+
+        public Long getStudentId() {
+            return studentId;
+        }
+
+        public void setStudentId(Long studentId) {
+            this.studentId = studentId;
+        }
+
+        public Long getTeacherId() {
+            return teacherId;
+        }
+
+        public void setTeacherId(Long teacherId) {
+            this.teacherId = teacherId;
+        }
+
+        public Teacher getTeacher() {
+            return teacher;
+        }
+
+        public void setTeacher(Teacher teacher) {
+            this.teacher = teacher;
+        }
+
+        public String getTeacherName() {
+            return teacherName;
+        }
+
+        public void setTeacherName(String teacherName) {
+            this.teacherName = teacherName;
+        }
+
+        public List<Long> getTeacherIds() {
+            return teacherIds;
+        }
+
+        public void setTeacherIds(List<Long> teacherIds) {
+            this.teacherIds = teacherIds;
+        }
+    }
+
+    public static class Teacher {
+        private Long          teacherId;
+        private String        teacherName;
+        private List<Student> students;
+
+        public Long getTeacherId() {
+            return teacherId;
+        }
+
+        public void setTeacherId(Long teacherId) {
+            this.teacherId = teacherId;
+        }
+
+        public String getTeacherName() {
+            return teacherName;
+        }
+
+        public void setTeacherName(String teacherName) {
+            this.teacherName = teacherName;
+        }
+
+        public List<Student> getStudents() {
+            return students;
+        }
+
+        public void setStudents(List<Student> students) {
+            this.students = students;
+        }
+    }
+
+    /***模拟数据库，每次查询 sleep 一下，并记录每次的key个数和执行线程*/
+    public static class TeacherService {
+        final List<Integer> callSizes = new ArrayList<Integer>();
+        final Set<String>   threads   = ConcurrentHashMap.newKeySet();
+        final AtomicInteger calls     = new AtomicInteger();
+        final AtomicInteger active    = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        public List<Teacher> getTeachersByTeacherIds(List<Long> teacherIds) {
+            calls.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            synchronized (callSizes) {
+                callSizes.add(teacherIds.size());
+            }
+            threads.add(Thread.currentThread().getName());
+            sleep();
+            active.decrementAndGet();
+            List<Teacher> result = new ArrayList<Teacher>(teacherIds.size());
+            for (Long teacherId : teacherIds) {
+                if (teacherId % 10 != 0) {
+                    Teacher teacher = new Teacher();
+                    teacher.setTeacherId(teacherId);
+                    teacher.setTeacherName("teacher" + teacherId);
+                    result.add(teacher);
+                }
+            }
+            return result;
+        }
+    }
+
+    public static class StudentService implements BaseService<Student> {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Student insert(Student t) {
+            return t;
+        }
+
+        @Override
+        public Student update(Student t) {
+            return t;
+        }
+
+        @Override
+        public PageList<Student> getPageList(Student query, int pageSize, int pageNum) {
+            calls.incrementAndGet();
+            sleep();
+            List<Student> items = new ArrayList<Student>();
+            for (Long teacherId : query.getTeacherIds()) {
+                items.add(new Student(teacherId * 100 + 1, teacherId));
+                items.add(new Student(teacherId * 100 + 2, teacherId));
+            }
+            return new PageList<Student>(items, pageNum, pageSize, items.size());
+        }
+    }
+
+    static final BiFunction<TeacherService, List<Long>, List<Teacher>> GET_TEACHERS_BY_IDS = TeacherService::getTeachersByTeacherIds;
+
+    static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static List<Student> createStudents(int count) {
+        List<Student> students = new ArrayList<Student>(count);
+        for (long i = 0; i < count; i++) {
+            students.add(new Student(i, i % (count / 2)));
+        }
+        return students;
+    }
+
+    @Test
+    public void testAssignBeanToByChunks() {
+        ServiceUtil.setBatchSize(100);
+        try {
+            TeacherService teacherService = new TeacherService();
+            List<Student> students = createStudents(2000);
+            ServiceUtil.interalAssignBeanTo(students, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+                Teacher::getTeacherId);
+            //1000个不同的teacherId，分成10块
+            Assert.assertEquals(10, teacherService.calls.get());
+            for (Integer callSize : teacherService.callSizes) {
+                Assert.assertTrue(callSize <= 100);
+            }
+            //默认在调用线程中依次查询，不丢失事务等 ThreadLocal
+            Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), teacherService.threads);
+            for (Student student : students) {
+                if (student.getTeacherId() % 10 != 0) {
+                    Assert.assertEquals(student.getTeacherId(), student.getTeacher().getTeacherId());
+                } else {
+                    Assert.assertNull(student.getTeacher());
+                }
+            }
+        } finally {
+            ServiceUtil.setBatchSize(ServiceUtil.DEFAULT_BATCH_SIZE);
+            RelationLoader.clearRequestScoped();
+        }
+    }
+
+    @Test
+    public void testRequestScopedAcrossCalls() {
+        TeacherService teacherService = new TeacherService();
+        try {
+            List<Student> students = createStudents(400);
+            ServiceUtil.interalAssignBeanTo(students, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+                Teacher::getTeacherId);
+            Assert.assertEquals(1, teacherService.calls.get());
+
+            //同一请求内再次调用，已查过的id不再查询，只查新增的
+            List<Student> others = createStudents(600);
+            ServiceUtil.interalAssignBeanTo(others, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+                Teacher::getTeacherId);
+            ServiceUtil.interalMergeBeanTo(createStudents(400), Student::getTeacherId, teacherService, GET_TEACHERS_BY_IDS,
+                Teacher::getTeacherId);
+            Assert.assertEquals(2, teacherService.calls.get());
+            Assert.assertEquals(Integer.valueOf(100), teacherService.callSizes.get(1));
+            Assert.assertSame(students.get(1).getTeacher(), others.get(1).getTeacher());
+            Assert.assertEquals("teacher299", others.get(299).getTeacher().getTeacherName());
+
+            //查询中嵌套调用用的是另一个loader，也能赋值
+            List<Student> nested = createStudents(20);
+            BiFunction<TeacherService, List<Long>, List<Teacher>> byIdsWithNested = (service, ids) -> {
+                ServiceUtil.interalAssignBeanTo(nested, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+                    Teacher::getTeacherId);
+                return service.getTeachersByTeacherIds(ids);
+            };
+            ServiceUtil.interalAssignBeanTo(createStudents(20), Student::getTeacherId, Student::setTeacher, teacherService, byIdsWithNested,
+                Teacher::getTeacherId);
+            Assert.assertEquals("teacher9", nested.get(9).getTeacher().getTeacherName());
+
+            //清空后重新查询
+            RelationLoader.clearRequestScoped();
+            ServiceUtil.interalAssignBeanTo(createStudents(400), Student::getTeacherId, Student::setTeacher, teacherService,
+                GET_TEACHERS_BY_IDS, Teacher::getTeacherId);
+            Assert.assertEquals(5, teacherService.calls.get());
+        } finally {
+            RelationLoader.clearRequestScoped();
+        }
+    }
+
+    @Test
+    public void testFailedLoadNotMarkedLoaded() {
+        TeacherService teacherService = new TeacherService();
+        RelationLoader relationLoader = new RelationLoader();
+        BiFunction<TeacherService, List<Long>, List<Teacher>> failing = (service, ids) -> {
+            throw new IllegalStateException("db down");
+        };
+        try {
+            relationLoader.assignBeanTo(createStudents(20), Student::getTeacherId, Student::setTeacher, teacherService, failing,
+                Teacher::getTeacherId).load();
+            Assert.fail("load should fail");
+        } catch (IllegalStateException e) {
+            //期望的异常
+        }
+        List<Student> students = createStudents(20);
+        relationLoader.assignBeanTo(students, Student::getTeacherId, Student::setTeacher, teacherService, failing, Teacher::getTeacherId);
+        try {
+            relationLoader.load();
+            Assert.fail("failed keys should be queried again");
+        } catch (IllegalStateException e) {
+            //期望的异常
+        }
+    }
+
+    @Test
+    public void testParallelismBounded() {
+        TeacherService teacherService = new TeacherService();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            new RelationLoader(10, executorService, 3).assignBeanTo(createStudents(400), Student::getTeacherId, Student::setTeacher,
+                teacherService, GET_TEACHERS_BY_IDS, Teacher::getTeacherId).load();
+            Assert.assertEquals(20, teacherService.calls.get());
+            Assert.assertTrue(teacherService.maxActive.get() > 1);
+            Assert.assertTrue(teacherService.maxActive.get() <= 3);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeduplicateAcrossCalls() {
+        TeacherService teacherService = new TeacherService();
+        List<Student> students = createStudents(400);
+        List<Student> others = createStudents(200);
+        List<Student> merged = createStudents(400);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        RelationLoader relationLoader = new RelationLoader(1000, executorService);
+        relationLoader.assignBeanTo(students, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+            Teacher::getTeacherId)
+            .assignBeanTo(others, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS, Teacher::getTeacherId)
+            .mergeBeanTo(merged, Student::getTeacherId, teacherService, GET_TEACHERS_BY_IDS, Teacher::getTeacherId)
+            .load();
+        //三次登记合并成一次查询，key去重后为 200
+        Assert.assertEquals(1, teacherService.calls.get());
+        Assert.assertEquals(Integer.valueOf(200), teacherService.callSizes.get(0));
+        Assert.assertEquals("teacher1", students.get(1).getTeacher().getTeacherName());
+        Assert.assertEquals("teacher99", others.get(99).getTeacher().getTeacherName());
+        Assert.assertEquals("teacher3", merged.get(3).getTeacherName());
+
+        //已加载过的key不再查询
+        relationLoader.assignBeanTo(createStudents(100), Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS,
+            Teacher::getTeacherId).load();
+        Assert.assertEquals(1, teacherService.calls.get());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testRelationsLoadConcurrently() {
+        ServiceUtil.setBatchSize(50);
+        try {
+            TeacherService teacherService = new TeacherService();
+            StudentService studentService = new StudentService();
+            List<Student> students = createStudents(200);
+            List<Teacher> teachers = new ArrayList<Teacher>();
+            for (long i = 0; i < 120; i++) {
+                Teacher teacher = new Teacher();
+                teacher.setTeacherId(i);
+                teachers.add(teacher);
+            }
+
+            ServiceUtil.newParallelRelationLoader()
+                .assignBeanTo(students, Student::getTeacherId, Student::setTeacher, teacherService, GET_TEACHERS_BY_IDS, Teacher::getTeacherId)
+                .assignBeansTo(teachers, Teacher::getTeacherId, Teacher::setStudents, studentService, new Student(),
+                    Student::setTeacherIds, Student::getTeacherId, 1000)
+                .load();
+
+            //teacher 2块 + student 3块
+            Assert.assertEquals(2, teacherService.calls.get());
+            Assert.assertEquals(3, studentService.calls.get());
+            for (Teacher teacher : teachers) {
+                Assert.assertEquals(2, teacher.getStudents().size());
+                Assert.assertEquals(teacher.getTeacherId(), teacher.getStudents().get(0).getTeacherId());
+            }
+            Assert.assertEquals("teacher99", students.get(99).getTeacher().getTeacherName());
+        } finally {
+            ServiceUtil.setBatchSize(ServiceUtil.DEFAULT_BATCH_SIZE);
+        }
+    }
+}
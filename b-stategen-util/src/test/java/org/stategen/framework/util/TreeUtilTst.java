@@ -0,0 +1,196 @@
+package org.stategen.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TreeUtilTst {
+
+    public static class Region {
+        private Long         regionId;
+        private Long         parentId;
+        private List<Region> children;
+
+        public Region(long regionId, Long parentId) {
+            this.regionId = regionId;
+            this.parentId = parentId;
+        }
+
+        public Long getRegionId() {
+            return regionId;
+        }
+
+        public Long getParentId() {
+            return parentId;
+        }
+
+        public List<Region> getChildren() {
+            return children;
+        }
+
+        public void addChild(Region child) {
+            if (children == null) {
+                children = new ArrayList<Region>();
+            }
+            children.add(child);
+        }
+    }
+
+    /***乱序的随机树，pid 为0的是根*/
+    static List<Region> createRegions(int count, Random random) {
+        List<Region> regions = new ArrayList<Region>(count);
+        for (long i = 1; i <= count; i++) {
+            long parentId = i <= 5 ? 0L : 1 + random.nextInt((int) i - 1);
+            regions.add(new Region(i, parentId));
+        }
+        Collections.shuffle(regions, random);
+        return regions;
+    }
+
+    static List<Region> pathOf(Map<Long, Region> regionMap, Long regionId) {
+        return TreeUtil.getWithParent(regionMap, regionId, Region::getParentId);
+    }
+
+    @Test
+    public void testSameAsMap() {
+        Random random = new Random(7);
+        List<Region> regions = createRegions(20000, random);
+        Map<Long, Region> regionMap = CollectionUtil.toMap(regions, Region::getRegionId);
+        TreeIndex<Region> regionIndex = TreeUtil.index(regions.stream(), Region::getRegionId, Region::getParentId);
+        Assert.assertEquals(regions.size(), regionIndex.size());
+        Assert.assertEquals(5, regionIndex.getRoots().size());
+
+        for (int i = 0; i < 2000; i++) {
+            long id = 1 + random.nextInt(regions.size());
+            long otherId = 1 + random.nextInt(regions.size());
+            List<Region> path = pathOf(regionMap, id);
+            List<Region> otherPath = pathOf(regionMap, otherId);
+            Assert.assertEquals(path, regionIndex.getPath(id));
+            Assert.assertEquals(path.size() - 1, regionIndex.getDepth(id));
+            Assert.assertEquals(otherPath.contains(regionMap.get(id)), regionIndex.isAncestor(id, otherId));
+            int depth = random.nextInt(path.size());
+            Assert.assertSame(path.get(depth), regionIndex.getAncestor(id, depth));
+
+            Region common = null;
+            for (int d = 0; d < Math.min(path.size(), otherPath.size()) && path.get(d) == otherPath.get(d); d++) {
+                common = path.get(d);
+            }
+            Assert.assertSame(common, regionIndex.getCommonAncestor(id, otherId));
+        }
+
+        //子树与按路径判断的结果相同
+        long id = regionIndex.getRoots().get(0).getRegionId();
+        List<Region> subtree = regionIndex.getSubtree(id);
+        int count = 0;
+        for (Region region : regions) {
+            if (pathOf(regionMap, region.getRegionId()).get(0).getRegionId() == id) {
+                count++;
+            }
+        }
+        Assert.assertEquals(count, subtree.size());
+        Assert.assertEquals(count - 1, regionIndex.getDescendantCount(id));
+
+        //与 makeTree 建出的关系相同
+        List<Region> roots = TreeUtil.makeTree(regions.iterator(), Region::getRegionId, Region::getParentId, Region::addChild);
+        Assert.assertEquals(5, roots.size());
+        for (Region region : regions) {
+            List<Region> children = region.getChildren() != null ? region.getChildren() : new ArrayList<Region>();
+            Assert.assertEquals(regionIndex.getChildren(region.getRegionId()), children);
+        }
+    }
+
+    @Test
+    public void testDeepTree() {
+        //20万层，不能递归
+        int depth = 200000;
+        List<Region> regions = new ArrayList<Region>(depth);
+        for (long i = depth; i >= 1; i--) {
+            regions.add(new Region(i, i - 1));
+        }
+        TreeIndex<Region> regionIndex = TreeUtil.index(regions.iterator(), Region::getRegionId, Region::getParentId);
+        Assert.assertEquals(depth - 1, regionIndex.getDepth(depth));
+        Assert.assertTrue(regionIndex.isAncestor(1, depth));
+        Assert.assertFalse(regionIndex.isAncestor(depth, 1));
+        Assert.assertEquals(Long.valueOf(1000), regionIndex.getAncestor(depth, 999).getRegionId());
+        Assert.assertEquals(depth, regionIndex.getSubtree(1).size());
+        Assert.assertEquals(depth, regionIndex.getPath(depth).size());
+    }
+
+    @Test
+    public void testIncrementalChanges() {
+        TreeIndex<Region> regionIndex = new TreeIndex<Region>(Region::getRegionId, Region::getParentId);
+        //子节点先到
+        regionIndex.put(new Region(3, 2L));
+        regionIndex.put(new Region(4, 3L));
+        Assert.assertEquals(Long.valueOf(3), regionIndex.getRoots().get(0).getRegionId());
+        Assert.assertNull(regionIndex.getParent(3));
+        regionIndex.put(new Region(2, 1L));
+        regionIndex.put(new Region(1, null));
+        regionIndex.put(new Region(5, 1L));
+        Assert.assertEquals(1, regionIndex.getRoots().size());
+        Assert.assertEquals(3, regionIndex.getDepth(4));
+        Assert.assertTrue(regionIndex.isAncestor(2, 4));
+
+        //移动子树
+        regionIndex.move(3, 5L);
+        Assert.assertFalse(regionIndex.isAncestor(2, 4));
+        Assert.assertTrue(regionIndex.isAncestor(5, 4));
+        Assert.assertEquals(Long.valueOf(5), regionIndex.getAncestor(4, 1).getRegionId());
+        try {
+            regionIndex.move(5, 4L);
+            Assert.fail("move under descendant");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(regionIndex.isAncestor(5, 4));
+        }
+
+        //put 时 pid 改变也会移动
+        regionIndex.put(new Region(3, 2L));
+        Assert.assertTrue(regionIndex.isAncestor(2, 4));
+        Assert.assertEquals(0, regionIndex.getDescendantCount(5));
+
+        //数据中有环时作为根
+        regionIndex.put(new Region(2, 4L));
+        Assert.assertEquals(2, regionIndex.getRoots().size());
+        Assert.assertEquals(0, regionIndex.getDepth(2));
+
+        List<Region> removed = regionIndex.remove(2);
+        Assert.assertEquals(3, removed.size());
+        Assert.assertEquals(2, regionIndex.size());
+        Assert.assertFalse(regionIndex.contains(4));
+        Assert.assertEquals(2, regionIndex.getSubtree(1).size());
+        Assert.assertTrue(regionIndex.remove(4).isEmpty());
+    }
+
+    static List<Long> childIds(Region region) {
+        List<Long> childIds = new ArrayList<Long>();
+        if (region.getChildren() != null) {
+            for (Region child : region.getChildren()) {
+                childIds.add(child.getRegionId());
+            }
+        }
+        //makeTree(List) 按 HashMap 的顺序遍历，子节点顺序不固定
+        Collections.sort(childIds);
+        return childIds;
+    }
+
+    /***linkTo 建出的父子关系与 makeTree 相同*/
+    @Test
+    public void testLinkToSameAsMakeTree() {
+        List<Region> expectedRegions = createRegions(2000, new Random(5));
+        List<Region> expectedRoots = TreeUtil.makeTree(expectedRegions, Region::getRegionId, Region::getParentId, Region::addChild);
+
+        List<Region> regions = createRegions(2000, new Random(5));
+        TreeIndex<Region> regionIndex = TreeUtil.index(regions.iterator(), Region::getRegionId, Region::getParentId);
+        List<Region> roots = regionIndex.linkTo(Region::addChild);
+        Assert.assertEquals(expectedRoots.size(), roots.size());
+        for (int i = 0; i < regions.size(); i++) {
+            Assert.assertEquals(expectedRegions.get(i).getRegionId(), regions.get(i).getRegionId());
+            Assert.assertEquals(childIds(expectedRegions.get(i)), childIds(regions.get(i)));
+        }
+    }
+}
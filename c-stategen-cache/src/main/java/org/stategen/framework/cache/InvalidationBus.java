@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.util.Collection;
+
+/**
+ * 本地一级缓存清除通知的传输层，默认为 ZkInvalidationBus，
+ * 可通过 LocalCacheZkConfig.setInvalidationBus 换成 RedisInvalidationBus 或进程内的 LocalInvalidationBus.
+ *
+ * @author XiaZhengsheng
+ */
+public interface InvalidationBus {
+
+    /**
+     * 开始监听 notifyName 对应的改变，LocalCacheUtil 对同一个notifyName只订阅一次.
+     *
+     * @param notifyName the resource name
+     * @param handler the handler
+     */
+    void subscribe(String notifyName, InvalidationHandler handler);
+
+    /**
+     * 广播 notifyName 对应的改变.
+     *
+     * @param notifyName the resource name
+     * @param keys 改变的key，为null时表示整体改变
+     */
+    void publish(String notifyName, Collection<Object> keys);
+
+    /**
+     * 取得 notifyName 最后一次改变的时间，传输层不保存状态时返回null.
+     *
+     * @param notifyName the resource name
+     * @return the resource nano
+     */
+    Long getResourceNano(String notifyName);
+
+    /**
+     * 删除 notifyName 对应的通知状态，基本没用到.
+     *
+     * @param notifyName the resource name
+     * @return true, if successful
+     */
+    boolean delete(String notifyName);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.util.List;
+
+/**
+ * 接收 InvalidationBus 传来的清除通知.
+ *
+ * @author XiaZhengsheng
+ */
+public interface InvalidationHandler {
+
+    /**
+     * 收到清除通知.
+     *
+     * @param nanoTime 通知中的资源时间，可能为null
+     * @param keys 需要清除的key，为null时整体清除，传输层无法保证没有丢失中间的通知时也必须传null
+     */
+    void onInvalidate(Long nanoTime, List<Object> keys);
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LocalCacheNameTaker.get(key, generator) 使用的按key缓存，
+ * 收到key级别的清除通知时只清除对应的key，
+ * refreshAhead 模式下不删除，只标记为过期，由调用方返回旧值并在后台重新加载.
+ *
+ * @author XiaZhengsheng
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+class KeyedCacheMap<K, V> {
+
+    static class Entry<V> {
+        final V          value;
+        final long       loadedNanos;
+        volatile boolean stale;
+
+        Entry(V value, long loadedNanos) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<K, Entry<V>>();
+
+    private final boolean                        refreshAhead;
+
+    /** 每次清除时加1，加载开始时记下，加载结束时不一致说明加载期间有清除，结果不放入缓存 */
+    private volatile long                        invalidateVersion;
+
+    /** 整体清除的时间，在此之前加载的条目都已过期 */
+    private volatile long                        staleBeforeNanos = System.nanoTime() - 1;
+
+    public KeyedCacheMap() {
+        this(false);
+    }
+
+    public KeyedCacheMap(boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = map.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public Entry<V> getEntry(K key) {
+        return map.get(key);
+    }
+
+    public boolean isStale(Entry<V> entry) {
+        return entry.stale || entry.loadedNanos - staleBeforeNanos <= 0;
+    }
+
+    public long getInvalidateVersion() {
+        return invalidateVersion;
+    }
+
+    /***加载开始后没有收到清除通知时才放入*/
+    public synchronized boolean putIfNotInvalidated(K key, V value, long expectedInvalidateVersion) {
+        if (invalidateVersion != expectedInvalidateVersion) {
+            return false;
+        }
+        map.put(key, new Entry<V>(value, System.nanoTime()));
+        return true;
+    }
+
+    public synchronized void invalidate(Collection<?> keys) {
+        invalidateVersion++;
+        for (Object key : keys) {
+            if (refreshAhead) {
+                Entry<V> entry = map.get(key);
+                if (entry != null) {
+                    entry.stale = true;
+                }
+            } else {
+                map.remove(key);
+            }
+        }
+    }
+
+    /***refreshAhead 模式下整体清除时，保留所有条目但标记为过期*/
+    public synchronized void invalidateAll() {
+        invalidateVersion++;
+        if (refreshAhead) {
+            staleBeforeNanos = System.nanoTime();
+        } else {
+            map.clear();
+        }
+    }
+
+    public boolean isRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public int size() {
+        return map.size();
+    }
+}
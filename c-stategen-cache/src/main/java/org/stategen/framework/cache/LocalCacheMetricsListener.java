@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+/**
+ * 本地一级缓存的指标监听器，可接入外部的监控系统，
+ * 通过 LocalCacheUtil.addMetricsListener 注册，或在 META-INF/services 中声明后自动加载.
+ * 回调在业务线程中执行，实现类必须快速返回且不能抛出异常.
+ *
+ * @author XiaZhengsheng
+ */
+public interface LocalCacheMetricsListener {
+
+    default void onHit(String notifyName, String dataNode) {
+    }
+
+    default void onMiss(String notifyName, String dataNode) {
+    }
+
+    default void onStaleServe(String notifyName, String dataNode) {
+    }
+
+    default void onLoad(String notifyName, String dataNode, long loadNanos, boolean success) {
+    }
+
+    /**
+     * 收到zookeeper的清除通知.
+     *
+     * @param notifyName the resource name
+     * @param keyCount 按key清除时为key的数量，整体清除时为-1
+     */
+    default void onInvalidate(String notifyName, int keyCount) {
+    }
+}
@@ -16,8 +16,11 @@
  */
 package org.stategen.framework.cache;
 
-import java.util.HashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.stategen.framework.util.AssertUtil;
@@ -25,14 +28,40 @@ import org.stategen.framework.util.AssertUtil;
 /**
  * *
  * 封装本地一级缓存的类，该类用于代替代码中直接调用 LocalCacheUtil中的方法.
+ * refreshAhead 为true时，缓存被zookeeper通知清除后继续返回旧值，同时在后台重新加载；
+ * softTtlMillis 大于0时，值加载超过该时间后，下一次读取会触发后台提前刷新；
+ * offHeap 为true时，get(CacheGenerator) 加载的整体快照同时序列化到堆外，
+ * 堆上只保留最近访问的若干个，其余在访问时从堆外反序列化回来.
  *
  * @author XiaZhengsheng
  * @param <T> the generic type
  */
 public class LocalCacheNameTaker<T> extends BaseLocalCacheNameTaker implements InitializingBean {
-    protected String                 dataNode;
+    final static org.slf4j.Logger                      logger        = org.slf4j.LoggerFactory.getLogger(LocalCacheNameTaker.class);
 
-    protected ReentrantReadWriteLock rrwLock = new ReentrantReadWriteLock();
+    /** get(CacheGenerator) 在 inFlightLoads 中使用的key */
+    private static final Object                        WHOLE_KEY     = new Object();
+
+    protected String                                   dataNode;
+
+    /** 正在加载中的key，用于合并同一个key的并发加载 */
+    private final ConcurrentHashMap<Object, InFlightLoad<T>> inFlightLoads = new ConcurrentHashMap<Object, InFlightLoad<T>>();
+
+    private boolean                                    refreshAhead  = false;
+
+    private long                                       softTtlMillis = 0L;
+
+    private boolean                                    offHeap       = false;
+
+    private volatile OffHeapSnapshots.HotKey           hotKey;
+
+    /** get(CacheGenerator) 最近一次放入整体值的时间，0表示不知道(值由其它实例放入)，按刚加载处理 */
+    private volatile long                              wholeLoadedNanos;
+
+    /** 正在后台刷新的key，避免重复提交 */
+    private final Set<Object>                          refreshingKeys = ConcurrentHashMap.newKeySet();
+
+    private volatile LocalCacheStats                   stats;
 
     public LocalCacheNameTaker() {
         super();
@@ -51,7 +80,11 @@ public class LocalCacheNameTaker<T> extends BaseLocalCacheNameTaker implements I
     }
 
     public void putToCache(T data) {
+        if (refreshAhead) {
+            LocalCacheUtil.setRefreshAhead(getNotifyName(), dataNode);
+        }
         LocalCacheUtil.putToCache(getNotifyName(), dataNode, data);
+        wholeLoadedNanos = System.nanoTime();
     }
 
     public String getDataNode() {
@@ -60,6 +93,74 @@ public class LocalCacheNameTaker<T> extends BaseLocalCacheNameTaker implements I
 
     public void setDataNode(String dataNode) {
         this.dataNode = dataNode;
+        this.stats = null;
+        this.hotKey = null;
+    }
+
+    /***命中、加载、后台刷新等统计，同一个notifyName/dataNode的多个实例共享*/
+    public LocalCacheStats getStats() {
+        LocalCacheStats result = stats;
+        if (result == null) {
+            result = LocalCacheUtil.getStats(getNotifyName(), dataNode);
+            stats = result;
+        }
+        return result;
+    }
+
+    public boolean isRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /***只对 get(CacheGenerator) 的整体快照有效，快照须能被Kryo序列化*/
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    private OffHeapSnapshots.HotKey getHotKey() {
+        OffHeapSnapshots.HotKey result = hotKey;
+        if (result == null) {
+            result = new OffHeapSnapshots.HotKey(getNotifyName(), dataNode);
+            hotKey = result;
+        }
+        return result;
+    }
+
+    public long getSoftTtlMillis() {
+        return softTtlMillis;
+    }
+
+    public void setSoftTtlMillis(long softTtlMillis) {
+        this.softTtlMillis = softTtlMillis;
+    }
+
+    /***返回旧值的次数*/
+    public long getStaleServeCount() {
+        return getStats().getStaleServeCount();
+    }
+
+    /***后台刷新成功的次数*/
+    public long getRefreshCount() {
+        return getStats().getRefreshCount();
+    }
+
+    public long getRefreshFailureCount() {
+        return getStats().getRefreshFailureCount();
+    }
+
+    public double getRefreshAvgMillis() {
+        return getStats().getRefreshAvgMillis();
+    }
+
+    public double getLastRefreshMillis() {
+        return getStats().getLastRefreshMillis();
     }
 
     @Override
@@ -71,87 +172,174 @@ public class LocalCacheNameTaker<T> extends BaseLocalCacheNameTaker implements I
 
     /***直接拿到整个对象，同一个实例不能与 public <K> T get(K key, CacheGenerator<T> generator) 同时使用*/
     public T get(CacheGenerator<T> generator) {
-        T cache = null;
-        //读锁锁
-        rrwLock.readLock().lock();
-        try {
-            cache = this.getCache();
-            if (cache == null) {
-                //读锁解
-                rrwLock.readLock().unlock();
-                try {
-                    rrwLock.writeLock().lock();
-                    try {
-                        cache = this.getCache();
-                        if (cache == null) {
-                            cache = generator.generateCache();
-                            this.putToCache(cache);
-                        }
-                    } finally {
-                        rrwLock.writeLock().unlock();
-                    }
-                } finally {
-                    //读锁锁
-                    rrwLock.readLock().lock();
+        T cache = this.getCache();
+        if (cache != null) {
+            getStats().recordHit();
+            if (offHeap) {
+                OffHeapSnapshots.touch(getHotKey());
+            }
+            long loadedNanos = wholeLoadedNanos;
+            if (loadedNanos == 0L) {
+                wholeLoadedNanos = System.nanoTime();
+            } else if (isSoftExpired(loadedNanos)) {
+                refreshAsync(WHOLE_KEY, () -> loadWhole(generator, true));
+            }
+            return cache;
+        }
+        if (refreshAhead) {
+            T stale = LocalCacheUtil.getStaleCache(getNotifyName(), dataNode);
+            if (stale != null) {
+                getStats().recordHit();
+                getStats().recordStaleServe();
+                refreshAsync(WHOLE_KEY, () -> loadWhole(generator, true));
+                return stale;
+            }
+        }
+        getStats().recordMiss();
+        return load(WHOLE_KEY, () -> loadWhole(generator, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T loadWhole(CacheGenerator<T> generator, boolean force) {
+        T loaded = force ? null : this.getCache();
+        if (loaded == null && !force && offHeap) {
+            loaded = (T) OffHeapSnapshots.promote(getNotifyName(), dataNode);
+            if (loaded != null) {
+                wholeLoadedNanos = System.nanoTime();
+            }
+        }
+        if (loaded == null) {
+            loaded = generator.generateCache();
+            if (loaded != null) {
+                this.putToCache(loaded);
+                if (offHeap) {
+                    OffHeapSnapshots.store(getNotifyName(), dataNode, loaded);
                 }
             }
-        } finally {
-            //读锁解
-            rrwLock.readLock().unlock();
         }
-        return cache;
+        if (loaded != null && offHeap) {
+            OffHeapSnapshots.admit(getHotKey());
+        }
+        return loaded;
     }
 
-    /***根据Key拿取对象，同一个实例不能与 public T get(CacheGenerator<T> generator) 同时使用*/
+    /***根据Key拿取对象，同一个实例不能与 public T get(CacheGenerator<T> generator) 同时使用
+     * 读取不加锁，不同的key并行加载，同一个key同时未命中时只有一个线程调用 generator，其它线程共享结果
+     */
     @SuppressWarnings("unchecked")
     public <K> T get(K key, CacheGenerator<T> generator) {
-        //读锁锁
-        rrwLock.readLock().lock();
-        try {
-            HashMap<K, T> cacheMap = (HashMap<K, T>) this.getCache();
-            if (cacheMap == null) {
-                //读锁解
-                rrwLock.readLock().unlock();
-                try {
-                    rrwLock.writeLock().lock();
-                    try {
-                        cacheMap = (HashMap<K, T>) this.getCache();
-                        if (cacheMap == null) {
-                            cacheMap = new HashMap<K, T>();
-                            this.putToCache((T) cacheMap);
-                        }
-                    } finally {
-                        rrwLock.writeLock().unlock();
-                    }
-                } finally {
-                    //读锁锁
-                    rrwLock.readLock().lock();
-                }
+        KeyedCacheMap<K, T> cacheMap = (KeyedCacheMap<K, T>) this.getCache();
+        if (cacheMap == null) {
+            if (refreshAhead) {
+                LocalCacheUtil.setRefreshAhead(getNotifyName(), dataNode);
+            }
+            cacheMap = (KeyedCacheMap<K, T>) LocalCacheUtil.putToCacheIfAbsent(getNotifyName(), dataNode, new KeyedCacheMap<K, T>(refreshAhead));
+        }
+
+        //加载期间如果收到整体清除通知，旧的cacheMap已被丢弃，放入旧cacheMap中的值不会再被读到；
+        //收到按key清除通知时，invalidateVersion改变，加载的结果不放入
+        final KeyedCacheMap<K, T> targetMap = cacheMap;
+        KeyedCacheMap.Entry<T> entry = cacheMap.getEntry(key);
+        if (entry != null) {
+            getStats().recordHit();
+            //只有 refreshAhead 模式下才会有过期的条目
+            if (cacheMap.isStale(entry)) {
+                getStats().recordStaleServe();
+                refreshAsync(key, () -> loadKey(targetMap, key, generator, true));
+            } else if (isSoftExpired(entry.loadedNanos)) {
+                refreshAsync(key, () -> loadKey(targetMap, key, generator, true));
+            }
+            return entry.value;
+        }
+
+        getStats().recordMiss();
+        return load(key, () -> loadKey(targetMap, key, generator, false));
+    }
+
+    private <K> T loadKey(KeyedCacheMap<K, T> targetMap, K key, CacheGenerator<T> generator, boolean force) {
+        if (!force) {
+            KeyedCacheMap.Entry<T> entry = targetMap.getEntry(key);
+            if (entry != null && !targetMap.isStale(entry)) {
+                return entry.value;
             }
+        }
+        long invalidateVersion = targetMap.getInvalidateVersion();
+        T loaded = generator.generateCache();
+        if (loaded != null) {
+            targetMap.putIfNotInvalidated(key, loaded, invalidateVersion);
+        }
+        return loaded;
+    }
+
+    private boolean isSoftExpired(long loadedNanos) {
+        return softTtlMillis > 0 && System.nanoTime() - loadedNanos > TimeUnit.MILLISECONDS.toNanos(softTtlMillis);
+    }
 
-            T partCache = cacheMap.get(key);
-            if (partCache == null) {
-                //读锁解
-                rrwLock.readLock().unlock();
-                try {
-                    if (partCache == null) {
-                        rrwLock.writeLock().lock();
-                        try {
-                            partCache = generator.generateCache();
-                            cacheMap.put(key, partCache);
-                        } finally {
-                            rrwLock.writeLock().unlock();
-                        }
-                    }
-                } finally {
-                    //读锁锁
-                    rrwLock.readLock().lock();
+    /***在后台线程中加载，同一个key同时只提交一次，调用方继续使用当前的值*/
+    private void refreshAsync(Object key, CacheGenerator<T> loader) {
+        if (!refreshingKeys.add(key)) {
+            return;
+        }
+        LocalCacheUtil.getRefreshExecutor().execute(() -> {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                load(key, loader);
+                success = true;
+            } catch (RuntimeException | Error e) {
+                logger.error(new StringBuilder("后台刷新缓存失败:").append(getNotifyName()).append(".").append(dataNode).append(" key:").append(key)
+                    .toString(), e);
+            } finally {
+                getStats().recordRefresh(System.nanoTime() - start, success);
+                refreshingKeys.remove(key);
+            }
+        });
+    }
+
+    /***
+     * 同一个key只有一个线程执行 loader，其它同时到达的线程等待并共享它的结果或异常，
+     * generator 在同一个线程中再取同一个key时抛出 IllegalStateException，而不是等待自己
+     */
+    private T load(Object key, CacheGenerator<T> loader) {
+        InFlightLoad<T> future = new InFlightLoad<T>();
+        InFlightLoad<T> inFlight = inFlightLoads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            if (inFlight.owner == Thread.currentThread()) {
+                throw new IllegalStateException(new StringBuilder("generator 中重复加载同一个key:").append(getNotifyName()).append(".")
+                    .append(dataNode).append(" key:").append(key).toString());
+            }
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
                 }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
             }
-            return partCache;
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = loader.generateCache();
+            success = true;
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
         } finally {
-            //读锁解
-            rrwLock.readLock().unlock();
+            inFlightLoads.remove(key, future);
+            getStats().recordLoad(System.nanoTime() - start, success);
         }
     }
+
+    /***记录执行加载的线程*/
+    private static final class InFlightLoad<T> extends CompletableFuture<T> {
+        final Thread owner = Thread.currentThread();
+    }
 }
@@ -16,6 +16,11 @@
  */
 package org.stategen.framework.cache;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 import org.stategen.framework.util.AssertUtil;
 
 /**
@@ -46,6 +51,29 @@ public class LocalCacheNotifier extends BaseLocalCacheNameTaker {
         LocalCacheUtil.notifyResourceChanged(LocalCacheUtil.buildNotifyName(resourceName, getTableName()));
     }
 
+    /***批量通知多个resourceName，重复的只通知一次*/
+    public void notifyResourcesChanged(Collection<String> resourceNames) {
+        List<String> notifyNames = new ArrayList<String>(resourceNames.size());
+        for (String resourceName : resourceNames) {
+            AssertUtil.mustNotBlank(resourceName);
+            notifyNames.add(LocalCacheUtil.buildNotifyName(resourceName, getTableName()));
+        }
+        LocalCacheUtil.notifyResourcesChanged(notifyNames);
+    }
+
+    public void notifyResourcesChanged(String... resourceNames) {
+        notifyResourcesChanged(Arrays.asList(resourceNames));
+    }
+
+    /***只通知改变了的key(通常是主键)，key的类型须与 LocalCacheNameTaker.get(key, generator) 中的一致*/
+    public void notifyKeysChanged(Collection<?> keys) {
+        LocalCacheUtil.notifyKeysChanged(getNotifyName(), keys);
+    }
+
+    public void notifyKeysChanged(Object... keys) {
+        notifyKeysChanged(Arrays.asList(keys));
+    }
+
     public boolean deleteResourceNode() {
         return LocalCacheUtil.deleteResourceNode(getNotifyName());
     }
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地一级缓存的统计，每个 notifyName/dataNode 一个，由 LocalCacheUtil.getStats 取得.
+ *
+ * @author XiaZhengsheng
+ */
+public class LocalCacheStats implements LocalCacheStatsMXBean {
+
+    private static final long[] LOAD_TIME_BOUNDS_MILLIS = { 1, 5, 10, 50, 100, 500, 1000, 5000, 10000 };
+
+    private final String        notifyName;
+
+    private final String        dataNode;
+
+    private final LongAdder     hitCount                = new LongAdder();
+
+    private final LongAdder     missCount               = new LongAdder();
+
+    private final LongAdder     loadCount               = new LongAdder();
+
+    private final LongAdder     loadFailureCount        = new LongAdder();
+
+    private final LongAdder     loadNanos               = new LongAdder();
+
+    private final LongAdder[]   loadTimeBuckets         = new LongAdder[LOAD_TIME_BOUNDS_MILLIS.length + 1];
+
+    private final LongAdder     staleServeCount         = new LongAdder();
+
+    private final LongAdder     refreshCount            = new LongAdder();
+
+    private final LongAdder     refreshFailureCount     = new LongAdder();
+
+    private final LongAdder     refreshNanos            = new LongAdder();
+
+    private volatile long       lastRefreshNanos;
+
+    LocalCacheStats(String notifyName, String dataNode) {
+        this.notifyName = notifyName;
+        this.dataNode = dataNode;
+        for (int i = 0; i < loadTimeBuckets.length; i++) {
+            loadTimeBuckets[i] = new LongAdder();
+        }
+    }
+
+    void recordHit() {
+        hitCount.increment();
+        for (LocalCacheMetricsListener listener : LocalCacheUtil.getMetricsListeners()) {
+            listener.onHit(notifyName, dataNode);
+        }
+    }
+
+    void recordMiss() {
+        missCount.increment();
+        for (LocalCacheMetricsListener listener : LocalCacheUtil.getMetricsListeners()) {
+            listener.onMiss(notifyName, dataNode);
+        }
+    }
+
+    void recordStaleServe() {
+        staleServeCount.increment();
+        for (LocalCacheMetricsListener listener : LocalCacheUtil.getMetricsListeners()) {
+            listener.onStaleServe(notifyName, dataNode);
+        }
+    }
+
+    void recordLoad(long nanos, boolean success) {
+        if (success) {
+            loadCount.increment();
+        } else {
+            loadFailureCount.increment();
+        }
+        loadNanos.add(nanos);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LOAD_TIME_BOUNDS_MILLIS.length && millis > LOAD_TIME_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        loadTimeBuckets[bucket].increment();
+        for (LocalCacheMetricsListener listener : LocalCacheUtil.getMetricsListeners()) {
+            listener.onLoad(notifyName, dataNode, nanos, success);
+        }
+    }
+
+    void recordRefresh(long nanos, boolean success) {
+        if (success) {
+            refreshCount.increment();
+        } else {
+            refreshFailureCount.increment();
+        }
+        refreshNanos.add(nanos);
+        lastRefreshNanos = nanos;
+    }
+
+    @Override
+    public String getNotifyName() {
+        return notifyName;
+    }
+
+    @Override
+    public String getDataNode() {
+        return dataNode;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    @Override
+    public double getLoadAvgMillis() {
+        long count = loadCount.sum() + loadFailureCount.sum();
+        return count == 0 ? 0D : loadNanos.sum() / 1000000D / count;
+    }
+
+    @Override
+    public long[] getLoadTimeBucketBoundsMillis() {
+        return LOAD_TIME_BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getLoadTimeBucketCounts() {
+        long[] result = new long[loadTimeBuckets.length];
+        for (int i = 0; i < loadTimeBuckets.length; i++) {
+            result[i] = loadTimeBuckets[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long getStaleServeCount() {
+        return staleServeCount.sum();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshCount.sum();
+    }
+
+    @Override
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    @Override
+    public double getRefreshAvgMillis() {
+        long count = refreshCount.sum() + refreshFailureCount.sum();
+        return count == 0 ? 0D : refreshNanos.sum() / 1000000D / count;
+    }
+
+    @Override
+    public double getLastRefreshMillis() {
+        return lastRefreshNanos / 1000000D;
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(notifyName);
+        return dataWrapper != null ? dataWrapper.getInvalidationCount() : 0L;
+    }
+
+    @Override
+    public long getKeyInvalidationCount() {
+        LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(notifyName);
+        return dataWrapper != null ? dataWrapper.getKeyInvalidationCount() : 0L;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        Object data = LocalCacheUtil.getCache(notifyName, dataNode);
+        if (data == null) {
+            return 0L;
+        }
+        if (data instanceof KeyedCacheMap) {
+            return ((KeyedCacheMap<?, ?>) data).size();
+        }
+        if (data instanceof Collection) {
+            return ((Collection<?>) data).size();
+        }
+        if (data instanceof Map) {
+            return ((Map<?, ?>) data).size();
+        }
+        return 1L;
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(notifyName);
+        if (dataWrapper == null) {
+            return 0L;
+        }
+        ByteBuffer buffer = dataWrapper.getOffHeapData(dataNode);
+        return buffer != null ? buffer.capacity() : 0L;
+    }
+
+    @Override
+    public long getMillisSinceLastEvent() {
+        LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(notifyName);
+        if (dataWrapper == null || dataWrapper.getLastEventMillis() == 0L) {
+            return -1L;
+        }
+        return System.currentTimeMillis() - dataWrapper.getLastEventMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "LocalCacheStats [notifyName=" + notifyName + ", dataNode=" + dataNode + ", hitCount=" + getHitCount() + ", missCount="
+               + getMissCount() + ", loadCount=" + getLoadCount() + ", loadAvgMillis=" + getLoadAvgMillis() + ", staleServeCount="
+               + getStaleServeCount() + ", estimatedSize=" + getEstimatedSize() + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+/**
+ * 本地一级缓存每个 notifyName/dataNode 的统计，通过JMX暴露.
+ *
+ * @author XiaZhengsheng
+ */
+public interface LocalCacheStatsMXBean {
+
+    String getNotifyName();
+
+    String getDataNode();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    double getLoadAvgMillis();
+
+    /** 加载耗时分布的上界(毫秒)，最后一个桶没有上界 */
+    long[] getLoadTimeBucketBoundsMillis();
+
+    /** 与 getLoadTimeBucketBoundsMillis 对应的加载次数，比上界多一个 */
+    long[] getLoadTimeBucketCounts();
+
+    long getStaleServeCount();
+
+    long getRefreshCount();
+
+    long getRefreshFailureCount();
+
+    double getRefreshAvgMillis();
+
+    double getLastRefreshMillis();
+
+    /** 收到的整体清除通知数 */
+    long getInvalidationCount();
+
+    /** 收到的按key清除通知数 */
+    long getKeyInvalidationCount();
+
+    /** 当前缓存的条目数，按key缓存时为key数，集合或Map时为元素数 */
+    long getEstimatedSize();
+
+    /** offHeap 快照在堆外占用的字节数 */
+    long getOffHeapBytes();
+
+    /** 距最近一次zookeeper事件的毫秒数，没有收到过时为-1 */
+    long getMillisSinceLastEvent();
+}
@@ -16,27 +16,59 @@
  */
 package org.stategen.framework.cache;
 
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ServiceLoader;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
-import org.I0Itec.zkclient.IZkDataListener;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.serialize.SerializableSerializer;
-import org.apache.zookeeper.data.Stat;
 import org.stategen.framework.util.AssertUtil;
 import org.stategen.framework.util.StringUtil;
 
 /**
  * *
- * 该类用于获得本地一级缓存，接收zookeeper通知清除本地一级缓存等.
+ * 该类用于获得本地一级缓存，接收zookeeper(或其它 InvalidationBus)通知清除本地一级缓存等.
  *
  * @author XiaZhengsheng
  */
 public class LocalCacheUtil {
-    final static org.slf4j.Logger    logger    = org.slf4j.LoggerFactory.getLogger(ZkResourceDataListener.class);
+    final static org.slf4j.Logger    logger    = org.slf4j.LoggerFactory.getLogger(LocalCacheUtil.class);
     private static Map<String, DataWrapper>   resourceCache = new ConcurrentHashMap<String, DataWrapper>();
     public static ZkClient    zkClient       = null;
     private static Map<String/*notifyName*/, String/*notifyName*/> dataListenerCache  = new ConcurrentHashMap<String, String>();
+    /** 合并窗口内等待广播的变更 */
+    private static Map<String/*notifyName*/, PendingChange> pendingChanges = new ConcurrentHashMap<String, PendingChange>();
+    private static AtomicBoolean              notifyFlushScheduled = new AtomicBoolean(false);
+    /** 清除通知的传输层，为null时使用 ZkInvalidationBus */
+    private static volatile InvalidationBus   invalidationBus       = null;
+    private static volatile ScheduledExecutorService scheduler  = null;
+    /** refreshAhead 模式下后台重新加载用的线程池 */
+    private static volatile ExecutorService   refreshExecutor       = null;
+    private static Map<String/*notifyName*/, Map<String/*dataNode*/, LocalCacheStats>> statsRegistry = new ConcurrentHashMap<String, Map<String, LocalCacheStats>>();
+    /** 本类注册到JMX的统计，停止时全部注销，否则 MBeanServer 会一直引用webapp的类加载器 */
+    private static Set<ObjectName> registeredMBeans = ConcurrentHashMap.newKeySet();
+    private static volatile LocalCacheMetricsListener[] metricsListeners = loadMetricsListeners();
 
     /**
      * 本地一级缓存的data封装.
@@ -46,6 +78,16 @@ public class LocalCacheUtil {
     static class DataWrapper {
         private Long                nanoTime;
         private Map<String/*dataName*/, Object> dataCache = new ConcurrentHashMap<String, Object>();
+        /** refreshAhead 的dataName被清除后，旧值放在这里，直到新值放入 */
+        private Map<String/*dataName*/, Object> staleCache = new ConcurrentHashMap<String, Object>();
+        private Set<String/*dataName*/> refreshAheadDataNames = ConcurrentHashMap.newKeySet();
+        /** 堆外二级存储中的快照 */
+        private Map<String/*dataName*/, ByteBuffer> offHeapCache = new ConcurrentHashMap<String, ByteBuffer>();
+        private LongAdder           invalidationCount     = new LongAdder();
+        private LongAdder           keyInvalidationCount  = new LongAdder();
+        private volatile long       lastEventMillis;
+        private volatile long       lastCleanNanos        = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        private AtomicBoolean       trailingCleanScheduled = new AtomicBoolean(false);
 
         public DataWrapper() {
         }
@@ -58,19 +100,182 @@ public class LocalCacheUtil {
             this.nanoTime = nanoTime;
         }
 
+        public long getInvalidationCount() {
+            return invalidationCount.sum();
+        }
+
+        public long getKeyInvalidationCount() {
+            return keyInvalidationCount.sum();
+        }
+
+        public long getLastEventMillis() {
+            return lastEventMillis;
+        }
+
+        void recordEvent(int keyCount, String notifyName) {
+            lastEventMillis = System.currentTimeMillis();
+            if (keyCount < 0) {
+                invalidationCount.increment();
+            } else {
+                keyInvalidationCount.increment();
+            }
+            for (LocalCacheMetricsListener listener : metricsListeners) {
+                listener.onInvalidate(notifyName, keyCount);
+            }
+        }
+
         public Object getData(String dataName) {
             return dataCache.get(dataName);
         }
 
         public void setData(String dataName, Object data) {
             dataCache.put(dataName, data);
+            staleCache.remove(dataName);
+        }
+
+        public Object setDataIfAbsent(String dataName, Object data) {
+            Object old = dataCache.putIfAbsent(dataName, data);
+            return old != null ? old : data;
+        }
+
+        /***只移除堆上的数据，堆外的快照保留*/
+        public void removeData(String dataName) {
+            dataCache.remove(dataName);
+        }
+
+        public ByteBuffer getOffHeapData(String dataName) {
+            return offHeapCache.get(dataName);
+        }
+
+        public void setOffHeapData(String dataName, ByteBuffer buffer) {
+            offHeapCache.put(dataName, buffer);
+        }
+
+        public Object getStaleData(String dataName) {
+            return staleCache.get(dataName);
+        }
+
+        public void addRefreshAheadDataName(String dataName) {
+            refreshAheadDataNames.add(dataName);
         }
 
         public void clean() {
-            dataCache.clear();
+            lastCleanNanos = System.nanoTime();
+            offHeapCache.clear();
+            if (refreshAheadDataNames.isEmpty()) {
+                dataCache.clear();
+                return;
+            }
+            Iterator<Entry<String, Object>> iterator = dataCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry<String, Object> entry = iterator.next();
+                Object data = entry.getValue();
+                if (data instanceof KeyedCacheMap && ((KeyedCacheMap<?, ?>) data).isRefreshAhead()) {
+                    ((KeyedCacheMap<?, ?>) data).invalidateAll();
+                    continue;
+                }
+                iterator.remove();
+                if (refreshAheadDataNames.contains(entry.getKey())) {
+                    staleCache.put(entry.getKey(), data);
+                }
+            }
+        }
+
+        /***
+         * 按key清除，KeyedCacheMap中只清除对应的key，无法按key清除的整体数据直接移除
+         */
+        public void invalidateKeys(Collection<?> keys) {
+            //堆外的都是整体快照
+            offHeapCache.clear();
+            Iterator<Entry<String, Object>> iterator = dataCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry<String, Object> entry = iterator.next();
+                Object data = entry.getValue();
+                if (data instanceof KeyedCacheMap) {
+                    ((KeyedCacheMap<?, ?>) data).invalidate(keys);
+                } else {
+                    iterator.remove();
+                    if (refreshAheadDataNames.contains(entry.getKey())) {
+                        staleCache.put(entry.getKey(), data);
+                    }
+                }
+            }
+        }
+
+        /***
+         * 距上次清除超过 debounceMillis 时立即清除，否则在窗口结束时再清除一次，
+         * 窗口内重复的清除请求被合并
+         */
+        public void debounceClean(long debounceMillis) {
+            if (debounceMillis <= 0) {
+                clean();
+                return;
+            }
+            long debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+            long elapsed = System.nanoTime() - lastCleanNanos;
+            if (elapsed >= debounceNanos) {
+                clean();
+                return;
+            }
+            if (trailingCleanScheduled.compareAndSet(false, true)) {
+                getScheduler().schedule(() -> {
+                    trailingCleanScheduled.set(false);
+                    clean();
+                }, debounceNanos - elapsed, TimeUnit.NANOSECONDS);
+            }
         }
     }
     
+    /**
+     * zookeeper节点中key级别的变更内容，整表变更时节点中仍然只写入Long，与旧版本兼容.
+     */
+    static class ResourceChange implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Long        nanoTime;
+
+        private final List<Object> keys;
+
+        public ResourceChange(Long nanoTime, List<Object> keys) {
+            this.nanoTime = nanoTime;
+            this.keys = keys;
+        }
+
+        public Long getNanoTime() {
+            return nanoTime;
+        }
+
+        public List<Object> getKeys() {
+            return keys;
+        }
+    }
+
+    /**
+     * 合并窗口内同一个notifyName累积的变更，keys为null表示整体变更.
+     * 只在 pendingChanges.compute 内修改，由ConcurrentHashMap保证可见性
+     */
+    static class PendingChange {
+        private Set<Object> keys = new LinkedHashSet<Object>();
+
+        PendingChange merge(Collection<?> changedKeys) {
+            if (keys != null) {
+                if (changedKeys == null) {
+                    keys = null;
+                } else {
+                    keys.addAll(changedKeys);
+                    if (keys.size() > LocalCacheZkConfig.maxNotifyKeys) {
+                        keys = null;
+                    }
+                }
+            }
+            return this;
+        }
+
+        public Set<Object> getKeys() {
+            return keys;
+        }
+    }
+
     public static String buildNotifyName(String notifyName ,String tableName){
         if (StringUtil.isNotEmpty(notifyName) && StringUtil.isNotEmpty(tableName)){
             return new StringBuilder().append(notifyName).append(".").append(tableName).toString();
@@ -95,6 +300,123 @@ public class LocalCacheUtil {
         return null;
     }
 
+    /**
+     * 取得 refreshAhead 的dataNode被清除前的旧值.
+     *
+     * @param notifyName the resource name
+     * @param dataNode the data name
+     * @return the stale cache
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getStaleCache(String notifyName, String dataNode) {
+        DataWrapper dataWrapper = resourceCache.get(notifyName);
+        if (dataWrapper != null) {
+            return (T) dataWrapper.getStaleData(dataNode);
+        }
+        return null;
+    }
+
+    /**
+     * 标记dataNode为refreshAhead，被清除时旧值保留到新值放入为止.
+     *
+     * @param notifyName the resource name
+     * @param dataNode the data name
+     */
+    public static void setRefreshAhead(String notifyName, String dataNode) {
+        getOrCreateDataWrapper(notifyName).addRefreshAheadDataName(dataNode);
+    }
+
+    static DataWrapper getDataWrapper(String notifyName) {
+        return resourceCache.get(notifyName);
+    }
+
+    /**
+     * 取得 notifyName/dataNode 对应的统计，没有时创建，
+     * LocalCacheZkConfig.jmxEnabled 为true时同时注册到JMX.
+     *
+     * @param notifyName the resource name
+     * @param dataNode the data name
+     * @return the stats
+     */
+    public static LocalCacheStats getStats(String notifyName, String dataNode) {
+        Map<String, LocalCacheStats> dataNodeStats = statsRegistry.computeIfAbsent(notifyName, k -> new ConcurrentHashMap<String, LocalCacheStats>());
+        LocalCacheStats stats = dataNodeStats.get(dataNode);
+        if (stats == null) {
+            stats = dataNodeStats.computeIfAbsent(dataNode, k -> {
+                LocalCacheStats created = new LocalCacheStats(notifyName, dataNode);
+                if (LocalCacheZkConfig.jmxEnabled) {
+                    registerMBean(created);
+                }
+                return created;
+            });
+        }
+        return stats;
+    }
+
+    /**
+     * 所有已创建的统计.
+     *
+     * @return the all stats
+     */
+    public static List<LocalCacheStats> getAllStats() {
+        List<LocalCacheStats> result = new ArrayList<LocalCacheStats>();
+        for (Map<String, LocalCacheStats> dataNodeStats : statsRegistry.values()) {
+            result.addAll(dataNodeStats.values());
+        }
+        return result;
+    }
+
+    private static void registerMBean(LocalCacheStats stats) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(new StringBuilder("org.stategen.framework.cache:type=LocalCacheStats,notifyName=")
+                .append(ObjectName.quote(stats.getNotifyName())).append(",dataNode=").append(ObjectName.quote(stats.getDataNode())).toString());
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(stats, objectName);
+                registeredMBeans.add(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn(new StringBuilder("注册本地缓存统计到JMX失败:").append(stats.getNotifyName()).append(" ").append(stats.getDataNode()).toString(), e);
+        }
+    }
+
+    /***
+     * 注销本类注册到JMX的所有统计，由 LocalCacheZkConfig.destroy 在容器关闭时调用
+     */
+    public static void unregisterMBeans() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredMBeans) {
+            registeredMBeans.remove(objectName);
+            try {
+                if (mBeanServer.isRegistered(objectName)) {
+                    mBeanServer.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                logger.warn(new StringBuilder("注销本地缓存统计失败:").append(objectName).toString(), e);
+            }
+        }
+    }
+
+    public static synchronized void addMetricsListener(LocalCacheMetricsListener metricsListener) {
+        AssertUtil.mustNotNull(metricsListener, "metricsListener can not be null");
+        LocalCacheMetricsListener[] listeners = new LocalCacheMetricsListener[metricsListeners.length + 1];
+        System.arraycopy(metricsListeners, 0, listeners, 0, metricsListeners.length);
+        listeners[metricsListeners.length] = metricsListener;
+        metricsListeners = listeners;
+    }
+
+    static LocalCacheMetricsListener[] getMetricsListeners() {
+        return metricsListeners;
+    }
+
+    private static LocalCacheMetricsListener[] loadMetricsListeners() {
+        List<LocalCacheMetricsListener> listeners = new ArrayList<LocalCacheMetricsListener>();
+        for (LocalCacheMetricsListener metricsListener : ServiceLoader.load(LocalCacheMetricsListener.class)) {
+            listeners.add(metricsListener);
+        }
+        return listeners.toArray(new LocalCacheMetricsListener[listeners.size()]);
+    }
+
     /**
      * Gets the or create data wrapper.
      *
@@ -104,8 +426,7 @@ public class LocalCacheUtil {
     protected static DataWrapper getOrCreateDataWrapper(String notifyName) {
         DataWrapper dataWrapper = resourceCache.get(notifyName);
         if (dataWrapper == null) {
-            dataWrapper = new DataWrapper();
-            resourceCache.put(notifyName, dataWrapper);
+            dataWrapper = resourceCache.computeIfAbsent(notifyName, k -> new DataWrapper());
         }
         return dataWrapper;
     }
@@ -118,51 +439,68 @@ public class LocalCacheUtil {
      * @param data the data
      */
     public static void putToCache(String notifyName, String dataName, Object data) {
+        DataWrapper dataWrapper = prepareDataWrapper(notifyName);
+        dataWrapper.setData(dataName, data);
+    }
+
+    /***开始监听并记下当前的资源时间*/
+    private static DataWrapper prepareDataWrapper(String notifyName) {
         Long resourceNano = startListener(notifyName);
         DataWrapper dataWrapper = getOrCreateDataWrapper(notifyName);
-        dataWrapper.setData(dataName, data);
         if (resourceNano == null) {
             resourceNano = System.nanoTime();
         }
         dataWrapper.setNanoTime(resourceNano);
+        return dataWrapper;
     }
 
     /**
-     * The listener interface for receiving zkResourceData events.
-     * The class that is interested in processing a zkResourceData
-     * event implements this interface, and the object created
-     * with that class is registered with a component using the
-     * component's <code>addZkResourceDataListener<code> method. When
-     * the zkResourceData event occurs, that object's appropriate
-     * method is invoked.
+     * 与 putToCache 相同，但如果其它线程已经放入，返回已经放入的值.
      *
-     * @see ZkResourceDataEvent
+     * @param notifyName the resource name
+     * @param dataName the data name
+     * @param data the data
+     * @return 缓存中实际的值
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T putToCacheIfAbsent(String notifyName, String dataName, T data) {
+        DataWrapper dataWrapper = prepareDataWrapper(notifyName);
+        return (T) dataWrapper.setDataIfAbsent(dataName, data);
+    }
+
+    /**
+     * 把 InvalidationBus 传来的通知应用到 notifyName 对应的本地缓存.
      */
-    protected static class ZkResourceDataListener implements IZkDataListener {
+    static class ResourceInvalidationHandler implements InvalidationHandler {
         private String notifyName = null;
 
-        public ZkResourceDataListener(String notifyName) {
+        public ResourceInvalidationHandler(String notifyName) {
             this.notifyName = notifyName;
         }
 
-        public void handleDataChange(String dataPath, Object data) throws Exception {
+        @Override
+        public void onInvalidate(Long nanoTime, List<Object> keys) {
             DataWrapper dataWrapper = getOrCreateDataWrapper(notifyName);
-            if (!data.equals(dataWrapper.getNanoTime())) {
-                Long nanoTime = (Long) data;
+            if (nanoTime != null) {
                 dataWrapper.setNanoTime(nanoTime);
-                dataWrapper.clean();
+            }
+
+            if (keys != null) {
+                dataWrapper.recordEvent(keys.size(), notifyName);
+                dataWrapper.invalidateKeys(keys);
                 if (logger.isInfoEnabled()) {
-                    logger.info(new StringBuilder("dataPath节点时间改变,本地数据失效,将被清除").append(dataPath).append("   ").append(nanoTime).toString());
+                    logger.info(new StringBuilder("notifyName的key改变,本地对应key失效,将被清除").append(notifyName).append("   ").append(keys.size())
+                        .toString());
                 }
+                return;
             }
-        }
 
-        public void handleDataDeleted(String dataPath) throws Exception {
+            dataWrapper.recordEvent(-1, notifyName);
+            dataWrapper.debounceClean(LocalCacheZkConfig.listenerDebounceMillis);
             if (logger.isInfoEnabled()) {
-                logger.info(new StringBuilder("zk dataPath被删除:").append(dataPath).toString());
+                logger.info(new StringBuilder("notifyName时间改变,本地数据失效,将被清除").append(notifyName).append("   ").append(nanoTime).toString());
             }
         }
-
     }
 
     protected static ZkClient getZkClient() {
@@ -174,53 +512,156 @@ public class LocalCacheUtil {
         return zkClient;
     }
 
-    private static String getResourcePath(String notifyName) {
-        return new StringBuilder(LocalCacheZkConfig.rootPath).append(notifyName).toString();
+    protected static ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (LocalCacheUtil.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "stategen-local-cache");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return scheduler;
     }
 
-    public static Long getResourceNano(String notifyName) {
-        String resourcePath = getResourcePath(notifyName);
-        ZkClient zClient = getZkClient();
-        if (zClient.exists(resourcePath)) {
-            Stat stat = new Stat();
-            Long nanoTime = zClient.readData(resourcePath, stat);
-            return nanoTime;
+    protected static ExecutorService getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            synchronized (LocalCacheUtil.class) {
+                if (refreshExecutor == null) {
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    refreshExecutor = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "stategen-local-cache-refresh-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
         }
-        return null;
+        return refreshExecutor;
+    }
+
+    /**
+     * 当前使用的清除通知传输层，没有设置时使用 ZkInvalidationBus.
+     *
+     * @return the invalidation bus
+     */
+    public static InvalidationBus getInvalidationBus() {
+        if (invalidationBus == null) {
+            synchronized (LocalCacheUtil.class) {
+                if (invalidationBus == null) {
+                    invalidationBus = new ZkInvalidationBus();
+                }
+            }
+        }
+        return invalidationBus;
+    }
+
+    /**
+     * 更换清除通知传输层，应在使用缓存之前设置，之前的订阅不会迁移到新的传输层.
+     *
+     * @param invalidationBus the invalidation bus
+     */
+    public static synchronized void setInvalidationBus(InvalidationBus invalidationBus) {
+        AssertUtil.mustNotNull(invalidationBus, "invalidationBus can not be null");
+        LocalCacheUtil.invalidationBus = invalidationBus;
+        dataListenerCache.clear();
+    }
+
+    public static Long getResourceNano(String notifyName) {
+        return getInvalidationBus().getResourceNano(notifyName);
     }
 
     /**
      * Start listener.
-     * 开始向zookeeper中心监听 notifyName 对应的改变
+     * 开始向 InvalidationBus 监听 notifyName 对应的改变
      *
      * @param notifyName the resource name
      * @return the long
      */
     public static Long startListener(String notifyName) {
-        ZkClient zClient = getZkClient();
-        String resourcePath = getResourcePath(notifyName);
+        InvalidationBus bus = getInvalidationBus();
         String rsName = dataListenerCache.get(notifyName);
         if (rsName == null) {
-            zClient.subscribeDataChanges(resourcePath, new org.stategen.framework.cache.LocalCacheUtil.ZkResourceDataListener(notifyName));
+            bus.subscribe(notifyName, new ResourceInvalidationHandler(notifyName));
             dataListenerCache.put(notifyName, notifyName);
         }
-        return getResourceNano(notifyName);
+        return bus.getResourceNano(notifyName);
     }
 
     /**
      * Notify resource changed.
-     * 向zookeeper注册中心广播 notifyName 对应的资源改变
+     * 向zookeeper注册中心(或其它 InvalidationBus)广播 notifyName 对应的资源改变，
+     * 配置了 notifyCoalesceMillis 时，窗口内同一个notifyName只写一次
      * 
      * @param notifyName the resource name
      */
     public static void notifyResourceChanged(String notifyName) {
-        ZkClient zClient = getZkClient();
-        Long nanoTime = System.nanoTime();
-        String resourcePath = getResourcePath(notifyName);
-        if (!zClient.exists(resourcePath)) {
-            zClient.createPersistent(resourcePath, true);
+        notifyChanged(notifyName, null);
+    }
+
+    /**
+     * 批量广播多个 notifyName 对应的资源改变，重复的notifyName只写一次.
+     *
+     * @param notifyNames the resource names
+     */
+    public static void notifyResourcesChanged(Collection<String> notifyNames) {
+        for (String notifyName : new LinkedHashSet<String>(notifyNames)) {
+            notifyChanged(notifyName, null);
+        }
+    }
+
+    /**
+     * 广播 notifyName 下指定key的改变，监听端只清除 LocalCacheNameTaker.get(key, generator) 中对应的key，
+     * key的类型须与get时使用的类型一致(如都是Long)，key的数量超过 maxNotifyKeys 时退化为整体清除.
+     *
+     * @param notifyName the resource name
+     * @param keys the changed keys
+     */
+    public static void notifyKeysChanged(String notifyName, Collection<?> keys) {
+        AssertUtil.mustNotNull(keys, "keys can not be null");
+        notifyChanged(notifyName, keys);
+    }
+
+    private static void notifyChanged(String notifyName, Collection<?> keys) {
+        if (LocalCacheZkConfig.notifyCoalesceMillis <= 0) {
+            writeResourceChanged(notifyName, new PendingChange().merge(keys).getKeys());
+            return;
+        }
+        pendingChanges.compute(notifyName, (name, pendingChange) -> (pendingChange != null ? pendingChange : new PendingChange()).merge(keys));
+        scheduleNotifyFlush();
+    }
+
+    private static void scheduleNotifyFlush() {
+        if (notifyFlushScheduled.compareAndSet(false, true)) {
+            getScheduler().schedule(LocalCacheUtil::flushPendingNotifies, LocalCacheZkConfig.notifyCoalesceMillis, TimeUnit.MILLISECONDS);
         }
-        zClient.writeData(resourcePath, nanoTime);
+    }
+
+    /**
+     * 立即把合并窗口内尚未广播的通知广播出去，应用关闭前可调用.
+     */
+    public static void flushPendingNotifies() {
+        //先复位，flush过程中新加入的通知会安排下一次flush，不会丢失
+        notifyFlushScheduled.set(false);
+        for (String notifyName : pendingChanges.keySet()) {
+            PendingChange pendingChange = pendingChanges.remove(notifyName);
+            if (pendingChange == null) {
+                continue;
+            }
+            try {
+                writeResourceChanged(notifyName, pendingChange.getKeys());
+            } catch (RuntimeException e) {
+                logger.error(new StringBuilder("通知资源改变失败:").append(notifyName).toString(), e);
+            }
+        }
+    }
+
+    /***keys为null时整体清除*/
+    private static void writeResourceChanged(String notifyName, Collection<Object> keys) {
+        getInvalidationBus().publish(notifyName, keys);
     }
 
     /**
@@ -230,12 +671,7 @@ public class LocalCacheUtil {
      * @return true, if successful
      */
     public static boolean deleteResourceNode(String notifyName) {
-        ZkClient zClient = getZkClient();
-        //删除单独一个节点，返回true表示成功  
-        //        boolean e1 = zkClient.delete("/testUserNode");  
-        //删除含有子节点的节点  
-        String resourcePath = getResourcePath(notifyName);
-        return zClient.deleteRecursive(resourcePath);
+        return getInvalidationBus().delete(notifyName);
     }
 
 }
@@ -16,18 +16,29 @@
  */
 package org.stategen.framework.cache;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.stategen.framework.util.AssertUtil;
 /****
- * spring从/opt/config/stategen.xml读取数据后放入该config中
+ * spring从/opt/config/stategen.xml读取数据后放入该config中，容器关闭时注销注册到JMX的统计
  * 
  * @author XiaZhengsheng
  */
-public class LocalCacheZkConfig {
+public class LocalCacheZkConfig implements DisposableBean {
     final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LocalCacheZkConfig.class);
     
     protected static String                               zkConnectString     = null;
     protected static Integer                              zkConnectionTimeout = 10000;
     protected static String                               rootPath            = "/stategen/resourceCache";
+    /** 大于0时，同一个notifyName在该毫秒数内的多次通知合并为一次zookeeper写入 */
+    protected static long                                 notifyCoalesceMillis   = 0L;
+    /** 大于0时，监听端在该毫秒数内收到的多次清除合并，窗口内最多在首尾各清除一次 */
+    protected static long                                 listenerDebounceMillis = 0L;
+    /** 一次key级别通知最多携带的key数，超过时退化为整表清除 */
+    protected static int                                  maxNotifyKeys          = 1000;
+    /** 是否把每个notifyName/dataNode的缓存统计注册到JMX，默认不注册 */
+    protected static boolean                              jmxEnabled             = false;
+    /** offHeap 的快照最多同时在堆上保留的个数，其余只保留在堆外 */
+    protected static int                                  offHeapHotSetSize      = 8;
     
     public void setRootPath(String rootPath) {
         AssertUtil.mustNotBlank(rootPath, "rootPath can not be empty");
@@ -57,4 +68,52 @@ public class LocalCacheZkConfig {
         }
         LocalCacheZkConfig.zkConnectionTimeout = zkConnectionTimeout;
     }
+
+    public void setNotifyCoalesceMillis(Long notifyCoalesceMillis) {
+        if (notifyCoalesceMillis == null || notifyCoalesceMillis < 0) {
+            logger.warn(new StringBuilder("notifyCoalesceMillis时间小于0，设置不成功,").append(notifyCoalesceMillis).toString());
+            return;
+        }
+        LocalCacheZkConfig.notifyCoalesceMillis = notifyCoalesceMillis;
+    }
+
+    public void setListenerDebounceMillis(Long listenerDebounceMillis) {
+        if (listenerDebounceMillis == null || listenerDebounceMillis < 0) {
+            logger.warn(new StringBuilder("listenerDebounceMillis时间小于0，设置不成功,").append(listenerDebounceMillis).toString());
+            return;
+        }
+        LocalCacheZkConfig.listenerDebounceMillis = listenerDebounceMillis;
+    }
+
+    public void setMaxNotifyKeys(Integer maxNotifyKeys) {
+        if (maxNotifyKeys == null || maxNotifyKeys <= 0) {
+            logger.warn(new StringBuilder("maxNotifyKeys小于等于0，设置不成功,").append(maxNotifyKeys).toString());
+            return;
+        }
+        LocalCacheZkConfig.maxNotifyKeys = maxNotifyKeys;
+    }
+
+    public void setJmxEnabled(Boolean jmxEnabled) {
+        LocalCacheZkConfig.jmxEnabled = jmxEnabled != null && jmxEnabled;
+    }
+
+    public void setOffHeapHotSetSize(Integer offHeapHotSetSize) {
+        if (offHeapHotSetSize == null || offHeapHotSetSize <= 0) {
+            logger.warn(new StringBuilder("offHeapHotSetSize小于等于0，设置不成功,").append(offHeapHotSetSize).toString());
+            return;
+        }
+        LocalCacheZkConfig.offHeapHotSetSize = offHeapHotSetSize;
+    }
+
+    /***
+     * 更换清除通知的传输层，如 RedisInvalidationBus、LocalInvalidationBus，不设置时使用zookeeper
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        LocalCacheUtil.setInvalidationBus(invalidationBus);
+    }
+
+    @Override
+    public void destroy() {
+        LocalCacheUtil.unregisterMBeans();
+    }
 }
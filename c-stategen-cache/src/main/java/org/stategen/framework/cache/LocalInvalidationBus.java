@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的清除通知，publish时在当前线程中同步回调，
+ * 用于测试以及只部署一个节点、不需要zookeeper的场景.
+ *
+ * @author XiaZhengsheng
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+    final static org.slf4j.Logger                                logger        = org.slf4j.LoggerFactory.getLogger(LocalInvalidationBus.class);
+
+    private Map<String/*notifyName*/, List<InvalidationHandler>> handlers      = new ConcurrentHashMap<String, List<InvalidationHandler>>();
+
+    private Map<String/*notifyName*/, Long>                      resourceNanos = new ConcurrentHashMap<String, Long>();
+
+    @Override
+    public void subscribe(String notifyName, InvalidationHandler handler) {
+        handlers.computeIfAbsent(notifyName, k -> new CopyOnWriteArrayList<InvalidationHandler>()).add(handler);
+    }
+
+    @Override
+    public void publish(String notifyName, Collection<Object> keys) {
+        Long nanoTime = System.nanoTime();
+        resourceNanos.put(notifyName, nanoTime);
+        List<InvalidationHandler> notifyHandlers = handlers.get(notifyName);
+        if (notifyHandlers == null) {
+            return;
+        }
+        List<Object> changedKeys = keys != null ? new ArrayList<Object>(keys) : null;
+        for (InvalidationHandler handler : notifyHandlers) {
+            try {
+                handler.onInvalidate(nanoTime, changedKeys);
+            } catch (RuntimeException e) {
+                logger.error(new StringBuilder("处理本地清除通知出错:").append(notifyName).toString(), e);
+            }
+        }
+    }
+
+    @Override
+    public Long getResourceNano(String notifyName) {
+        return resourceNanos.get(notifyName);
+    }
+
+    @Override
+    public boolean delete(String notifyName) {
+        return resourceNanos.remove(notifyName) != null;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.stategen.framework.util.KryoPool;
+
+/**
+ * 本地一级缓存的堆外二级存储，用于整表快照等大对象.
+ * 快照用Kryo序列化后放在直接内存(direct ByteBuffer)中，堆上只保留最近访问的
+ * LocalCacheZkConfig.offHeapHotSetSize 个快照，被挤出的快照在下次访问时从堆外反序列化回堆上.
+ *
+ * @author XiaZhengsheng
+ */
+final class OffHeapSnapshots {
+    final static org.slf4j.Logger  logger      = org.slf4j.LoggerFactory.getLogger(OffHeapSnapshots.class);
+
+    /** 当前在堆上的快照 */
+    private static Set<HotKey>     hotSet      = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 堆上快照的标识，由 LocalCacheNameTaker 持有，命中时只写一次 volatile 字段.
+     */
+    static final class HotKey {
+        final String  notifyName;
+        final String  dataNode;
+        volatile long lastAccessNanos;
+
+        HotKey(String notifyName, String dataNode) {
+            this.notifyName = notifyName;
+            this.dataNode = dataNode;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * notifyName.hashCode() + dataNode.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof HotKey)) {
+                return false;
+            }
+            HotKey other = (HotKey) obj;
+            return notifyName.equals(other.notifyName) && dataNode.equals(other.dataNode);
+        }
+    }
+
+    private OffHeapSnapshots() {
+    }
+
+    static void touch(HotKey hotKey) {
+        hotKey.lastAccessNanos = System.nanoTime();
+    }
+
+    /***放入或提升到堆上，超出 offHeapHotSetSize 时把最久未访问的快照从堆上移除，只保留堆外的那份*/
+    static void admit(HotKey hotKey) {
+        touch(hotKey);
+        if (!hotSet.add(hotKey)) {
+            return;
+        }
+        while (hotSet.size() > LocalCacheZkConfig.offHeapHotSetSize) {
+            HotKey victim = null;
+            for (HotKey candidate : hotSet) {
+                if (candidate != hotKey && (victim == null || candidate.lastAccessNanos - victim.lastAccessNanos < 0)) {
+                    victim = candidate;
+                }
+            }
+            if (victim == null || !hotSet.remove(victim)) {
+                return;
+            }
+            LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(victim.notifyName);
+            if (dataWrapper != null && dataWrapper.getOffHeapData(victim.dataNode) != null) {
+                dataWrapper.removeData(victim.dataNode);
+            }
+        }
+    }
+
+    /***序列化到堆外，不能序列化时返回false，该快照只留在堆上*/
+    static boolean store(String notifyName, String dataNode, Object data) {
+        ByteBuffer buffer;
+        try {
+            buffer = serialize(data);
+        } catch (RuntimeException e) {
+            logger.warn(new StringBuilder("快照不能序列化到堆外,只保留在堆上:").append(notifyName).append(" ").append(dataNode).toString(), e);
+            return false;
+        }
+        LocalCacheUtil.getOrCreateDataWrapper(notifyName).setOffHeapData(dataNode, buffer);
+        return true;
+    }
+
+    /***从堆外反序列化回堆上，堆外没有时返回null*/
+    static Object promote(String notifyName, String dataNode) {
+        LocalCacheUtil.DataWrapper dataWrapper = LocalCacheUtil.getDataWrapper(notifyName);
+        if (dataWrapper == null) {
+            return null;
+        }
+        ByteBuffer buffer = dataWrapper.getOffHeapData(dataNode);
+        if (buffer == null) {
+            return null;
+        }
+        Object data = deserialize(buffer);
+        dataWrapper.setDataIfAbsent(dataNode, data);
+        return data;
+    }
+
+    /***Kryo和写入缓冲都来自 KryoPool，KryoPool.register 的类只写入id*/
+    static ByteBuffer serialize(Object data) {
+        return KryoPool.writeClassAndObject(data, output -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(output.position());
+            buffer.put(output.getBuffer(), 0, output.position());
+            buffer.flip();
+            return buffer;
+        });
+    }
+
+    static Object deserialize(ByteBuffer buffer) {
+        return KryoPool.readClassAndObject(new ByteBufferInputStream(buffer.duplicate()));
+    }
+
+    /***直接从堆外读取，不先拷贝成byte[]*/
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
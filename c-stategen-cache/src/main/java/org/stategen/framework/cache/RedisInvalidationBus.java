@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.stategen.framework.util.AssertUtil;
+import org.stategen.framework.util.RedisTemplateUtil;
+
+/**
+ * 基于redis pub/sub的清除通知，所有notifyName共用一个channel，消息用 RedisTemplate 的valueSerializer序列化.
+ * 
+ * <pre>
+ * 1.publish 只有一次 PUBLISH，不需要像zookeeper那样先写节点；
+ * 2.redis pub/sub 不保存消息，断线期间的通知会丢失且无法察觉，对一致性要求高的场景仍应使用 ZkInvalidationBus；
+ * 3.不保存资源时间，getResourceNano 总是返回null.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public class RedisInvalidationBus implements InvalidationBus {
+    final static org.slf4j.Logger                          logger   = org.slf4j.LoggerFactory.getLogger(RedisInvalidationBus.class);
+
+    private String                                         channel  = "stategen:resourceCache";
+
+    /** 为null时使用 RedisTemplateUtil 中的 RedisTemplate */
+    private RedisTemplate<String, Object>                  redisTemplate;
+
+    private volatile RedisMessageListenerContainer         listenerContainer;
+
+    private Map<String/*notifyName*/, InvalidationHandler> handlers = new ConcurrentHashMap<String, InvalidationHandler>();
+
+    public RedisInvalidationBus() {
+    }
+
+    public RedisInvalidationBus(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public void setChannel(String channel) {
+        AssertUtil.mustNotBlank(channel, "channel can not be empty");
+        this.channel = channel;
+    }
+
+    public void setRedisTemplate(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    private RedisTemplate<String, Object> getRedisTemplate() {
+        RedisTemplate<String, Object> result = redisTemplate != null ? redisTemplate : RedisTemplateUtil.getRedisTemplate();
+        AssertUtil.mustNotNull(result, "请配置redisTemplate!");
+        return result;
+    }
+
+    @Override
+    public void subscribe(String notifyName, InvalidationHandler handler) {
+        handlers.putIfAbsent(notifyName, handler);
+        startListenerContainer();
+    }
+
+    private void startListenerContainer() {
+        if (listenerContainer == null) {
+            synchronized (this) {
+                if (listenerContainer == null) {
+                    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+                    container.setConnectionFactory(getRedisTemplate().getConnectionFactory());
+                    container.addMessageListener(this::onMessage, new ChannelTopic(channel));
+                    container.afterPropertiesSet();
+                    container.start();
+                    listenerContainer = container;
+                }
+            }
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        Object body;
+        try {
+            body = getRedisTemplate().getValueSerializer().deserialize(message.getBody());
+        } catch (RuntimeException e) {
+            logger.error(new StringBuilder("redis清除通知反序列化出错:").append(channel).toString(), e);
+            return;
+        }
+        if (!(body instanceof InvalidationMessage)) {
+            return;
+        }
+        InvalidationMessage invalidationMessage = (InvalidationMessage) body;
+        InvalidationHandler handler = handlers.get(invalidationMessage.getNotifyName());
+        if (handler != null) {
+            handler.onInvalidate(invalidationMessage.getNanoTime(), invalidationMessage.getKeys());
+        }
+    }
+
+    @Override
+    public void publish(String notifyName, Collection<Object> keys) {
+        List<Object> changedKeys = keys != null ? new ArrayList<Object>(keys) : null;
+        getRedisTemplate().convertAndSend(channel, new InvalidationMessage(notifyName, System.nanoTime(), changedKeys));
+    }
+
+    @Override
+    public Long getResourceNano(String notifyName) {
+        return null;
+    }
+
+    @Override
+    public boolean delete(String notifyName) {
+        return false;
+    }
+
+    /***
+     * spring 关闭时调用，停止监听
+     */
+    public synchronized void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+            listenerContainer = null;
+        }
+    }
+
+    /**
+     * redis channel 中传递的清除通知，keys为null表示整体改变.
+     */
+    static class InvalidationMessage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String       notifyName;
+
+        private final Long         nanoTime;
+
+        private final List<Object> keys;
+
+        public InvalidationMessage(String notifyName, Long nanoTime, List<Object> keys) {
+            this.notifyName = notifyName;
+            this.nanoTime = nanoTime;
+            this.keys = keys;
+        }
+
+        public String getNotifyName() {
+            return notifyName;
+        }
+
+        public Long getNanoTime() {
+            return nanoTime;
+        }
+
+        public List<Object> getKeys() {
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018  niaoge<78493244@qq.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.stategen.framework.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.I0Itec.zkclient.IZkDataListener;
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.zookeeper.data.Stat;
+import org.stategen.framework.cache.LocalCacheUtil.ResourceChange;
+
+/**
+ * 基于zookeeper节点的清除通知，每个notifyName对应 rootPath 下的一个节点，
+ * 整体改变时节点中写入Long，按key改变时写入ResourceChange.
+ * zookeeper的watch是一次性的，监听端通过节点版本号判断是否漏掉了中间的通知，漏掉时只能整体清除.
+ *
+ * @author XiaZhengsheng
+ */
+public class ZkInvalidationBus implements InvalidationBus {
+    final static org.slf4j.Logger                       logger               = org.slf4j.LoggerFactory.getLogger(ZkInvalidationBus.class);
+
+    private Map<String/*notifyName*/, ZkResourceDataListener> dataListeners = new ConcurrentHashMap<String, ZkResourceDataListener>();
+
+    /** 已确认存在的zookeeper节点，避免每次通知都先exists */
+    private Set<String/*resourcePath*/>                 existedResourcePaths = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void subscribe(String notifyName, InvalidationHandler handler) {
+        dataListeners.computeIfAbsent(notifyName, k -> {
+            ZkResourceDataListener dataListener = new ZkResourceDataListener(notifyName, handler);
+            LocalCacheUtil.getZkClient().subscribeDataChanges(getResourcePath(notifyName), dataListener);
+            return dataListener;
+        });
+    }
+
+    @Override
+    public void publish(String notifyName, Collection<Object> keys) {
+        ZkClient zClient = LocalCacheUtil.getZkClient();
+        Long nanoTime = System.nanoTime();
+        String resourcePath = getResourcePath(notifyName);
+        if (!existedResourcePaths.contains(resourcePath)) {
+            if (!zClient.exists(resourcePath)) {
+                zClient.createPersistent(resourcePath, true);
+            }
+            existedResourcePaths.add(resourcePath);
+        }
+        Object data = keys != null ? new ResourceChange(nanoTime, new ArrayList<Object>(keys)) : nanoTime;
+        zClient.writeData(resourcePath, data);
+    }
+
+    /***读取节点时间，监听端版本未知时记下当前版本，之后的版本才能按key清除*/
+    @Override
+    public Long getResourceNano(String notifyName) {
+        String resourcePath = getResourcePath(notifyName);
+        ZkClient zClient = LocalCacheUtil.getZkClient();
+        if (!zClient.exists(resourcePath)) {
+            return null;
+        }
+        Stat stat = new Stat();
+        Object data = zClient.readData(resourcePath, stat);
+        ZkResourceDataListener dataListener = dataListeners.get(notifyName);
+        if (dataListener != null && dataListener.lastVersion < 0) {
+            dataListener.lastVersion = stat.getVersion();
+        }
+        if (data instanceof ResourceChange) {
+            return ((ResourceChange) data).getNanoTime();
+        }
+        return (Long) data;
+    }
+
+    @Override
+    public boolean delete(String notifyName) {
+        ZkClient zClient = LocalCacheUtil.getZkClient();
+        //删除单独一个节点，返回true表示成功  
+        //        boolean e1 = zkClient.delete("/testUserNode");  
+        //删除含有子节点的节点  
+        String resourcePath = getResourcePath(notifyName);
+        existedResourcePaths.remove(resourcePath);
+        return zClient.deleteRecursive(resourcePath);
+    }
+
+    private static String getResourcePath(String notifyName) {
+        return new StringBuilder(LocalCacheZkConfig.rootPath).append(notifyName).toString();
+    }
+
+    /**
+     * The listener interface for receiving zkResourceData events.
+     * The class that is interested in processing a zkResourceData
+     * event implements this interface, and the object created
+     * with that class is registered with a component using the
+     * component's <code>addZkResourceDataListener<code> method. When
+     * the zkResourceData event occurs, that object's appropriate
+     * method is invoked.
+     *
+     * @see ZkResourceDataEvent
+     */
+    protected class ZkResourceDataListener implements IZkDataListener {
+        private String              notifyName  = null;
+
+        private InvalidationHandler handler;
+
+        /** 已处理的zookeeper节点版本，-1表示未知，未知或跳过版本时只能整体清除 */
+        private volatile int        lastVersion = -1;
+
+        public ZkResourceDataListener(String notifyName, InvalidationHandler handler) {
+            this.notifyName = notifyName;
+            this.handler = handler;
+        }
+
+        public void handleDataChange(String dataPath, Object data) throws Exception {
+            //节点刚创建时data为null
+            if (data == null) {
+                return;
+            }
+            //zookeeper的watch是一次性的，连续写入时中间的版本可能收不到，所以要带上版本号重新读取
+            Stat stat = new Stat();
+            Object current;
+            try {
+                current = LocalCacheUtil.getZkClient().readData(dataPath, stat);
+            } catch (RuntimeException e) {
+                lastVersion = -1;
+                handler.onInvalidate(null, null);
+                return;
+            }
+
+            int version = stat.getVersion();
+            if (lastVersion >= 0 && version <= lastVersion) {
+                return;
+            }
+            boolean continuous = lastVersion >= 0 && version == lastVersion + 1;
+            lastVersion = version;
+
+            if (current instanceof ResourceChange) {
+                ResourceChange resourceChange = (ResourceChange) current;
+                handler.onInvalidate(resourceChange.getNanoTime(), continuous ? resourceChange.getKeys() : null);
+            } else {
+                handler.onInvalidate((Long) current, null);
+            }
+        }
+
+        public void handleDataDeleted(String dataPath) throws Exception {
+            lastVersion = -1;
+            existedResourcePaths.remove(dataPath);
+            if (logger.isInfoEnabled()) {
+                logger.info(new StringBuilder("zk dataPath被删除:").append(dataPath).append("   ").append(notifyName).toString());
+            }
+        }
+
+    }
+}
@@ -0,0 +1,33 @@
+package org.stategen.framework.cache;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapSnapshotsTst {
+
+    @Test
+    public void testEvictedBufferIsNotReferenced() throws InterruptedException {
+        WeakReference<ByteBuffer> bufferRef = storeAndPromote("offHeapEvicted", "all");
+        Assert.assertNotNull(bufferRef.get());
+
+        //清除后，池中的Kryo不能再通过 Input 引用堆外快照
+        LocalCacheUtil.getDataWrapper("offHeapEvicted").clean();
+        for (int i = 0; i < 50 && bufferRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull("堆外快照被清除后不应再被引用", bufferRef.get());
+    }
+
+    private static WeakReference<ByteBuffer> storeAndPromote(String notifyName, String dataNode) {
+        ArrayList<String> snapshot = new ArrayList<String>(Arrays.asList("Zhejiang", "Jiangsu"));
+        Assert.assertTrue(OffHeapSnapshots.store(notifyName, dataNode, snapshot));
+        Assert.assertEquals(snapshot, OffHeapSnapshots.promote(notifyName, dataNode));
+        return new WeakReference<ByteBuffer>(LocalCacheUtil.getDataWrapper(notifyName).getOffHeapData(dataNode));
+    }
+}
@@ -0,0 +1,125 @@
+package org.stategen.framework.cachetst;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.test.TestingServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.stategen.framework.cache.InvalidationBus;
+import org.stategen.framework.cache.LocalCacheUtil;
+import org.stategen.framework.cache.LocalCacheZkConfig;
+import org.stategen.framework.cache.LocalInvalidationBus;
+import org.stategen.framework.cache.RedisInvalidationBus;
+import org.stategen.framework.cache.ZkInvalidationBus;
+
+/***
+ * 比较各 InvalidationBus 从 publish 到监听端收到通知的延迟，
+ * zookeeper 使用进程内的测试服务，redis 只有本机6379端口可连接时才测试
+ */
+public class InvalidationBusBenchmarkTst {
+    final static org.slf4j.Logger logger     = org.slf4j.LoggerFactory.getLogger(InvalidationBusBenchmarkTst.class);
+
+    private static final int      WARM_UP    = 20;
+
+    private static final int      ITERATIONS = 200;
+
+    /***依次publish，每次等收到通知后再publish下一次，返回每次的延迟(微秒)*/
+    private static long[] measure(InvalidationBus bus, String notifyName) throws InterruptedException {
+        AtomicReference<CountDownLatch> latchRef = new AtomicReference<CountDownLatch>();
+        bus.subscribe(notifyName, (nanoTime, keys) -> {
+            CountDownLatch latch = latchRef.get();
+            if (latch != null) {
+                latch.countDown();
+            }
+        });
+
+        long[] micros = new long[ITERATIONS];
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            CountDownLatch latch = new CountDownLatch(1);
+            latchRef.set(latch);
+            long start = System.nanoTime();
+            bus.publish(notifyName, Arrays.<Object> asList(Long.valueOf(i)));
+            Assert.assertTrue("通知超时:" + bus.getClass().getSimpleName(), latch.await(5, TimeUnit.SECONDS));
+            if (i >= 0) {
+                micros[i] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            }
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static void report(String name, long[] micros) {
+        if (logger.isInfoEnabled()) {
+            logger.info(new StringBuilder(name).append(" 通知延迟(us) p50:").append(micros[micros.length / 2]).append(" p99:")
+                .append(micros[micros.length * 99 / 100]).append(" max:").append(micros[micros.length - 1]).toString());
+        }
+    }
+
+    @Test
+    public void testLocalBus() throws InterruptedException {
+        report("local", measure(new LocalInvalidationBus(), "benchmark.local"));
+    }
+
+    @Test
+    public void testZkBus() throws Exception {
+        TestingServer zkServer = new TestingServer(true);
+        try {
+            LocalCacheZkConfig localCacheZkConfig = new LocalCacheZkConfig();
+            localCacheZkConfig.setConnectString(zkServer.getConnectString());
+            localCacheZkConfig.setRootPath("/stategen/resourceCache/benchmarkTst/");
+            report("zookeeper", measure(new ZkInvalidationBus(), "benchmark.zk"));
+        } finally {
+            if (LocalCacheUtil.zkClient != null) {
+                LocalCacheUtil.zkClient.close();
+                LocalCacheUtil.zkClient = null;
+            }
+            zkServer.close();
+        }
+    }
+
+    @Test
+    public void testRedisBus() throws Exception {
+        if (!isReachable("localhost", 6379)) {
+            if (logger.isInfoEnabled()) {
+                logger.info("本机没有redis服务，跳过redis通知延迟测试");
+            }
+            return;
+        }
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("localhost", 6379));
+        connectionFactory.afterPropertiesSet();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<String, Object>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        RedisInvalidationBus bus = new RedisInvalidationBus(redisTemplate);
+        bus.setChannel("stategen:resourceCache:benchmarkTst");
+        try {
+            //订阅是异步建立的，先等订阅生效
+            bus.subscribe("benchmark.redis", (nanoTime, keys) -> {
+            });
+            Thread.sleep(500L);
+            report("redis", measure(bus, "benchmark.redis.measure"));
+        } finally {
+            bus.destroy();
+            connectionFactory.destroy();
+        }
+    }
+
+    private static boolean isReachable(String host, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
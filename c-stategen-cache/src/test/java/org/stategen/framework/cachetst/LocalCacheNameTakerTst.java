@@ -0,0 +1,331 @@
+package org.stategen.framework.cachetst;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.stategen.framework.cache.CacheGenerator;
+import org.stategen.framework.cache.LocalCacheNameTaker;
+import org.stategen.framework.cache.LocalCacheStats;
+import org.stategen.framework.cache.LocalCacheUtil;
+import org.stategen.framework.cache.LocalCacheZkConfig;
+import org.stategen.framework.cache.LocalInvalidationBus;
+
+/***
+ * 使用进程内的 LocalInvalidationBus，不需要zookeeper
+ */
+public class LocalCacheNameTakerTst {
+
+    @BeforeClass
+    public static void useLocalBus() {
+        LocalCacheZkConfig localCacheZkConfig = new LocalCacheZkConfig();
+        localCacheZkConfig.setInvalidationBus(new LocalInvalidationBus());
+        localCacheZkConfig.setNotifyCoalesceMillis(0L);
+        localCacheZkConfig.setListenerDebounceMillis(0L);
+    }
+
+    static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.nanoTime() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    /***第一次直接返回，之后的加载等 release 后才返回*/
+    static class BlockingGenerator implements CacheGenerator<String> {
+        final AtomicInteger  calls   = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String generateCache() {
+            int call = calls.incrementAndGet();
+            if (call > 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "v" + call;
+        }
+    }
+
+    @Test
+    public void testSoftExpiredServesOldValueWhileOneReloadRuns() throws InterruptedException {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("softTtl", "region", "all");
+        nameTaker.setSoftTtlMillis(50L);
+        BlockingGenerator generator = new BlockingGenerator();
+        Assert.assertEquals("v1", nameTaker.get(generator));
+
+        Thread.sleep(100L);
+        Assert.assertEquals("v1", nameTaker.get(generator));
+        Assert.assertTrue(generator.started.await(5, TimeUnit.SECONDS));
+        //后台刷新没有完成前，其它线程继续拿到旧值，也不会再提交刷新
+        Thread[] readers = new Thread[8];
+        AtomicInteger oldValues = new AtomicInteger();
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    if ("v1".equals(nameTaker.get(generator))) {
+                        oldValues.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertEquals(readers.length * 100, oldValues.get());
+        Assert.assertEquals(2, generator.calls.get());
+
+        generator.release.countDown();
+        waitUntil(() -> nameTaker.getRefreshCount() == 1L);
+        Assert.assertEquals("v2", nameTaker.get(generator));
+        Assert.assertEquals(2, generator.calls.get());
+        Assert.assertEquals(0L, nameTaker.getRefreshFailureCount());
+    }
+
+    @Test
+    public void testValuePutByOtherTakerIsFresh() throws InterruptedException {
+        LocalCacheNameTaker<String> writer = new LocalCacheNameTaker<String>("softTtlShared", "region", "all");
+        writer.putToCache("put");
+
+        LocalCacheNameTaker<String> reader = new LocalCacheNameTaker<String>("softTtlShared", "region", "all");
+        reader.setSoftTtlMillis(50L);
+        AtomicInteger calls = new AtomicInteger();
+        CacheGenerator<String> generator = () -> "v" + calls.incrementAndGet();
+        //不知道加载时间的值按刚加载处理，不立即刷新
+        Assert.assertEquals("put", reader.get(generator));
+        Thread.sleep(20L);
+        Assert.assertEquals(0, calls.get());
+
+        Thread.sleep(80L);
+        Assert.assertEquals("put", reader.get(generator));
+        waitUntil(() -> calls.get() == 1);
+        waitUntil(() -> "v1".equals(reader.getCache()));
+    }
+
+    @Test
+    public void testSameKeyLoadsOnce() throws Exception {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("singleFlight", "region", "byId");
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CacheGenerator<String> generator = () -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "city";
+        };
+
+        int threads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Thread> workers = new CopyOnWriteArrayList<Thread>();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executorService.submit(() -> {
+                workers.add(Thread.currentThread());
+                return nameTaker.get(1L, generator);
+            }));
+        }
+        //一个线程在 generator 中等待 release，其余线程等待它的结果
+        waitUntil(() -> workers.size() == threads && workers.stream().allMatch(worker -> worker.getState() == Thread.State.WAITING));
+        Assert.assertEquals(1, calls.get());
+        release.countDown();
+        for (Future<String> future : futures) {
+            Assert.assertEquals("city", future.get(5, TimeUnit.SECONDS));
+        }
+        executorService.shutdown();
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1L, nameTaker.getStats().getLoadCount());
+    }
+
+    @Test
+    public void testDifferentKeysLoadInParallel() throws Exception {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("parallelKeys", "region", "byId");
+        //两个key都进入 generator 后才返回，串行加载时第一个key等不到第二个
+        CountDownLatch entered = new CountDownLatch(2);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (long key = 1; key <= 2; key++) {
+            long id = key;
+            futures.add(executorService.submit(() -> nameTaker.get(id, () -> {
+                entered.countDown();
+                try {
+                    return entered.await(5, TimeUnit.SECONDS) ? "city" + id : "timeout";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return "interrupted";
+                }
+            })));
+        }
+        Assert.assertEquals("city1", futures.get(0).get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("city2", futures.get(1).get(10, TimeUnit.SECONDS));
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testSameThreadReentryFails() {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("reentry", "region", "byId");
+        try {
+            nameTaker.get(1L, () -> nameTaker.get(1L, () -> "inner"));
+            Assert.fail("generator 中重复加载同一个key应抛出异常");
+        } catch (IllegalStateException e) {
+            //期望的异常
+        }
+        //失败的加载已移除，之后可以正常加载
+        Assert.assertEquals("city", nameTaker.get(1L, () -> "city"));
+        Assert.assertEquals("other", nameTaker.get(2L, () -> nameTaker.get(3L, () -> "other")));
+    }
+
+    @Test
+    public void testStatsCounters() {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("stats", "region", "all");
+        AtomicInteger calls = new AtomicInteger();
+        CacheGenerator<String> generator = () -> "v" + calls.incrementAndGet();
+        LocalCacheStats stats = nameTaker.getStats();
+        Assert.assertSame(stats, LocalCacheUtil.getStats(nameTaker.getNotifyName(), nameTaker.getDataNode()));
+
+        Assert.assertEquals("v1", nameTaker.get(generator));
+        Assert.assertEquals("v1", nameTaker.get(generator));
+        Assert.assertEquals("v1", nameTaker.get(generator));
+        Assert.assertEquals(2L, stats.getHitCount());
+        Assert.assertEquals(1L, stats.getMissCount());
+        Assert.assertEquals(1L, stats.getLoadCount());
+        Assert.assertEquals(2D / 3, stats.getHitRate(), 0.0001D);
+
+        //整体清除
+        LocalCacheUtil.notifyResourceChanged(nameTaker.getNotifyName());
+        Assert.assertEquals(1L, stats.getInvalidationCount());
+        Assert.assertNull(nameTaker.getCache());
+        Assert.assertEquals("v2", nameTaker.get(generator));
+        Assert.assertEquals(2L, stats.getMissCount());
+
+        //加载失败
+        try {
+            LocalCacheUtil.notifyResourceChanged(nameTaker.getNotifyName());
+            nameTaker.get(() -> {
+                throw new IllegalStateException("load failed");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1L, stats.getLoadFailureCount());
+        }
+        Assert.assertEquals(2L, stats.getInvalidationCount());
+    }
+
+    @Test
+    public void testKeyedStatsCounters() {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("keyedStats", "region", "byId");
+        CacheGenerator<String> generator = () -> "city";
+        LocalCacheStats stats = nameTaker.getStats();
+
+        nameTaker.get(1L, generator);
+        nameTaker.get(1L, generator);
+        nameTaker.get(2L, generator);
+        Assert.assertEquals(1L, stats.getHitCount());
+        Assert.assertEquals(2L, stats.getMissCount());
+        Assert.assertEquals(2L, stats.getEstimatedSize());
+
+        //按key清除只清除对应的key
+        LocalCacheUtil.notifyKeysChanged(nameTaker.getNotifyName(), Arrays.asList(1L));
+        Assert.assertEquals(1L, stats.getKeyInvalidationCount());
+        Assert.assertEquals(0L, stats.getInvalidationCount());
+        Assert.assertEquals(1L, stats.getEstimatedSize());
+        nameTaker.get(2L, generator);
+        nameTaker.get(1L, generator);
+        Assert.assertEquals(2L, stats.getHitCount());
+        Assert.assertEquals(3L, stats.getMissCount());
+        Assert.assertTrue(stats.getMillisSinceLastEvent() >= 0L);
+    }
+
+    @Test
+    public void testJmxRegistrationUndoneOnDestroy() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        LocalCacheNameTaker<String> defaultTaker = new LocalCacheNameTaker<String>("jmxStats", "region", "default");
+        ObjectName query = new ObjectName(new StringBuilder("org.stategen.framework.cache:type=LocalCacheStats,notifyName=")
+            .append(ObjectName.quote(defaultTaker.getNotifyName())).append(",*").toString());
+        //默认不注册
+        defaultTaker.getStats();
+        Assert.assertTrue(mBeanServer.queryNames(query, null).isEmpty());
+
+        LocalCacheZkConfig localCacheZkConfig = new LocalCacheZkConfig();
+        localCacheZkConfig.setJmxEnabled(true);
+        try {
+            new LocalCacheNameTaker<String>("jmxStats", "region", "registered").getStats();
+            Assert.assertEquals(1, mBeanServer.queryNames(query, null).size());
+        } finally {
+            localCacheZkConfig.setJmxEnabled(false);
+            localCacheZkConfig.destroy();
+        }
+        Assert.assertTrue(mBeanServer.queryNames(query, null).isEmpty());
+    }
+
+    static LocalCacheNameTaker<ArrayList<String>> offHeapTaker(String notifyName) {
+        LocalCacheNameTaker<ArrayList<String>> nameTaker = new LocalCacheNameTaker<ArrayList<String>>(notifyName, "region", "all");
+        nameTaker.setOffHeap(true);
+        return nameTaker;
+    }
+
+    @Test
+    public void testOffHeapWritePromoteInvalidate() {
+        LocalCacheZkConfig localCacheZkConfig = new LocalCacheZkConfig();
+        localCacheZkConfig.setOffHeapHotSetSize(1);
+        try {
+            LocalCacheNameTaker<ArrayList<String>> provinceTaker = offHeapTaker("offHeapProvince");
+            LocalCacheNameTaker<ArrayList<String>> cityTaker = offHeapTaker("offHeapCity");
+            AtomicInteger provinceCalls = new AtomicInteger();
+            CacheGenerator<ArrayList<String>> provinceGenerator = () -> {
+                provinceCalls.incrementAndGet();
+                return new ArrayList<String>(Arrays.asList("Zhejiang", "Jiangsu"));
+            };
+
+            //加载时同时写入堆外
+            ArrayList<String> provinces = provinceTaker.get(provinceGenerator);
+            Assert.assertTrue(provinceTaker.getStats().getOffHeapBytes() > 0L);
+
+            //堆上只保留一个，province 被挤出堆，只剩堆外的
+            cityTaker.get(() -> new ArrayList<String>(Arrays.asList("Hangzhou")));
+            Assert.assertNull(provinceTaker.getCache());
+            Assert.assertTrue(provinceTaker.getStats().getOffHeapBytes() > 0L);
+
+            //从堆外反序列化回堆上，不调用 generator
+            ArrayList<String> promoted = provinceTaker.get(provinceGenerator);
+            Assert.assertEquals(provinces, promoted);
+            Assert.assertNotSame(provinces, promoted);
+            Assert.assertSame(promoted, provinceTaker.getCache());
+            Assert.assertEquals(1, provinceCalls.get());
+            Assert.assertNull(cityTaker.getCache());
+
+            //清除通知同时清除堆外的快照
+            LocalCacheUtil.notifyResourceChanged(provinceTaker.getNotifyName());
+            Assert.assertNull(provinceTaker.getCache());
+            Assert.assertEquals(0L, provinceTaker.getStats().getOffHeapBytes());
+            Assert.assertEquals(provinces, provinceTaker.get(provinceGenerator));
+            Assert.assertEquals(2, provinceCalls.get());
+        } finally {
+            localCacheZkConfig.setOffHeapHotSetSize(8);
+        }
+    }
+}
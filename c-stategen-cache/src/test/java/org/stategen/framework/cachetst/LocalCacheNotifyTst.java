@@ -1,5 +1,130 @@
 package org.stategen.framework.cachetst;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.data.Stat;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.stategen.framework.cache.LocalCacheNameTaker;
+import org.stategen.framework.cache.LocalCacheNotifier;
+import org.stategen.framework.cache.LocalCacheUtil;
+import org.stategen.framework.cache.LocalCacheZkConfig;
+import org.stategen.framework.cache.ZkInvalidationBus;
+
+/***
+ * 在进程内启动zookeeper测试服务，验证合并通知与批量通知
+ */
 public class LocalCacheNotifyTst {
+    final static org.slf4j.Logger logger   = org.slf4j.LoggerFactory.getLogger(LocalCacheNotifyTst.class);
+
+    private static final String   rootPath = "/stategen/resourceCache/notifyTst/";
+
+    private static TestingServer  zkServer;
+
+    @BeforeClass
+    public static void startZkServer() throws Exception {
+        zkServer = new TestingServer(true);
+        LocalCacheZkConfig localCacheZkConfig = new LocalCacheZkConfig();
+        localCacheZkConfig.setConnectString(zkServer.getConnectString());
+        localCacheZkConfig.setRootPath(rootPath);
+        localCacheZkConfig.setNotifyCoalesceMillis(50L);
+        localCacheZkConfig.setListenerDebounceMillis(50L);
+        localCacheZkConfig.setInvalidationBus(new ZkInvalidationBus());
+    }
+
+    @AfterClass
+    public static void stopZkServer() throws IOException {
+        if (LocalCacheUtil.zkClient != null) {
+            LocalCacheUtil.zkClient.close();
+            LocalCacheUtil.zkClient = null;
+        }
+        zkServer.close();
+    }
+
+    private static int getWriteVersion(String notifyName) {
+        Stat stat = new Stat();
+        LocalCacheUtil.zkClient.readData(rootPath + notifyName, stat);
+        return stat.getVersion();
+    }
+
+    @Test
+    public void testCoalesceNotify() throws InterruptedException {
+        LocalCacheNameTaker<String> nameTaker = new LocalCacheNameTaker<String>("appapi", "province", "all");
+        LocalCacheNotifier localCacheNotifier = new LocalCacheNotifier("appapi", "province");
+        localCacheNotifier.notifyResourceChanged();
+        LocalCacheUtil.flushPendingNotifies();
+        int startVersion = getWriteVersion(nameTaker.getNotifyName());
+
+        nameTaker.putToCache("provinces");
+        Assert.assertEquals("provinces", nameTaker.getCache());
+
+        for (int i = 0; i < 1000; i++) {
+            localCacheNotifier.notifyResourceChanged();
+        }
+        Thread.sleep(500L);
+
+        int writes = getWriteVersion(nameTaker.getNotifyName()) - startVersion;
+        if (logger.isInfoEnabled()) {
+            logger.info(new StringBuilder("1000次通知实际写入zookeeper次数:").append(writes).toString());
+        }
+        Assert.assertTrue(writes >= 1);
+        Assert.assertTrue(writes < 10);
+        Assert.assertNull(nameTaker.getCache());
+    }
+
+    @Test
+    public void testBatchNotify() throws InterruptedException {
+        LocalCacheNameTaker<String> cityTaker = new LocalCacheNameTaker<String>("city", "region", "all");
+        LocalCacheNameTaker<String> townTaker = new LocalCacheNameTaker<String>("town", "region", "all");
+        cityTaker.putToCache("cities");
+        townTaker.putToCache("towns");
+
+        LocalCacheNotifier localCacheNotifier = new LocalCacheNotifier("appapi", "region");
+        localCacheNotifier.notifyResourcesChanged("city", "town", "city");
+        LocalCacheUtil.flushPendingNotifies();
+        Thread.sleep(500L);
+
+        Assert.assertTrue(LocalCacheUtil.zkClient.exists(rootPath + cityTaker.getNotifyName()));
+        Assert.assertTrue(LocalCacheUtil.zkClient.exists(rootPath + townTaker.getNotifyName()));
+        Assert.assertNull(cityTaker.getCache());
+        Assert.assertNull(townTaker.getCache());
+    }
+
+    @Test
+    public void testKeysNotify() throws InterruptedException {
+        LocalCacheNameTaker<String> dictTaker = new LocalCacheNameTaker<String>("dict", "region", "byId");
+        LocalCacheNotifier localCacheNotifier = new LocalCacheNotifier("dict", "region");
+        //先建立节点，使监听端记下版本号
+        localCacheNotifier.notifyResourceChanged();
+        LocalCacheUtil.flushPendingNotifies();
+        Thread.sleep(500L);
+
+        AtomicInteger loadCount = new AtomicInteger();
+        for (long id = 1; id <= 3; id++) {
+            final long finalId = id;
+            dictTaker.get(id, () -> {
+                loadCount.incrementAndGet();
+                return "region" + finalId;
+            });
+        }
+        Assert.assertEquals(3, loadCount.get());
+
+        localCacheNotifier.notifyKeysChanged(2L);
+        LocalCacheUtil.flushPendingNotifies();
+        Thread.sleep(500L);
 
+        for (long id = 1; id <= 3; id++) {
+            final long finalId = id;
+            dictTaker.get(id, () -> {
+                loadCount.incrementAndGet();
+                return "region" + finalId;
+            });
+        }
+        //只有key为2的被清除后重新加载
+        Assert.assertEquals(4, loadCount.get());
+    }
 }
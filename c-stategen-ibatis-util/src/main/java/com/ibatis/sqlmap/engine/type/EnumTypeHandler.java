@@ -22,7 +22,7 @@ public class EnumTypeHandler<T extends Enum<T>> extends BaseTypeHandler implemen
 
     public void setParameter(PreparedStatement ps, int i, Object parameter, String jdbcType) throws SQLException {
         if (ValuedEnum.class.isAssignableFrom(type)) {
-            Object value = ((ValuedEnum<?>) parameter).getValue();
+            Object value = EnumUtil.getValue((ValuedEnum<?>) parameter);
             ps.setObject(i, value);
             return;
         }
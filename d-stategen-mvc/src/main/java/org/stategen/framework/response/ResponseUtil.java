@@ -17,16 +17,31 @@
 package org.stategen.framework.response;
 
 import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Modifier;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.Aware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.stategen.framework.lite.BaseResponse;
 import org.stategen.framework.lite.IResponseStatus;
 import org.stategen.framework.spring.mvc.SpringContextHolder;
+import org.stategen.framework.util.ReflectionUtil;
 import org.stategen.framework.web.cookie.ServletContextUtil;
 
 import configs.Constant;
@@ -39,16 +54,152 @@ public class ResponseUtil {
     /***限流类和msg对应关系，TODO 是否返回ResponseStatus更好?*/
     public final static Map<String, String> BLOCK_MAP =new ConcurrentHashMap<String, String>(5);
 
+    /***为true时每次都从spring取prototype的response bean，response 需要注入属性或被 BeanPostProcessor 代理时打开*/
+    private static volatile boolean springPrototypeResponse = false;
+
+    private final static String SPRING_PACKAGE = "org.springframework.";
+
+    /***spring自带的 BeanPostProcessor 处理的注解所在的包*/
+    private final static String[] PROCESSED_ANNOTATION_PACKAGES = { SPRING_PACKAGE, "javax.annotation.", "javax.inject." };
+
+    /***第一次使用时按 response bean 的类型生成，之后直接调用构造函数*/
+    private static volatile Supplier<? extends BaseResponse<?>> responseFactory;
+
+    public static boolean isSpringPrototypeResponse() {
+        return springPrototypeResponse;
+    }
+
+    public static void setSpringPrototypeResponse(boolean springPrototypeResponse) {
+        ResponseUtil.springPrototypeResponse = springPrototypeResponse;
+    }
+
+    /***直接指定 response 的类，不再按 bean 定义查找，为null时重新查找*/
+    public static void setResponseClass(Class<? extends BaseResponse<?>> responseClass) {
+        responseFactory = responseClass != null ? ReflectionUtil.newInstanceSupplier(responseClass) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BaseResponse<T> newResponse() {
+        if (springPrototypeResponse) {
+            return SpringContextHolder.getBean(Constant.RESPONSE_NAME);
+        }
+        Supplier<? extends BaseResponse<?>> factory = responseFactory;
+        if (factory == null) {
+            factory = resolveResponseFactory();
+        }
+        return (BaseResponse<T>) factory.get();
+    }
+
+    /***
+     * 只有 prototype、没有属性和构造参数、没有 init 方法和工厂方法、不需要 BeanPostProcessor 处理的 bean 定义才生成构造函数调用，
+     * 否则仍然由spring创建，不改变原来的语义
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized Supplier<? extends BaseResponse<?>> resolveResponseFactory() {
+        if (responseFactory != null) {
+            return responseFactory;
+        }
+        Supplier<? extends BaseResponse<?>> springFactory = () -> SpringContextHolder.getBean(Constant.RESPONSE_NAME);
+        ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
+        if (applicationContext == null) {
+            //spring还没有启动完成，不缓存
+            return springFactory;
+        }
+
+        Class<?> responseClass = null;
+        String reason = null;
+        try {
+            responseClass = applicationContext.getType(Constant.RESPONSE_NAME);
+            if (responseClass == null || !BaseResponse.class.isAssignableFrom(responseClass) || Modifier.isAbstract(responseClass.getModifiers())) {
+                reason = "bean type is not a concrete BaseResponse";
+            } else if (!(applicationContext instanceof ConfigurableApplicationContext)) {
+                reason = "bean definition is not accessible";
+            } else {
+                ConfigurableListableBeanFactory beanFactory = ((ConfigurableApplicationContext) applicationContext).getBeanFactory();
+                BeanDefinition beanDefinition = beanFactory.getMergedBeanDefinition(Constant.RESPONSE_NAME);
+                if (!beanDefinition.isPrototype()) {
+                    reason = "bean is not prototype";
+                } else if (!beanDefinition.getPropertyValues().isEmpty() || !beanDefinition.getConstructorArgumentValues().isEmpty()) {
+                    reason = "bean has properties or constructor arguments";
+                } else if (beanDefinition.getFactoryMethodName() != null || beanDefinition.getFactoryBeanName() != null) {
+                    reason = "bean is created by factory method";
+                } else if (beanDefinition instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) beanDefinition).getInstanceSupplier() != null) {
+                    reason = "bean is created by instance supplier";
+                } else if (beanDefinition.getInitMethodName() != null) {
+                    reason = "bean has init method";
+                } else if (Aware.class.isAssignableFrom(responseClass) || InitializingBean.class.isAssignableFrom(responseClass)) {
+                    reason = "bean is Aware or InitializingBean";
+                } else if (needsPostProcessing(beanFactory, responseClass)) {
+                    reason = "bean needs BeanPostProcessor";
+                } else if (applicationContext.getBean(Constant.RESPONSE_NAME).getClass() != responseClass) {
+                    reason = "bean is proxied";
+                }
+            }
+        } catch (BeansException e) {
+            reason = e.getMessage();
+        }
+
+        if (reason != null) {
+            logger.warn(new StringBuilder("response factory falls back to spring bean:").append(Constant.RESPONSE_NAME).append(", ")
+                .append(reason).toString());
+            responseFactory = springFactory;
+        } else {
+            responseFactory = ReflectionUtil.newInstanceSupplier((Class<? extends BaseResponse<?>>) responseClass);
+            if (logger.isInfoEnabled()) {
+                logger.info(new StringBuilder("response factory compiled for:").append(responseClass.getName()).toString());
+            }
+        }
+        return responseFactory;
+    }
+
+    /***
+     * 有 BeanPostProcessor 时，不是spring自带的 processor 都可能修改 bean，
+     * spring自带的只处理 spring、javax.annotation、javax.inject 中的注解，如 @Autowired、@Value、@PostConstruct、@Resource
+     */
+    private static boolean needsPostProcessing(ConfigurableListableBeanFactory beanFactory, Class<?> responseClass) {
+        if (beanFactory.getBeanPostProcessorCount() == 0) {
+            return false;
+        }
+        if (beanFactory instanceof AbstractBeanFactory) {
+            for (BeanPostProcessor beanPostProcessor : ((AbstractBeanFactory) beanFactory).getBeanPostProcessors()) {
+                if (!beanPostProcessor.getClass().getName().startsWith(SPRING_PACKAGE)) {
+                    return true;
+                }
+            }
+        }
+        for (Class<?> clazz = responseClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            if (hasProcessedAnnotation(clazz) || hasProcessedAnnotation(clazz.getDeclaredConstructors())
+                || hasProcessedAnnotation(clazz.getDeclaredFields()) || hasProcessedAnnotation(clazz.getDeclaredMethods())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasProcessedAnnotation(AnnotatedElement... annotatedElements) {
+        for (AnnotatedElement annotatedElement : annotatedElements) {
+            for (Annotation annotation : annotatedElement.getAnnotations()) {
+                String annotationName = annotation.annotationType().getName();
+                for (String processedPackage : PROCESSED_ANNOTATION_PACKAGES) {
+                    if (annotationName.startsWith(processedPackage)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> BaseResponse<T> buildResponse(T data, IResponseStatus responseStatus) {
         BaseResponse<T> resultResponse = null;
         if (data == null) {
-            resultResponse = SpringContextHolder.getBean(Constant.RESPONSE_NAME);
+            resultResponse = newResponse();
             resultResponse.setStatus(responseStatus);
         } else {
             Class<?> resultClz = data.getClass();
             if (!BaseResponse.class.isAssignableFrom(resultClz)) {
-                resultResponse = SpringContextHolder.getBean(Constant.RESPONSE_NAME);
+                resultResponse = newResponse();
                 resultResponse.setData(data);
                 resultResponse.setStatus(responseStatus);
             } else {
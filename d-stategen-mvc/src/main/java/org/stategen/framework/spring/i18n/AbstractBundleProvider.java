@@ -18,20 +18,17 @@ package org.stategen.framework.spring.i18n;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.stategen.framework.cache.LocalCacheNameTaker;
 import org.stategen.framework.util.AssertUtil;
 import org.stategen.framework.util.CollectionUtil;
-import org.stategen.framework.util.StringComparetor;
 import org.stategen.framework.util.StringUtil;
 
 /**
@@ -50,9 +47,13 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
 
     private final String                                               bundleName              = "resource_bundle";
 
+    /***按key排序，空的key在前，同 StringComparetor，但满足排序要求的传递性*/
+    private static final Comparator<ConfigBean>                        KEY_COMPARATOR          = (bean1, bean2) -> compareKey(bean1.getKey(), bean2.getKey());
+
     private LocalCacheNameTaker<Map<Object, SignedResourceBundle>> bundleTaker             = null;
 
-    private  Lock                                                       resourceBundleLock      =  new ReentrantLock();
+    /***为true时 zookeeper 通知重新加载后，新的资源在后台生成完之前继续使用旧的，生成后整体替换*/
+    private boolean                                                    refreshAhead            = true;
 
 //    private AtomicBoolean bundleCreateState =new AtomicBoolean(false);
     private Boolean                                                    useCodeAsDefaultMessage = null;
@@ -94,19 +95,45 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
                 continue;
             }
 
-            Map<String, String> sortedBundleMap = new TreeMap<String, String>(new StringComparetor());
-            for (ConfigBean configBean : subConfigBeans) {
-                sortedBundleMap.put(configBean.getKey(), configBean.getValue());
-            }
+            //稳定排序，相同的key后面的覆盖前面的，同原来的TreeMap
+            subConfigBeans.sort(KEY_COMPARATOR);
 
             boolean calcUseCodeAsDefaultMessage = useCodeAsDefaultMessage != null ? useCodeAsDefaultMessage : false;
             SignedResourceBundle bundle = new SignedResourceBundle(calcUseCodeAsDefaultMessage,index);
-            putSortedMapToBundle(sortedBundleMap, bundle);
+            putSortedConfigBeansToBundle(subConfigBeans, bundle);
             result.put(index, bundle);
         }
         return result;
     }
 
+    private static int compareKey(String key1, String key2) {
+        boolean empty1 = StringUtil.isEmpty(key1);
+        boolean empty2 = StringUtil.isEmpty(key2);
+        if (empty1 || empty2) {
+            return empty1 == empty2 ? 0 : (empty1 ? -1 : 1);
+        }
+        return key1.compareTo(key2);
+    }
+
+    /***sortedConfigBeans 已按key排序，签名与 putSortedMapToBundle 相同*/
+    public static void putSortedConfigBeansToBundle(List<ConfigBean> sortedConfigBeans, SignedResourceBundle bundle) {
+        int hash = 1;
+        int size = sortedConfigBeans.size();
+        for (int i = 0; i < size; i++) {
+            ConfigBean configBean = sortedConfigBeans.get(i);
+            String key = configBean.getKey();
+            if (i + 1 < size && compareKey(key, sortedConfigBeans.get(i + 1).getKey()) == 0) {
+                continue;
+            }
+            String value = configBean.getValue();
+            hash = 31 * hash + key.hashCode();
+            hash = 31 * hash + value.hashCode();
+            bundle.put(key, value);
+        }
+        bundle.setSign(hash);
+        bundle.compile();
+    }
+
     public static void putSortedMapToBundle(Map<String, String> sortedMap, SignedResourceBundle bundle) {
         int hash = 1;
         for (Entry<String, String> entry : sortedMap.entrySet()) {
@@ -117,6 +144,7 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
             bundle.put(key, value);
         }
         bundle.setSign(hash);
+        bundle.compile();
     }
 
     public SignedResourceBundle getDistributeResourceBundle(Object locale) {
@@ -126,21 +154,8 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
     }
 
     public Map<Object, SignedResourceBundle> getResourceBundleMap() {
-        Map<Object, SignedResourceBundle> resourceBundleMap = bundleTaker.getCache();
-        if (resourceBundleMap == null) {
-            resourceBundleLock.lock();
-            try {
-                //再获得一次,如果有其它线程设置了这个值，就不用再创建了,通常上面有锁可以保证第一个线程一定能够获得这个值
-                resourceBundleMap = bundleTaker.getCache();
-                if (resourceBundleMap == null) {
-                    resourceBundleMap = createDistributeResourceBundleMap();
-                    bundleTaker.putToCache(resourceBundleMap);
-                } 
-            } finally {
-                resourceBundleLock.unlock();
-            }
-        }
-        return resourceBundleMap;
+        //同时未命中时只有一个线程创建，其它线程共享结果
+        return bundleTaker.get(this::createDistributeResourceBundleMap);
     }
     
     protected SignedResourceBundle getSignedResourceBundleIfNullDefault(Locale locale){
@@ -166,6 +181,7 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
     public void createBundleTaker(){
         if (notifyName!=null && tableName!=null){
             bundleTaker = new LocalCacheNameTaker<Map<Object, SignedResourceBundle>>(notifyName,tableName,bundleName);
+            bundleTaker.setRefreshAhead(refreshAhead);
         }
     }
     
@@ -206,6 +222,15 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
         return null;
     }
 
+    @Override
+    public String format(String code, Object[] args, Locale locale) {
+        SignedResourceBundle signedResourceBundle =getSignedResourceBundleIfNullDefault(locale);
+        if (signedResourceBundle != null) {
+            return signedResourceBundle.format(code, args, locale);
+        }
+        return null;
+    }
+
     public void setNotifyName(String notifyName) {
         this.notifyName = notifyName;
         createBundleTaker();
@@ -216,6 +241,17 @@ public abstract class AbstractBundleProvider implements BundleProvider,Initializ
         createBundleTaker();
     }
 
+    public boolean isRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        if (bundleTaker != null) {
+            bundleTaker.setRefreshAhead(refreshAhead);
+        }
+    }
+
     @Override
     public void setUseCodeAsDefaultMessage(Boolean useCodeAsDefaultMessage) {
         this.useCodeAsDefaultMessage = useCodeAsDefaultMessage;
@@ -52,6 +52,22 @@ public class AbstractDistributeMessageSource extends AbstractMessageSource {
     protected MessageFormat resolveCode(String code, Locale locale) {
         return bundleProvider.resolveCode(code, locale);
     }
+
+    /***
+     * 有参数时先由 bundleProvider 格式化，不经过 spring 在 MessageFormat 上的同步块，
+     * code不存在时仍由父类处理(commonMessages、parent 等)
+     */
+    @Override
+    protected String getMessageInternal(String code, Object[] args, Locale locale) {
+        if (code != null && args != null && args.length > 0) {
+            Locale localeToUse = locale != null ? locale : Locale.getDefault();
+            String message = bundleProvider.format(code, resolveArguments(args, localeToUse), localeToUse);
+            if (message != null) {
+                return message;
+            }
+        }
+        return super.getMessageInternal(code, args, locale);
+    }
     
     public void setBundleProvider(BundleProvider bundleProvider) {
         AssertUtil.mustNotNull(bundleProvider,"bundleProvider can not be null!");
@@ -32,6 +32,19 @@ public interface BundleProvider {
     public String resolveCodeWithoutArguments(String code, Locale locale);
 
     public MessageFormat resolveCode(String code, Locale locale);
+
+    /***
+     * 带参数的消息，code不存在时返回null，默认在 resolveCode 的 MessageFormat 上加锁格式化
+     */
+    public default String format(String code, Object[] args, Locale locale) {
+        MessageFormat messageFormat = resolveCode(code, locale);
+        if (messageFormat == null) {
+            return null;
+        }
+        synchronized (messageFormat) {
+            return messageFormat.format(args);
+        }
+    }
     
     public List<ConfigBean> getConfigBeans(String resourceName, String tableName);
     
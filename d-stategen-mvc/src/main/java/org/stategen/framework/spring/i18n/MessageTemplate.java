@@ -0,0 +1,148 @@
+package org.stategen.framework.spring.i18n;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ * 预先解析的国际化消息，加载资源时创建，之后只读.
+ *
+ * <pre>
+ * 1.只含 {0}、{1} 这样参数的消息(引号规则同 MessageFormat)，解析成文本段和参数序号，格式化时不加锁、不创建 MessageFormat；
+ * 2.参数是 Number、Date，或消息中有 {0,number} 这样的格式、括号不匹配时，与 spring 一样在共享的 MessageFormat 上加锁格式化.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class MessageTemplate {
+
+    /***超过4位的序号交给 MessageFormat 处理*/
+    private static final int       MAX_INDEX_DIGITS = 4;
+
+    private final String           message;
+
+    /***比参数多一个，为null时不能直接格式化*/
+    private final String[]         texts;
+
+    private final int[]            argIndexes;
+
+    /***第一次用到时以当时的 locale 创建，同原来的 lookUpFormat*/
+    private volatile MessageFormat messageFormat;
+
+    public MessageTemplate(String message) {
+        this.message = message != null ? message : "";
+        List<String> parsedTexts = new ArrayList<String>();
+        List<Integer> parsedIndexes = new ArrayList<Integer>();
+        if (parse(this.message, parsedTexts, parsedIndexes)) {
+            this.texts = parsedTexts.toArray(new String[parsedTexts.size()]);
+            this.argIndexes = new int[parsedIndexes.size()];
+            for (int i = 0; i < argIndexes.length; i++) {
+                argIndexes[i] = parsedIndexes.get(i);
+            }
+        } else {
+            this.texts = null;
+            this.argIndexes = null;
+        }
+    }
+
+    /***按 MessageFormat.applyPattern 的规则解析，有参数格式或括号不匹配时返回false*/
+    private static boolean parse(String message, List<String> texts, List<Integer> argIndexes) {
+        StringBuilder text = new StringBuilder(message.length());
+        boolean inQuote = false;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char ch = message.charAt(i);
+            if (ch == '\'') {
+                if (i + 1 < length && message.charAt(i + 1) == '\'') {
+                    text.append(ch);
+                    i++;
+                } else {
+                    inQuote = !inQuote;
+                }
+            } else if (ch == '{' && !inQuote) {
+                int end = message.indexOf('}', i + 1);
+                int digits = end - i - 1;
+                if (end < 0 || digits < 1 || digits > MAX_INDEX_DIGITS) {
+                    return false;
+                }
+                int argIndex = 0;
+                for (int j = i + 1; j < end; j++) {
+                    char digit = message.charAt(j);
+                    if (digit < '0' || digit > '9') {
+                        return false;
+                    }
+                    argIndex = argIndex * 10 + digit - '0';
+                }
+                texts.add(text.toString());
+                text.setLength(0);
+                argIndexes.add(argIndex);
+                i = end;
+            } else {
+                text.append(ch);
+            }
+        }
+        texts.add(text.toString());
+        return true;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /***是否不用 MessageFormat 就能格式化(参数不是 Number、Date 时)*/
+    public boolean isSimple() {
+        return texts != null;
+    }
+
+    public MessageFormat getMessageFormat(Locale locale) {
+        MessageFormat result = messageFormat;
+        if (result == null) {
+            result = new MessageFormat(message, locale);
+            messageFormat = result;
+        }
+        return result;
+    }
+
+    /***结果与 MessageFormat.format(args) 相同*/
+    public String format(Object[] args, Locale locale) {
+        if (texts == null) {
+            return formatByMessageFormat(args, locale);
+        }
+        if (argIndexes.length == 0) {
+            return texts[0];
+        }
+
+        int argCount = args != null ? args.length : 0;
+        StringBuilder sb = new StringBuilder(message.length() + 16 * argIndexes.length);
+        sb.append(texts[0]);
+        for (int i = 0; i < argIndexes.length; i++) {
+            int argIndex = argIndexes[i];
+            if (argIndex >= argCount) {
+                sb.append('{').append(argIndex).append('}');
+            } else {
+                Object arg = args[argIndex];
+                if (arg instanceof Number || arg instanceof Date) {
+                    //需要 locale 相关的 NumberFormat、DateFormat
+                    return formatByMessageFormat(args, locale);
+                }
+                sb.append(arg);
+            }
+            sb.append(texts[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    private String formatByMessageFormat(Object[] args, Locale locale) {
+        MessageFormat format = getMessageFormat(locale);
+        synchronized (format) {
+            return format.format(args);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -21,8 +21,8 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.ResourceBundle;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * *
@@ -37,8 +37,8 @@ public class SignedResourceBundle extends ResourceBundle {
     /***加载完毕只有读取，没有写入，所以用HashMap*/
     private Map<String, String>        lookUp                  = new HashMap<String, String>();
     
-    /***随时往里面读写东西*/
-    private Map<String, MessageFormat> lookUpFormat            = new ConcurrentHashMap<String, MessageFormat>();
+    /***由 lookUp 一次生成，之后只读，put 后重新生成*/
+    private volatile Map<String, MessageTemplate> lookUpTemplate;
     
     private boolean                    useCodeAsDefaultMessage = false;
     
@@ -68,15 +68,37 @@ public class SignedResourceBundle extends ResourceBundle {
     }
 
     public MessageFormat getFormat(String code, Locale locale) {
-        MessageFormat format = lookUpFormat.get(code);
-        if (format == null) {
-            String value = lookUp.get(code);
-            if (value != null) {
-                format = createMessageFormat(value, locale);
-                lookUpFormat.put(code, format);
+        MessageTemplate template = getTemplate(code);
+        return template != null ? template.getMessageFormat(locale) : null;
+    }
+
+    /***
+     * 带参数的消息，只有 {0} 这样的参数时不加锁、不用 MessageFormat，code不存在时返回null
+     */
+    public String format(String code, Object[] args, Locale locale) {
+        MessageTemplate template = getTemplate(code);
+        return template != null ? template.format(args, locale) : null;
+    }
+
+    public MessageTemplate getTemplate(String code) {
+        Map<String, MessageTemplate> templates = lookUpTemplate;
+        if (templates == null) {
+            templates = compile();
+        }
+        return templates.get(code);
+    }
+
+    /***所有消息预先解析，加载完毕后调用一次，读取时不再创建*/
+    public synchronized Map<String, MessageTemplate> compile() {
+        Map<String, MessageTemplate> templates = lookUpTemplate;
+        if (templates == null) {
+            templates = new HashMap<String, MessageTemplate>(lookUp.size() * 4 / 3 + 1);
+            for (Entry<String, String> entry : lookUp.entrySet()) {
+                templates.put(entry.getKey(), new MessageTemplate(entry.getValue()));
             }
+            lookUpTemplate = templates;
         }
-        return format;
+        return templates;
     }
 
     @Override
@@ -84,12 +106,9 @@ public class SignedResourceBundle extends ResourceBundle {
         return new ResourceBundleEnumeration(this.lookUp.keySet(), null);
     }
 
-    public void put(String key, String value) {
+    public synchronized void put(String key, String value) {
         lookUp.put(key, value);
-    }
-
-    protected MessageFormat createMessageFormat(String msg, Locale locale) {
-        return new MessageFormat((msg != null ? msg : ""), locale);
+        lookUpTemplate = null;
     }
 
     public int getSign() {
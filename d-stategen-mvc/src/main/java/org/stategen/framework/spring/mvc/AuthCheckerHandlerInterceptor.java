@@ -17,35 +17,22 @@
 package org.stategen.framework.spring.mvc;
 
 import java.lang.annotation.Annotation;
-import java.lang.annotation.Repeatable;
-import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.core.annotation.AnnotatedElementUtils;
-import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
-import org.stategen.framework.annotation.Check;
 import org.stategen.framework.checker.AbstractMethodChecker;
-import org.stategen.framework.lite.CheckExcludeController;
 import org.stategen.framework.lite.IResponseStatus;
 import org.stategen.framework.response.ResponseStatusTypeHandler;
 import org.stategen.framework.response.ResponseUtil;
-import org.stategen.framework.util.AnnotationUtil;
 import org.stategen.framework.util.AssertUtil;
 import org.stategen.framework.util.CollectionUtil;
-import org.stategen.framework.util.GetOrCreateWrap;
-import org.stategen.framework.util.TagArrayList;
 
 /**
  * The Class AuthCheckerHandlerInterceptor.
@@ -53,29 +40,22 @@ import org.stategen.framework.util.TagArrayList;
 public class AuthCheckerHandlerInterceptor extends ResponseStatusTypeHandler implements HandlerInterceptor {
     final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AuthCheckerHandlerInterceptor.class);
 
-    public static Map<Method, TagArrayList<Annotation>> METHOD_CHECKERS_MAP = new ConcurrentHashMap<Method, TagArrayList<Annotation>>();
-
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         if (!(handler instanceof HandlerMethod)) {
             return true;
         }
         final HandlerMethod handlerMethod = (HandlerMethod) handler;
-        Method method = handlerMethod.getMethod();
-
-        //不是 RequestMapping的方法不额外处理
-        RequestMapping requestMappingAnn = AnnotationUtil.getAnnotation(method, RequestMapping.class);
+        HandlerDescriptor handlerDescriptor = HandlerDescriptor.of(handlerMethod);
 
-        if (requestMappingAnn == null) {
+        if (!handlerDescriptor.isRequestMapping()) {
             //没有requestMapping,不拦截
             return true;
         }
 
-        TagArrayList<Annotation> checkAnnos = getOrCreateCheckAnnoCache(method);
+        List<Annotation> checkAnnos = handlerDescriptor.getCheckers();
         if (CollectionUtil.isNotEmpty(checkAnnos)) {
-
-            ResponseBody responseBodyAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, ResponseBody.class);
-
+            Method method = handlerMethod.getMethod();
             for (Annotation checkAnno : checkAnnos) {
                 Class<? extends Annotation> checkAnnoClz = checkAnno.annotationType();
                 AbstractMethodChecker<Annotation> abstractMethodChecker = AbstractMethodChecker.getChecker(checkAnnoClz);
@@ -83,7 +63,7 @@ public class AuthCheckerHandlerInterceptor extends ResponseStatusTypeHandler imp
                 IResponseStatus errorResponseStatus = abstractMethodChecker.doCheck(method, checkAnno, getResponseStatus().getRegisterClass());
                 response.setStatus(HttpStatus.UNAUTHORIZED.value());
                 if (errorResponseStatus != null) {
-                    if (responseBodyAnno != null) {
+                    if (handlerDescriptor.isResponseBody()) {
                         ResponseUtil.writhResponse(true,null, errorResponseStatus);
                         if (logger.isInfoEnabled()) {
                             logger.info(new StringBuilder("校验").append(checkAnnoClz).append(" 没有通过，方法执行被拦截!").toString());
@@ -98,45 +78,6 @@ public class AuthCheckerHandlerInterceptor extends ResponseStatusTypeHandler imp
         return true;
     }
 
-    protected TagArrayList<Annotation> getOrCreateCheckAnnoCache(Method method) {
-        GetOrCreateWrap<TagArrayList<Annotation>> annoWrap = CollectionUtil.getOrCreateList(method, METHOD_CHECKERS_MAP, TagArrayList.class);
-        TagArrayList<Annotation> checkAnnos = annoWrap.getValue();
-        if (annoWrap.isNew()) {
-            synchronized (checkAnnos) {
-                if (!checkAnnos.isTagged()) {
-                    scanCheckAnnos(method, checkAnnos);
-                    Class<?> declaringClass = method.getDeclaringClass();
-                    if (AnnotationUtils.getAnnotation(method, CheckExcludeController.class) == null) {
-                        scanCheckAnnos(declaringClass, checkAnnos);
-                    }
-                    checkAnnos.setTagged(true);
-                }
-            }
-        }
-        return checkAnnos;
-    }
-
-    protected void scanCheckAnnos(AnnotatedElement annotatedElement, TagArrayList<Annotation> checkAnnos) {
-        Annotation[] annotations = AnnotationUtils.getAnnotations(annotatedElement);
-        if (CollectionUtil.isNotEmpty(annotations)) {
-            for (Annotation annotation : annotations) {
-                //在anno上查找，是否有anno标注为Check
-                Check check = AnnotationUtils.getAnnotation(annotation, Check.class);
-                if (check != null) {
-                    Repeatable repeatable = AnnotationUtils.getAnnotation(annotation, Repeatable.class);
-                    if (repeatable != null) {
-                        Class<? extends Annotation> realCheckAnnoClazz = repeatable.value();
-                        Set<? extends Annotation> realCheckAnnos = AnnotatedElementUtils.getMergedRepeatableAnnotations(annotatedElement,
-                            realCheckAnnoClazz);
-                        checkAnnos.addAll(realCheckAnnos);
-                    } else {
-                        checkAnnos.add(annotation);
-                    }
-                }
-            }
-        }
-    }
-
     @Override
     public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
 
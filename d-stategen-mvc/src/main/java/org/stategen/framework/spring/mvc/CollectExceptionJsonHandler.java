@@ -12,7 +12,6 @@
  */
 package org.stategen.framework.spring.mvc;
 
-import java.lang.reflect.Method;
 import java.lang.reflect.UndeclaredThrowableException;
 
 import javax.org.stategen.framework.lite.BaseBusinessException;
@@ -20,16 +19,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.ModelAndView;
 import org.stategen.framework.lite.BaseResponse;
-import org.stategen.framework.lite.HandleError;
 import org.stategen.framework.lite.IResponseStatus;
 import org.stategen.framework.response.ResponseStatusTypeHandler;
 import org.stategen.framework.response.ResponseUtil;
-import org.stategen.framework.util.AnnotationUtil;
 import org.stategen.framework.util.StringUtil;
 
 /**
@@ -99,20 +95,18 @@ public class CollectExceptionJsonHandler extends ResponseStatusTypeHandler imple
             return modelAndView;
         }
         
-        final HandlerMethod handlerMethod = (HandlerMethod) handler;
-        Method              method        = handlerMethod.getMethod();
+        final HandlerMethod handlerMethod     = (HandlerMethod) handler;
+        HandlerDescriptor   handlerDescriptor = HandlerDescriptor.of(handlerMethod);
         
-        HandleError     handleError         = AnnotationUtil.getMethodOrOwnerAnnotation(method, HandleError.class);
         IResponseStatus errorResponseStatus = this.getResponseStatus();
         
-        if (handleError == null || handleError.value()) {
-            ResponseBody responseBodyAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, ResponseBody.class);
-            if (responseBodyAnno != null) {
+        if (handlerDescriptor.isHandleError()) {
+            if (handlerDescriptor.isResponseBody()) {
                 BaseResponse<?> errorResponse = ResponseUtil.buildResponse(null, errorResponseStatus);
                 errorResponse.setExeptionClass(exceptionName);
                 errorResponse.setMessage(failMessage);
                 httpServletResponse.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
-                boolean supportMethod = ResponseBodyAdviceWrapper.supportMethod(method);
+                boolean supportMethod = handlerDescriptor.isWrap();
                 ResponseUtil.writhResponse(supportMethod, errorResponse);
                 
             } else {
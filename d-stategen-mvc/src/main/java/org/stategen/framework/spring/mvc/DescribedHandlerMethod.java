@@ -0,0 +1,32 @@
+package org.stategen.framework.spring.mvc;
+
+import org.springframework.web.method.HandlerMethod;
+
+/***
+ * 带有 HandlerDescriptor 的 HandlerMethod，由 RequestMappingMethodHandlerMapping 注册，
+ * 请求时 createWithResolvedBean 得到的仍然是本类.
+ *
+ * @author XiaZhengsheng
+ */
+public class DescribedHandlerMethod extends HandlerMethod {
+
+    private final HandlerDescriptor descriptor;
+
+    public DescribedHandlerMethod(HandlerMethod handlerMethod, HandlerDescriptor descriptor) {
+        super(handlerMethod);
+        this.descriptor = descriptor;
+    }
+
+    public HandlerDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public HandlerMethod createWithResolvedBean() {
+        if (!(getBean() instanceof String)) {
+            //bean 已经是实例，父类也只是复制一份
+            return this;
+        }
+        return new DescribedHandlerMethod(super.createWithResolvedBean(), descriptor);
+    }
+}
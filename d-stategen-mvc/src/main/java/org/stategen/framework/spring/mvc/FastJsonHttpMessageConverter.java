@@ -12,13 +12,20 @@
  */
 package org.stategen.framework.spring.mvc;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.http.HttpHeaders;
@@ -27,16 +34,37 @@ import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.stategen.framework.lite.BaseResponse;
+import org.stategen.framework.lite.PageList;
 import org.stategen.framework.response.FastJsonResponseUtil;
+import org.stategen.framework.util.ByteArrayPool;
+import org.stategen.framework.util.ByteArrayPool.PooledOutputStream;
 import org.stategen.framework.util.OptionalUtil;
+import org.stategen.framework.util.StringUtil;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONPObject;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.fastjson.support.config.FastJsonConfig;
+import com.alibaba.fastjson.support.spring.FastJsonContainer;
+import com.alibaba.fastjson.support.spring.MappingFastJsonValue;
 import com.alibaba.fastjson.util.IOUtils;
 
-import lombok.Cleanup;
-
 /**
  * The Class FastJsonHttpMessageConverter.
+ * 
+ * <pre>
+ * 1.plainString 的字符串直接编码到池中的数组，Content-Length 为字节数而不是字符数；
+ * 2.streaming 为true时，普通对象序列化到池中的数组后直接写到输出流，不再经过 ByteArrayOutputStream；
+ * 3.chunkedPageSize 大于0时，PageList(或 data 为 PageList 的 BaseResponse)条数达到该值，
+ *   边序列化边写出，不设 Content-Length，由容器用 chunked 输出；
+ * 4.读取时按 Content-Length 从池中借数组(最多先借 4M，其余随读到的数据扩容)，不再每次 new 64K 再按1.5倍扩容，
+ *   Content-Length 或实际读到的超过 maxBodySize 时返回 HttpMessageNotReadableException.
+ * </pre>
  */
 public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.spring.FastJsonHttpMessageConverter
         implements InitializingBean {
@@ -47,6 +75,15 @@ public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.s
      */
     private Boolean plainString = false;
     
+    /***为true时用池中的数组序列化，见类说明*/
+    private Boolean streaming = false;
+    
+    /***PageList 条数达到该值时 chunked 输出，null或小于等于0时不启用*/
+    private Integer chunkedPageSize;
+    
+    /***请求体最大字节数，默认16M*/
+    private int maxBodySize = 16 * 1024 * 1024;
+    
     public Boolean getPlainString() {
         return plainString;
     }
@@ -55,6 +92,30 @@ public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.s
         this.plainString = plaintString;
     }
     
+    public Boolean getStreaming() {
+        return streaming;
+    }
+    
+    public void setStreaming(Boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    public Integer getChunkedPageSize() {
+        return chunkedPageSize;
+    }
+    
+    public void setChunkedPageSize(Integer chunkedPageSize) {
+        this.chunkedPageSize = chunkedPageSize;
+    }
+    
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+    
+    public void setMaxBodySize(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+    
     @Override
     public void afterPropertiesSet() throws Exception {
         FastJsonResponseUtil.FASTJSON_HTTP_MESSAGE_CONVERTOR = this;
@@ -70,6 +131,10 @@ public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.s
         return result;
     }
     
+    private Charset resolveCharset() {
+        return OptionalUtil.ifNull(getFastJsonConfig().getCharset(), IOUtils.UTF8);
+    }
+    
     @Override
     protected void writeInternal(
             Object obj,
@@ -77,56 +142,122 @@ public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.s
         
         //fastjson设置为plainString时，直接写入String 张三 =>张三 而不是 "张三"
         if (plainString && obj != null && obj instanceof String) {
-            //string 直接写入string,不加双引号
-            FastJsonConfig fastJsonConfig = getFastJsonConfig();
-            
-            String                text   = (String) obj;
-            @Cleanup
-            ByteArrayOutputStream outnew = new ByteArrayOutputStream();
-            outnew.write(text.getBytes(fastJsonConfig.getCharset()));
+            writePlainString((String) obj, outputMessage);
+            return;
+        }
+        
+        //jsonp 等需要父类处理contentType、过滤器的仍由父类写
+        if (streaming && obj != null && !(obj instanceof FastJsonContainer || obj instanceof MappingFastJsonValue || obj instanceof JSONPObject)) {
+            if (isChunked(obj)) {
+                writeChunked(obj, outputMessage);
+            } else {
+                writeBuffered(obj, outputMessage);
+            }
+            return;
+        }
+        
+        super.writeInternal(obj, outputMessage);
+        
+    }
+    
+    private void writePlainString(String text, HttpOutputMessage outputMessage) throws IOException {
+        //string 直接写入string,不加双引号
+        FastJsonConfig fastJsonConfig = getFastJsonConfig();
+        CharsetEncoder encoder        = resolveCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        
+        int capacity = (int) Math.min((long) Math.ceil(text.length() * (double) encoder.maxBytesPerChar()), Integer.MAX_VALUE - 8);
+        try (PooledOutputStream pooled = ByteArrayPool.newOutputStream(capacity)) {
+            int        offset     = pooled.reserve(capacity);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(pooled.getBuffer(), offset, capacity);
+            encode(encoder, CharBuffer.wrap(text), byteBuffer);
+            int len = byteBuffer.position() - offset;
+            pooled.skip(len);
             
             //headers先获得
-            HttpHeaders  headers = outputMessage.getHeaders();
-            OutputStream out     = outputMessage.getBody();
-            
+            HttpHeaders headers = outputMessage.getHeaders();
             if (fastJsonConfig.isWriteContentLength()) {
-                int len = text.length();
                 headers.setContentLength(len);
             }
             
             //chrome中的response可以看到,swagger2中不展示，应该不是bug 
-            outnew.writeTo(out);
+            pooled.writeTo(outputMessage.getBody());
             
             if (logger.isDebugEnabled()) {
                 //不能打印text,否则有泄密的风险
-                logger.debug(new StringBuilder("==>fastjson write plain text\n,len:").append(text.length()).toString());
+                logger.debug(new StringBuilder("==>fastjson write plain text\n,len:").append(len).toString());
             }
-            
-            //clean
-            text = null;
-            return;
         }
-        
-        super.writeInternal(obj, outputMessage);
-        
     }
     
-    private ByteBuffer getByteBuffer(InputStream is) throws IOException {
-        byte[] bytes  = new byte[1024 * 64];
-        int    offset = 0;
-        for (;;) {
-            int readCount = is.read(bytes, offset, bytes.length - offset);
-            if (readCount == -1) {
-                break;
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer byteBuffer) throws CharacterCodingException {
+        CoderResult result = encoder.encode(chars, byteBuffer, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = encoder.flush(byteBuffer);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+    }
+    
+    /***序列化到池中的数组，得到字节数后再写出，不再拷贝到 ByteArrayOutputStream*/
+    private void writeBuffered(Object obj, HttpOutputMessage outputMessage) throws IOException {
+        FastJsonConfig fastJsonConfig = getFastJsonConfig();
+        try (PooledOutputStream pooled = ByteArrayPool.newOutputStream()) {
+            int len = JSON.writeJSONString(pooled, resolveCharset(), obj, fastJsonConfig.getSerializeConfig(),
+                fastJsonConfig.getSerializeFilters(), fastJsonConfig.getDateFormat(), JSON.DEFAULT_GENERATE_FEATURE,
+                fastJsonConfig.getSerializerFeatures());
+            if (fastJsonConfig.isWriteContentLength()) {
+                outputMessage.getHeaders().setContentLength(len);
+            }
+            pooled.writeTo(outputMessage.getBody());
+        } catch (JSONException ex) {
+            throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getMessage(), ex);
+        }
+    }
+    
+    private boolean isChunked(Object obj) {
+        if (chunkedPageSize == null || chunkedPageSize <= 0) {
+            return false;
+        }
+        Object data = obj instanceof BaseResponse ? ((BaseResponse<?>) obj)._getData() : obj;
+        if (data instanceof PageList) {
+            List<?> items = ((PageList<?>) data).getItems();
+            return items != null && items.size() >= chunkedPageSize;
+        }
+        return false;
+    }
+    
+    /***SerializeWriter 的缓冲区满时即写到输出流，不设 Content-Length*/
+    private void writeChunked(Object obj, HttpOutputMessage outputMessage) throws IOException {
+        FastJsonConfig fastJsonConfig = getFastJsonConfig();
+        OutputStream   out            = outputMessage.getBody();
+        Writer         writer         = new OutputStreamWriter(out, resolveCharset());
+        try (SerializeWriter serializeWriter = new SerializeWriter(writer, JSON.DEFAULT_GENERATE_FEATURE,
+            fastJsonConfig.getSerializerFeatures())) {
+            JSONSerializer serializer = new JSONSerializer(serializeWriter, fastJsonConfig.getSerializeConfig());
+            String         dateFormat = fastJsonConfig.getDateFormat();
+            if (StringUtil.isNotEmpty(dateFormat)) {
+                serializer.setDateFormat(dateFormat);
+                serializer.config(SerializerFeature.WriteDateUseDateFormat, true);
             }
-            offset += readCount;
-            if (offset == bytes.length) {
-                byte[] newBytes = new byte[bytes.length * 3 / 2];
-                System.arraycopy(bytes, 0, newBytes, 0, bytes.length);
-                bytes = newBytes;
+            SerializeFilter[] serializeFilters = fastJsonConfig.getSerializeFilters();
+            if (serializeFilters != null) {
+                for (SerializeFilter serializeFilter : serializeFilters) {
+                    serializer.addFilter(serializeFilter);
+                }
             }
+            serializer.write(obj);
+        } catch (JSONException ex) {
+            throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getMessage(), ex);
+        }
+        writer.flush();
+        
+        if (logger.isDebugEnabled()) {
+            logger.debug("==>fastjson write chunked PageList");
         }
-        return ByteBuffer.wrap(bytes, 0, offset);
     }
     
     @Override
@@ -136,21 +267,27 @@ public class FastJsonHttpMessageConverter extends com.alibaba.fastjson.support.s
             HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
         type = getType(type, contextClass);
         
-        //fastjson直接读取String
-        if (type == String.class) {
-            InputStream    is             = inputMessage.getBody();
-            FastJsonConfig fastJsonConfig = getFastJsonConfig();
-            Charset        charset        = fastJsonConfig.getCharset();
-            charset = OptionalUtil.ifNull(charset, IOUtils.UTF8);
-            ByteBuffer byteBuffer = getByteBuffer(is);
-            
-            String result = new String(byteBuffer.array(), byteBuffer.arrayOffset(), byteBuffer.limit(), charset);
-            if (logger.isDebugEnabled()) {
-                logger.debug(new StringBuilder("==>fastjson read plain text:\n").append(result).toString());
+        InputStream    is             = inputMessage.getBody();
+        FastJsonConfig fastJsonConfig = getFastJsonConfig();
+        Charset        charset        = resolveCharset();
+        //Content-Length 正确且不大时读取过程中不扩容
+        try (PooledOutputStream pooled = ByteArrayPool.read(is, inputMessage.getHeaders().getContentLength(), maxBodySize)) {
+            //fastjson直接读取String
+            if (type == String.class) {
+                String result = new String(pooled.getBuffer(), 0, pooled.size(), charset);
+                if (logger.isDebugEnabled()) {
+                    logger.debug(new StringBuilder("==>fastjson read plain text:\n").append(result).toString());
+                }
+                return result;
             }
-            return result;
+            
+            return JSON.parseObject(pooled.getBuffer(), 0, pooled.size(), charset, type, fastJsonConfig.getParserConfig(),
+                fastJsonConfig.getParseProcess(), JSON.DEFAULT_PARSER_FEATURE, fastJsonConfig.getFeatures());
+        } catch (JSONException ex) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + ex.getMessage(), ex, inputMessage);
+        } catch (ByteArrayPool.TooLargeException ex) {
+            throw new HttpMessageNotReadableException("JSON body too large: " + ex.getMessage(), ex, inputMessage);
         }
-        return super.read(type, contextClass, inputMessage);
     }
     
 }
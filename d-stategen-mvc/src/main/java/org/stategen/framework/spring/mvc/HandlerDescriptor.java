@@ -0,0 +1,159 @@
+package org.stategen.framework.spring.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Repeatable;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.method.HandlerMethod;
+import org.stategen.framework.annotation.Check;
+import org.stategen.framework.annotation.Wrap;
+import org.stategen.framework.lite.CheckExcludeController;
+import org.stategen.framework.lite.HandleError;
+import org.stategen.framework.util.AnnotationUtil;
+import org.stategen.framework.util.CollectionUtil;
+
+/***
+ * 一个 handler 方法上拦截器、ResponseBodyAdvice、异常处理需要的注解信息，每个方法只解析一次.
+ *
+ * <pre>
+ * 1.RequestMappingMethodHandlerMapping 注册时创建，放在 DescribedHandlerMethod 上，请求时直接取字段；
+ * 2.其它 HandlerMapping 的 HandlerMethod 或只有 Method 时按 Method 查找，没有时创建，不会重复解析；
+ * 3.是否包装还取决于 ResponseBodyAdviceWrapper 的 packages、annotations，这两个设置改变后重新判断.
+ * </pre>
+ *
+ * @author XiaZhengsheng
+ */
+public final class HandlerDescriptor {
+
+    private static final ConcurrentHashMap<Method, HandlerDescriptor> DESCRIPTORS       = new ConcurrentHashMap<Method, HandlerDescriptor>();
+
+    /***ResponseBodyAdviceWrapper 的 packages、annotations 每次设置后加1*/
+    private static volatile int                                       wrapConfigVersion = 0;
+
+    private final Method                                              method;
+
+    private final boolean                                             requestMapping;
+
+    private final boolean                                             responseBody;
+
+    /***RequestMapping、ResponseBody 都有，且 Wrap 为true*/
+    private final boolean                                             wrapAnnotated;
+
+    private final boolean                                             handleError;
+
+    /***Check 标注的校验注解，方法在前，类在后，不可修改*/
+    private final List<Annotation>                                    checkers;
+
+    private volatile boolean                                          wrap;
+
+    private volatile int                                              wrapVersion       = -1;
+
+    private HandlerDescriptor(Method method) {
+        this.method = method;
+        //不是 RequestMapping的方法不额外处理
+        this.requestMapping = AnnotationUtil.getAnnotation(method, RequestMapping.class) != null;
+        this.responseBody = AnnotationUtil.getMethodOrOwnerAnnotation(method, ResponseBody.class) != null;
+        Wrap wrapAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, Wrap.class);
+        this.wrapAnnotated = requestMapping && responseBody && wrapAnno != null && wrapAnno.value();
+        HandleError handleErrorAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, HandleError.class);
+        this.handleError = handleErrorAnno == null || handleErrorAnno.value();
+        this.checkers = requestMapping ? scanCheckers(method) : Collections.<Annotation> emptyList();
+    }
+
+    public static HandlerDescriptor of(Method method) {
+        HandlerDescriptor descriptor = DESCRIPTORS.get(method);
+        if (descriptor == null) {
+            descriptor = DESCRIPTORS.computeIfAbsent(method, HandlerDescriptor::new);
+        }
+        return descriptor;
+    }
+
+    public static HandlerDescriptor of(HandlerMethod handlerMethod) {
+        if (handlerMethod instanceof DescribedHandlerMethod) {
+            return ((DescribedHandlerMethod) handlerMethod).getDescriptor();
+        }
+        return of(handlerMethod.getMethod());
+    }
+
+    static synchronized void wrapConfigChanged() {
+        wrapConfigVersion++;
+    }
+
+    private static List<Annotation> scanCheckers(Method method) {
+        List<Annotation> checkAnnos = new ArrayList<Annotation>();
+        scanCheckers(method, checkAnnos);
+        if (AnnotationUtils.getAnnotation(method, CheckExcludeController.class) == null) {
+            scanCheckers(method.getDeclaringClass(), checkAnnos);
+        }
+        return checkAnnos.isEmpty() ? Collections.<Annotation> emptyList() : Collections.unmodifiableList(checkAnnos);
+    }
+
+    private static void scanCheckers(AnnotatedElement annotatedElement, List<Annotation> checkAnnos) {
+        Annotation[] annotations = AnnotationUtils.getAnnotations(annotatedElement);
+        if (CollectionUtil.isNotEmpty(annotations)) {
+            for (Annotation annotation : annotations) {
+                //在anno上查找，是否有anno标注为Check
+                Check check = AnnotationUtils.getAnnotation(annotation, Check.class);
+                if (check != null) {
+                    Repeatable repeatable = AnnotationUtils.getAnnotation(annotation, Repeatable.class);
+                    if (repeatable != null) {
+                        Class<? extends Annotation> realCheckAnnoClazz = repeatable.value();
+                        Set<? extends Annotation> realCheckAnnos = AnnotatedElementUtils.getMergedRepeatableAnnotations(annotatedElement,
+                            realCheckAnnoClazz);
+                        checkAnnos.addAll(realCheckAnnos);
+                    } else {
+                        checkAnnos.add(annotation);
+                    }
+                }
+            }
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public boolean isRequestMapping() {
+        return requestMapping;
+    }
+
+    public boolean isResponseBody() {
+        return responseBody;
+    }
+
+    /***异常时是否由 CollectExceptionJsonHandler 处理，没有 HandleError 时为true*/
+    public boolean isHandleError() {
+        return handleError;
+    }
+
+    public List<Annotation> getCheckers() {
+        return checkers;
+    }
+
+    /***返回值是否由 ResponseBodyAdviceWrapper 包装成 response*/
+    public boolean isWrap() {
+        int version = wrapConfigVersion;
+        if (wrapVersion != version) {
+            //先写结果再写版本，读到版本时结果一定可见
+            wrap = wrapAnnotated && ResponseBodyAdviceWrapper.checkMethodPath(method);
+            wrapVersion = version;
+        }
+        return wrap;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("HandlerDescriptor{").append(method).append(", wrap:").append(isWrap()).append(", checkers:")
+            .append(checkers).append('}').toString();
+    }
+}
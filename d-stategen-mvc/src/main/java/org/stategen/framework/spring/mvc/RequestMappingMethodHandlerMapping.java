@@ -24,6 +24,7 @@ import java.util.List;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.condition.ConsumesRequestCondition;
 import org.springframework.web.servlet.mvc.condition.HeadersRequestCondition;
 import org.springframework.web.servlet.mvc.condition.ParamsRequestCondition;
@@ -84,6 +85,12 @@ public class RequestMappingMethodHandlerMapping extends RequestMappingHandlerMap
         return info;
     }
 
+    /***注册时解析注解，请求时拦截器、advice、异常处理直接用 HandlerDescriptor*/
+    @Override
+    protected HandlerMethod createHandlerMethod(Object handler, Method method) {
+        return new DescribedHandlerMethod(super.createHandlerMethod(handler, method), HandlerDescriptor.of(method));
+    }
+
     protected RequestMappingInfo createRequestMappingInfoByApiMethodAnno(RequestMapping requestMapping,
                                                                          RequestCondition<?> customCondition,
                                                                          Method method) {
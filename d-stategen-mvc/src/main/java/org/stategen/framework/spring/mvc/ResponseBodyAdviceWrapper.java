@@ -18,9 +18,7 @@ package org.stategen.framework.spring.mvc;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.MethodParameter;
@@ -33,11 +31,8 @@ import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ControllerAdvice;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
-import org.stategen.framework.annotation.Wrap;
 import org.stategen.framework.lite.IResponseStatus;
 import org.stategen.framework.response.ResponseStatusTypeHandler;
 import org.stategen.framework.response.ResponseUtil;
@@ -50,7 +45,6 @@ import org.stategen.framework.util.CollectionUtil;
 @ControllerAdvice(annotations = { Controller.class, RestController.class })
 public class ResponseBodyAdviceWrapper extends ResponseStatusTypeHandler implements ResponseBodyAdvice<Object>, InitializingBean {
     final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ResponseBodyAdviceWrapper.class);
-    private static Map<Method, Boolean> needWrapMethodsCache = new ConcurrentHashMap<Method, Boolean>();
 
     //如果不设置，会把所有controller都包装，显示一些jar包中的controller有自己的返回值
     public static Set<String> packages = null;
@@ -66,6 +60,13 @@ public class ResponseBodyAdviceWrapper extends ResponseStatusTypeHandler impleme
         }
     }
 
+    /***为true时每次从spring取prototype的response，默认直接调用response类的构造函数，见 ResponseUtil.newResponse*/
+    public void setSpringPrototypeResponse(Boolean springPrototypeResponse) {
+        if (springPrototypeResponse != null) {
+            ResponseUtil.setSpringPrototypeResponse(springPrototypeResponse);
+        }
+    }
+
     protected static boolean checkMethodPath(Method method) {
         if (CollectionUtil.isNotEmpty(packages)) {
             Class<?> declaringClass = method.getDeclaringClass();
@@ -93,45 +94,9 @@ public class ResponseBodyAdviceWrapper extends ResponseStatusTypeHandler impleme
         return supportMethod(method);
     }
 
+    /***见 HandlerDescriptor.isWrap*/
     public static boolean supportMethod(Method method) {
-        Boolean needWrapFlag;
-        needWrapFlag = needWrapMethodsCache.get(method);
-        if (needWrapFlag != null) {
-            return needWrapFlag;
-        }
-
-        needWrapFlag = false;
-        try {
-            if (!checkMethodPath(method)) {
-                return needWrapFlag;
-            }
-            //不是 RequestMapping的方法不额外处理
-            RequestMapping requestMappingAnn = AnnotationUtil.getAnnotation(method, RequestMapping.class);
-            if (requestMappingAnn == null) {
-                return needWrapFlag;
-            }
-
-            ResponseBody responseBodyAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, ResponseBody.class);
-            if (responseBodyAnno == null) {
-                return needWrapFlag;
-            }
-            
-           
-            Wrap wrapAnno = AnnotationUtil.getMethodOrOwnerAnnotation(method, Wrap.class);
-            if (wrapAnno==null){
-                return needWrapFlag;
-            }
-            
-            boolean exclude = wrapAnno.value() == false;
-            if (exclude){
-                return needWrapFlag;
-            }
-            
-            needWrapFlag = true;
-            return needWrapFlag;
-        } finally {
-            needWrapMethodsCache.put(method, needWrapFlag);
-        }
+        return HandlerDescriptor.of(method).isWrap();
     }
 
     @Override
@@ -165,10 +130,12 @@ public class ResponseBodyAdviceWrapper extends ResponseStatusTypeHandler impleme
 
     public void setPackages(Set<String> packages) {
         ResponseBodyAdviceWrapper.packages = packages;
+        HandlerDescriptor.wrapConfigChanged();
     }
 
     public void setAnnotations(Set<Class<? extends Annotation>> annotations) {
         ResponseBodyAdviceWrapper.annotations = annotations;
+        HandlerDescriptor.wrapConfigChanged();
     }
 
     @Override
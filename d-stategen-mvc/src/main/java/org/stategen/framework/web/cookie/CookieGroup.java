@@ -118,6 +118,12 @@ public class CookieGroup<E extends Enum<E>> extends ResponseStatusTypeHandler {
         return cookiesHolder;
     }
 
+    /***当前请求中本组的 CookiesHolder，没有时不创建，返回null*/
+    CookiesHolder peekCookiesHolder() {
+        Map<String, CookiesHolder> valiCookieHolderMap = ServletContextUtil.PREFIX_NAME_COOKIESHOLDERMAP_THREADLOCAL.get();
+        return valiCookieHolderMap != null ? valiCookieHolderMap.get(getCookieNamePrefix()) : null;
+    }
+
     /**
     *
     * 过滤出不能被篡改的cookie.
@@ -178,23 +184,19 @@ public class CookieGroup<E extends Enum<E>> extends ResponseStatusTypeHandler {
     public boolean checkTokenEqual() {
         boolean result = false;
         if (Configration.TOKEN_GENERATOR != null) {
-            CookiesHolder cookiesHolder = this.getCookiesHolder();
+            CookiesHolder cookiesHolder = this.peekCookiesHolder();
+            if (cookiesHolder == null) {
+                //请求中没有本组的cookie，也没有写过，不用计算令牌
+                return true;
+            }
             Map<String, Cookie> requestCookieMap = cookiesHolder.getCookieMap();
-
-            String calcuToken = Configration.TOKEN_GENERATOR.genToken(requestCookieMap);
             Cookie tokenCookie = cookiesHolder.getTokenCookie();
-            String cookieToken = null;
-            if (calcuToken == null) {
-                result = true;
-            } else if (calcuToken != null) {
-                if (tokenCookie != null) {
-                    cookieToken = tokenCookie.getValue();
-                    result = calcuToken.equals(cookieToken);
-                }
-            }
+            String cookieToken = tokenCookie != null ? tokenCookie.getValue() : null;
+            result = Configration.TOKEN_GENERATOR.verifyToken(requestCookieMap, cookieToken);
 
             if (logger.isDebugEnabled()) {
                 String requestPath = RequestUtil.getRequestPath();
+                String calcuToken = Configration.TOKEN_GENERATOR.genToken(requestCookieMap);
                 logger.debug(
                     new StringBuilder("path:").append(requestPath).append(", token校验，用户 token:").append(cookieToken)
                         .append(", 计算token:").append(calcuToken).append("相等？").append(result).toString());
@@ -20,6 +20,8 @@ import java.util.Map;
 
 import javax.servlet.http.Cookie;
 
+import org.stategen.framework.util.HashUtil;
+
 /**
  * **
  * cookie令牌生成校验接口.
@@ -30,4 +32,15 @@ public interface CookieTokenGenerator {
 
     public String genToken(Map<String, Cookie> reuestCookieMap);
 
+    /***
+     * 校验请求中的令牌，没有需要校验的cookie(genToken 为null)时通过，比较用常量时间
+     */
+    public default boolean verifyToken(Map<String, Cookie> reuestCookieMap, String token) {
+        String calcuToken = genToken(reuestCookieMap);
+        if (calcuToken == null) {
+            return true;
+        }
+        return token != null && HashUtil.hexEquals(calcuToken, token);
+    }
+
 }
@@ -16,13 +16,16 @@
  */
 package org.stategen.framework.web.cookie;
 
+import java.security.Key;
 import java.util.List;
 import java.util.Map;
 
+import javax.crypto.Mac;
 import javax.servlet.http.Cookie;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.stategen.framework.util.CollectionUtil;
+import org.stategen.framework.util.HashUtil;
 import org.stategen.framework.util.MD5Util;
 import org.stategen.framework.util.NumberUtil;
 import org.stategen.framework.util.StringUtil;
@@ -38,6 +41,15 @@ import configs.Configration;
 public class CookieTokenGeneratorDefault implements CookieTokenGenerator ,InitializingBean {
     final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CookieTokenGeneratorDefault.class);
 
+    /***
+     * 为true时令牌为以混淆码为key的 HmacSHA256，按排序后每个cookie的 name、value 依次写入(各自带长度前缀)，
+     * 不再拼接字符串后md5，与原来的令牌不兼容，切换后已有的令牌会校验失败一次
+     */
+    private boolean hmac = false;
+
+    /***混淆码和由它生成的key，混淆码改变后重新生成*/
+    private volatile MixKey mixKey;
+
     /***
      * 根据配置的混淆码，以及cookie排序后的值，算出令牌
      * @see cn.org.rapid_framework.http.CookieTokenGenerator#genToken(cn.org.rapid_framework.web.AntiCookieFakeResponseWrapper)
@@ -45,6 +57,9 @@ public class CookieTokenGeneratorDefault implements CookieTokenGenerator ,Initia
     @Override
     public String genToken(Map<String, Cookie> reuestCookieMap) {
         if (CollectionUtil.isNotEmpty(reuestCookieMap)){
+            if (hmac) {
+                return genHmacToken(reuestCookieMap);
+            }
             int filteredCount =0;
             StringBuilder sb = new StringBuilder(512);
             for (Cookie cookie : reuestCookieMap.values()) {
@@ -68,6 +83,39 @@ public class CookieTokenGeneratorDefault implements CookieTokenGenerator ,Initia
         return null;
     }
 
+    /***在线程内复用的Mac和缓冲区上计算，不拼接字符串*/
+    private String genHmacToken(Map<String, Cookie> reuestCookieMap) {
+        Mac mac = HashUtil.beginHmacSha256(getMixKey());
+        int filteredCount = 0;
+        for (Cookie cookie : reuestCookieMap.values()) {
+            if (cookie.getMaxAge() == 0) {
+                continue;
+            }
+            filteredCount++;
+            HashUtil.updateLengthPrefixed(mac, cookie.getName());
+            HashUtil.updateLengthPrefixed(mac, cookie.getValue());
+        }
+        return filteredCount > 0 ? HashUtil.toHex(mac.doFinal()) : null;
+    }
+
+    private Key getMixKey() {
+        String tokenMix = Configration.COOKIE_TOKEN_MIX;
+        MixKey current = mixKey;
+        if (current == null || current.tokenMix != tokenMix) {
+            current = new MixKey(tokenMix, HashUtil.newHmacSha256Key(tokenMix));
+            mixKey = current;
+        }
+        return current.key;
+    }
+
+    public boolean isHmac() {
+        return hmac;
+    }
+
+    public void setHmac(boolean hmac) {
+        this.hmac = hmac;
+    }
+
     public void setLoginLogoutPaths(String logInOutPaths) {
         Configration.LOGIN_OUT_PATHS.clear();
         List<String> cookieExcepts = StringUtil.parserToList(logInOutPaths);
@@ -87,6 +135,17 @@ public class CookieTokenGeneratorDefault implements CookieTokenGenerator ,Initia
         Configration.TOKEN_GENERATOR = this;
     }
 
+    private static final class MixKey {
+        final String tokenMix;
+
+        final Key    key;
+
+        MixKey(String tokenMix, Key key) {
+            this.tokenMix = tokenMix;
+            this.key = key;
+        }
+    }
+
 
 
 }
@@ -0,0 +1,147 @@
+package org.stategen.framework.spring.i18n;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.stategen.framework.util.StringComparetor;
+
+public class SignedResourceBundleTst {
+
+    static ConfigBean configBean(String key, String value) {
+        ConfigBean configBean = new ConfigBean();
+        configBean.setIndex("zh_CN");
+        configBean.setKey(key);
+        configBean.setValue(value);
+        return configBean;
+    }
+
+    static SignedResourceBundle createBundle(int size) {
+        List<ConfigBean> configBeans = new ArrayList<ConfigBean>();
+        for (int i = size - 1; i >= 0; i--) {
+            configBeans.add(configBean("message.code." + i, "用户{0}在{1}第" + i + "次登录，''欢迎''"));
+        }
+        configBeans.sort((bean1, bean2) -> bean1.getKey().compareTo(bean2.getKey()));
+        SignedResourceBundle bundle = new SignedResourceBundle(false, Locale.CHINA);
+        AbstractBundleProvider.putSortedConfigBeansToBundle(configBeans, bundle);
+        return bundle;
+    }
+
+    @Test
+    public void testSameAsMessageFormat() {
+        String[] messages = { "", "no args", "{0}", "a{0}b{1}c", "{1}{0}{1}", "'{0}' is {0}", "it''s {0}", "'it''s' {0}", "}{0}}",
+                "'unclosed {0}", "{2}", "{0,number,#.##}", "{0,date}", "{ 0}" };
+        Object[][] argsList = { null, {}, { "x" }, { "x", null }, { 1234567, "y" }, { new Date(0), "y" }, { new StringBuilder("sb"), 'c' } };
+        for (String message : messages) {
+            MessageTemplate template = new MessageTemplate(message);
+            for (Object[] args : argsList) {
+                String expected;
+                try {
+                    expected = new MessageFormat(message, Locale.CHINA).format(args);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                Assert.assertEquals(message, expected, template.format(args, Locale.CHINA));
+            }
+        }
+        Assert.assertTrue(new MessageTemplate("it''s {0}").isSimple());
+        Assert.assertFalse(new MessageTemplate("{0,number}").isSimple());
+    }
+
+    @Test
+    public void testPutSortedConfigBeans() {
+        List<ConfigBean> configBeans = new ArrayList<ConfigBean>();
+        configBeans.add(configBean("b", "2"));
+        configBeans.add(configBean("a", "1"));
+        configBeans.add(configBean("b", "3"));
+        Map<String, String> sortedMap = new TreeMap<String, String>(new StringComparetor());
+        for (ConfigBean configBean : configBeans) {
+            sortedMap.put(configBean.getKey(), configBean.getValue());
+        }
+        SignedResourceBundle expected = new SignedResourceBundle(false, Locale.CHINA);
+        AbstractBundleProvider.putSortedMapToBundle(sortedMap, expected);
+
+        configBeans.sort((bean1, bean2) -> bean1.getKey().compareTo(bean2.getKey()));
+        SignedResourceBundle bundle = new SignedResourceBundle(false, Locale.CHINA);
+        AbstractBundleProvider.putSortedConfigBeansToBundle(configBeans, bundle);
+        Assert.assertEquals(expected.getLookUp(), bundle.getLookUp());
+        Assert.assertEquals(expected.getSign(), bundle.getSign());
+        Assert.assertEquals("3", bundle.format("b", new Object[] { "x" }, Locale.CHINA));
+        Assert.assertNull(bundle.format("c", new Object[] { "x" }, Locale.CHINA));
+    }
+
+    /***spring 的方式：取得 MessageFormat 后在其上同步格式化*/
+    static String formatBySpring(SignedResourceBundle bundle, String code, Object[] args) {
+        MessageFormat messageFormat = bundle.getFormat(code, Locale.CHINA);
+        synchronized (messageFormat) {
+            return messageFormat.format(args);
+        }
+    }
+
+    static long runConcurrently(int threads, int times, SignedResourceBundle bundle, boolean template) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong length = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                Object[] args = { "张三", "北京" };
+                long total = 0;
+                try {
+                    start.await();
+                    for (int i = 0; i < times; i++) {
+                        //热点消息集中在少数几个code上
+                        String code = "message.code." + (i & 7);
+                        String message = template ? bundle.format(code, args, Locale.CHINA) : formatBySpring(bundle, code, args);
+                        total += message.length();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    length.addAndGet(total);
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        Assert.assertTrue(length.get() > 0);
+        return nanos;
+    }
+
+    @Test
+    public void testFormatSameAsSpring() {
+        SignedResourceBundle bundle = createBundle(20);
+        for (int i = 0; i < 20; i++) {
+            String code = "message.code." + i;
+            Assert.assertEquals(formatBySpring(bundle, code, new Object[] { "a", "b" }), bundle.format(code, new Object[] { "a", "b" }, Locale.CHINA));
+        }
+    }
+
+    /***多线程下与 spring 同步 MessageFormat 的方式比较吞吐量，手动运行*/
+    @Ignore
+    @Test
+    public void testResolveCodeUnderContention() throws InterruptedException {
+        SignedResourceBundle bundle = createBundle(2000);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int times = 100000;
+        for (int round = 0; round < 3; round++) {
+            long springNanos = runConcurrently(threads, times, bundle, false);
+            long templateNanos = runConcurrently(threads, times, bundle, true);
+            long ops = (long) threads * times * 1000000L;
+            System.out.println("resolveCode " + threads + " threads<===========>: synchronized MessageFormat " + ops / springNanos
+                               + " ops/ms, MessageTemplate " + ops / templateNanos + " ops/ms");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.stategen.framework.spring.mvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.stategen.framework.lite.PageList;
+
+import com.alibaba.fastjson.JSON;
+
+public class FastJsonHttpMessageConverterTst {
+
+    /***记录写入次数，用于判断是否边序列化边写出*/
+    static class OutputMessage implements HttpOutputMessage {
+        final HttpHeaders           headers = new HttpHeaders();
+        final ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+        int                         writes;
+
+        final OutputStream          body    = new OutputStream() {
+                                                @Override
+                                                public void write(int b) {
+                                                    writes++;
+                                                    bytes.write(b);
+                                                }
+
+                                                @Override
+                                                public void write(byte[] b, int off, int len) {
+                                                    writes++;
+                                                    bytes.write(b, off, len);
+                                                }
+                                            };
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        String getBodyAsString() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /***每次最多读出 maxRead 个字节，模拟分多次到达的请求体*/
+    static class InputMessage implements HttpInputMessage {
+        final HttpHeaders headers = new HttpHeaders();
+        final InputStream body;
+
+        InputMessage(byte[] bytes, long contentLength, int maxRead) {
+            if (contentLength >= 0) {
+                headers.setContentLength(contentLength);
+            }
+            this.body = new ByteArrayInputStream(bytes) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, maxRead));
+                }
+            };
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    static List<String> createItems(int count) {
+        List<String> items = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            items.add("城市" + i);
+        }
+        return items;
+    }
+
+    @Test
+    public void testPlainStringContentLengthInBytes() throws IOException {
+        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter();
+        converter.setPlainString(true);
+        OutputMessage outputMessage = new OutputMessage();
+        String text = "张三abc";
+        converter.writeInternal(text, outputMessage);
+        Assert.assertEquals(text.getBytes(StandardCharsets.UTF_8).length, outputMessage.getHeaders().getContentLength());
+        Assert.assertEquals(9L, outputMessage.getHeaders().getContentLength());
+        Assert.assertEquals(text, outputMessage.getBodyAsString());
+    }
+
+    @Test
+    public void testChunkedSameAsBuffered() throws IOException {
+        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter();
+        converter.setStreaming(true);
+        PageList<String> small = new PageList<String>(createItems(10), 1, 10, 10);
+        OutputMessage buffered = new OutputMessage();
+        converter.writeInternal(small, buffered);
+        Assert.assertEquals(buffered.bytes.size(), buffered.getHeaders().getContentLength());
+        Assert.assertEquals(JSON.toJSONString(small), buffered.getBodyAsString());
+
+        //条数达到 chunkedPageSize 时边序列化边写出，不设 Content-Length
+        converter.setChunkedPageSize(1000);
+        PageList<String> large = new PageList<String>(createItems(20000), 1, 20000, 20000);
+        OutputMessage chunked = new OutputMessage();
+        converter.writeInternal(large, chunked);
+        Assert.assertEquals(-1L, chunked.getHeaders().getContentLength());
+        Assert.assertTrue(chunked.writes > 1);
+        Assert.assertEquals(JSON.toJSONString(large), chunked.getBodyAsString());
+
+        //不到 chunkedPageSize 的仍按字节数设置 Content-Length
+        OutputMessage notChunked = new OutputMessage();
+        converter.writeInternal(small, notChunked);
+        Assert.assertEquals(notChunked.bytes.size(), notChunked.getHeaders().getContentLength());
+    }
+
+    @Test
+    public void testReadInSeveralReads() throws IOException {
+        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter();
+        List<String> items = createItems(20000);
+        byte[] bytes = JSON.toJSONString(items).getBytes(StandardCharsets.UTF_8);
+        //Content-Length 已知和未知两种情况
+        for (long contentLength : new long[] { bytes.length, -1L }) {
+            Object result = converter.read(List.class, null, new InputMessage(bytes, contentLength, 7));
+            Assert.assertEquals(items, result);
+        }
+
+        byte[] text = "张三".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals("张三", converter.read(String.class, null, new InputMessage(text, text.length, 1)));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) converter.read(Map.class, null,
+            new InputMessage("{\"name\":\"张三\"}".getBytes(StandardCharsets.UTF_8), -1L, 3));
+        Assert.assertEquals("张三", map.get("name"));
+    }
+
+    @Test
+    public void testRejectBodyLargerThanMaxBodySize() throws IOException {
+        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter();
+        converter.setMaxBodySize(1024);
+        byte[] bytes = JSON.toJSONString(createItems(500)).getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(bytes.length > 1024);
+        //Content-Length 超出，以及没有 Content-Length 但实际读到的超出
+        for (long contentLength : new long[] { bytes.length, -1L }) {
+            try {
+                converter.read(List.class, null, new InputMessage(bytes, contentLength, 100));
+                Assert.fail("body larger than maxBodySize");
+            } catch (HttpMessageNotReadableException e) {
+                Assert.assertTrue(e.getMessage().startsWith("JSON body too large"));
+            }
+        }
+        Assert.assertEquals(Arrays.asList("a"), converter.read(List.class, null, new InputMessage("[\"a\"]".getBytes(StandardCharsets.UTF_8), 5L, 100)));
+    }
+}
@@ -0,0 +1,66 @@
+package org.stategen.framework.spring.mvc;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.stategen.framework.annotation.Wrap;
+import org.stategen.framework.lite.HandleError;
+
+public class HandlerDescriptorTst {
+
+    @ResponseBody
+    @Wrap
+    public static class TestController {
+        @RequestMapping("wrapped")
+        public String wrapped() {
+            return null;
+        }
+
+        @RequestMapping("raw")
+        @Wrap(false)
+        @HandleError(false)
+        public String raw() {
+            return null;
+        }
+
+        public String notMapping() {
+            return null;
+        }
+    }
+
+    static Method methodOf(String name) throws NoSuchMethodException {
+        return TestController.class.getMethod(name);
+    }
+
+    @After
+    public void reset() {
+        new ResponseBodyAdviceWrapper().setPackages(null);
+    }
+
+    @Test
+    public void testDescriptor() throws NoSuchMethodException {
+        HandlerDescriptor wrapped = HandlerDescriptor.of(methodOf("wrapped"));
+        Assert.assertSame(wrapped, HandlerDescriptor.of(methodOf("wrapped")));
+        Assert.assertTrue(wrapped.isRequestMapping());
+        Assert.assertTrue(wrapped.isResponseBody());
+        Assert.assertTrue(wrapped.isHandleError());
+        Assert.assertTrue(wrapped.getCheckers().isEmpty());
+
+        HandlerDescriptor raw = HandlerDescriptor.of(methodOf("raw"));
+        Assert.assertFalse(raw.isHandleError());
+        Assert.assertFalse(HandlerDescriptor.of(methodOf("notMapping")).isRequestMapping());
+
+        //packages 设置后重新判断是否包装
+        Assert.assertFalse(wrapped.isWrap());
+        new ResponseBodyAdviceWrapper().setPackages(Collections.singleton(TestController.class.getPackage().getName()));
+        Assert.assertTrue(wrapped.isWrap());
+        Assert.assertTrue(ResponseBodyAdviceWrapper.supportMethod(methodOf("wrapped")));
+        Assert.assertFalse(raw.isWrap());
+        Assert.assertFalse(HandlerDescriptor.of(methodOf("notMapping")).isWrap());
+    }
+}
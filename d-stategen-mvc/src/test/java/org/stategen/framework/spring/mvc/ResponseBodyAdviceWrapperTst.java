@@ -0,0 +1,208 @@
+package org.stategen.framework.spring.mvc;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.MediaType;
+import org.stategen.framework.lite.BaseResponse;
+import org.stategen.framework.lite.IResponseStatus;
+import org.stategen.framework.response.ResponseUtil;
+
+import configs.Constant;
+
+public class ResponseBodyAdviceWrapperTst {
+
+    public static class TestResponse extends BaseResponse<Object> {
+        public Integer code() {
+            return _getCode();
+        }
+
+        public static TestResponse create() {
+            TestResponse response = new TestResponse();
+            response.setCode(-6);
+            return response;
+        }
+    }
+
+    public static class PostConstructResponse extends TestResponse {
+        @PostConstruct
+        public void init() {
+            setCode(-7);
+        }
+    }
+
+    public static class AwareResponse extends TestResponse implements BeanNameAware {
+        @Override
+        public void setBeanName(String name) {
+            setCode(-8);
+        }
+    }
+
+    public static class CodeBeanPostProcessor implements BeanPostProcessor {
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) {
+            if (bean instanceof TestResponse) {
+                ((TestResponse) bean).setCode(-9);
+            }
+            return bean;
+        }
+    }
+
+    public enum TestStatus implements IResponseStatus {
+        SUCCESS;
+
+        @Override
+        public Class<? extends IResponseStatus> getRegisterClass() {
+            return null;
+        }
+
+        @Override
+        public Integer getStatus() {
+            return 0;
+        }
+
+        @Override
+        public String getMessage() {
+            return "ok";
+        }
+
+        @Override
+        public Boolean getSuccess() {
+            return true;
+        }
+
+        @Override
+        public String getErrorPage() {
+            return null;
+        }
+
+        @Override
+        public boolean isRedirect() {
+            return false;
+        }
+    }
+
+    static GenericApplicationContext createContext(Integer code) {
+        RootBeanDefinition beanDefinition = new RootBeanDefinition(TestResponse.class);
+        if (code != null) {
+            beanDefinition.getPropertyValues().add("code", code);
+        }
+        return createContext(beanDefinition, false);
+    }
+
+    static GenericApplicationContext createContext(RootBeanDefinition beanDefinition, boolean annotationConfig) {
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        beanDefinition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+        applicationContext.registerBeanDefinition(Constant.RESPONSE_NAME, beanDefinition);
+        if (annotationConfig) {
+            AnnotationConfigUtils.registerAnnotationConfigProcessors(applicationContext);
+        }
+        applicationContext.refresh();
+        new SpringContextHolder().setApplicationContext(applicationContext);
+        ResponseUtil.setResponseClass(null);
+        return applicationContext;
+    }
+
+    static Integer newResponseCode() {
+        BaseResponse<Object> response = ResponseUtil.newResponse();
+        return ((TestResponse) response).code();
+    }
+
+    @After
+    public void reset() {
+        ResponseUtil.setSpringPrototypeResponse(false);
+        ResponseUtil.setResponseClass(null);
+    }
+
+    @Test
+    public void testFallbackToSpring() {
+        //bean 定义中有属性时仍由spring创建
+        try (GenericApplicationContext applicationContext = createContext(-5)) {
+            BaseResponse<Object> response = ResponseUtil.newResponse();
+            Assert.assertEquals(Integer.valueOf(-5), ((TestResponse) response).code());
+            Assert.assertNotSame(response, ResponseUtil.newResponse());
+        }
+    }
+
+    @Test
+    public void testFallbackWhenSpringInitializesBean() {
+        RootBeanDefinition factoryMethod = new RootBeanDefinition(TestResponse.class);
+        factoryMethod.setFactoryMethodName("create");
+        try (GenericApplicationContext applicationContext = createContext(factoryMethod, false)) {
+            Assert.assertEquals(Integer.valueOf(-6), newResponseCode());
+        }
+        try (GenericApplicationContext applicationContext = createContext(new RootBeanDefinition(PostConstructResponse.class), true)) {
+            Assert.assertEquals(Integer.valueOf(-7), newResponseCode());
+        }
+        try (GenericApplicationContext applicationContext = createContext(new RootBeanDefinition(AwareResponse.class), false)) {
+            Assert.assertEquals(Integer.valueOf(-8), newResponseCode());
+        }
+        RootBeanDefinition postProcessed = new RootBeanDefinition(TestResponse.class);
+        try (GenericApplicationContext applicationContext = new GenericApplicationContext()) {
+            applicationContext.registerBeanDefinition("codeBeanPostProcessor", new RootBeanDefinition(CodeBeanPostProcessor.class));
+            postProcessed.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+            applicationContext.registerBeanDefinition(Constant.RESPONSE_NAME, postProcessed);
+            applicationContext.refresh();
+            new SpringContextHolder().setApplicationContext(applicationContext);
+            ResponseUtil.setResponseClass(null);
+            Assert.assertEquals(Integer.valueOf(-9), newResponseCode());
+        }
+    }
+
+    @Test
+    public void testBeforeBodyWrite() {
+        try (GenericApplicationContext applicationContext = createContext(null)) {
+            ResponseBodyAdviceWrapper wrapper = new ResponseBodyAdviceWrapper();
+            wrapper.setResponseStatusOfResult(TestStatus.SUCCESS);
+            List<String> body = Arrays.asList("a", "b");
+            BaseResponse<?> response = (BaseResponse<?>) wrapper.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null, null, null);
+            Assert.assertTrue(response instanceof TestResponse);
+            Assert.assertSame(body, response._getData());
+            Assert.assertEquals(Integer.valueOf(0), ((TestResponse) response).code());
+            Assert.assertTrue(response.getSuccess());
+            Assert.assertNotSame(response, wrapper.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null, null, null));
+        }
+    }
+
+    /***与每次从spring取 prototype bean 比较吞吐量，手动运行*/
+    @Ignore
+    @Test
+    public void testBeforeBodyWriteThroughput() {
+        try (GenericApplicationContext applicationContext = createContext(null)) {
+            ResponseBodyAdviceWrapper wrapper = new ResponseBodyAdviceWrapper();
+            wrapper.setResponseStatusOfResult(TestStatus.SUCCESS);
+            List<String> body = Arrays.asList("a", "b");
+
+            int times = 200000;
+            for (int round = 0; round < 3; round++) {
+                ResponseUtil.setSpringPrototypeResponse(true);
+                long start = System.nanoTime();
+                for (int i = 0; i < times; i++) {
+                    wrapper.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null, null, null);
+                }
+                long springNanos = System.nanoTime() - start;
+
+                ResponseUtil.setSpringPrototypeResponse(false);
+                start = System.nanoTime();
+                for (int i = 0; i < times; i++) {
+                    wrapper.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null, null, null);
+                }
+                long factoryNanos = System.nanoTime() - start;
+                System.out.println("beforeBodyWrite<===========>: spring prototype " + times * 1000000L / springNanos
+                                   + " ops/ms, response factory " + times * 1000000L / factoryNanos + " ops/ms");
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.stategen.framework.web.cookie;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.stategen.framework.util.StringComparetor;
+
+public class CookieTokenGeneratorTst {
+
+    /***接近实际的一组cookie，按名称排序，同 CookiesHolder*/
+    static Map<String, Cookie> createCookies() {
+        Map<String, Cookie> cookieMap = new TreeMap<String, Cookie>(new StringComparetor());
+        cookieMap.put("_l_userId", new Cookie("_l_userId", "10086"));
+        cookieMap.put("_l_userName", new Cookie("_l_userName", "%E5%BC%A0%E4%B8%89"));
+        cookieMap.put("_l_role", new Cookie("_l_role", "ADMIN,USER"));
+        cookieMap.put("_l_session", new Cookie("_l_session", "9b1f8e3c-4a57-4d0b-8d66-2f0c1a7e5b93"));
+        cookieMap.put("_l_loginTime", new Cookie("_l_loginTime", "1760745600000"));
+        Cookie expired = new Cookie("_l_expired", "x");
+        expired.setMaxAge(0);
+        cookieMap.put("_l_expired", expired);
+        return cookieMap;
+    }
+
+    static CookieTokenGeneratorDefault generator(boolean hmac) {
+        CookieTokenGeneratorDefault generator = new CookieTokenGeneratorDefault();
+        generator.setHmac(hmac);
+        return generator;
+    }
+
+    @Test
+    public void testVerifyToken() {
+        CookieTokenGeneratorDefault generator = generator(true);
+        Map<String, Cookie> cookieMap = createCookies();
+        String token = generator.genToken(cookieMap);
+        Assert.assertEquals(64, token.length());
+        Assert.assertTrue(generator.verifyToken(cookieMap, token));
+        Assert.assertFalse(generator.verifyToken(cookieMap, null));
+        Assert.assertFalse(generator.verifyToken(cookieMap, token.substring(1)));
+
+        //值在 name、value 之间移动不能得到同样的令牌
+        Map<String, Cookie> moved = new TreeMap<String, Cookie>(new StringComparetor());
+        moved.put("a", new Cookie("a", "bc"));
+        Map<String, Cookie> other = new TreeMap<String, Cookie>(new StringComparetor());
+        other.put("ab", new Cookie("ab", "c"));
+        Assert.assertFalse(generator.genToken(moved).equals(generator.genToken(other)));
+
+        cookieMap.get("_l_role").setValue("ADMIN");
+        Assert.assertFalse(generator.verifyToken(cookieMap, token));
+
+        //没有需要校验的cookie时通过
+        Assert.assertNull(generator.genToken(new TreeMap<String, Cookie>()));
+        Assert.assertTrue(generator.verifyToken(new TreeMap<String, Cookie>(), null));
+        Assert.assertTrue(generator(false).verifyToken(cookieMap, generator(false).genToken(cookieMap)));
+    }
+
+    /***与原来的 md5 方式比较耗时，手动运行*/
+    @Ignore
+    @Test
+    public void testCompareWithMd5() {
+        Map<String, Cookie> cookieMap = createCookies();
+        CookieTokenGeneratorDefault md5 = generator(false);
+        CookieTokenGeneratorDefault hmac = generator(true);
+        String md5Token = md5.genToken(cookieMap);
+        String hmacToken = hmac.genToken(cookieMap);
+        int times = 200000;
+        for (int round = 0; round < 3; round++) {
+            int passed = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                if (md5Token.equals(md5.genToken(cookieMap))) {
+                    passed++;
+                }
+            }
+            long md5Nanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                if (hmac.verifyToken(cookieMap, hmacToken)) {
+                    passed--;
+                }
+            }
+            long hmacNanos = System.nanoTime() - start;
+            System.out.println("cookie token<===========>: md5 " + md5Nanos / times + " ns, hmac " + hmacNanos / times + " ns");
+            Assert.assertEquals(0, passed);
+        }
+    }
+}